@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 public class Config implements Serializable {
 
@@ -20,10 +21,127 @@ public class Config implements Serializable {
      * number of clients
      */
     final public static int N_CLIENT = N_L2 * 2;
+
+    /**
+     * maximum number of outstanding requests of a client, the others wait in its queue. Two requests on the same item are never outstanding together
+     */
+    final public static int CLIENT_WINDOW = 4;
+
+    /**
+     * maximum number of items in the near cache of a client, 0 to disable it. The near cache serves the non-critical reads
+     * and is kept up to date by the L2 cache, which forwards to the client the updates of the items it holds
+     */
+    final public static int NEAR_CACHE_CAPACITY = 0;
     /**
      * number of items to be stored in the DB
      */
     final public static int N_ITEMS = 5;
+    /**
+     * number of shards of the database, each one is a {@link EasyCache.Devices.DB DB} actor owning the keys assigned by {@link #dbShardOf(int)}
+     */
+    final public static int N_DB_SHARDS = 2;
+    /**
+     * number of read workers of each shard of the database, serving reads and refreshes in parallel. With 0 the shard serves them itself
+     */
+    final public static int DB_READ_WORKERS = 2;
+    /**
+     * maximum number of items a L1 cache can store. Items are fixed size, so the number of items is also their weight.
+     * With {@link #N_ITEMS} a cache never evicts, set it lower to enable the eviction with {@link #EVICTION_POLICY}
+     */
+    final public static int L1_CAPACITY = N_ITEMS;
+    /**
+     * maximum number of items a L2 cache can store. With {@link #N_ITEMS} a cache never evicts, set it lower to enable the eviction
+     */
+    final public static int L2_CAPACITY = N_ITEMS;
+    /**
+     * policy used by the caches to choose which item to evict when they are full
+     */
+    final public static EvictionPolicyType EVICTION_POLICY = EvictionPolicyType.TINY_LFU;
+    /**
+     * storage backend of the database
+     */
+    final public static ItemStoreType DB_STORE = ItemStoreType.HEAP;
+    /**
+     * file used by persistent storage backends of the database
+     */
+    final public static String DB_STORE_PATH = "EasyCache.db";
+    /**
+     * number of keys of a {@link ItemStoreType#MAPPED} store, items keys go from 0 to DB_STORE_SLOTS - 1. The store of
+     * each shard has a slot only for the keys of the shard
+     */
+    final public static int DB_STORE_SLOTS = N_ITEMS + 1;
+    /**
+     * directory of the segments of a {@link ItemStoreType#LSM} store, used instead of DB_STORE_PATH
+     */
+    final public static String LSM_DIR = "EasyCache.lsm";
+    /**
+     * number of items of the memtable of a {@link ItemStoreType#LSM} store after which it is written to a segment
+     */
+    final public static int LSM_MEMTABLE_MAX_ITEMS = 4096;
+    /**
+     * number of consecutive sorted runs (memtable flushes or compaction outputs) of similar size of a {@link ItemStoreType#LSM} store after which they are merged by a compaction
+     */
+    final public static int LSM_COMPACTION_TRIGGER = 4;
+    /**
+     * bits for each key in the bloom filters of the segments, 10 bits give about 1% of false positives
+     */
+    final public static int LSM_BLOOM_BITS_PER_KEY = 10;
+    /**
+     * maximum number of items in a segment written by a compaction, bigger outputs are split
+     */
+    final public static int LSM_SEGMENT_MAX_ENTRIES = 1 << 22;
+    /**
+     * if true, the writes applied by the database are saved in a write-ahead log before being propagated
+     */
+    final public static boolean WAL_ENABLED = false;
+    /**
+     * file of the write-ahead log of the database
+     */
+    final public static String WAL_PATH = "EasyCache.wal";
+    /**
+     * file of the checkpoint of the write-ahead log, used when the storage backend is not persistent
+     */
+    final public static String WAL_CHECKPOINT_PATH = "EasyCache.ckpt";
+    /**
+     * writes arriving within these milliseconds are made durable with a single fsync (group commit)
+     */
+    final public static int WAL_GROUP_COMMIT_WINDOW = 5;
+    /**
+     * maximum number of writes in a group commit, when reached the group is committed without waiting the window
+     */
+    final public static int WAL_GROUP_COMMIT_MAX = 256;
+    /**
+     * a checkpoint is taken when the log contains this number of writes
+     */
+    final public static int WAL_CHECKPOINT_RECORDS = 10000;
+
+    /**
+     * default policy used to propagate the writes to the caches, see {@link WritePolicyType}
+     */
+    final public static WritePolicyType WRITE_POLICY = WritePolicyType.UPDATE;
+
+    /**
+     * first key of each range of keys with its own write policy, in increasing order. The keys before the first range use {@link #WRITE_POLICY}
+     */
+    final public static int[] WRITE_POLICY_RANGE_START = {};
+
+    /**
+     * write policy of each range of keys in {@link #WRITE_POLICY_RANGE_START}, used up to the start of the next range
+     */
+    final public static WritePolicyType[] WRITE_POLICY_RANGE_TYPE = {};
+
+    /**
+     * maximum number of critical writes on the same item queued at the database behind the ongoing one, further requests are rejected
+     */
+    final public static int MAX_CRIT_WRITE_QUEUE = 4;
+    /**
+     * critical writes arriving at a shard of the database within these milliseconds are invalidated in a single round, with one message for each child. With 0 each critical write has its own round and is not delayed
+     */
+    final public static int CRIT_WRITE_ROUND_WINDOW = 0;
+    /**
+     * maximum number of critical writes in an invalidation round, when reached the round starts without waiting the window
+     */
+    final public static int CRIT_WRITE_ROUND_MAX = 32;
     /**
      * max number of cache that could simultanously crash
      */
@@ -34,6 +152,25 @@ public class Config implements Serializable {
      */
     final public static int SEND_MAX_DELAY = 50;
 
+    /**
+     * transport of the messages between the nodes: with {@link TransportType#SIMULATED} each message is delayed by at most {@link #SEND_MAX_DELAY} milliseconds,
+     * with {@link TransportType#DIRECT} it is delivered at once
+     */
+    final public static TransportType TRANSPORT = TransportType.SIMULATED;
+
+    /**
+     * file of the {@link EasyCache.Network.NetworkModel network model} of the {@link TransportType#SIMULATED simulated} transport: latency, bandwidth and loss of
+     * the links between the tiers. If the file does not exist, every link has the uniform latency in [0, {@link #SEND_MAX_DELAY}) milliseconds
+     */
+    final public static String NETWORK_MODEL_PATH = "network.properties";
+
+    /**
+     * identifier of this process in the ids of the {@link EasyCache.Messages.IdMessage requests} (16 bits), it must be different
+     * for each process whose actors exchange messages. It is read at startup from the system property {@code easycache.nodeId}
+     * (e.g. {@code -Deasycache.nodeId=1}), 0 if it is not set
+     */
+    final public static int NODE_ID = Integer.getInteger("easycache.nodeId", 0);
+
     /**
      * caches recover by default after these milliseconds
      */
@@ -44,6 +181,16 @@ public class Config implements Serializable {
      */
     final public static int TIMEOUT_CACHE = SEND_MAX_DELAY * 5;
 
+    /**
+     * the timeout of a cache towards its parent is derived from the measured round-trip times (starting from {@link #TIMEOUT_CACHE}), but it is never shorter than 3 times the maximum delay of the message
+     */
+    final public static int TIMEOUT_CACHE_MIN = SEND_MAX_DELAY * 3;
+
+    /**
+     * the timeout of a cache towards its parent is never longer than 8 times the maximum delay of the message
+     */
+    final public static int TIMEOUT_CACHE_MAX = SEND_MAX_DELAY * 8;
+
     /**
      * in case of a critical write operation cache goes in timeout after 10 times the maximum delay of the message
      */
@@ -54,30 +201,173 @@ public class Config implements Serializable {
      */
     final public static int TIMEOUT_CACHE_INVALIDATION = SEND_MAX_DELAY * 7;
 
+    /**
+     * maximum number of reads waiting in a cache for the {@link EasyCache.Messages.CritRefillMsg} of an invalid item, further reads get an error
+     */
+    final public static int MAX_PARKED_READS_PER_ITEM = 16;
+
+    /**
+     * a read waiting in a L2 cache for the {@link EasyCache.Messages.CritRefillMsg} of an invalid item gets an error after 6 times the maximum delay of the message, before the client goes in timeout
+     */
+    final public static int TIMEOUT_PARKED_READ_L2 = SEND_MAX_DELAY * 6;
+
+    /**
+     * a read waiting in a L1 cache for the {@link EasyCache.Messages.CritRefillMsg} of an invalid item gets an error after 2 times the maximum delay of the message, before the L2 cache goes in timeout
+     */
+    final public static int TIMEOUT_PARKED_READ_L1 = SEND_MAX_DELAY * 2;
+
     /**
      * in case of a critical write operation DB goes in timeout after 6 times the maximum delay of the message when waiting for the {@link EasyCache.Messages.InvalidationItemConfirmMsg}
      */
     final public static int TIMEOUT_DB_INVALIDATION = SEND_MAX_DELAY * 6;
 
+    /**
+     * the timeout of an invalidation round is derived from the measured round-trip times of the children, but it is never shorter than 4 times the maximum delay of the message
+     * nor longer than {@link #TIMEOUT_DB_INVALIDATION}, used before the first measure
+     */
+    final public static int TIMEOUT_DB_INVALIDATION_MIN = SEND_MAX_DELAY * 4;
+
     /**
      * client goes in timeout after 10 times the maximum delay of the message
      */
     final public static int TIMEOUT_CLIENT = SEND_MAX_DELAY * 10;
 
+    /**
+     * the timeout of a client towards its L2 cache is derived from the measured round-trip times ({@link #TIMEOUT_CLIENT} is used before the first measure), but it is
+     * never shorter than the longest timeout of the L2 cache plus 3 times the maximum delay of the message: the error of the L2 cache must arrive before
+     */
+    final public static int TIMEOUT_CLIENT_MIN = TIMEOUT_CACHE_MAX + SEND_MAX_DELAY * 3;
+
+    /**
+     * the timeout of a client towards its L2 cache is never longer than 20 times the maximum delay of the message
+     */
+    final public static int TIMEOUT_CLIENT_MAX = SEND_MAX_DELAY * 20;
+
     /**
      * in case of a critical write operation, client goes in timeout after 12 times the maximum delay of the message
      */
     final public static int TIMEOUT_CLIENT_CRIT_WRITE = SEND_MAX_DELAY * 12; //
 
+    /**
+     * the futures of {@link EasyCacheClient} fail after 10 times the timeout of a critical write, if the client has not answered (the request may wait in its queue)
+     */
+    final public static int TIMEOUT_CLIENT_API = TIMEOUT_CLIENT_CRIT_WRITE * 10;
+
+    /**
+     * an item stays in the near cache of a client at most 10 times the maximum delay of the message. It bounds the staleness of the
+     * items whose updates are lost because the L2 cache (or its parent) crashes
+     */
+    final public static int NEAR_CACHE_TTL = SEND_MAX_DELAY * 10;
+
+    /**
+     * if true, a client sends a read again to a second L2 cache when the response is late, and takes the first response.
+     * The second L2 cache may not have received the last updates yet, so hedged reads weaken monotonic reads: a read
+     * can return an older value than the one returned by a previous read of the client
+     */
+    final public static boolean HEDGED_READS = false;
+
+    /**
+     * a read of an item written by the client less than this time (in milliseconds) after the write was confirmed is not
+     * hedged, so that it returns the written value (read-your-writes): the refills of a write reach the other L2 caches
+     * within a few message delays
+     */
+    final public static int HEDGE_AFTER_WRITE_DELAY = SEND_MAX_DELAY * 6;
+
+    /**
+     * a read is late if it takes more than this percentile of the latencies of the reads of the client
+     */
+    final public static double HEDGE_PERCENTILE = 95;
+
+    /**
+     * a read is hedged after at least 2 times the maximum delay of the message, also before the client has measured enough reads
+     */
+    final public static int HEDGE_MIN_DELAY = SEND_MAX_DELAY * 2;
+
+    /**
+     * if true, the caches send heartbeats to their children, which suspect a silent parent with a phi-accrual failure detector.
+     * If false, a silent parent is detected only by the timeouts of the requests
+     */
+    final public static boolean HEARTBEATS = false;
+
+    /**
+     * a cache sends a heartbeat to each child to which it has not sent any other message in the last 2 times the maximum delay of the message
+     */
+    final public static int HEARTBEAT_INTERVAL = SEND_MAX_DELAY * 2;
+
+    /**
+     * pause tolerated by the failure detector on top of the mean interval between the messages of the parent: a heartbeat may be skipped for one
+     * interval (another message was sent just before) and delayed by the network
+     */
+    final public static int HEARTBEAT_ACCEPTABLE_PAUSE = HEARTBEAT_INTERVAL + SEND_MAX_DELAY;
+
+    /**
+     * a child suspects its parent when the phi of the failure detector exceeds 8, i.e. when the parent would be wrongly suspected with a probability of 10^-8
+     */
+    final public static double PHI_THRESHOLD = 8;
+
+    /**
+     * the timeouts of the requests are kept in a timer wheel advanced every 10 milliseconds: a timeout expires at most 10 milliseconds late
+     */
+    final public static int TIMER_WHEEL_TICK = 10;
+
+    /**
+     * number of slots of the timer wheel, a round of the wheel lasts {@link #TIMER_WHEEL_TICK} * 512 milliseconds: longer timeouts wait for more rounds
+     */
+    final public static int TIMER_WHEEL_SLOTS = 512;
+
     /**
      * if true, prints verbose log messages
      */
     final public static boolean VERBOSE_LOG = false;
+    /**
+     * Returns the shard of the database that owns a key. Keys are assigned by hash, so consecutive keys go to different shards.
+     * @param key the key of the item.
+     * @return the index of the shard, from 0 to N_DB_SHARDS - 1.
+     */
+    public static int dbShardOf(int key){
+        return Math.floorMod(key, N_DB_SHARDS);
+    }
+
+    /**
+     * Returns the policy used to propagate the writes of a key, according to the ranges of keys in {@link #WRITE_POLICY_RANGE_START}.
+     * All the nodes use the same configuration, so they agree on the policy of each key.
+     * @param key the key of the item.
+     * @return the write policy of the key.
+     */
+    public static WritePolicyType writePolicyOf(int key){
+        WritePolicyType policy = WRITE_POLICY;
+        for(int i = 0; i < WRITE_POLICY_RANGE_START.length && WRITE_POLICY_RANGE_START[i] <= key; i++){
+            policy = WRITE_POLICY_RANGE_TYPE[i];
+        }
+        return policy;
+    }
+
+    /**
+     * Returns the file used by a shard of the database, so that the shards do not share the files of their storage.
+     * With a single shard the path is left unchanged.
+     * @param path the file (or directory) configured for the database.
+     * @param shard the index of the shard.
+     * @return the file of the shard.
+     */
+    public static String dbShardPath(String path, int shard){
+        return N_DB_SHARDS == 1 ? path : path + "." + shard;
+    }
+
     // Method to print the current run configuration
     public static void printConfig(){
         LOGGER.info("N_L1: " + N_L1);
         LOGGER.info("N_L2: " + N_L2);
-        LOGGER.info("N_CLIENT: " + N_CLIENT);
+        LOGGER.info("N_CLIENT: " + N_CLIENT + "; CLIENT_WINDOW: " + CLIENT_WINDOW + "; NEAR_CACHE_CAPACITY: " + NEAR_CACHE_CAPACITY + "; NEAR_CACHE_TTL: " + NEAR_CACHE_TTL);
         LOGGER.info("N_ITEMS: " + N_ITEMS);
+        LOGGER.info("N_DB_SHARDS: " + N_DB_SHARDS + "; DB_READ_WORKERS: " + DB_READ_WORKERS);
+        LOGGER.info("DB_STORE: " + DB_STORE + "; WAL_ENABLED: " + WAL_ENABLED);
+        LOGGER.info("L1_CAPACITY: " + L1_CAPACITY + "; L2_CAPACITY: " + L2_CAPACITY + "; EVICTION_POLICY: " + EVICTION_POLICY);
+        LOGGER.info("WRITE_POLICY: " + WRITE_POLICY + "; WRITE_POLICY_RANGES: " + Arrays.toString(WRITE_POLICY_RANGE_START) + " " + Arrays.toString(WRITE_POLICY_RANGE_TYPE));
+        LOGGER.info("TIMEOUT_CACHE: " + TIMEOUT_CACHE + " [" + TIMEOUT_CACHE_MIN + ", " + TIMEOUT_CACHE_MAX + "]; TIMEOUT_CLIENT: " + TIMEOUT_CLIENT + " [" + TIMEOUT_CLIENT_MIN + ", " + TIMEOUT_CLIENT_MAX + "]; TIMEOUT_DB_INVALIDATION: " + TIMEOUT_DB_INVALIDATION + " [" + TIMEOUT_DB_INVALIDATION_MIN + ", " + TIMEOUT_DB_INVALIDATION + "]");
+        LOGGER.info("HEDGED_READS: " + HEDGED_READS + "; HEDGE_PERCENTILE: " + HEDGE_PERCENTILE + "; HEDGE_MIN_DELAY: " + HEDGE_MIN_DELAY + "; HEDGE_AFTER_WRITE_DELAY: " + HEDGE_AFTER_WRITE_DELAY);
+        LOGGER.info("TRANSPORT: " + TRANSPORT + "; SEND_MAX_DELAY: " + SEND_MAX_DELAY + "; NETWORK_MODEL_PATH: " + NETWORK_MODEL_PATH + "; NODE_ID: " + NODE_ID);
+        LOGGER.info("TIMER_WHEEL_TICK: " + TIMER_WHEEL_TICK + "; TIMER_WHEEL_SLOTS: " + TIMER_WHEEL_SLOTS);
+        LOGGER.info("HEARTBEATS: " + HEARTBEATS + "; HEARTBEAT_INTERVAL: " + HEARTBEAT_INTERVAL + "; HEARTBEAT_ACCEPTABLE_PAUSE: " + HEARTBEAT_ACCEPTABLE_PAUSE + "; PHI_THRESHOLD: " + PHI_THRESHOLD);
+        LOGGER.info("CRIT_WRITE_ROUND_WINDOW: " + CRIT_WRITE_ROUND_WINDOW + "; CRIT_WRITE_ROUND_MAX: " + CRIT_WRITE_ROUND_MAX);
     }
 }
@@ -8,13 +8,25 @@ import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
 import EasyCache.CacheType;
+import EasyCache.WritePolicyType;
+import EasyCache.Storage.BoundedItemStore;
+import EasyCache.Storage.IntIntMap;
+import EasyCache.Storage.LongLongMap;
+import EasyCache.Storage.LongObjectMap;
+import EasyCache.Util.SharerDirectory;
+import EasyCache.Network.RttEstimator;
+import EasyCache.Network.PhiAccrualDetector;
+import EasyCache.Util.TimerWheel;
+import EasyCache.Network.Transport;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import scala.PartialFunction;
 import scala.concurrent.duration.Duration;
+import scala.runtime.BoxedUnit;
 
 /**
  * This cache represent the behaviour of a cache.
@@ -22,18 +34,15 @@ import scala.concurrent.duration.Duration;
 public class Cache extends AbstractActor {
 
   /**
-   * Used to generate random value.
-   */
-  private Random rnd = new Random();
-
-  /**
-   * reference to the parent, may be a L1 {@link Cache} or the {@link DB}.
+   * reference to the parent, may be a L1 {@link Cache} or a shard of the {@link DB}. When the parent is a shard, the
+   * requests are routed to the shard owning their key with {@link #upstream(int)}.
    */
   private ActorRef parent;
   /**
-   * reference to the {@link DB}, used when changing parent to {@link DB} in a L2 {@link Cache}.
+   * references to the shards of the {@link DB}, indexed by {@link Config#dbShardOf(int)}. Used to route the requests
+   * and when changing parent to {@link DB} in a L2 {@link Cache}.
    */
-  private ActorRef db;
+  private List<ActorRef> dbShards;
   /**
    * the list of children, they can be or a list of L2 {@link Cache caches} (in L1 {@link Cache}) or a list of {@link Client clients} (in L2 {@link Cache}).
    */
@@ -50,25 +59,162 @@ public class Cache extends AbstractActor {
   /**
    * map of all the pending request which are still waiting for a response, with the corresponding timer.
    */
-  private Map<UUID, Cancellable> pendingReq;
+  private LongLongMap pendingReq;
+  /**
+   * the timeouts of the pending requests, expired by the periodic {@link TimerTickMsg}.
+   */
+  private final TimerWheel timers;
+  private Cancellable timerTicker;
+  /**
+   * estimators of the round-trip time towards each parent (or {@link DB database} shard), from which the timeouts of the
+   * requests sent to it are derived.
+   */
+  private final Map<ActorRef, RttEstimator> rtts;
+  /**
+   * the parent to which each pending request with an adaptive timeout has been sent, and when, by id of the request.
+   */
+  private LongObjectMap<ActorRef> reqLinks;
+  private LongObjectMap<Long> reqSendTimes;
   /**
-  * the items saved in the cache, as a map (key, value).
+   * the pending requests with an adaptive timeout, by request id, to fail them at once when their parent is suspected.
+   */
+  private LongObjectMap<IdMessage> awaitedReqs;
+  /**
+  * the items saved in the cache, as a map (key, value), bounded by {@link Config#L1_CAPACITY} or {@link Config#L2_CAPACITY}.
+  * An item can be evicted at any time, also while it is in invalidItems: the {@link CritRefillMsg critical refill} will then
+  * only mark it as valid again, like for any item not saved in the cache.
   */
-  private HashMap<Integer, Integer> savedItems;
+  private BoundedItemStore savedItems;
 
   /**
    * items that are temporarily invalid while critical write is propagated.
    */
   private Set<Integer> invalidItems;
+  /**
+   * for each invalid item, the {@link ReadReqMsg reads} and {@link CritReadReqMsg critical reads} waiting for its
+   * {@link CritRefillMsg critical refill}, in arrival order. They are answered with the new value when it arrives.
+   */
+  private Map<Integer, List<WaitingRead>> parkedReads;
+  /**
+   * map of the timers of the parked reads, by id of the request.
+   */
+  private LongLongMap parkedReadTimers;
+  /**
+   * number of parked reads answered from a {@link CritRefillMsg critical refill}.
+   */
+  private long parkedReadsAnswered;
+  /**
+   * number of parked reads answered with an error because the wait was too long.
+   */
+  private long parkedReadsExpired;
+  /**
+   * for each item with a {@link ReadReqMsg read} forwarded to the parent, the request id of that read (the leader). The reads
+   * of the same item that miss while the leader is in flight wait for its response instead of being forwarded too.
+   */
+  private Map<Integer, Long> inFlightReads;
+  /**
+   * map of the reads waiting for the response of a leader read, by request id of the leader.
+   */
+  private LongObjectMap<List<WaitingRead>> coalescedReads;
+  /**
+   * number of reads answered with the response of a leader read, without being forwarded to the parent.
+   */
+  private long coalescedReadsCount;
+  /**
+   * map of the {@link MultiReadReqMsg multi-reads} waiting for the values of the keys missing in this cache, by request id.
+   */
+  private LongObjectMap<MultiReadReqMsg> multiReads;
+  /**
+   * for each waiting {@link MultiReadReqMsg multi-read}, the values of its keys collected so far, by request id.
+   */
+  private LongObjectMap<Map<Integer, Integer>> multiReadValues;
+  /**
+   * for each {@link MultiWriteReqMsg multi-write} forwarded by this cache, the keys whose {@link MultiRefillMsg refill}
+   * has not arrived yet, by request id. The write may be split in several parts, one for each shard of the database.
+   */
+  private LongObjectMap<Set<Integer>> multiWriteKeys;
+  /**
+   * number of keys of {@link MultiReadReqMsg multi-reads} answered by this cache without forwarding them.
+   */
+  private long multiReadHits;
   /**
    * map of all the critical write request for which we are waiting the refill with corresponding timer.
    */
-  private Map<UUID, Cancellable> pendingUpdates;
+  private LongLongMap pendingUpdates;
   /**
    * in L1 {@link Cache caches}, this map contains the set of children for which we have received a {@link InvalidationItemConfirmMsg}
-   * for a given {@link CritWriteReqMsg critical write request}, represent by its uuid.
+   * for a given {@link CritWriteReqMsg critical write request}, represent by its request id.
+   */
+  private LongObjectMap<Set<ActorRef>> invalidConfirmations;
+  /**
+   * in L1 {@link Cache caches}, the children holding a copy of each item. The {@link RefillMsg refills}, the
+   * {@link InvalidationItemMsg invalidations} and the {@link CritRefillMsg critical refills} of an item are sent only to
+   * them and to the child on the path of the write.
+   */
+  private SharerDirectory sharers;
+  /**
+   * for each item of which this cache holds a copy, in its memory or (in a L1 cache) in one of its children, the request id of
+   * the response of the parent that gave the copy. It is sent back in a {@link ItemReleasedMsg} when the copy is dropped.
+   */
+  private Map<Integer, Long> grants;
+  /**
+   * in L1 {@link Cache caches}, the child from which each write (also {@link CritWriteReqMsg critical}) has been
+   * received, by id of the request, until its {@link RefillMsg refill} arrives.
+   */
+  private LongObjectMap<ActorRef> writePaths;
+  /**
+   * the child from which each read (also {@link CritReadReqMsg critical}, {@link MultiReadReqMsg multi} and
+   * {@link RefreshItemReqMsg refresh}) forwarded to the parent has been received, by id of the request, until its
+   * response arrives. The requests do not carry their path: the response is forwarded to this child.
+   */
+  private LongObjectMap<ActorRef> readPaths;
+  /**
+   * in L1 {@link Cache caches}, the children to which the {@link InvalidationItemMsg invalidation} of each ongoing
+   * {@link CritWriteReqMsg critical write} has been forwarded, by id of the request.
+   */
+  private LongObjectMap<Set<ActorRef>> invalidTargets;
+  /**
+   * number of messages not sent to children that do not hold the item, with respect to sending them to all the children.
    */
-  private Map<UUID, Set<ActorRef>> invalidConfirmations;
+  private long skippedSends;
+  /**
+   * number of messages sent by this cache.
+   */
+  private long sentMessages;
+  /**
+   * the messages to send to each destination while handling a {@link BatchMsg}, buffered to be sent together at its end.
+   * It is {@code null} when no {@link BatchMsg} is being handled.
+   */
+  private Map<ActorRef, List<Message>> outbox;
+  /**
+   * number of messages sent inside a {@link BatchMsg}.
+   */
+  private long batchedMessages;
+
+  /**
+   * timer of the next {@link HeartbeatTickMsg}, cancelled while this cache is crashed.
+   */
+  private Cancellable heartbeatTimer;
+  /**
+   * the L1 parent watched by the failure detector, {@code null} when the parent is the {@link DB database} (it never crashes).
+   */
+  private ActorRef watchedParent;
+  /**
+   * failure detector of the watched parent, fed by all the messages received from it.
+   */
+  private PhiAccrualDetector parentDetector;
+  /**
+   * number of {@link HeartbeatMsg heartbeats} sent to the children.
+   */
+  private long heartbeatsSent;
+  /**
+   * number of heartbeats not sent because another message had been sent to the child in the last interval.
+   */
+  private long heartbeatsPiggybacked;
+  /**
+   * number of times the parent has been suspected by the failure detector.
+   */
+  private long parentSuspicions;
 
   /**
   * next scheduled {@link CrashType crash}.
@@ -87,14 +233,22 @@ public class Cache extends AbstractActor {
   private int recoveryAfter;
 
   /**
-   * Time of last sending of message per channel. It is used to guarantee fifoness in sending messages.
+   * transport of the messages sent by this cache, it guarantees fifoness towards each destination.
    */
-  private HashMap<ActorRef, Long> timeLastSendPerActor;
+  private final Transport transport;
+
   /**
-   * Delay of last sent message per channel. It is used to guarantee fifoness.
+   * A read waiting in this cache, parked on an invalid item or coalesced with a leader read, with the child to answer.
    */
-  private HashMap<ActorRef, Integer> lastDelayPerActor;
+  private static final class WaitingRead {
+    private final ReadReqMsg msg;
+    private final ActorRef downstream;
 
+    private WaitingRead(ReadReqMsg msg, ActorRef downstream){
+      this.msg = msg;
+      this.downstream = downstream;
+    }
+  }
 
   private static final Logger LOGGER = LogManager.getLogger(Cache.class); //the instance for the logger
   /* -- Actor constructor --------------------------------------------------- */
@@ -103,26 +257,75 @@ public class Cache extends AbstractActor {
    * Constructor of the Cache actor.
    * @param id the ID of constructed cache.
    * @param type the {@link CacheType type} of the constructed cache, may be L1 or L2.
-   * @param db the reference to the {@link DB} actor.
+   * @param dbShards the references to the shards of the {@link DB}, indexed by {@link Config#dbShardOf(int)}.
    */
-  public Cache(int id, CacheType type, ActorRef db) {
+  public Cache(int id, CacheType type, List<ActorRef> dbShards) {
     this.id = id;
     this.type=type;
-    this.db=db;
-    this.savedItems=new HashMap<>();
-    this.pendingReq= new HashMap<>();
+    this.dbShards=new ArrayList<>(dbShards);
+    this.savedItems=new BoundedItemStore(type == CacheType.L1 ? Config.L1_CAPACITY : Config.L2_CAPACITY, Config.EVICTION_POLICY);
+    this.pendingReq= new LongLongMap();
+    this.timers=new TimerWheel(Config.TIMER_WHEEL_SLOTS, Config.TIMER_WHEEL_TICK);
+    this.rtts=new HashMap<>();
+    this.reqLinks=new LongObjectMap<>();
+    this.reqSendTimes=new LongObjectMap<>();
+    this.awaitedReqs=new LongObjectMap<>();
     this.invalidItems=new HashSet<>();
-    this.pendingUpdates=new HashMap<>();
-    this.invalidConfirmations=new HashMap<>();
+    this.parkedReads=new HashMap<>();
+    this.parkedReadTimers=new LongLongMap();
+    this.inFlightReads=new HashMap<>();
+    this.coalescedReads=new LongObjectMap<>();
+    this.multiReads=new LongObjectMap<>();
+    this.multiReadValues=new LongObjectMap<>();
+    this.multiWriteKeys=new LongObjectMap<>();
+    this.pendingUpdates=new LongLongMap();
+    this.invalidConfirmations=new LongObjectMap<>();
+    this.sharers=new SharerDirectory();
+    this.grants=new HashMap<>();
+    this.writePaths=new LongObjectMap<>();
+    this.readPaths=new LongObjectMap<>();
+    this.invalidTargets=new LongObjectMap<>();
+    this.savedItems.setEvictionListener(this::releaseIfUnused);
     this.nextCrash=CrashType.NONE;
     this.afterNMessageSent=Integer.MAX_VALUE;
     this.recoveryAfter=-1;
-    this.timeLastSendPerActor =new HashMap<>();
-    this.lastDelayPerActor =new HashMap<>();
+    this.transport=Transport.create(Config.TRANSPORT, getContext().getSystem(), getSelf());
   }
 
-  static public Props props(int id, CacheType type, ActorRef db) {
-    return Props.create(Cache.class, () -> new Cache(id, type, db));
+  static public Props props(int id, CacheType type, List<ActorRef> dbShards) {
+    return Props.create(Cache.class, () -> new Cache(id, type, dbShards));
+  }
+
+  /**
+   * Starts the periodic {@link HeartbeatTickMsg heartbeat ticks} and {@link TimerTickMsg timer ticks} of this cache.
+   */
+  @Override
+  public void preStart() {
+    scheduleHeartbeatTick();
+    timerTicker = getContext().system().scheduler().scheduleWithFixedDelay(
+            Duration.create(Config.TIMER_WHEEL_TICK, TimeUnit.MILLISECONDS),        // first tick
+            Duration.create(Config.TIMER_WHEEL_TICK, TimeUnit.MILLISECONDS),        // period of the ticks
+            getSelf(),                                          // destination actor reference
+            new TimerTickMsg(),                                  // the message to send
+            getContext().system().dispatcher(),                 // system dispatcher
+            getSelf()                                           // source of the message (myself)
+    );
+  }
+
+  @Override
+  public void postStop() {
+    timerTicker.cancel();
+  }
+
+  /**
+   * Feeds the failure detector of the parent with every message received from it, so that the heartbeats are needed only
+   * when the parent has nothing else to send.
+   */
+  @Override
+  public void aroundReceive(PartialFunction<Object, BoxedUnit> receive, Object msg) {
+    if(watchedParent != null && watchedParent.equals(getSender()))
+      parentDetector.heartbeat(System.currentTimeMillis());
+    super.aroundReceive(receive, msg);
   }
 
   /* -- Actor behaviour ----------------------------------------------------- */
@@ -130,27 +333,17 @@ public class Cache extends AbstractActor {
   /* -- START OF Sending message methods ----------------------------------------------------- */
 
   /**
-   * This method is used to send a {@link Message} to a given actor, simulating also a network delay.
+   * This method is used to send a {@link Message} to a given actor, through the {@link Transport transport} of this cache.
    * @param m the {@link Message} to send.
    * @param dest the reference of the destination actor.
    */
   private void sendMessage(Message m, ActorRef dest){
-    int delay = rnd.nextInt(Config.SEND_MAX_DELAY);
-    long thisTime=System.currentTimeMillis();
-    if(lastDelayPerActor.containsKey(dest)){
-      if(lastDelayPerActor.get(dest) > (thisTime- timeLastSendPerActor.get(dest))){
-        delay+= lastDelayPerActor.get(dest)-(thisTime- timeLastSendPerActor.get(dest));
-      }
+    if(outbox != null && (m instanceof InvalidationItemMsg || m instanceof InvalidationItemConfirmMsg || m instanceof RefillMsg)){
+      outbox.computeIfAbsent(dest, k -> new ArrayList<>()).add(m);
+      return;
     }
-    this.lastDelayPerActor.put(dest, delay);
-    this.timeLastSendPerActor.put(dest, thisTime);
-    getContext().system().scheduler().scheduleOnce(
-            Duration.create(delay, TimeUnit.MILLISECONDS),        // when to send the message
-            dest,                                          // destination actor reference
-            m,                                  // the message to send
-            getContext().system().dispatcher(),                 // system dispatcher
-            getSelf()                                           // source of the message (myself)
-    );
+    sentMessages++;
+    transport.send(m, dest);
   }
 
   /**
@@ -159,9 +352,38 @@ public class Cache extends AbstractActor {
    * @param m the {@link Message} to be sent to the children.
    */
   private void multicast(Message m) {
-    for (ActorRef p: children) {
+    multicast(m, children);
+  }
+
+  /**
+   * This method is used to send a {@link Message} to some of the children of the cache.
+   * @param m the {@link Message} to be sent.
+   * @param targets the children to which the message must be sent.
+   */
+  private void multicast(Message m, Collection<ActorRef> targets) {
+    for (ActorRef p: targets) {
       sendMessage(m, p);
     }
+    this.skippedSends += Math.max(0, children.size() - targets.size());
+  }
+
+  /**
+   * This method is used to send the messages buffered while handling a {@link BatchMsg}: the ones to the same destination
+   * are sent together in a single {@link BatchMsg}, in the order in which they were sent.
+   */
+  private void flushOutbox(){
+    Map<ActorRef, List<Message>> batches = outbox;
+    outbox = null;
+    if(batches == null)
+      return;
+    batches.forEach((dest, msgs) -> {
+      if(msgs.size() == 1){
+        sendMessage(msgs.get(0), dest);
+      }else{
+        batchedMessages += msgs.size();
+        sendMessage(new BatchMsg(msgs), dest);
+      }
+    });
   }
 
   /**
@@ -170,8 +392,17 @@ public class Cache extends AbstractActor {
    * @param m the {@link Message} to be sent to the children.
    */
   private void multicastAndCrash(Message m) {
+    multicastAndCrash(m, children);
+  }
+
+  /**
+   * This method is used to crash while sending a {@link Message} to some of the children of the cache.
+   * @param m the {@link Message} to be sent.
+   * @param targets the children to which the message must be sent.
+   */
+  private void multicastAndCrash(Message m, Collection<ActorRef> targets) {
     int i = 0;
-    for (ActorRef p: children) {
+    for (ActorRef p: targets) {
       if(i>=this.afterNMessageSent){
         crashingOps();
         return;
@@ -181,6 +412,165 @@ public class Cache extends AbstractActor {
     }
   }
 
+  /**
+   * Service method to record that this cache received from its parent a copy of an item.
+   * @param key the key of the item.
+   * @param grant the request id of the response carrying the value.
+   */
+  private void receiveCopy(int key, long grant){
+    grants.put(key, grant);
+  }
+
+  /**
+   * Service method to record, in a L1 cache, that a child receives a copy of an item with a response. A L2 cache does the
+   * same for its clients if they have a near cache ({@link Config#NEAR_CACHE_CAPACITY}).
+   * @param key the key of the item.
+   * @param grant the request id of the response carrying the value.
+   * @param child the child receiving the response, {@code null} if the response is not forwarded.
+   */
+  private void grantCopy(int key, long grant, ActorRef child){
+    if((this.type == CacheType.L1 || Config.NEAR_CACHE_CAPACITY > 0) && child != null)
+      sharers.grant(key, child, grant);
+  }
+
+  /**
+   * Service method to apply the new value carried by a {@link RefillMsg refill} (or {@link CritRefillMsg critical refill})
+   * according to the {@link Config#writePolicyOf(int) write policy} of the item:
+   * with {@link WritePolicyType#UPDATE} the held copy is updated, with {@link WritePolicyType#INVALIDATE} it is dropped
+   * together with the copies of the children (the parent has already forgotten this cache), with
+   * {@link WritePolicyType#WRITE_ALLOCATE} the caches on the path of the write also store the item.
+   * The value is also taken by the {@link MultiReadReqMsg multi-reads} that have already read the item and are waiting for
+   * the other items from the parent.
+   * @param msg the refill.
+   * @param onWritePath {@code true} if the write passed through this cache.
+   * @param pathChild in a L1 cache, the child that forwarded the write, {@code null} otherwise.
+   */
+  private void applyRefill(RefillMsg msg, boolean onWritePath, ActorRef pathChild){
+    int key = msg.key;
+    for (Map<Integer, Integer> values : multiReadValues.values())
+      values.replace(key, msg.newValue); // a multi-read waiting for its other keys must not answer the value read before the write
+    switch (Config.writePolicyOf(key)){
+      case INVALIDATE:
+        if (savedItems.containsKey(key)) {
+          LOGGER.debug("Cache " + this.id + "; refill_for_item: " + key + "; MSG_ID: " + msg.reqId + "; item_dropped;");
+          savedItems.remove(key);
+        }
+        sharers.removeAll(key);
+        grants.remove(key);
+        break;
+      case WRITE_ALLOCATE:
+        if (onWritePath) {
+          LOGGER.debug("Cache " + this.id + "; refill_for_item: " + key + "; MSG_ID: " + msg.reqId + "; value: " + msg.newValue + "; allocated;");
+          receiveCopy(key, msg.reqId);
+          grantCopy(key, msg.reqId, pathChild);
+          savedItems.put(key, msg.newValue);
+          break;
+        }
+        // a cache off the path of the write is updated like with UPDATE
+      default:
+        if (savedItems.containsKey(key)) {
+          LOGGER.debug("Cache " + this.id + "; refill_for_item: " + key + "; MSG_ID: " + msg.reqId + "; value: " + msg.newValue + ";");
+          savedItems.put(key, msg.newValue);
+        }
+    }
+  }
+
+  /**
+   * Service method to tell the parent that this cache no longer holds a copy of an item, neither in its memory nor in
+   * its children, so that it stops sending it the updates of the item.
+   * It is called when an item is evicted or removed, and in a L1 cache when a child releases its copy.
+   * @param key the key of the item.
+   */
+  private void releaseIfUnused(int key){
+    if(!grants.containsKey(key) || savedItems.containsKey(key) || sharers.isShared(key))
+      return;
+    ItemReleasedMsg releaseMsg = new ItemReleasedMsg(key, grants.remove(key));
+    if (Config.VERBOSE_LOG)
+      LOGGER.debug("Cache " + this.id + "; item_released: " + key + "; MSG_ID: " + releaseMsg.reqId + "; send_to: " + upstream(key).path().name() + ";");
+    sendMessage(releaseMsg, upstream(key));
+  }
+
+  /**
+   * Returns the next hop towards the {@link DB database} for a request on a key: the parent if it is a L1 {@link Cache},
+   * otherwise the shard of the database owning the key.
+   * @param key the key of the item.
+   * @return the reference of the actor to which the request must be sent.
+   */
+  private ActorRef upstream(int key){
+    if(this.dbShards.contains(this.parent))
+      return this.dbShards.get(Config.dbShardOf(key));
+    return this.parent;
+  }
+
+  /**
+   * @param link a parent or a {@link DB database} shard.
+   * @return the estimator of the round-trip time towards the given parent.
+   */
+  private RttEstimator rttOf(ActorRef link){
+    return rtts.computeIfAbsent(link, k -> new RttEstimator(Config.TIMEOUT_CACHE, Config.TIMEOUT_CACHE_MIN, Config.TIMEOUT_CACHE_MAX));
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link TimerTickMsg} message: the expired timeouts of the timer wheel
+   * are sent to this actor, like the scheduler would do.
+   * @param msg the {@link TimerTickMsg} message.
+   */
+  private void onTimerTickMsg(TimerTickMsg msg){
+    timers.advance(timeout -> getSelf().tell(timeout, getSelf()));
+  }
+
+  /**
+   * Service method to start the timer of a request sent to a parent, with the timeout derived from the round-trip times
+   * measured towards it.
+   * @param msg the request.
+   * @param link the parent (or {@link DB database} shard) to which the request is sent.
+   */
+  private void startReqTimer(IdMessage msg, ActorRef link){
+    pendingReq.put(msg.reqId,
+            timers.schedule(rttOf(link).timeout(), new TimeoutReqMsg(msg))); //adding the request id of the message to the list of the pending ones
+    reqLinks.put(msg.reqId, link);
+    reqSendTimes.put(msg.reqId, System.nanoTime());
+    awaitedReqs.put(msg.reqId, msg);
+  }
+
+  /**
+   * Service method to cancel the timer of a pending request when its response arrives, sampling the round-trip time of
+   * the parent if the response comes from the parent to which the request was sent. A response for a request no longer
+   * pending is counted as late if the request timed out.
+   * It may happen that the cache has crashed before receiving the response and so lost the list of the pending requests.
+   * @param reqId the id of the request.
+   */
+  private void stopReqTimer(long reqId){
+    ActorRef link = reqLinks.remove(reqId);
+    Long sendTime = reqSendTimes.remove(reqId);
+    awaitedReqs.remove(reqId);
+    long timer = pendingReq.remove(reqId); //removing the request id of the message from the list of the pending ones
+    if(timer == LongLongMap.ABSENT){
+      RttEstimator rtt = rtts.get(getSender());
+      if(rtt != null)
+        rtt.recordLateResponse(reqId);
+      return;
+    }
+    timers.cancel(timer);
+    if (Config.VERBOSE_LOG)
+      LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; remove_req_id: " + reqId + ";");
+    if(link != null && link.equals(getSender()))
+      rttOf(link).sample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendTime));
+  }
+
+  /**
+   * Groups some keys by the next hop towards the {@link DB database}: the parent if it is a L1 {@link Cache}, otherwise
+   * the shard owning each key.
+   * @param keys the keys to group.
+   * @return for each next hop, the keys to send to it.
+   */
+  private Map<ActorRef, List<Integer>> byUpstream(Collection<Integer> keys){
+    Map<ActorRef, List<Integer>> groups = new LinkedHashMap<>();
+    for(int key : keys)
+      groups.computeIfAbsent(upstream(key), k -> new ArrayList<>()).add(key);
+    return groups;
+  }
+
   /* -- END of Sending message methods ----------------------------------------------------- */
 
 
@@ -234,45 +624,53 @@ public class Cache extends AbstractActor {
   /**
    * This method is used to handle the arrival of a {@link ReadReqMsg} message.
    * This message can come both from a L2 cache (in a L1 cache) or from a Client (in a L2 cache).
+   * If the item is invalid, the request is parked until the {@link CritRefillMsg critical refill} of the item arrives.
    * If this cache does not have the requested element, the message is forwarded to the parent and a timer is started to
-   * check for possible crashes before receiving the associated {@link ReadRespMsg response}.
+   * check for possible crashes before receiving the associated {@link ReadRespMsg response}. If a read of the same item
+   * is already in flight, the message is not forwarded: it waits for the response of that read.
    * Otherwise this cache will respond with the saved value.
    * @param msg the {@link ReadReqMsg} message which contains the key of the element to be read.
    */
   private void onReadReqMsg(ReadReqMsg msg){
+    serveRead(msg, getSender());
+  }
+
+  /**
+   * Service method to handle a {@link ReadReqMsg read}, received now or parked before, as described in {@link #onReadReqMsg(ReadReqMsg)}.
+   * @param msg the read.
+   * @param downstream the child from which the read has arrived, to which the response is sent.
+   */
+  private void serveRead(ReadReqMsg msg, ActorRef downstream){
     if (invalidItems.contains(msg.key)){
-      ReqErrorMsg errMsg=new ReqErrorMsg(msg);
-      ActorRef nextHop = msg.responsePath.pop();
-      LOGGER.error("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; invalid;");
-      sendMessage(errMsg, nextHop);
+      parkRead(msg, downstream);
     }else {
-      if (savedItems.containsKey(msg.key)) {
-        ActorRef nextHop = msg.responsePath.pop();
+      int cachedValue = savedItems.read(msg.key);
+      if (cachedValue != IntIntMap.ABSENT) {
         Integer key = msg.key;
         if(this.nextCrash==CrashType.BEFORE_READ_RESP){
           crashingOps();
         }else{
-          ReadRespMsg resp = new ReadRespMsg(key, this.savedItems.get(key), msg.responsePath, msg.uuid);
-          LOGGER.debug("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; cached_value: " + this.savedItems.get(msg.key) + ";");
-          sendMessage(resp, nextHop);
+          ReadRespMsg resp = new ReadRespMsg(key, cachedValue, msg.reqId);
+          LOGGER.debug("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; cached_value: " + cachedValue + ";");
+          grantCopy(key, msg.reqId, downstream);
+          sendMessage(resp, downstream);
         }
+      } else if (inFlightReads.containsKey(msg.key) || readPaths.containsKey(msg.reqId)) { // also a hedged copy of a read forwarded by this cache
+        long leader = readPaths.containsKey(msg.reqId) ? msg.reqId : inFlightReads.get(msg.key);
+        LOGGER.debug("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; coalesced_with: " + leader + ";");
+        coalescedReads.computeIfAbsent(leader, k -> new ArrayList<>()).add(new WaitingRead(msg, downstream));
+        coalescedReadsCount++;
       } else {
         if(this.nextCrash==CrashType.BEFORE_READ_REQ_FW){
           crashingOps();
         }else {
-          LOGGER.debug("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to_parent: " + parent.path().name() + ";");
-          pendingReq.put(msg.uuid,
-                  getContext().system().scheduler().scheduleOnce(
-                          Duration.create(Config.TIMEOUT_CACHE, TimeUnit.MILLISECONDS),        // when to send the message
-                          getSelf(),                                          // destination actor reference
-                          new TimeoutReqMsg(msg),                                  // the message to send
-                          getContext().system().dispatcher(),                 // system dispatcher
-                          getSelf()                                           // source of the message (myself)
-                  )); //adding the uuid of the message to the list of the pending ones
-          msg.responsePath.push(getSelf());
+          LOGGER.debug("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to_parent: " + upstream(msg.key).path().name() + ";");
+          inFlightReads.put(msg.key, msg.reqId);
+          startReqTimer(msg, upstream(msg.key));
+          readPaths.put(msg.reqId, downstream);
           if (Config.VERBOSE_LOG)
-            LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; adding_req_id: " + msg.uuid + ";");
-          sendMessage(msg, parent);
+            LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; adding_req_id: " + msg.reqId + ";");
+          sendMessage(msg, upstream(msg.key));
           if(this.nextCrash==CrashType.AFTER_READ_REQ_FW){
             crashingOps();
           }
@@ -287,7 +685,7 @@ public class Cache extends AbstractActor {
    * This method is used to handle arrival of a {@link ReadRespMsg} message.
    * This message can come both from the DB (in both types of caches) or from a L1 (in a L2 cache).
    * This cache stores the value in its memory and then will forward the message to the child in the path towards the
-   * originator of the associated {@link ReadReqMsg request}.
+   * originator of the associated {@link ReadReqMsg request}, and to the reads coalesced with it.
    * The timer of the associated {@link ReadReqMsg request} is cancelled.
    * @param msg the {@link ReadRespMsg} message which contains value of the requested item.
    */
@@ -296,16 +694,29 @@ public class Cache extends AbstractActor {
       crashingOps();
     }else {
       Integer key = msg.key;
-      savedItems.put(key, msg.value);
-      ActorRef nextHop = msg.responsePath.pop();
-      LOGGER.debug("Cache " + this.id + "; read_resp_for_item = " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to " + nextHop.path().name() + "; timeout_cancelled;");
-      if(pendingReq.containsKey(msg.uuid)) { // it may happen that the cache has crashed before receiving the response and so lost the list of the pending requests.
-        pendingReq.get(msg.uuid).cancel();
-        pendingReq.remove(msg.uuid); //removing the uuid of the message from the list of the pending ones
-        if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
+      ActorRef nextHop = readPaths.remove(msg.reqId);
+      if (nextHop == null) { // the request has gone in timeout, or this cache has crashed meanwhile
+        LOGGER.debug("Cache " + this.id + "; read_resp_for_item = " + msg.key + "; MSG_ID: " + msg.reqId + "; request_not_pending;");
+        return;
       }
+      if (msg.value != IntIntMap.ABSENT) { // the database does not have the item, nothing to store
+        receiveCopy(key, msg.reqId);
+        grantCopy(key, msg.reqId, nextHop);
+        savedItems.put(key, msg.value);
+      }
+      LOGGER.debug("Cache " + this.id + "; read_resp_for_item = " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to " + nextHop.path().name() + "; timeout_cancelled;");
+      stopReqTimer(msg.reqId);
       sendMessage(msg, nextHop);
+      inFlightReads.remove(key, msg.reqId);
+      List<WaitingRead> followers = coalescedReads.remove(msg.reqId);
+      if (followers != null) {
+        for (WaitingRead follower : followers) {
+          if (msg.value != IntIntMap.ABSENT)
+            grantCopy(key, follower.msg.reqId, follower.downstream);
+          LOGGER.debug("Cache " + this.id + "; read_resp_for_item = " + msg.key + "; MSG_ID: " + follower.msg.reqId + "; coalesced_with: " + msg.reqId + "; forward_to " + follower.downstream.path().name() + ";");
+          sendMessage(new ReadRespMsg(key, msg.value, follower.msg.reqId), follower.downstream);
+        }
+      }
     }
   }
 
@@ -320,26 +731,21 @@ public class Cache extends AbstractActor {
   private void onWriteReqMsg(WriteReqMsg msg){
     if (invalidItems.contains(msg.key)){
       ReqErrorMsg errMsg=new ReqErrorMsg(msg);
-      LOGGER.error("Cache " + this.id + "; write_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; crit_write_is_performing;");
+      LOGGER.error("Cache " + this.id + "; write_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; crit_write_is_performing;");
       sendMessage(errMsg, getSender());
     }else {
       if(this.nextCrash==CrashType.BEFORE_WRITE_REQ_FW){
         crashingOps();
       }else {
-        LOGGER.debug("Cache " + this.id + "; write_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to_parent: " + parent.path().name() + ";");
+        LOGGER.debug("Cache " + this.id + "; write_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to_parent: " + upstream(msg.key).path().name() + ";");
         if (this.type == CacheType.L2) { //if the cache is an L2 cache, the write request is associated with a timer to detect the potential crash of its parent
-          pendingReq.put(msg.uuid,
-                  getContext().system().scheduler().scheduleOnce(
-                          Duration.create(Config.TIMEOUT_CACHE, TimeUnit.MILLISECONDS),        // when to send the message
-                          getSelf(),                                          // destination actor reference
-                          new TimeoutReqMsg(msg),                                  // the message to send
-                          getContext().system().dispatcher(),                 // system dispatcher
-                          getSelf()                                           // source of the message (myself)
-                  ));
+          startReqTimer(msg, upstream(msg.key));
         }
+        if (this.type == CacheType.L1)
+          writePaths.put(msg.reqId, getSender());
         if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; adding_req_id: " + msg.uuid + ";");
-        sendMessage(msg, parent);
+          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; adding_req_id: " + msg.reqId + ";");
+        sendMessage(msg, upstream(msg.key));
         if(this.nextCrash==CrashType.AFTER_WRITE_REQ_FW){
           crashingOps();
         }
@@ -350,9 +756,10 @@ public class Cache extends AbstractActor {
   /**
    * This method is used to handle the arrival of a {@link RefillMsg} message.
    * If the propagated item is in this cache memory, the value is updated.
-   * If this cache is a L1, the message is forwarded to all its children.
-   * Otherwise (the cache is L2) the method sends a {@link WriteConfirmMsg confirmation} to one of its child if it
-   * is the originator of associated {@link WriteReqMsg request}.
+   * If this cache is a L1, the message is forwarded to the children holding the item and to the one on the path of the
+   * {@link WriteReqMsg request}.
+   * Otherwise (the cache is L2) the message is forwarded to the clients holding the item in their near cache and the
+   * method sends a {@link WriteConfirmMsg confirmation} to one of its child if it is the originator of associated {@link WriteReqMsg request}.
    * The timer of the associated {@link WriteReqMsg request} is cancelled.
    * @param msg the {@link RefillMsg} message which contains the key of the updated item and the new value.
    */
@@ -361,34 +768,30 @@ public class Cache extends AbstractActor {
     if(this.nextCrash==CrashType.BEFORE_REFILL){
       crashingOps();
     }else {
-      if (savedItems.containsKey(key)) {
-        LOGGER.debug("Cache " + this.id + "; refill_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; value: " + msg.newValue + ";");
-        savedItems.put(key, msg.newValue);
-      }
+      ActorRef pathChild = writePaths.remove(msg.reqId); // always null in a L2 cache
+      Set<ActorRef> targets = sharers.targets(key, Collections.singletonList(pathChild));
+      applyRefill(msg, pathChild != null || children.contains(msg.originator), pathChild);
+      inFlightReads.remove(key); // the read in flight may return the old value, the next reads must not wait for it
       if (this.type == CacheType.L1) {
         if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
+          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; remove_req_id: " + msg.reqId + ";");
         // is case is a L1 cache no timer needs to be removed because there is no timer associated to the request sent to the DB duo to the fact that the DB cannot crash
-        pendingReq.remove(msg.uuid);
+        pendingReq.remove(msg.reqId);
         if(this.nextCrash==CrashType.DURING_REFILL_MULTICAST){
-          multicastAndCrash(msg);
+          multicastAndCrash(msg, targets);
         }else {
-          multicast(msg);
+          multicast(msg, targets);
         }
       } else if (this.type == CacheType.L2) {
-        if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
-        if (pendingReq.containsKey(msg.uuid)) {
-          pendingReq.get(msg.uuid).cancel();
-          pendingReq.remove(msg.uuid);
-        }
+        stopReqTimer(msg.reqId);
+        multicast(msg, targets); // to the clients holding the item in their near cache, before the confirmation
         ActorRef originator = msg.originator;
         if (children.contains(originator)) {
           if(this.nextCrash==CrashType.BEFORE_WRITE_CONFIRM){
             crashingOps();
           }else {
-            WriteConfirmMsg resp = new WriteConfirmMsg(msg.key, msg.uuid);
-            LOGGER.debug("Cache " + this.id + "; write_ack_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to: " + msg.originator.path().name() + "; timeout_cancelled;");
+            WriteConfirmMsg resp = new WriteConfirmMsg(msg.key, msg.reqId);
+            LOGGER.debug("Cache " + this.id + "; write_ack_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to: " + msg.originator.path().name() + "; timeout_cancelled;");
             sendMessage(resp, originator);
           }
         }
@@ -396,36 +799,240 @@ public class Cache extends AbstractActor {
     }
   }
 
+  /**
+   * This method is used to handle the arrival of a {@link MultiReadReqMsg} message.
+   * This message can come both from a L2 cache (in a L1 cache) or from a Client (in a L2 cache).
+   * The keys this cache has (and are valid) are answered with the saved values. The missing ones are forwarded to the
+   * parent in a single request (one for each shard if the parent is the {@link DB database}) and a timer is started to
+   * check for possible crashes; when all their values have arrived, a single {@link MultiReadRespMsg response} is sent.
+   * @param msg the {@link MultiReadReqMsg} message which contains the keys of the elements to be read.
+   */
+  private void onMultiReadReqMsg(MultiReadReqMsg msg){
+    Map<Integer, Integer> values = new HashMap<>();
+    List<Integer> missing = new ArrayList<>();
+    for(int key : msg.keys){
+      int cachedValue = invalidItems.contains(key) ? IntIntMap.ABSENT : savedItems.read(key);
+      if(cachedValue != IntIntMap.ABSENT)
+        values.put(key, cachedValue);
+      else
+        missing.add(key);
+    }
+    multiReadHits += values.size();
+    if(missing.isEmpty()){
+      answerMultiRead(msg, values, getSender());
+    }else if(this.nextCrash==CrashType.BEFORE_READ_REQ_FW){
+      crashingOps();
+    }else{
+      LOGGER.debug("Cache " + this.id + "; multi_read_req_for_items: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; cached: " + values.keySet() + "; forward_to_parent: " + missing + ";");
+      multiReads.put(msg.reqId, msg);
+      multiReadValues.put(msg.reqId, values);
+      readPaths.put(msg.reqId, getSender());
+      startReqTimer(msg, this.parent);
+      byUpstream(missing).forEach((dest, keys) -> {
+        MultiReadReqMsg part = new MultiReadReqMsg(keys.stream().mapToInt(Integer::intValue).toArray(), msg.reqId);
+        sendMessage(part, dest);
+      });
+      if(this.nextCrash==CrashType.AFTER_READ_REQ_FW){
+        crashingOps();
+      }
+    }
+  }
+
+  /**
+   * Service method to answer a {@link MultiReadReqMsg multi-read} when the values of all its keys are known.
+   * @param msg the multi-read.
+   * @param values the value of each key of the request.
+   * @param nextHop the child from which the multi-read has arrived.
+   */
+  private void answerMultiRead(MultiReadReqMsg msg, Map<Integer, Integer> values, ActorRef nextHop){
+    if(this.nextCrash==CrashType.BEFORE_READ_RESP){
+      crashingOps();
+      return;
+    }
+    int[] resp = new int[msg.keys.length];
+    for(int i = 0; i < msg.keys.length; i++){
+      resp[i] = values.getOrDefault(msg.keys[i], IntIntMap.ABSENT);
+      if(resp[i] != IntIntMap.ABSENT)
+        grantCopy(msg.keys[i], msg.reqId, nextHop);
+    }
+    LOGGER.debug("Cache " + this.id + "; multi_read_resp_for_items: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; forward_to " + nextHop.path().name() + ";");
+    sendMessage(new MultiReadRespMsg(msg.keys, resp, msg.reqId), nextHop);
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link MultiReadRespMsg} message, with the values of some of the keys
+   * of a {@link MultiReadReqMsg multi-read} that this cache has forwarded to its parent.
+   * The values are stored in the memory of this cache. When the values of all the keys have arrived, the timer of the
+   * request is cancelled and the request is answered.
+   * @param msg the {@link MultiReadRespMsg} message which contains the values of the forwarded keys.
+   */
+  private void onMultiReadRespMsg(MultiReadRespMsg msg){
+    if(this.nextCrash==CrashType.BEFORE_READ_RESP_FW){
+      crashingOps();
+      return;
+    }
+    MultiReadReqMsg req = multiReads.get(msg.reqId);
+    if(req == null){ // the request has gone in timeout, or this cache has crashed meanwhile
+      LOGGER.debug("Cache " + this.id + "; multi_read_resp_for_items: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; request_not_pending;");
+      return;
+    }
+    Map<Integer, Integer> values = multiReadValues.get(msg.reqId);
+    for(int i = 0; i < msg.keys.length; i++){
+      int key = msg.keys[i];
+      values.put(key, msg.values[i]);
+      if(msg.values[i] != IntIntMap.ABSENT){
+        receiveCopy(key, msg.reqId);
+        if(!invalidItems.contains(key)) // the value may be older than the ongoing critical write
+          savedItems.put(key, msg.values[i]);
+      }
+    }
+    for(int key : req.keys){
+      if(!values.containsKey(key))
+        return;
+    }
+    multiReads.remove(msg.reqId);
+    multiReadValues.remove(msg.reqId);
+    stopReqTimer(msg.reqId);
+    answerMultiRead(req, values, readPaths.remove(msg.reqId));
+    for(int key : req.keys)
+      releaseIfUnused(key);
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link MultiWriteReqMsg} message.
+   * If one of the items is invalid because there is an ongoing {@link CritWriteReqMsg critical write}, a
+   * {@link ReqErrorMsg error} is sent to the sender.
+   * Otherwise the request is forwarded to the parent (split by shard if the parent is the {@link DB database}) and, in a
+   * L2 cache, a timer is started to check for possible crashes before receiving all the {@link MultiRefillMsg refills}.
+   * @param msg the {@link MultiWriteReqMsg} message which contains the keys of the elements to be written and the values to be written.
+   */
+  private void onMultiWriteReqMsg(MultiWriteReqMsg msg){
+    for(int key : msg.keys){
+      if(invalidItems.contains(key)){
+        LOGGER.error("Cache " + this.id + "; multi_write_req_for_items: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; crit_write_is_performing_on: " + key + ";");
+        sendMessage(new ReqErrorMsg(msg), getSender());
+        return;
+      }
+    }
+    if(this.nextCrash==CrashType.BEFORE_WRITE_REQ_FW){
+      crashingOps();
+      return;
+    }
+    LOGGER.debug("Cache " + this.id + "; multi_write_req_for_items: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; forward_to_parent: " + this.parent.path().name() + ";");
+    if (this.type == CacheType.L2) {
+      startReqTimer(msg, this.parent);
+    }
+    if (this.type == CacheType.L1)
+      writePaths.put(msg.reqId, getSender());
+    Map<Integer, Integer> indexOf = new HashMap<>();
+    for(int i = 0; i < msg.keys.length; i++)
+      indexOf.put(msg.keys[i], i);
+    multiWriteKeys.put(msg.reqId, new HashSet<>(indexOf.keySet()));
+    byUpstream(indexOf.keySet()).forEach((dest, keys) -> {
+      int[] values = new int[keys.size()];
+      for(int i = 0; i < keys.size(); i++)
+        values[i] = msg.newValues[indexOf.get(keys.get(i))];
+      sendMessage(new MultiWriteReqMsg(keys.stream().mapToInt(Integer::intValue).toArray(), msg.reqId, values, msg.originator), dest);
+    });
+    if(this.nextCrash==CrashType.AFTER_WRITE_REQ_FW){
+      crashingOps();
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link MultiRefillMsg} message.
+   * Each item is updated like with a {@link RefillMsg}. If this cache is a L1, each child holding some of the items
+   * receives a single message with them, the child on the path of the {@link MultiWriteReqMsg request} receives all of them.
+   * When the refills of all the items of a request forwarded by this cache have arrived, a L2 cache sends a
+   * {@link MultiWriteConfirmMsg confirmation} to the originator if it is one of its children.
+   * @param msg the {@link MultiRefillMsg} message which contains the keys of the updated items and the new values.
+   */
+  private void onMultiRefillMsg(MultiRefillMsg msg){
+    if(this.nextCrash==CrashType.BEFORE_REFILL){
+      crashingOps();
+      return;
+    }
+    ActorRef pathChild = writePaths.get(msg.reqId); // always null in a L2 cache
+    Set<Integer> remaining = multiWriteKeys.get(msg.reqId);
+    Map<ActorRef, List<Integer>> itemsOf = new LinkedHashMap<>();
+    for(int i = 0; i < msg.keys.length; i++){
+      int key = msg.keys[i];
+      for(ActorRef child : sharers.targets(key, Collections.singletonList(pathChild)))
+        itemsOf.computeIfAbsent(child, k -> new ArrayList<>()).add(i);
+      applyRefill(new RefillMsg(key, msg.newValues[i], msg.originator, msg.reqId), remaining != null, pathChild);
+      inFlightReads.remove(key); // the read in flight may return the old value, the next reads must not wait for it
+    }
+    LOGGER.debug("Cache " + this.id + "; multi_refill_for_items: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; values: " + Arrays.toString(msg.newValues) + ";");
+    itemsOf.forEach((child, indexes) -> sendMessage(msg.only(indexes), child)); // in a L2 cache, to the near caches of the clients
+    if(this.type == CacheType.L1)
+      this.skippedSends += Math.max(0, children.size() - itemsOf.size());
+    if(remaining == null)
+      return;
+    for(int key : msg.keys)
+      remaining.remove(key);
+    if(!remaining.isEmpty())
+      return;
+    multiWriteKeys.remove(msg.reqId);
+    writePaths.remove(msg.reqId);
+    if(this.type == CacheType.L2){
+      stopReqTimer(msg.reqId);
+      if(children.contains(msg.originator)){
+        if(this.nextCrash==CrashType.BEFORE_WRITE_CONFIRM){
+          crashingOps();
+        }else{
+          LOGGER.debug("Cache " + this.id + "; multi_write_ack_for_items: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; forward_to: " + msg.originator.path().name() + "; timeout_cancelled;");
+          sendMessage(new MultiWriteConfirmMsg(msg.keys, msg.reqId), msg.originator);
+        }
+      }
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link ItemReleasedMsg} message.
+   * This method is triggered only in a L1 cache: the sender (a L2 cache) no longer holds a copy of the item, so it is
+   * removed from the sharers of the item unless a newer copy has been sent to it in the meantime. If no copy of the
+   * item is left below this cache, the copy is released also to the parent.
+   * @param msg the {@link ItemReleasedMsg} message which contains the key of the item and the request id of the released copy.
+   */
+  private void onItemReleasedMsg(ItemReleasedMsg msg){
+    boolean released = sharers.release(msg.key, getSender(), msg.reqId);
+    if (Config.VERBOSE_LOG)
+      LOGGER.debug("Cache " + this.id + "; item_released_by: " + getSender().path().name() + "; key: " + msg.key + "; MSG_ID: " + msg.reqId + "; removed_from_sharers: " + released + ";");
+    releaseIfUnused(msg.key);
+  }
+
   /**
    * This method is used to handle the arrival of a {@link CritReadReqMsg} message.
    * This message can come both from a L2 cache (in a L1 cache) or from a Client (in a L2 cache).
    * The message is forwarded to the parent because it is ultimately handled by the {@link DB database}.
+   * If the item is invalid, the request is parked until the {@link CritRefillMsg critical refill} of the item arrives,
+   * which carries the value the database would return.
    * A timer is started to check for possible crashes before receiving the associated {@link CritReadRespMsg response}.
    * @param msg the {@link CritReadReqMsg} message which contains the key of the element to be read from the database.
    */
   private void onCritReadReqMsg(CritReadReqMsg msg){
+    serveCritRead(msg, getSender());
+  }
+
+  /**
+   * Service method to handle a {@link CritReadReqMsg critical read}, received now or parked before, as described in
+   * {@link #onCritReadReqMsg(CritReadReqMsg)}.
+   * @param msg the critical read.
+   * @param downstream the child from which the critical read has arrived, to which the response is sent.
+   */
+  private void serveCritRead(CritReadReqMsg msg, ActorRef downstream){
     if (invalidItems.contains(msg.key)){
-      ReqErrorMsg errMsg=new ReqErrorMsg(msg);
-      ActorRef nextHop = msg.responsePath.pop();
-      LOGGER.error("Cache " + this.id + "; crit_read_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; a_crit_write_is_performing;");
-      sendMessage(errMsg, nextHop);
+      parkRead(msg, downstream);
     }else {
       if(this.nextCrash==CrashType.BEFORE_CRIT_READ_REQ_FW){
         crashingOps();
       }else {
-        msg.responsePath.push(getSelf());
-        LOGGER.debug("Cache " + this.id + "; crit_read_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to_parent: " + parent.path().name() + ";");
-        pendingReq.put(msg.uuid,
-                getContext().system().scheduler().scheduleOnce(
-                        Duration.create(Config.TIMEOUT_CACHE, TimeUnit.MILLISECONDS),        // when to send the message
-                        getSelf(),                                          // destination actor reference
-                        new TimeoutReqMsg(msg),                                  // the message to send
-                        getContext().system().dispatcher(),                 // system dispatcher
-                        getSelf()                                           // source of the message (myself)
-                )); //adding the uuid of the message to the list of the pending ones
+        readPaths.put(msg.reqId, downstream);
+        LOGGER.debug("Cache " + this.id + "; crit_read_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to_parent: " + upstream(msg.key).path().name() + ";");
+        startReqTimer(msg, upstream(msg.key));
         if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; adding_req_id: " + msg.uuid + ";");
-        sendMessage(msg, parent);
+          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; adding_req_id: " + msg.reqId + ";");
+        sendMessage(msg, upstream(msg.key));
         if(this.nextCrash==CrashType.AFTER_CRIT_READ_REQ_FW){
           crashingOps();
         }
@@ -433,6 +1040,105 @@ public class Cache extends AbstractActor {
     }
   }
 
+  /**
+   * Service method to park a {@link ReadReqMsg read} (or {@link CritReadReqMsg critical read}) on an invalid item until
+   * its {@link CritRefillMsg critical refill}. A timer bounds the wait: it is shorter in a L1 cache, so that the L2 child
+   * receives the answer before going in timeout. If too many reads are already waiting for the item, the request is
+   * immediately answered with a {@link ReqErrorMsg error}.
+   * @param msg the request on an invalid item.
+   * @param downstream the child from which the request has arrived.
+   */
+  private void parkRead(ReadReqMsg msg, ActorRef downstream){
+    List<WaitingRead> waiting = parkedReads.computeIfAbsent(msg.key, k -> new ArrayList<>());
+    if(waiting.size() >= Config.MAX_PARKED_READS_PER_ITEM){
+      ReqErrorMsg errMsg=new ReqErrorMsg(msg);
+      LOGGER.error("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; invalid; too_many_parked_reads;");
+      sendMessage(errMsg, downstream);
+      return;
+    }
+    waiting.add(new WaitingRead(msg, downstream));
+    parkedReadTimers.put(msg.reqId,
+            timers.schedule(this.type == CacheType.L1 ? Config.TIMEOUT_PARKED_READ_L1 : Config.TIMEOUT_PARKED_READ_L2, new TimeoutParkedReadMsg(msg)));
+    LOGGER.debug("Cache " + this.id + "; read_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; invalid; parked_until_crit_refill;");
+  }
+
+  /**
+   * Service method to answer all the reads parked on an item with the value carried by its {@link CritRefillMsg critical refill}.
+   * @param key the key of the item.
+   * @param value the new value of the item.
+   */
+  private void answerParkedReads(int key, int value){
+    List<WaitingRead> waiting = parkedReads.remove(key);
+    if(waiting == null)
+      return;
+    for(WaitingRead w : waiting){
+      ReadReqMsg parked = w.msg;
+      timers.cancel(parkedReadTimers.remove(parked.reqId));
+      if(this.type == CacheType.L1 && !grants.containsKey(key)){ // the database would not send the next updates of the item to the child
+        if(parked instanceof CritReadReqMsg)
+          serveCritRead((CritReadReqMsg) parked, w.downstream);
+        else
+          serveRead(parked, w.downstream);
+        continue;
+      }
+      grantCopy(key, parked.reqId, w.downstream);
+      ReadRespMsg resp = parked instanceof CritReadReqMsg
+              ? new CritReadRespMsg(key, value, parked.reqId)
+              : new ReadRespMsg(key, value, parked.reqId);
+      LOGGER.debug("Cache " + this.id + "; parked_read_for_item: " + key + "; MSG_ID: " + parked.reqId + "; answered_with_crit_refill_value: " + value + ";");
+      sendMessage(resp, w.downstream);
+      parkedReadsAnswered++;
+    }
+  }
+
+  /**
+   * Service method to handle again all the reads parked on an item that became valid without a new value, after a
+   * {@link CritWriteErrorMsg} or a timeout. They are served from the cache or forwarded to the parent like new requests.
+   * @param key the key of the item.
+   */
+  private void retryParkedReads(int key){
+    List<WaitingRead> waiting = parkedReads.remove(key);
+    if(waiting == null)
+      return;
+    for(WaitingRead w : waiting){
+      ReadReqMsg parked = w.msg;
+      timers.cancel(parkedReadTimers.remove(parked.reqId));
+      LOGGER.debug("Cache " + this.id + "; parked_read_for_item: " + key + "; MSG_ID: " + parked.reqId + "; item_valid_again; retrying;");
+      if(parked instanceof CritReadReqMsg)
+        serveCritRead((CritReadReqMsg) parked, w.downstream);
+      else
+        serveRead(parked, w.downstream);
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link TimeoutParkedReadMsg} message.
+   * The parked request has waited too long for the {@link CritRefillMsg critical refill} of the item, so it is answered
+   * with a {@link ReqErrorMsg error} as if it had arrived while the item was invalid.
+   * @param msg the {@link TimeoutParkedReadMsg} message which contains the parked request.
+   */
+  private void onTimeoutParkedReadMsg(TimeoutParkedReadMsg msg){
+    ReadReqMsg parked = msg.parkedMsg;
+    if(parkedReadTimers.remove(parked.reqId) == LongLongMap.ABSENT)
+      return;
+    List<WaitingRead> waiting = parkedReads.get(parked.key);
+    ActorRef nextHop = null;
+    for(Iterator<WaitingRead> it = waiting.iterator(); it.hasNext(); ){
+      WaitingRead w = it.next();
+      if(w.msg == parked){
+        nextHop = w.downstream;
+        it.remove();
+        break;
+      }
+    }
+    if(waiting.isEmpty())
+      parkedReads.remove(parked.key);
+    ReqErrorMsg errMsg=new ReqErrorMsg(parked);
+    LOGGER.error("Cache " + this.id + "; read_req_for_item: " + parked.key + "; MSG_ID: " + parked.reqId + "; invalid; parked_read_expired;");
+    sendMessage(errMsg, nextHop);
+    parkedReadsExpired++;
+  }
+
   /**
    * This method is used to handle arrival of a {@link CritReadRespMsg} message.
    * This message can come both from the DB (in both types of caches) or from a L1 (in a L2 cache).
@@ -446,53 +1152,45 @@ public class Cache extends AbstractActor {
       crashingOps();
     }else {
       Integer key = msg.key;
-      savedItems.put(key, msg.value);
-      ActorRef nextHop = msg.responsePath.pop();
-      LOGGER.debug("Cache " + this.id + "; crit_read_resp_for_item = " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to " + nextHop.path().name() + "; timeout_cancelled;");
-      if(pendingReq.containsKey(msg.uuid)) {
-        pendingReq.get(msg.uuid).cancel();
-        pendingReq.remove(msg.uuid); //removing the uuid of the message from the list of the pending ones
-        if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
+      ActorRef nextHop = readPaths.remove(msg.reqId);
+      if (nextHop == null) { // the request has gone in timeout, or this cache has crashed meanwhile
+        LOGGER.debug("Cache " + this.id + "; crit_read_resp_for_item = " + msg.key + "; MSG_ID: " + msg.reqId + "; request_not_pending;");
+        return;
       }
+      if (msg.value != IntIntMap.ABSENT) {
+        receiveCopy(key, msg.reqId);
+        grantCopy(key, msg.reqId, nextHop);
+        savedItems.put(key, msg.value);
+      }
+      LOGGER.debug("Cache " + this.id + "; crit_read_resp_for_item = " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to " + nextHop.path().name() + "; timeout_cancelled;");
+      stopReqTimer(msg.reqId);
       sendMessage(msg, nextHop);
     }
   }
 
   /**
    * This method is used to handle the arrival of a {@link CritWriteReqMsg} message.
-   * If the item to be modified is invalid because there is another ongoing {@link CritWriteReqMsg critical write}, a
-   * {@link ReqErrorMsg error} is sent to the sender.
-   * Otherwise the request will be forwarded because it is ultimately handled by the {@link DB database}.
+   * The request will be forwarded because it is ultimately handled by the {@link DB database}, also if the item is invalid
+   * because there is another ongoing {@link CritWriteReqMsg critical write}: the database queues the request behind it.
    * A timer is started to check for possible crashes before receiving the associated {@link InvalidationItemMsg invalidation}.
    * @param msg the {@link CritWriteReqMsg} message which contains the key of the element to be written and the value to be written.
    */
   private void onCritWriteReqMsg(CritWriteReqMsg msg){
-    if (invalidItems.contains(msg.key)) {
-      ReqErrorMsg errMsg = new ReqErrorMsg(msg);
-      LOGGER.error("Cache " + this.id + "; crit_write_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; another_crit_write_is_performing;");
-      sendMessage(errMsg, getSender());
-    }else {
-      LOGGER.debug("Cache " + this.id + "; crit_write_req_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to_parent: " + parent.path().name() + ";");
-      if (this.nextCrash == CrashType.BEFORE_CRIT_WRITE_REQ_FW) {
+    LOGGER.debug("Cache " + this.id + "; crit_write_req_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to_parent: " + upstream(msg.key).path().name() + ";");
+    if (this.nextCrash == CrashType.BEFORE_CRIT_WRITE_REQ_FW) {
+      crashingOps();
+    } else {
+      if (this.type == CacheType.L2) {
+        pendingReq.put(msg.reqId,
+                timers.schedule(Config.TIMEOUT_CACHE_CRIT_WRITE, new TimeoutReqMsg(msg))); //adding the request id of the message to the list of the pending ones*/
+      }
+      if (this.type == CacheType.L1)
+        writePaths.put(msg.reqId, getSender());
+      if (Config.VERBOSE_LOG)
+        LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; adding_req_id: " + msg.reqId + ";");
+      sendMessage(msg, upstream(msg.key));
+      if (this.nextCrash == CrashType.AFTER_CRIT_WRITE_REQ_FW) {
         crashingOps();
-      } else {
-        if (this.type == CacheType.L2) {
-          pendingReq.put(msg.uuid,
-                  getContext().system().scheduler().scheduleOnce(
-                          Duration.create(Config.TIMEOUT_CACHE_CRIT_WRITE, TimeUnit.MILLISECONDS),        // when to send the message
-                          getSelf(),                                          // destination actor reference
-                          new TimeoutReqMsg(msg),                                  // the message to send
-                          getContext().system().dispatcher(),                 // system dispatcher
-                          getSelf()                                           // source of the message (myself)
-                  )); //adding the uuid of the message to the list of the pending ones*/
-        }
-        if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; adding_req_id: " + msg.uuid + ";");
-        sendMessage(msg, parent);
-        if (this.nextCrash == CrashType.AFTER_CRIT_WRITE_REQ_FW) {
-          crashingOps();
-        }
       }
     }
   }
@@ -501,10 +1199,11 @@ public class Cache extends AbstractActor {
    * This method is used to handle the arrival of a {@link InvalidationItemMsg} message.
    * The item is added to the a list of invalid items, so this cache will not provide the old value to upcoming requests.
    * This message can come both from the DB (in both types of caches) or from a L1 (in a L2 cache).
-   * If this cache is a L1 and has 0 or 1 child, it will send to the {@link DB database} a {@link InvalidationItemConfirmMsg confirmation}.
-   * If this cache is a L1 with at least 2 children, it will forward the message to its children.
-   * Otherwise (this cache is an L2) it will send to its parent a {@link InvalidationItemConfirmMsg confirmation} and a
-   * timer is set to check for crashes before the arrival of the associated {@link CritRefillMsg critical refill}.
+   * If this cache is a L1, it will forward the message to the children holding the item and to the one on the path of the
+   * {@link CritWriteReqMsg request}; if they are at most {@link Config#MAX_N_CACHE_CRASH}, it will also send to the
+   * {@link DB database} a {@link InvalidationItemConfirmMsg confirmation}.
+   * Otherwise (this cache is an L2) it will tell the clients holding the item in their near cache to drop it, it will send
+   * to its parent a {@link InvalidationItemConfirmMsg confirmation} and a timer is set to check for crashes before the arrival of the associated {@link CritRefillMsg critical refill}.
    * @param msg is the {@link InvalidationItemMsg} message which contains the key of the element to be invalidated.
    */
   private void onInvalidationItemMsg(InvalidationItemMsg msg){
@@ -513,31 +1212,30 @@ public class Cache extends AbstractActor {
     }else {
       this.invalidItems.add(msg.key);
       if (this.type.equals(CacheType.L1)) {
-        LOGGER.debug("Cache " + this.id + "; invalidation_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; invalidation_sent_to_children;");
-        if(children.size() <= 1){
-          LOGGER.debug("Cache " + this.id + "; invalidation_confirm_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; not_need_to_wait_confirmation_from_the_children; sending_confirmation;");
-          sendInvalidationConfirmation(new InvalidationItemConfirmMsg(msg.key, msg.uuid));
+        LOGGER.debug("Cache " + this.id + "; invalidation_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; invalidation_sent_to_children;");
+        Set<ActorRef> targets = sharers.targets(msg.key, Collections.singletonList(writePaths.get(msg.reqId)));
+        invalidTargets.put(msg.reqId, targets);
+        if(targets.size() <= Config.MAX_N_CACHE_CRASH){
+          LOGGER.debug("Cache " + this.id + "; invalidation_confirm_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; not_need_to_wait_confirmation_from_the_children; sending_confirmation;");
+          sendInvalidationConfirmation(new InvalidationItemConfirmMsg(msg.key, msg.reqId));
         }
         if(this.nextCrash==CrashType.DURING_INVALID_ITEM_MULTICAST){
-          multicastAndCrash(msg);
+          multicastAndCrash(msg, targets);
         }else {
-          multicast(msg);
+          multicast(msg, targets);
         }
       } else if (this.type.equals(CacheType.L2)) {
         if(this.nextCrash==CrashType.BEFORE_ITEM_INVALID_CONFIRM_SEND){
           crashingOps();
         }else {
-          pendingUpdates.put(msg.uuid,
-                  getContext().system().scheduler().scheduleOnce(
-                          Duration.create(Config.TIMEOUT_CACHE_INVALIDATION, TimeUnit.MILLISECONDS),        // when to send the message
-                          getSelf(),                                          // destination actor reference
-                          new TimeoutUpdateCWMsg(msg),                                  // the message to send
-                          getContext().system().dispatcher(),                 // system dispatcher
-                          getSelf()                                           // source of the message (myself)
-                  )); //adding the uuid of the message to the list of the pending ones
-          InvalidationItemConfirmMsg confirmMsg = new InvalidationItemConfirmMsg(msg.key, msg.uuid);
-          LOGGER.debug("Cache " + this.id + "; invalidation_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; invalidation_confirm_send_to " + this.parent.path().name() + ";");
-          sendMessage(confirmMsg, this.parent);
+          pendingUpdates.put(msg.reqId,
+                  timers.schedule(Config.TIMEOUT_CACHE_INVALIDATION, new TimeoutUpdateCWMsg(msg))); //adding the request id of the message to the list of the pending ones
+          multicast(msg, sharers.targets(msg.key, Collections.emptyList())); // the clients drop the item from their near cache
+          sharers.removeAll(msg.key);
+          releaseIfUnused(msg.key);
+          InvalidationItemConfirmMsg confirmMsg = new InvalidationItemConfirmMsg(msg.key, msg.reqId);
+          LOGGER.debug("Cache " + this.id + "; invalidation_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; invalidation_confirm_send_to " + upstream(msg.key).path().name() + ";");
+          sendMessage(confirmMsg, upstream(msg.key));
         }
       }
     }
@@ -545,16 +1243,18 @@ public class Cache extends AbstractActor {
 
 
   private void onTimeoutUpdateCWMsg(TimeoutUpdateCWMsg msg){
-    LOGGER.debug("Cache " + this.id + "; timeout_while_waiting_crit_refill_for_item: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.uuid + "; removing_item_from_memory;");
+    LOGGER.debug("Cache " + this.id + "; timeout_while_waiting_crit_refill_for_item: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.reqId + "; removing_item_from_memory;");
     this.invalidItems.remove(msg.awaitedMsg.key);
     this.savedItems.remove(msg.awaitedMsg.key);
+    releaseIfUnused(msg.awaitedMsg.key);
+    retryParkedReads(msg.awaitedMsg.key);
   }
 
   /**
    * This method is used to handle the arrival of a {@link InvalidationItemConfirmMsg} message.
    * This method is triggered only in a L1 cache, that collects the {@link InvalidationItemConfirmMsg confirmations} from
-   * its children.
-   * When this cache collects children.size() - MAX_N_CACHE_CRASH {@link InvalidationItemConfirmMsg confirmations} it sends
+   * the children to which it has forwarded the {@link InvalidationItemMsg invalidation}.
+   * When this cache collects targets.size() - MAX_N_CACHE_CRASH {@link InvalidationItemConfirmMsg confirmations} it sends
    * a {@link InvalidationItemConfirmMsg confirmation} to the {@link DB Database}.
    * @param msg is the {@link InvalidationItemConfirmMsg} message which confirms that the sender has marked the item as invalid.
    */
@@ -562,18 +1262,19 @@ public class Cache extends AbstractActor {
     if(this.nextCrash==CrashType.BEFORE_ITEM_INVALID_CONFIRM_RESP){
       crashingOps();
     }else {
-      LOGGER.debug("Cache " + this.id + "; invalidation_confirm_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; from_cache: " + getSender().path().name() + ";");
-      if (this.invalidConfirmations.containsKey(msg.uuid)) {
-        this.invalidConfirmations.get(msg.uuid).add(getSender());
+      LOGGER.debug("Cache " + this.id + "; invalidation_confirm_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; from_cache: " + getSender().path().name() + ";");
+      if (this.invalidConfirmations.containsKey(msg.reqId)) {
+        this.invalidConfirmations.get(msg.reqId).add(getSender());
       } else {
-        this.invalidConfirmations.put(msg.uuid, new HashSet<>());
-        this.invalidConfirmations.get(msg.uuid).add(getSender());
+        this.invalidConfirmations.put(msg.reqId, new HashSet<>());
+        this.invalidConfirmations.get(msg.reqId).add(getSender());
       }
 
       //I don't care if one confirmation does not arrive, because one L2 cache can crash but the protocol will work
       // When recovers it will update its value and be consistent.
       //we use == and not >= to avoid resending of the confirmation
-      if (this.invalidConfirmations.get(msg.uuid).size() == (this.children.size() - Config.MAX_N_CACHE_CRASH)) {
+      Set<ActorRef> targets = this.invalidTargets.get(msg.reqId);
+      if (targets != null && this.invalidConfirmations.get(msg.reqId).size() == (targets.size() - Config.MAX_N_CACHE_CRASH)) {
         sendInvalidationConfirmation(msg);
       }
     }
@@ -588,18 +1289,47 @@ public class Cache extends AbstractActor {
     if(this.nextCrash==CrashType.BEFORE_ITEM_INVALID_CONFIRM_SEND){
       crashingOps();
     }else {
-      LOGGER.debug("Cache " + this.id + "; all_invalidation_confirm_received_for: " + msg.key + "; MSG_ID: " + msg.uuid + "; send_to: " + this.parent.path().name() + ";");
-      sendMessage(msg, this.parent);
+      LOGGER.debug("Cache " + this.id + "; all_invalidation_confirm_received_for: " + msg.key + "; MSG_ID: " + msg.reqId + "; send_to: " + upstream(msg.key).path().name() + ";");
+      sendMessage(msg, upstream(msg.key));
     }
   }
 
 
+  /**
+   * This method is used to handle the arrival of a {@link BatchMsg} message, that carries the {@link InvalidationItemMsg
+   * invalidations}, the {@link InvalidationItemConfirmMsg confirmations} or the {@link RefillMsg refills} sent together by
+   * the parent or by a child, usually for an invalidation round of the {@link DB database}.
+   * The messages are handled in order, and the ones of the same kind that this cache sends meanwhile are sent together,
+   * so a round costs one message for each child and one confirmation to the parent. If this cache crashes in the middle,
+   * the messages sent before the crash are sent and the remaining ones are ignored.
+   * @param msg the {@link BatchMsg} message.
+   */
+  private void onBatchMsg(BatchMsg msg){
+    outbox = new LinkedHashMap<>();
+    for(Message m : msg.msgs){
+      if(outbox == null) // crashed while handling the previous messages
+        break;
+      if(m instanceof InvalidationItemMsg)
+        onInvalidationItemMsg((InvalidationItemMsg) m);
+      else if(m instanceof InvalidationItemConfirmMsg)
+        onInvalidationItemConfirmMsg((InvalidationItemConfirmMsg) m);
+      else if(m instanceof CritRefillMsg)
+        onCritRefillMsg((CritRefillMsg) m);
+      else if(m instanceof MultiRefillMsg)
+        onMultiRefillMsg((MultiRefillMsg) m);
+      else if(m instanceof RefillMsg)
+        onRefillMsg((RefillMsg) m);
+    }
+    flushOutbox();
+  }
+
   /**
    * This method is used to handle the arrival of a {@link CritRefillMsg} message.
    * If the propagated item is in this cache memory, the value is updated. Then it will mark the element as valid.
-   * If this cache is a L1, the message is forwarded to all its children.
-   * Otherwise (the cache is L2) the method sends a {@link CritWriteConfirmMsg confirmation} to one of its child if it
-   * is the originator of associated {@link CritWriteReqMsg request}.
+   * If this cache is a L1, the message is forwarded to the children that have invalidated the item, to the ones holding
+   * it and to the one on the path of the {@link CritWriteReqMsg request}.
+   * Otherwise (the cache is L2) the message is forwarded to the clients holding the item in their near cache and the
+   * method sends a {@link CritWriteConfirmMsg confirmation} to one of its child if it is the originator of associated {@link CritWriteReqMsg request}.
    * The timer of the associated {@link InvalidationItemConfirmMsg invalidation confirm} is cancelled.
    * The timer of the associated {@link CritWriteReqMsg request} is cancelled.
    * @param msg the {@link CritRefillMsg} message which contains the key of the updated item and the new value.
@@ -609,44 +1339,46 @@ public class Cache extends AbstractActor {
       crashingOps();
     }else {
       Integer key = msg.key;
-      if (savedItems.containsKey(key)) {
-        LOGGER.debug("Cache " + this.id + "; crit_refill_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; value: " + msg.newValue + ";");
-        savedItems.put(key, msg.newValue);
-      }
+      ActorRef pathChild = writePaths.remove(msg.reqId); // always null in a L2 cache
+      List<ActorRef> others = new ArrayList<>();
+      others.add(pathChild);
+      Set<ActorRef> invalidated = invalidTargets.remove(msg.reqId);
+      if (invalidated != null)
+        others.addAll(invalidated);
+      Set<ActorRef> targets = sharers.targets(key, others);
+      applyRefill(msg, pathChild != null || children.contains(msg.originator), pathChild);
+      inFlightReads.remove(key); // the read in flight may return the old value, the next reads must not wait for it
       if (this.invalidItems.contains(key)) {
         this.invalidItems.remove(key);
       }
+      answerParkedReads(key, msg.newValue);
       if (this.type == CacheType.L1) {
         if (Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
-        LOGGER.debug("Cache " + this.id + "; crit_refill_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to_children;");
-        pendingReq.remove(msg.uuid); //removing the uuid of the message from the list of the pending ones
-        this.invalidConfirmations.remove(msg.uuid); //removing the uuid of the message from the list of the invalidConfirmation
+          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; remove_req_id: " + msg.reqId + ";");
+        LOGGER.debug("Cache " + this.id + "; crit_refill_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to_children;");
+        pendingReq.remove(msg.reqId); //removing the request id of the message from the list of the pending ones
+        this.invalidConfirmations.remove(msg.reqId); //removing the request id of the message from the list of the invalidConfirmation
         if(this.nextCrash==CrashType.DURING_CRIT_REFILL_MULTICAST){
-          multicastAndCrash(msg);
+          multicastAndCrash(msg, targets);
         }else {
-          multicast(msg);
+          multicast(msg, targets);
         }
       } else if (this.type == CacheType.L2) {
-        if (pendingUpdates.containsKey(msg.uuid)) {
-          pendingUpdates.get(msg.uuid).cancel();
-          pendingUpdates.remove(msg.uuid);
+        if (pendingUpdates.containsKey(msg.reqId)) {
+          timers.cancel(pendingUpdates.get(msg.reqId));
+          pendingUpdates.remove(msg.reqId);
           if (Config.VERBOSE_LOG)
-            LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
-        }
-        if (pendingReq.containsKey(msg.uuid)) {
-          if (Config.VERBOSE_LOG)
-            LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
-          pendingReq.get(msg.uuid).cancel();
-          pendingReq.remove(msg.uuid); //removing the uuid of the message from the list of the pending ones
+            LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; remove_req_id: " + msg.reqId + ";");
         }
+        stopReqTimer(msg.reqId);
+        multicast(msg, targets); // to the clients holding the item in their near cache, before the confirmation
         ActorRef originator = msg.originator;
         if (children.contains(originator)) {
           if(this.nextCrash==CrashType.BEFORE_CRIT_WRITE_CONFIRM){
             crashingOps();
           }else {
-            CritWriteConfirmMsg resp = new CritWriteConfirmMsg(msg.key, msg.uuid);
-            LOGGER.debug("Cache " + this.id + "; crit_write_ack_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to: " + msg.originator.path().name() + "; timeout_cancelled;");
+            CritWriteConfirmMsg resp = new CritWriteConfirmMsg(msg.key, msg.reqId);
+            LOGGER.debug("Cache " + this.id + "; crit_write_ack_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to: " + msg.originator.path().name() + "; timeout_cancelled;");
             sendMessage(resp, originator);
           }
         }
@@ -668,35 +1400,85 @@ public class Cache extends AbstractActor {
     Integer key = msg.key;
     if(this.invalidItems.contains(key)){
       this.invalidItems.remove(key);
-      LOGGER.debug("Cache " + this.id + "; item: " + key + "; now_valid; MSG_ID: " + msg.uuid + ";");
+      LOGGER.debug("Cache " + this.id + "; item: " + key + "; now_valid; MSG_ID: " + msg.reqId + ";");
     }
+    retryParkedReads(key);
     if(this.type == CacheType.L1){
       if(Config.VERBOSE_LOG)
-        LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
-      LOGGER.error("Cache " + this.id + "; crit_write_failed_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to_children;");
-      pendingReq.remove(msg.uuid); //removing the uuid of the message from the list of the pending ones
-      this.invalidConfirmations.remove(msg.uuid); //removing the uuid of the message from the list of the invalidConfirmation
+        LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; remove_req_id: " + msg.reqId + ";");
+      LOGGER.error("Cache " + this.id + "; crit_write_failed_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to_children;");
+      pendingReq.remove(msg.reqId); //removing the request id of the message from the list of the pending ones
+      this.invalidConfirmations.remove(msg.reqId); //removing the request id of the message from the list of the invalidConfirmation
+      this.invalidTargets.remove(msg.reqId);
+      this.writePaths.remove(msg.reqId);
       if(this.nextCrash==CrashType.DURING_CRIT_WRITE_ERROR_MULTICAST){
         multicastAndCrash(msg);
       }else {
         multicast(msg);
       }
     }else if(this.type == CacheType.L2){
-      if(pendingUpdates.containsKey(msg.uuid)){
-        pendingUpdates.get(msg.uuid).cancel();
-        pendingUpdates.remove(msg.uuid);
+      if(pendingUpdates.containsKey(msg.reqId)){
+        timers.cancel(pendingUpdates.get(msg.reqId));
+        pendingUpdates.remove(msg.reqId);
         if(Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
-      }
-      if (pendingReq.containsKey(msg.uuid)) {
-        if(Config.VERBOSE_LOG)
-          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + pendingReq.keySet() + "; remove_req_id: " + msg.uuid + ";");
-        pendingReq.get(msg.uuid).cancel();
-        pendingReq.remove(msg.uuid); //removing the uuid of the message from the list of the pending ones
+          LOGGER.debug("Cache " + this.id + "; pending_req_list: " + Arrays.toString(pendingReq.keys()) + "; remove_req_id: " + msg.reqId + ";");
       }
+      stopReqTimer(msg.reqId);
       ActorRef originator = msg.originator;
       if(children.contains(originator)) {
-        LOGGER.error("Cache " + this.id + "; crit_write_failed_for_item: " + msg.key + "; MSG_ID: " + msg.uuid + "; forward_to: " + msg.originator.path().name() + "; timeout_cancelled;");
+        LOGGER.error("Cache " + this.id + "; crit_write_failed_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; forward_to: " + msg.originator.path().name() + "; timeout_cancelled;");
+        sendMessage(msg, originator);
+      }
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link ReqErrorMsg} message from the parent, sent by the
+   * {@link DB database} when it cannot perform a {@link WriteReqMsg write} or a {@link MultiWriteReqMsg multi-write}.
+   * If this cache is a L1, the message is forwarded to the child on the path of the request.
+   * Otherwise (the cache is L2) the request, if still pending, fails: its timer is cancelled and the error is sent to the
+   * originator.
+   * @param msg the {@link ReqErrorMsg} message which contains the failed request.
+   */
+  private void onReqErrorMsg(ReqErrorMsg msg){
+    IdMessage awaited = msg.awaitedMsg;
+    if(this.type == CacheType.L1){
+      ActorRef nextHop = writePaths.remove(awaited.reqId);
+      multiWriteKeys.remove(awaited.reqId);
+      if(nextHop == null){
+        LOGGER.debug("Cache " + this.id + "; write_error_for_item: " + awaited.key + "; MSG_ID: " + awaited.reqId + "; request_not_pending;");
+        return;
+      }
+      LOGGER.error("Cache " + this.id + "; write_error_for_item: " + awaited.key + "; MSG_ID: " + awaited.reqId + "; forward_to: " + nextHop.path().name() + ";");
+      sendMessage(msg, nextHop);
+    }else if(pendingReq.containsKey(awaited.reqId)){
+      LOGGER.error("Cache " + this.id + "; write_error_for_item: " + awaited.key + "; MSG_ID: " + awaited.reqId + "; timeout_cancelled;");
+      failPendingReq(awaited);
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link CritWriteQueuedMsg} message.
+   * The {@link DB database} has queued a {@link CritWriteReqMsg critical write} behind the ones on the same item.
+   * If this cache is a L1, the message is forwarded to all its children.
+   * Otherwise (the cache is L2), if this cache is waiting for the request, its timer is extended by one
+   * {@link Config#TIMEOUT_CACHE_CRIT_WRITE} for each critical write ahead in the queue, and the message is sent to the
+   * originator of the request if it is one of its children.
+   * @param msg the {@link CritWriteQueuedMsg} message which contains the queued request and its position in the queue.
+   */
+  private void onCritWriteQueuedMsg(CritWriteQueuedMsg msg){
+    if(this.type == CacheType.L1){
+      LOGGER.debug("Cache " + this.id + "; crit_write_queued_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; position: " + msg.position + "; forward_to_children;");
+      multicast(msg);
+    }else if(this.type == CacheType.L2){
+      if(pendingReq.containsKey(msg.reqId)){
+        timers.cancel(pendingReq.get(msg.reqId));
+        pendingReq.put(msg.reqId,
+                timers.schedule((long) Config.TIMEOUT_CACHE_CRIT_WRITE * (msg.position + 1), new TimeoutReqMsg(msg.request)));
+      }
+      ActorRef originator = msg.request.originator;
+      if(children.contains(originator)){
+        LOGGER.debug("Cache " + this.id + "; crit_write_queued_for_item: " + msg.key + "; MSG_ID: " + msg.reqId + "; position: " + msg.position + "; forward_to: " + originator.path().name() + "; timeout_extended;");
         sendMessage(msg, originator);
       }
     }
@@ -711,86 +1493,120 @@ public class Cache extends AbstractActor {
   /**
    * This method is used to handle the arrival of a {@link TimeoutReqMsg} message.
    * This is triggered in a L2 cache when it detects the crash of its parent while waiting for some response.
-   * The cache detecting the crash will set the {@link DB database} as its new parent and will notify the database of the change.
+   * The cache detecting the crash will set the {@link DB database} as its new parent and will notify all the shards of
+   * the database of the change, since from now on it receives the messages of every shard.
    * Also, it will start refreshing the value of its saved items, because it could have old values.
    * The cache will also notify the {@link Client originator} that its request has failed.
    * @param msg the {@link TimeoutReqMsg} message which contains a copy of the request that has failed.
    */
   private void onTimeoutReqMsg(TimeoutReqMsg msg) {
-    if (pendingReq.containsKey(msg.awaitedMsg.uuid)){
+    if (pendingReq.containsKey(msg.awaitedMsg.reqId)){
       if(msg.awaitedMsg instanceof RefreshItemReqMsg){
-        LOGGER.warn("Cache " + this.id + "; timeout_while_refresh_item: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.uuid);
+        LOGGER.warn("Cache " + this.id + "; timeout_while_refresh_item: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.reqId);
       }else{
-        LOGGER.warn("Cache " + this.id + "; timeout_while_await_item: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.uuid);
+        LOGGER.warn("Cache " + this.id + "; timeout_while_await_item: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.reqId);
       }
 
-      this.parent=this.db;
-      LOGGER.debug("Cache " + this.id + "; new_parent_selected: " + this.parent.path().name() + ";");
-
-      pendingReq.remove(msg.awaitedMsg.uuid);
-
-      ReqErrorMsg errMsg=new ReqErrorMsg(msg.awaitedMsg);
-      if(msg.awaitedMsg instanceof CritReadReqMsg){
-        ActorRef dest = ((CritReadReqMsg) msg.awaitedMsg).responsePath.pop();
-
-        if(dest.equals(getSelf())) // the response stack of the failed request contain on the top the cache itself so we need to pop 2 times in order to get the reference of the next hop
-          dest = ((CritReadReqMsg) msg.awaitedMsg).responsePath.pop();
+      ActorRef link = reqLinks.get(msg.awaitedMsg.reqId);
+      if(link != null)
+        rttOf(link).recordTimeout(msg.awaitedMsg.reqId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reqSendTimes.get(msg.awaitedMsg.reqId)));
 
-        LOGGER.debug("Cache " + this.id + "; sending_crit_read_error_message_to: " + dest.path().name() + "; MSG_ID: " + msg.awaitedMsg.uuid + ";");
-        sendMessage(errMsg, dest);
-      }else if(msg.awaitedMsg instanceof CritWriteReqMsg){
-        ActorRef originator = ((CritWriteReqMsg) msg.awaitedMsg).originator;
-        LOGGER.debug("Cache " + this.id + "; sending_crit_write_error_message_to: " + originator.path().name() + "; MSG_ID: " + msg.awaitedMsg.uuid + ";");
-        if(this.pendingUpdates.containsKey(msg.awaitedMsg.uuid)){
-          this.pendingUpdates.get(msg.awaitedMsg.uuid).cancel();
-          this.pendingUpdates.remove(msg.awaitedMsg.uuid);
-        }
-        this.invalidConfirmations.remove(msg.awaitedMsg.uuid);
-
-        sendMessage(errMsg, originator);
-      }else if(msg.awaitedMsg instanceof ReadReqMsg){
-        ActorRef dest = ((ReadReqMsg) msg.awaitedMsg).responsePath.pop();
+      failPendingReq(msg.awaitedMsg);
+      changeParentToDb();
+    }else{
+      LOGGER.debug("Cache " + this.id + "; timeout_but_received_response for: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.reqId + ";");
+    }
+  }
 
-        if(dest.equals(getSelf())) // the response stack of the failed request contain on the top the cache itself so we need to pop 2 times in order to get the reference of the next hop
-          dest = ((ReadReqMsg) msg.awaitedMsg).responsePath.pop();
+  /**
+   * Service method to end a pending request whose parent has crashed (or is suspected to), notifying the
+   * {@link Client originator} (or the next hop towards it) that the request has failed.
+   * @param awaited the request that has failed.
+   */
+  private void failPendingReq(IdMessage awaited){
+    long timer = pendingReq.remove(awaited.reqId);
+    if(timer != LongLongMap.ABSENT)
+      timers.cancel(timer);
+    reqLinks.remove(awaited.reqId);
+    reqSendTimes.remove(awaited.reqId);
+    awaitedReqs.remove(awaited.reqId);
+
+    ActorRef dest = readPaths.remove(awaited.reqId); // null for the writes and the refreshes of this cache
+    ReqErrorMsg errMsg=new ReqErrorMsg(awaited);
+    if(awaited instanceof CritReadReqMsg){
+      LOGGER.debug("Cache " + this.id + "; sending_crit_read_error_message_to: " + dest.path().name() + "; MSG_ID: " + awaited.reqId + ";");
+      sendMessage(errMsg, dest);
+    }else if(awaited instanceof CritWriteReqMsg){
+      ActorRef originator = ((CritWriteReqMsg) awaited).originator;
+      LOGGER.debug("Cache " + this.id + "; sending_crit_write_error_message_to: " + originator.path().name() + "; MSG_ID: " + awaited.reqId + ";");
+      if(this.pendingUpdates.containsKey(awaited.reqId)){
+        timers.cancel(this.pendingUpdates.get(awaited.reqId));
+        this.pendingUpdates.remove(awaited.reqId);
+      }
+      this.invalidConfirmations.remove(awaited.reqId);
 
-        LOGGER.debug("Cache " + this.id + "; sending_read_error_message_to: " + dest.path().name() + "; MSG_ID: " + msg.awaitedMsg.uuid + ";");
+      sendMessage(errMsg, originator);
+    }else if(awaited instanceof ReadReqMsg){
+      if(dest != null){
+        LOGGER.debug("Cache " + this.id + "; sending_read_error_message_to: " + dest.path().name() + "; MSG_ID: " + awaited.reqId + ";");
         sendMessage(errMsg, dest);
-      }else if(msg.awaitedMsg instanceof WriteReqMsg){
-        LOGGER.debug("Cache " + this.id + "; sending_write_error_message_to: " + ((WriteReqMsg) msg.awaitedMsg).originator.path().name() + "; MSG_ID: " + msg.awaitedMsg.uuid + ";");
-        sendMessage(errMsg, ((WriteReqMsg) msg.awaitedMsg).originator);
       }
 
-      AddChildMsg addMeMsg=new AddChildMsg(getSelf());
-      sendMessage(addMeMsg, this.parent);
-      if(savedItems.size() > 0)
-        refreshItems();
-    }else{
-      LOGGER.debug("Cache " + this.id + "; timeout_but_received_response for: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.uuid + ";");
+      inFlightReads.remove(awaited.key, awaited.reqId);
+      List<WaitingRead> followers = coalescedReads.remove(awaited.reqId);
+      if (followers != null) {
+        for (WaitingRead follower : followers) {
+          LOGGER.debug("Cache " + this.id + "; sending_read_error_message_to: " + follower.downstream.path().name() + "; MSG_ID: " + follower.msg.reqId + "; coalesced_with: " + awaited.reqId + ";");
+          sendMessage(new ReqErrorMsg(follower.msg), follower.downstream);
+        }
+      }
+    }else if(awaited instanceof WriteReqMsg){
+      LOGGER.debug("Cache " + this.id + "; sending_write_error_message_to: " + ((WriteReqMsg) awaited).originator.path().name() + "; MSG_ID: " + awaited.reqId + ";");
+      sendMessage(errMsg, ((WriteReqMsg) awaited).originator);
+    }else if(awaited instanceof MultiReadReqMsg){
+      LOGGER.debug("Cache " + this.id + "; sending_multi_read_error_message_to: " + dest.path().name() + "; MSG_ID: " + awaited.reqId + ";");
+      sendMessage(errMsg, dest);
+      multiReads.remove(awaited.reqId);
+      multiReadValues.remove(awaited.reqId);
+    }else if(awaited instanceof MultiWriteReqMsg){
+      LOGGER.debug("Cache " + this.id + "; sending_multi_write_error_message_to: " + ((MultiWriteReqMsg) awaited).originator.path().name() + "; MSG_ID: " + awaited.reqId + ";");
+      sendMessage(errMsg, ((MultiWriteReqMsg) awaited).originator);
+      multiWriteKeys.remove(awaited.reqId);
     }
   }
 
+  /**
+   * Service method to set the {@link DB database} as parent of this cache, after the crash of its L1 parent. All the
+   * shards are notified of the change, and the held items are refreshed because they could have old values.
+   */
+  private void changeParentToDb(){
+    this.parent=this.dbShards.get(0);
+    LOGGER.debug("Cache " + this.id + "; new_parent_selected: " + this.parent.path().name() + ";");
+
+    AddChildMsg addMeMsg=new AddChildMsg(getSelf());
+    for(ActorRef shard : this.dbShards)
+      sendMessage(addMeMsg, shard);
+    refreshItems();
+  }
 
   /**
-   * This method is used used to refresh the saved items of the cache.
+   * This method is used used to refresh the saved items of the cache, and the ones held only by the near caches of its
+   * clients: the updates lost with the parent were not forwarded to them either.
    * This is triggered in a L2 cache when it set the {@link DB database} as parent or when its L1 parent recovers before
    * the this cache has noticed the crash.
    */
   private void refreshItems(){
+    Set<Integer> keys = sharers.keys();
+    for(int i : savedItems.keys())
+      keys.add(i);
+    if(keys.isEmpty())
+      return;
     LOGGER.debug("Cache " + this.id + "; refreshing_cache_using_parent: " + this.parent.path().name() + ";");
-    for(int i : savedItems.keySet()){
+    for(int i : keys){
       LOGGER.debug("Cache " + this.id + "; send_refresh_req_for_item: " + i + ";");
       RefreshItemReqMsg refreshReq = new RefreshItemReqMsg(i);
-      refreshReq.responsePath.push(getSelf());
-      pendingReq.put(refreshReq.uuid,
-              getContext().system().scheduler().scheduleOnce(
-                      Duration.create(Config.TIMEOUT_CACHE, TimeUnit.MILLISECONDS),        // when to send the message
-                      getSelf(),                                          // destination actor reference
-                      new TimeoutReqMsg(refreshReq),                                  // the message to send
-                      getContext().system().dispatcher(),                 // system dispatcher
-                      getSelf()                                           // source of the message (myself)
-              )); //adding the uuid of the message to the list of the pending ones*/
-      sendMessage(refreshReq, this.parent);
+      startReqTimer(refreshReq, upstream(i));
+      sendMessage(refreshReq, upstream(i));
     }
   }
 
@@ -805,33 +1621,39 @@ public class Cache extends AbstractActor {
       crashingOps();
     }else {
       LOGGER.debug("Cache " + this.id + "; forwarding_refresh_req_for_item: " + msg.key + ";");
-      msg.responsePath.push(getSelf());
-      sendMessage(msg, this.parent);
+      readPaths.put(msg.reqId, getSender());
+      sendMessage(msg, upstream(msg.key));
     }
   }
 
   /**
    * This method is used to handle the arrival of a {@link RefreshItemRespMsg} message.
    * This message can come both from the DB or from a L1 (in a L2 cache).
-   * This cache stores the value in its memory. If this cache is an L1, it will forward the message to the child that is the
-   * originator of associated {@link RefreshItemReqMsg request}.
+   * This cache stores the value in its memory. A L2 cache only updates the item if it has not been evicted in the meantime.
+   * If this cache is an L1, it will forward the message to the child that is the originator of associated {@link RefreshItemReqMsg request}.
    * The timer of the associated {@link RefreshItemReqMsg request} is cancelled.
    * @param msg the {@link RefreshItemRespMsg} message which contains value of the requested item.
    */
   private void onRefreshItemRespMsg(RefreshItemRespMsg msg) {
     LOGGER.debug("Cache " + this.id + "; refreshing_item_in_cache: " + msg.key + "; setting_value: " + msg.value + "; refresh_completed;");
     if(this.type==CacheType.L2){
-      if(pendingReq.containsKey(msg.uuid)){
-        pendingReq.get(msg.uuid).cancel();
-        pendingReq.remove(msg.uuid);
-      }
+      stopReqTimer(msg.reqId);
+    }
+    ActorRef nextHop = readPaths.remove(msg.reqId); // null if the refresh has been requested by this cache
+    if(msg.value != IntIntMap.ABSENT) {
+      receiveCopy(msg.key, msg.reqId);
+      if (nextHop != null)
+        grantCopy(msg.key, msg.reqId, nextHop);
+      if (this.type==CacheType.L1 || savedItems.containsKey(msg.key))
+        savedItems.put(msg.key, msg.value);
+      if (this.type==CacheType.L2) // the near caches of the clients may have missed the same updates
+        multicast(new RefillMsg(msg.key, msg.value, getSelf(), msg.reqId), sharers.targets(msg.key, Collections.emptyList()));
+      releaseIfUnused(msg.key);
     }
-    savedItems.put(msg.key, msg.value);
     this.invalidItems.remove(msg.key); //the line does something only in L2 cache
-    if (!msg.responsePath.isEmpty()) {
-      ActorRef nextHop = msg.responsePath.pop();
+    retryParkedReads(msg.key);
+    if (nextHop != null)
       sendMessage(msg, nextHop);
-    }
   }
 
   /**
@@ -846,6 +1668,7 @@ public class Cache extends AbstractActor {
     this.afterNMessageSent = Integer.MAX_VALUE;
     this.recoveryAfter=-1;
     getContext().become(createReceive());
+    scheduleHeartbeatTick();
   }
 
   /**
@@ -862,7 +1685,7 @@ public class Cache extends AbstractActor {
     }else{
       response=false;
     }
-    sendMessage(new IsStillParentRespMsg(response, msg.uuid), sender);
+    sendMessage(new IsStillParentRespMsg(response, msg.reqId), sender);
   }
 
   /**
@@ -894,13 +1717,21 @@ public class Cache extends AbstractActor {
    * @param msg the {@link StartRefreshMsg} message that notifies the cache to start refreshing its items.
    */
   private void onStartRefreshMsg(StartRefreshMsg msg){
-    pendingReq.values().forEach(Cancellable::cancel);
-    CancelTimeoutMsg cancelTimeoutMsg = new CancelTimeoutMsg(pendingReq.keySet());
+    pendingReq.forEach((reqId, timer) -> timers.cancel(timer));
+    for(long reqId : pendingReq.keys()){ // the parent has lost the multi requests, they will not be answered
+      multiReads.remove(reqId);
+      multiReadValues.remove(reqId);
+      multiWriteKeys.remove(reqId);
+    }
+    CancelTimeoutMsg cancelTimeoutMsg = new CancelTimeoutMsg(pendingReq.keys());
     if(this.nextCrash==CrashType.DURING_CANCEL_TIMEOUT_MULTICAST){
       multicastAndCrash(cancelTimeoutMsg);
     }else{
       multicast(cancelTimeoutMsg);
       pendingReq.clear();
+      reqLinks.clear();
+      reqSendTimes.clear();
+      awaitedReqs.clear();
       if(savedItems.size() > 0){
         LOGGER.debug("Cache " + this.id + "; start_refreshing_items" + ";");
         refreshItems();
@@ -943,13 +1774,34 @@ public class Cache extends AbstractActor {
    */
   private void crashingOps(){
     LOGGER.debug("Cache " + this.id + "; is_now_crashed_for: " + this.recoveryAfter + " ms; ");
-    pendingReq.values().forEach(Cancellable::cancel);
-    pendingUpdates.values().forEach(Cancellable::cancel);
+    flushOutbox(); // the messages of a batch sent before the crash
+    pendingReq.forEach((reqId, timer) -> timers.cancel(timer));
+    pendingUpdates.forEach((reqId, timer) -> timers.cancel(timer));
     pendingUpdates.clear();
+    parkedReadTimers.forEach((reqId, timer) -> timers.cancel(timer));
+    parkedReadTimers.clear();
+    parkedReads.clear();
+    inFlightReads.clear();
+    coalescedReads.clear();
+    multiReads.clear();
+    multiReadValues.clear();
+    multiWriteKeys.clear();
+    sharers.clear();
+    grants.clear();
+    writePaths.clear();
+    readPaths.clear();
+    invalidTargets.clear();
     invalidItems.clear();
     invalidConfirmations.clear();
     pendingReq.clear();
+    reqLinks.clear();
+    reqSendTimes.clear();
+    awaitedReqs.clear();
     savedItems.clear();
+    if(heartbeatTimer != null)
+      heartbeatTimer.cancel();
+    watchedParent = null; // watched again after the recovery
+    parentDetector = null;
     getContext().become(crashed());
     getContext().system().scheduler().scheduleOnce(
             Duration.create(this.recoveryAfter, TimeUnit.MILLISECONDS),        // when to send the message
@@ -964,6 +1816,99 @@ public class Cache extends AbstractActor {
 
 
 
+  /* -- START OF failure detection methods --------------------------------------------------------- */
+
+  /**
+   * Service method to schedule the next {@link HeartbeatTickMsg}, if the heartbeats are enabled.
+   */
+  private void scheduleHeartbeatTick(){
+    if(!Config.HEARTBEATS)
+      return;
+    heartbeatTimer = getContext().system().scheduler().scheduleOnce(
+            Duration.create(Config.HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS),        // when to send the message
+            getSelf(),                                          // destination actor reference
+            new HeartbeatTickMsg(),                                  // the message to send
+            getContext().system().dispatcher(),                 // system dispatcher
+            getSelf()                                           // source of the message (myself)
+    );
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link HeartbeatTickMsg} message, every {@link Config#HEARTBEAT_INTERVAL}
+   * milliseconds while this cache is not crashed.
+   * A {@link HeartbeatMsg heartbeat} is sent only to the children to which no other message has been sent in the last
+   * interval, so that each child receives at most one heartbeat per interval and none while there is other traffic.
+   * Then the suspicion level of the L1 parent is checked.
+   * @param msg the {@link HeartbeatTickMsg} message.
+   */
+  private void onHeartbeatTickMsg(HeartbeatTickMsg msg){
+    long now = System.currentTimeMillis();
+    if(children != null){
+      for(ActorRef child : children){
+        long lastSend = transport.lastSendTime(child);
+        if(lastSend < 0 || now - lastSend >= Config.HEARTBEAT_INTERVAL){
+          sendMessage(new HeartbeatMsg(), child);
+          heartbeatsSent++;
+        }else{
+          heartbeatsPiggybacked++;
+        }
+      }
+    }
+    checkParent(now);
+    scheduleHeartbeatTick();
+  }
+
+  /**
+   * Service method to check the suspicion level of the parent. The {@link DB database} is not watched, since it never
+   * crashes. When the parent changes, the failure detector starts again from the new one.
+   * @param now the current time, in milliseconds.
+   */
+  private void checkParent(long now){
+    if(this.parent == null || dbShards.contains(this.parent)){
+      watchedParent = null;
+      parentDetector = null;
+    }else if(!this.parent.equals(watchedParent)){
+      watchedParent = this.parent;
+      parentDetector = new PhiAccrualDetector(Config.HEARTBEAT_INTERVAL, Config.HEARTBEAT_ACCEPTABLE_PAUSE, now);
+    }else{
+      double phi = parentDetector.phi(now);
+      if(phi > Config.PHI_THRESHOLD)
+        onParentSuspected(phi, now);
+    }
+  }
+
+  /**
+   * This method is triggered when the failure detector suspects the L1 parent of this cache.
+   * Without waiting for the timeouts of the requests, all the pending requests sent to the parent fail at once and the
+   * {@link DB database} is set as the new parent, as after a {@link TimeoutReqMsg timeout}.
+   * @param phi the suspicion level of the parent.
+   * @param now the current time, in milliseconds.
+   */
+  private void onParentSuspected(double phi, long now){
+    parentSuspicions++;
+    LOGGER.warn("Cache " + this.id + "; parent_suspected: " + this.parent.path().name() + "; phi: " + String.format("%.1f", phi)
+            + "; silent_for_ms: " + (now - parentDetector.lastArrival()) + "; failing_pending_reqs: " + awaitedReqs.size() + ";");
+    for(IdMessage awaited : new ArrayList<>(awaitedReqs.values())){
+      if(this.parent.equals(reqLinks.get(awaited.reqId)))
+        failPendingReq(awaited);
+    }
+    watchedParent = null;
+    parentDetector = null;
+    changeParentToDb();
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link HeartbeatMsg} message from the parent. There is nothing to do:
+   * its arrival has already fed the failure detector.
+   * @param msg the {@link HeartbeatMsg} message.
+   */
+  private void onHeartbeatMsg(HeartbeatMsg msg){
+  }
+
+  /* -- END OF failure detection methods --------------------------------------------------------- */
+
+
+
   /* -- BEGIN OF debug methods --------------------------------------------------------- */
 
   /**
@@ -974,14 +1919,27 @@ public class Cache extends AbstractActor {
   private void onInternalStateMsg(InternalStateMsg msg) {
     StringBuilder sb = new StringBuilder();
     sb.append("INTERNAL_STATE: Cache " + this.id + "; items: [");
-    for(Integer k : savedItems.keySet()){
+    for(int k : savedItems.keys()){
       sb.append(k + ":" + savedItems.get(k) + ";");
     }
     sb.append("]; children: [");
     for(ActorRef ch : children){
       sb.append(ch.path().name() + ";");
     }
-    sb.append("]; Parent: " + parent.path().name() + "; Pending request: " + pendingReq.keySet());
+    sb.append("]; Parent: " + parent.path().name() + "; Pending request: " + Arrays.toString(pendingReq.keys()));
+    sb.append("; capacity: " + savedItems.capacity() + "; hits: " + savedItems.hits() + "; misses: " + savedItems.misses());
+    sb.append("; hit_ratio: " + String.format("%.2f", savedItems.hitRatio()) + "; evictions: " + savedItems.evictions() + ";");
+    sb.append(" parked_reads_answered: " + parkedReadsAnswered + "; parked_reads_expired: " + parkedReadsExpired + ";");
+    sb.append(" coalesced_reads: " + coalescedReadsCount + "; reads_in_flight: " + inFlightReads.size() + ";");
+    sb.append(" rtt: [");
+    for(Map.Entry<ActorRef, RttEstimator> e : rtts.entrySet())
+      sb.append(" " + e.getKey().path().name() + ": { " + e.getValue() + " }");
+    sb.append(" ];");
+    sb.append(" multi_read_hits: " + multiReadHits + "; multi_reads_pending: " + multiReads.size() + "; multi_writes_pending: " + multiWriteKeys.size() + ";");
+    sb.append(" held_copies: " + grants.size() + "; sharer_entries: " + sharers.size() + "; sends_skipped_by_directory: " + skippedSends + ";");
+    sb.append(" sent_messages: " + sentMessages + "; batched_messages: " + batchedMessages + "; in_flight_messages: " + transport.inFlight() + "; lost_messages: " + transport.lost() + ";");
+    sb.append(" heartbeats_sent: " + heartbeatsSent + "; heartbeats_piggybacked: " + heartbeatsPiggybacked + "; heartbeat_overhead: "
+            + String.format("%.3f", sentMessages == 0 ? 0.0 : (double) heartbeatsSent / sentMessages) + "; parent_suspicions: " + parentSuspicions + ";");
     LOGGER.debug(sb);
   }
 
@@ -1005,6 +1963,7 @@ public class Cache extends AbstractActor {
             .match(CritReadRespMsg.class, this::onCritReadRespMsg)
             .match(CritWriteReqMsg.class, this::onCritWriteReqMsg)
             .match(CritRefillMsg.class, this::onCritRefillMsg)
+            .match(BatchMsg.class, this::onBatchMsg)
             .match(RefreshItemReqMsg.class, this::onRefreshItemReqMsg)
             .match(RefreshItemRespMsg.class, this::onRefreshItemRespMsg)
             .match(ReadReqMsg.class, this::onReadReqMsg)
@@ -1012,6 +1971,10 @@ public class Cache extends AbstractActor {
             .match(InvalidationItemMsg.class, this::onInvalidationItemMsg)
             .match(InvalidationItemConfirmMsg.class, this::onInvalidationItemConfirmMsg)
             .match(WriteReqMsg.class, this::onWriteReqMsg)
+            .match(MultiReadReqMsg.class, this::onMultiReadReqMsg)
+            .match(MultiReadRespMsg.class, this::onMultiReadRespMsg)
+            .match(MultiWriteReqMsg.class, this::onMultiWriteReqMsg)
+            .match(MultiRefillMsg.class, this::onMultiRefillMsg)
             .match(RefillMsg.class, this::onRefillMsg)
             .match(InternalStateMsg.class, this::onInternalStateMsg)
             .match(IsStillParentReqMsg.class, this::onIsStillParentReqMsg)
@@ -1019,10 +1982,17 @@ public class Cache extends AbstractActor {
             .match(CrashDuringMulticastMsg.class, this::onCrashDuringMulticastMsg)
             .match(CrashMsg.class, this::onCrashMsg)
             .match(TimeoutReqMsg.class, this::onTimeoutReqMsg)
+            .match(TimerTickMsg.class, this::onTimerTickMsg)
             .match(StartRefreshMsg.class, this::onStartRefreshMsg)
             .match(TimeoutUpdateCWMsg.class, this::onTimeoutUpdateCWMsg)
+            .match(TimeoutParkedReadMsg.class, this::onTimeoutParkedReadMsg)
+            .match(ItemReleasedMsg.class, this::onItemReleasedMsg)
             .match(CritWriteErrorMsg.class, this::onCritWriteErrorMsg)
+            .match(ReqErrorMsg.class, this::onReqErrorMsg)
+            .match(CritWriteQueuedMsg.class, this::onCritWriteQueuedMsg)
             .match(SupportMsg.class, this::onSupportMsg)
+            .match(HeartbeatTickMsg.class, this::onHeartbeatTickMsg)
+            .match(HeartbeatMsg.class, this::onHeartbeatMsg)
             .build();
   }
 
@@ -1032,6 +2002,9 @@ public class Cache extends AbstractActor {
   final AbstractActor.Receive crashed() {
     return receiveBuilder()
             .match(RecoveryMsg.class, this::onRecoveryMsg)
+            .match(HeartbeatMsg.class, msg -> {})
+            .match(HeartbeatTickMsg.class, msg -> {})
+            .match(TimerTickMsg.class, this::onTimerTickMsg) // the timeouts expiring while crashed are ignored, as before the crash they were cancelled
             .matchAny(msg -> LOGGER.debug(getSelf().path().name() + " ignoring " + msg.getClass().getSimpleName() + " (crashed)"))
             .build();
   }
@@ -3,6 +3,15 @@ package EasyCache.Devices;
 import EasyCache.CacheType;
 import EasyCache.Config;
 import EasyCache.Messages.*;
+import EasyCache.Storage.BoundedItemStore;
+import EasyCache.Storage.IntIntMap;
+import EasyCache.Storage.LongLongMap;
+import EasyCache.Storage.LongObjectMap;
+import EasyCache.Util.LatencyHistogram;
+import EasyCache.Network.RttEstimator;
+import EasyCache.Network.PhiAccrualDetector;
+import EasyCache.Util.TimerWheel;
+import EasyCache.Network.Transport;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
@@ -15,7 +24,9 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import scala.PartialFunction;
 import scala.concurrent.duration.Duration;
+import scala.runtime.BoxedUnit;
 
 /**
  * This cache represent the behaviour of a client.
@@ -45,14 +56,128 @@ public class Client extends AbstractActor {
   /**
    * map of all the pending request which are still waiting for a response, with the corresponding timer.
    */
-  private final Map<UUID, Cancellable> pendingReq;
+  private final LongLongMap pendingReq;
+  /**
+   * the timeouts of the pending requests, expired by the periodic {@link TimerTickMsg}.
+   */
+  private final TimerWheel timers;
+  private Cancellable timerTicker;
 
   /**
-   * Queue of all messages scheduled by the {@link EasyCache.ProjectRunner runner}, because a client could perform a new
-   * request only when the previous one has finished.
+   * Queue of all messages scheduled by the {@link EasyCache.ProjectRunner runner} that could not be performed yet, because
+   * the window of {@link Config#CLIENT_WINDOW} outstanding requests was full or another request on the same item was ongoing.
    */
   private Queue<IdMessage> waitingReqs;
 
+  /**
+   * map of the messages of the outstanding requests, by request id, used to know the items they are working on.
+   */
+  private final LongObjectMap<IdMessage> outstandingReqs;
+  /**
+   * map of the parent each outstanding request was sent to, by request id. A timeout changes the parent only if the request
+   * was sent to the current one, so that the timeouts of the other requests sent to a crashed parent do not change it again.
+   */
+  private final LongObjectMap<ActorRef> sentTo;
+  /**
+   * map of the actors to notify with a {@link RequestResultMsg} when a request ends, by request id. They are the senders of the
+   * doMessages not coming from the {@link EasyCache.ProjectRunner runner}, like the {@link EasyCache.EasyCacheClient}.
+   */
+  private final LongObjectMap<ActorRef> resultListeners;
+
+  /**
+   * map of the start times (in nanoseconds) of the pending requests, used to measure their latency.
+   */
+  private final LongObjectMap<Long> startTimes;
+  /**
+   * latencies of the completed {@link ReadReqMsg reads} and {@link CritReadReqMsg critical reads}. The reads served by
+   * the near cache are not included, they are counted by the hits of the near cache.
+   */
+  private final LatencyHistogram readLatencies;
+  /**
+   * latencies of the completed {@link WriteReqMsg writes} and {@link CritWriteReqMsg critical writes}.
+   */
+  private final LatencyHistogram writeLatencies;
+  /**
+   * number of requests ended with an error or a timeout.
+   */
+  private long failedRequests;
+  /**
+   * time (in nanoseconds) of the first request and of the last completed one, used to measure the throughput.
+   */
+  private long firstStartTime;
+  private long lastEndTime;
+  /**
+   * maximum number of requests outstanding at the same time.
+   */
+  private int maxOutstanding;
+
+  /**
+   * near cache of the client, with the items it has read recently, used to serve the non-critical reads without asking
+   * the parent. {@code null} if {@link Config#NEAR_CACHE_CAPACITY} is 0.
+   * The parent has recorded this client among the holders of each item (like a L1 {@link Cache} does with its children),
+   * so it forwards the {@link RefillMsg refills} and the {@link InvalidationItemMsg invalidations} of the items.
+   */
+  private final BoundedItemStore nearItems;
+  /**
+   * for each item of the near cache, the request id of the response carrying it, returned to the parent when the item is dropped.
+   */
+  private final Map<Integer, Long> nearGrants;
+  /**
+   * for each item of the near cache, the time (in nanoseconds) of the last value received, to expire it after {@link Config#NEAR_CACHE_TTL}.
+   */
+  private final Map<Integer, Long> nearUpdateTimes;
+  /**
+   * number of items of the near cache updated, dropped because of an invalidation, and expired.
+   */
+  private long nearUpdates;
+  private long nearInvalidations;
+  private long nearExpirations;
+  /**
+   * age (in milliseconds) of the oldest value served by the near cache, the observed staleness window.
+   */
+  private long maxNearHitAge;
+
+  /**
+   * map of the timers of the {@link ReadReqMsg reads} that will be hedged if they are late, by request id.
+   */
+  private final LongLongMap hedgeTimers;
+  /**
+   * request ids of the pending reads sent also to a second L2 {@link Cache}.
+   */
+  private final Set<Long> hedgedReads;
+  /**
+   * map of the times (in nanoseconds) at which the last writes of this client on each item were confirmed, the reads of
+   * these items are not hedged for {@link Config#HEDGE_AFTER_WRITE_DELAY} milliseconds.
+   */
+  private final Map<Integer, Long> lastWriteTimes;
+  /**
+   * number of hedged reads, and of the ones answered first by the second L2 {@link Cache}.
+   */
+  private long hedgesSent;
+  private long hedgeWins;
+
+  /**
+   * estimators of the round-trip time towards each L2 {@link Cache} used as parent, from which the timeouts of the
+   * requests sent to it are derived.
+   */
+  private final Map<ActorRef, RttEstimator> rtts;
+  /**
+   * transport of the messages sent by this client.
+   */
+  private final Transport transport;
+  /**
+   * the parent watched by the failure detector, fed by all the messages received from it.
+   */
+  private ActorRef watchedParent;
+  private PhiAccrualDetector parentDetector;
+  /**
+   * number of {@link HeartbeatMsg heartbeats} received from the parent.
+   */
+  private long heartbeatsReceived;
+  /**
+   * number of times the parent has been suspected by the failure detector.
+   */
+  private long parentSuspicions;
 
   private static final Logger LOGGER = LogManager.getLogger(Client.class);
 
@@ -65,54 +190,428 @@ public class Client extends AbstractActor {
   public Client(int id) {
     this.id = id;
     this.availableL2=new CopyOnWriteArrayList<>();
-    this.pendingReq=new HashMap<>();
+    this.pendingReq=new LongLongMap();
+    this.timers=new TimerWheel(Config.TIMER_WHEEL_SLOTS, Config.TIMER_WHEEL_TICK);
     this.waitingReqs=new LinkedList<>();
+    this.outstandingReqs=new LongObjectMap<>();
+    this.sentTo=new LongObjectMap<>();
+    this.resultListeners=new LongObjectMap<>();
+    this.nearItems=Config.NEAR_CACHE_CAPACITY > 0 ? new BoundedItemStore(Config.NEAR_CACHE_CAPACITY, Config.EVICTION_POLICY) : null;
+    this.nearGrants=new HashMap<>();
+    this.nearUpdateTimes=new HashMap<>();
+    this.hedgeTimers=new LongLongMap();
+    this.hedgedReads=new HashSet<>();
+    this.lastWriteTimes=new HashMap<>();
+    this.rtts=new HashMap<>();
+    this.transport=Transport.create(Config.TRANSPORT, getContext().getSystem(), getSelf());
+    if(this.nearItems != null)
+      this.nearItems.setEvictionListener(this::releaseNearItem);
+    this.startTimes=new LongObjectMap<>();
+    this.readLatencies=new LatencyHistogram();
+    this.writeLatencies=new LatencyHistogram();
   }
 
   static public Props props(int id) {
     return Props.create(Client.class, () -> new Client(id));
   }
 
+  /**
+   * Starts the periodic {@link HeartbeatTickMsg ticks} checking the parent and the {@link TimerTickMsg timer ticks}.
+   */
+  @Override
+  public void preStart() {
+    scheduleHeartbeatTick();
+    timerTicker = getContext().system().scheduler().scheduleWithFixedDelay(
+            Duration.create(Config.TIMER_WHEEL_TICK, TimeUnit.MILLISECONDS),        // first tick
+            Duration.create(Config.TIMER_WHEEL_TICK, TimeUnit.MILLISECONDS),        // period of the ticks
+            getSelf(),                                          // destination actor reference
+            new TimerTickMsg(),                                  // the message to send
+            getContext().system().dispatcher(),                 // system dispatcher
+            getSelf()                                           // source of the message (myself)
+    );
+  }
+
+  @Override
+  public void postStop() {
+    timerTicker.cancel();
+  }
+
+  /**
+   * Feeds the failure detector of the parent with every message received from it.
+   */
+  @Override
+  public void aroundReceive(PartialFunction<Object, BoxedUnit> receive, Object msg) {
+    if(watchedParent != null && watchedParent.equals(getSender()))
+      parentDetector.heartbeat(System.currentTimeMillis());
+    super.aroundReceive(receive, msg);
+  }
+
   /* -- Actor behaviour ----------------------------------------------------- */
 
 
   /* -- START OF Sending message methods ----------------------------------------------------- */
 
   /**
-   * This method is used to send a {@link Message} to the parent, a L2 {@link Cache}, simulating also a network delay.
+   * This method is used to send a {@link Message} to the parent, a L2 {@link Cache}, through the {@link Transport transport} of this client.
    * @param m the {@link Message} to send.
    */
   private void sendMessage(Message m){
-    int delay = rnd.nextInt(Config.SEND_MAX_DELAY);
-    getContext().system().scheduler().scheduleOnce(
-            Duration.create(delay, TimeUnit.MILLISECONDS),        // when to send the message
-            parent,                                          // destination actor reference
-            m,                                  // the message to send
-            getContext().system().dispatcher(),                 // system dispatcher
-            getSelf()                                           // source of the message (myself)
-    );
+    transport.send(m, parent);
   }
 
   /**
-   * This method is used to send a {@link Message} to a given actor, simulating also a network delay.
+   * This method is used to send a {@link Message} to a given actor, through the {@link Transport transport} of this client.
    * @param m the {@link Message} to send.
    * @param dest the reference of the destination actor.
    */
   private void sendMessage(Message m, ActorRef dest){
-    int delay = rnd.nextInt(Config.SEND_MAX_DELAY);
-    getContext().system().scheduler().scheduleOnce(
-            Duration.create(delay, TimeUnit.MILLISECONDS),        // when to send the message
-            dest,                                          // destination actor reference
-            m,                                  // the message to send
-            getContext().system().dispatcher(),                 // system dispatcher
-            getSelf()                                           // source of the message (myself)
-    );
+    transport.send(m, dest);
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link TimerTickMsg} message: the expired timeouts of the timer wheel
+   * are sent to this actor, like the scheduler would do.
+   * @param msg the {@link TimerTickMsg} message.
+   */
+  private void onTimerTickMsg(TimerTickMsg msg){
+    timers.advance(timeout -> getSelf().tell(timeout, getSelf()));
+  }
+
+  /**
+   * Service method to record the latency of a completed request.
+   * @param reqId the id of the request.
+   * @param histogram the histogram of the type of the request.
+   */
+  private void recordLatency(long reqId, LatencyHistogram histogram){
+    Long start = startTimes.remove(reqId);
+    if(start != null){
+      lastEndTime = System.nanoTime();
+      long millis = TimeUnit.NANOSECONDS.toMillis(lastEndTime - start);
+      histogram.record(millis);
+      // the critical writes have a fixed timeout, and a hedged read cannot be matched to one of its sends
+      boolean sampled = !(outstandingReqs.get(reqId) instanceof DoCritWriteMsg) && !hedgedReads.contains(reqId);
+      if(sampled && getSender().equals(sentTo.get(reqId)))
+        rttOf(getSender()).sample(millis);
+    }
+  }
+
+  /**
+   * @param l2 a L2 {@link Cache}.
+   * @return the estimator of the round-trip time towards the given L2 {@link Cache}.
+   */
+  private RttEstimator rttOf(ActorRef l2){
+    return rtts.computeIfAbsent(l2, k -> new RttEstimator(Config.TIMEOUT_CLIENT, Config.TIMEOUT_CLIENT_MIN, Config.TIMEOUT_CLIENT_MAX));
+  }
+
+  /**
+   * Service method to record the arrival of a response for a request no longer pending, to count the false timeouts.
+   * @param reqId the id of the request.
+   */
+  private void recordLateResponse(long reqId){
+    RttEstimator rtt = rtts.get(getSender());
+    if(rtt != null)
+      rtt.recordLateResponse(reqId);
+  }
+
+  /**
+   * Service method to record that a request ended with an error or a timeout.
+   * @param reqId the id of the request.
+   */
+  private void recordFailure(long reqId){
+    if(startTimes.remove(reqId) != null)
+      failedRequests++;
+    ActorRef listener = resultListeners.remove(reqId);
+    if(listener != null)
+      listener.tell(RequestResultMsg.failure(reqId), getSelf());
+  }
+
+  /**
+   * Service method to notify the result of a successful request to the actor which asked it, if any.
+   * The result is delivered without network delay: the listener runs on the same node as this client.
+   * @param reqId the id of the request.
+   * @param value the value read, {@link IntIntMap#ABSENT} for writes.
+   */
+  private void notifyResult(long reqId, int value){
+    ActorRef listener = resultListeners.remove(reqId);
+    if(listener != null)
+      listener.tell(new RequestResultMsg(reqId, true, value), getSelf());
+  }
+
+  /**
+   * @param msg the doMessage (or the message) of a request.
+   * @return the keys of the items of the request.
+   */
+  private static int[] keysOf(IdMessage msg){
+    if(msg instanceof DoMultiReadMsg)
+      return ((DoMultiReadMsg) msg).keys;
+    if(msg instanceof DoMultiWriteMsg)
+      return ((DoMultiWriteMsg) msg).keys;
+    if(msg instanceof MultiReadReqMsg)
+      return ((MultiReadReqMsg) msg).keys;
+    if(msg instanceof MultiWriteReqMsg)
+      return ((MultiWriteReqMsg) msg).keys;
+    return new int[]{msg.key};
+  }
+
+  /**
+   * Service method to check if a request can start: the window of outstanding requests must not be full and no
+   * outstanding request can be on one of its items, so that the requests on the same item are performed in order.
+   * @param msg the doMessage of the request.
+   * @param busyKeys other keys the request must not work on.
+   * @return {@code true} if the request can start.
+   */
+  private boolean canStart(IdMessage msg, Set<Integer> busyKeys){
+    if(pendingReq.size() >= Config.CLIENT_WINDOW)
+      return false;
+    for(int key : keysOf(msg)){
+      if(busyKeys.contains(key))
+        return false;
+      for(IdMessage outstanding : outstandingReqs.values()){
+        for(int outstandingKey : keysOf(outstanding)){
+          if(outstandingKey == key)
+            return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Service method to perform a request scheduled by the {@link EasyCache.ProjectRunner runner} (or by another actor, which
+   * will be notified of its result), or to append it to the waitingReqs queue if it cannot start yet (it is appended also if an earlier request on one of its items is waiting).
+   * @param msg the doMessage of the request.
+   */
+  private void submit(IdMessage msg){
+    if(!getSender().equals(getContext().getSystem().deadLetters()))
+      resultListeners.put(msg.reqId, getSender());
+    Set<Integer> waitingKeys = new HashSet<>();
+    for(IdMessage waiting : waitingReqs){
+      for(int key : keysOf(waiting))
+        waitingKeys.add(key);
+    }
+    if(canStart(msg, waitingKeys))
+      start(msg);
+    else
+      this.waitingReqs.add(msg);
+  }
+
+  /**
+   * Service method to start the waiting requests that can start, in order. A request that cannot start blocks the later
+   * requests on its items, the others can overtake it.
+   */
+  private void startWaiting(){
+    Set<Integer> blockedKeys = new HashSet<>();
+    Iterator<IdMessage> it = waitingReqs.iterator();
+    while(it.hasNext() && pendingReq.size() < Config.CLIENT_WINDOW){
+      IdMessage msg = it.next();
+      if(canStart(msg, blockedKeys)){
+        it.remove();
+        start(msg);
+      }else{
+        for(int key : keysOf(msg))
+          blockedKeys.add(key);
+      }
+    }
+  }
+
+  /**
+   * Service method to start a request, recording it among the outstanding ones. A {@link DoReadMsg read} of an item in
+   * the near cache is served immediately instead.
+   * @param msg the doMessage of the request.
+   */
+  private void start(IdMessage msg){
+    if(firstStartTime == 0)
+      firstStartTime = System.nanoTime();
+    if(msg instanceof DoReadMsg && readFromNearCache((DoReadMsg) msg))
+      return;
+    outstandingReqs.put(msg.reqId, msg);
+    sentTo.put(msg.reqId, this.parent);
+    doNext(msg);
+    maxOutstanding = Math.max(maxOutstanding, pendingReq.size());
+  }
+
+  /**
+   * Service method to end an outstanding request, cancelling its timer.
+   * @param reqId the id of the request.
+   */
+  private void endRequest(long reqId){
+    timers.cancel(pendingReq.remove(reqId));
+    long hedgeTimer = hedgeTimers.remove(reqId);
+    if(hedgeTimer != LongLongMap.ABSENT)
+      timers.cancel(hedgeTimer);
+    hedgedReads.remove(reqId);
+    outstandingReqs.remove(reqId);
+    sentTo.remove(reqId);
   }
 
   /* -- END OF Sending message methods ----------------------------------------------------- */
 
 
 
+  /* -- START OF near cache methods ----------------------------------------------------- */
+
+  /**
+   * Service method to store in the near cache the value of an item received with a response of the parent, which has
+   * recorded this client as a holder of the item. If the value is not stored (the near cache is disabled, or the response
+   * comes from a previous parent), the copy is released at once.
+   * @param key the key of the item.
+   * @param value the value of the item, {@link IntIntMap#ABSENT} if it does not exist.
+   * @param grant the request id of the response.
+   */
+  private void storeNearItem(int key, int value, long grant){
+    if(value == IntIntMap.ABSENT)
+      return;
+    if(nearItems == null || !getSender().equals(this.parent)){
+      sendMessage(new ItemReleasedMsg(key, grant), getSender());
+      return;
+    }
+    nearGrants.put(key, grant);
+    nearUpdateTimes.put(key, System.nanoTime());
+    nearItems.put(key, value);
+  }
+
+  /**
+   * Service method to tell the parent that this client no longer holds an item of the near cache. It is called when an
+   * item is evicted or expires.
+   * @param key the key of the item.
+   */
+  private void releaseNearItem(int key){
+    nearUpdateTimes.remove(key);
+    Long grant = nearGrants.remove(key);
+    if(grant != null)
+      sendMessage(new ItemReleasedMsg(key, grant));
+  }
+
+  /**
+   * Service method to drop the items of a failed request from the near cache: the request may have been applied or not,
+   * the next reads will ask the parent.
+   * @param request the failed request.
+   */
+  private void forgetNearItems(IdMessage request){
+    if(nearItems == null)
+      return;
+    for(int key : keysOf(request)){
+      if(nearItems.containsKey(key)){
+        nearItems.remove(key);
+        releaseNearItem(key);
+      }
+    }
+  }
+
+  /**
+   * Service method to drop an item of the near cache that the parent no longer updates.
+   * @param key the key of the item.
+   */
+  private void dropNearItem(int key){
+    if(nearItems == null || !nearItems.containsKey(key))
+      return;
+    nearItems.remove(key);
+    nearGrants.remove(key);
+    nearUpdateTimes.remove(key);
+    nearInvalidations++;
+  }
+
+  /**
+   * Service method to drop all the items of the near cache, when the parent changes or recovers from a crash: the updates
+   * of the items will not be forwarded anymore.
+   */
+  private void clearNearCache(){
+    if(nearItems == null)
+      return;
+    nearItems.clear();
+    nearGrants.clear();
+    nearUpdateTimes.clear();
+  }
+
+  /**
+   * Service method to serve a {@link DoReadMsg read} from the near cache, if the item is there and is not expired.
+   * It is called when the read starts, so no other request on the item is outstanding or waiting before it: the read
+   * cannot overtake a write of this client.
+   * @param msg the {@link DoReadMsg} message which contains the key of the item to read.
+   * @return {@code true} if the read has been served.
+   */
+  private boolean readFromNearCache(DoReadMsg msg){
+    if(nearItems == null || msg instanceof DoCritReadMsg)
+      return false;
+    Long updateTime = nearUpdateTimes.get(msg.key);
+    if(updateTime != null && System.nanoTime() - updateTime > TimeUnit.MILLISECONDS.toNanos(Config.NEAR_CACHE_TTL)){
+      nearItems.remove(msg.key);
+      releaseNearItem(msg.key);
+      nearExpirations++;
+    }
+    int value = nearItems.read(msg.key);
+    if(value == IntIntMap.ABSENT)
+      return false;
+    long age = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nearUpdateTimes.get(msg.key));
+    maxNearHitAge = Math.max(maxNearHitAge, age);
+    LOGGER.debug("Client " + this.id + "; read_response_for_item: " + msg.key + " = " + value + "; near_cache_hit; age_ms: " + age + "; MSG_id: " + msg.reqId + ";");
+    notifyResult(msg.reqId, value);
+    return true;
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link RefillMsg} (or {@link CritRefillMsg}) message, forwarded by
+   * the parent because this client holds the item in its near cache. The item is updated, or dropped if the
+   * {@link Config#writePolicyOf(int) write policy} of the item is {@link EasyCache.WritePolicyType#INVALIDATE}.
+   * @param msg the {@link RefillMsg} message which contains the key of the updated item and the new value.
+   */
+  private void onRefillMsg(RefillMsg msg){
+    if(msg instanceof MultiRefillMsg){
+      MultiRefillMsg multi = (MultiRefillMsg) msg;
+      for(int i = 0; i < multi.keys.length; i++)
+        refillNearItem(multi.keys[i], multi.newValues[i]);
+    }else{
+      refillNearItem(msg.key, msg.newValue);
+    }
+  }
+
+  private void refillNearItem(int key, int value){
+    if(nearItems == null || !nearItems.containsKey(key))
+      return;
+    if(Config.writePolicyOf(key) == EasyCache.WritePolicyType.INVALIDATE){ // the parent has already forgotten this client
+      dropNearItem(key);
+    }else{
+      nearItems.put(key, value);
+      nearUpdateTimes.put(key, System.nanoTime());
+      nearUpdates++;
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link InvalidationItemMsg} message, forwarded by the parent because
+   * a critical write is performing on an item of the near cache. The item is dropped, the parent has already forgotten
+   * this client.
+   * @param msg the {@link InvalidationItemMsg} message which contains the key of the item to drop.
+   */
+  private void onInvalidationItemMsg(InvalidationItemMsg msg){
+    dropNearItem(msg.key);
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link BatchMsg} message, that carries the {@link RefillMsg refills}
+   * and {@link InvalidationItemMsg invalidations} of the near cache sent together by the parent.
+   * @param msg the {@link BatchMsg} message.
+   */
+  private void onBatchMsg(BatchMsg msg){
+    for(Message m : msg.msgs){
+      if(m instanceof InvalidationItemMsg)
+        onInvalidationItemMsg((InvalidationItemMsg) m);
+      else if(m instanceof RefillMsg)
+        onRefillMsg((RefillMsg) m);
+    }
+  }
+
+  private String nearItemsToString(){
+    StringBuilder sb = new StringBuilder("[");
+    for(int key : nearItems.keys())
+      sb.append(key).append(":").append(nearItems.get(key)).append(";");
+    return sb.append("]").toString();
+  }
+
+  /* -- END OF near cache methods ----------------------------------------------------- */
+
+
+
   /* -- START OF Configuration message methods ----------------------------------------------------- */
 
   /**
@@ -149,99 +648,129 @@ public class Client extends AbstractActor {
   /**
    * This method is used to handle the arrival of a {@link DoReadMsg} message.
    * The message is sent by the {@link EasyCache.ProjectRunner runner} to schedule a new {@link ReadReqMsg}.
-   * If there is another ongoing request, this message is appended in a queue. Otherwise a {@link ReadReqMsg} is immediately
-   * performed.
+   * If the window of outstanding requests is full, or there is an ongoing request on the same item, this message is appended
+   * in a queue. Otherwise a {@link ReadReqMsg} is immediately performed.
    * @param msg the {@link DoReadMsg} message which contains the key of the item to read.
    */
   private void onDoReadMsg(DoReadMsg msg){
-    if (this.pendingReq.size()>0){
-      this.waitingReqs.add(msg);
-    }else{
-      doReadReq(msg);
-    }
+    submit(msg);
   }
 
   /**
    * This method will perform the actual {@link ReadReqMsg read operation}.
-   * First the client will create a {@link ReadReqMsg}, pushing itself in the responsePath stack. Then it sends the
-   * {@link ReadReqMsg} to its parent.
+   * First the client will create a {@link ReadReqMsg}. Then it sends the {@link ReadReqMsg} to its parent.
    * It add this request to pendingReq list, setting a timer to check for timeouts of upper layers nodes.
    * By adding to the pendingReq list, it will not send new request until a corresponding {@link ReadRespMsg} or {@link TimeoutReqMsg}
    * is received.
    * @param msg the {@link DoReadMsg} message which contains the key of the item to read.
    */
   private void doReadReq(DoReadMsg msg) {
-    ReadReqMsg msgToSend = new ReadReqMsg(msg.key, msg.uuid);
-    msgToSend.responsePath.push(getSelf());
+    ReadReqMsg msgToSend = new ReadReqMsg(msg.key, msg.reqId);
     sendMessage(msgToSend);
-    LOGGER.debug("Client " + this.id + "; starting_read_request_for_item: " + msgToSend.key + "; MSG_ID: " + msgToSend.uuid + ";");
-    pendingReq.put(msgToSend.uuid,
-            getContext().system().scheduler().scheduleOnce(
-                    Duration.create(Config.TIMEOUT_CLIENT, TimeUnit.MILLISECONDS),        // when to send the message
-                    getSelf(),                                          // destination actor reference
-                    new TimeoutReqMsg(msg),                                  // the message to send
-                    getContext().system().dispatcher(),                 // system dispatcher
-                    getSelf()                                           // source of the message (myself)
-            ));
+    LOGGER.debug("Client " + this.id + "; starting_read_request_for_item: " + msgToSend.key + "; MSG_ID: " + msgToSend.reqId + ";");
+    startTimes.put(msgToSend.reqId, System.nanoTime());
+    pendingReq.put(msgToSend.reqId,
+            timers.schedule(rttOf(parent).timeout(), new TimeoutReqMsg(msg)));
+    if(Config.HEDGED_READS && availableL2.size() > 1 && !recentlyWritten(msg.key)){
+      hedgeTimers.put(msgToSend.reqId,
+              timers.schedule(hedgeDelay(), new HedgeReadMsg(msg)));
+    }
+  }
+
+  /**
+   * @param key the key of an item.
+   * @return {@code true} if this client has written the item less than {@link Config#HEDGE_AFTER_WRITE_DELAY} milliseconds
+   * ago: another L2 {@link Cache} could still answer the value before the write.
+   */
+  private boolean recentlyWritten(int key){
+    Long writeTime = lastWriteTimes.get(key);
+    if(writeTime == null)
+      return false;
+    if(System.nanoTime() - writeTime < TimeUnit.MILLISECONDS.toNanos(Config.HEDGE_AFTER_WRITE_DELAY))
+      return true;
+    lastWriteTimes.remove(key);
+    return false;
+  }
+
+  /**
+   * @return the time (in milliseconds) after which a read is hedged: the {@link Config#HEDGE_PERCENTILE} of the latencies
+   * of the reads of this client, at least {@link Config#HEDGE_MIN_DELAY}.
+   */
+  private long hedgeDelay(){
+    return Math.max(Config.HEDGE_MIN_DELAY, readLatencies.percentile(Config.HEDGE_PERCENTILE));
+  }
 
+  /**
+   * This method is used to handle the arrival of a {@link HedgeReadMsg} message, when a {@link ReadReqMsg read} is late.
+   * The same request (with the same request id) is sent to another L2 {@link Cache} chosen at random, without changing the
+   * parent: the first response is taken and the other one is ignored.
+   * @param msg the {@link HedgeReadMsg} message which contains the late read.
+   */
+  private void onHedgeReadMsg(HedgeReadMsg msg){
+    long reqId = msg.awaitedMsg.reqId;
+    hedgeTimers.remove(reqId);
+    if(!pendingReq.containsKey(reqId))
+      return;
+    ActorRef hedge = availableL2.get(rnd.nextInt(availableL2.size()));
+    while(hedge.equals(sentTo.get(reqId))){
+      hedge = availableL2.get(rnd.nextInt(availableL2.size()));
+    }
+    ReadReqMsg msgToSend = new ReadReqMsg(msg.awaitedMsg.key, reqId);
+    sendMessage(msgToSend, hedge);
+    hedgedReads.add(reqId);
+    hedgesSent++;
+    LOGGER.debug("Client " + this.id + "; hedging_read_request_for_item: " + msgToSend.key + "; MSG_ID: " + reqId + "; send_to: " + hedge.path().name() + ";");
   }
 
   /**
    * This method is used to handle arrival of a {@link ReadRespMsg} message.
-   * The method prints the result (the value) of a {@link ReadReqMsg read request}.
+   * The method prints the result (the value) of a {@link ReadReqMsg read request}. If the read has been hedged, the
+   * first response is taken.
    * The timer of the associated {@link ReadReqMsg request} is cancelled.
-   * The method will also schedule the next request, if there are any in the waitingReqs list.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
    * @param msg the {@link ReadRespMsg} message which contains value of the requested item.
    */
   private void onReadRespMsg(ReadRespMsg msg) {
-    if(pendingReq.containsKey(msg.uuid)){
-      pendingReq.get(msg.uuid).cancel();
-      pendingReq.remove(msg.uuid);
-      LOGGER.debug("Client " + this.id + "; read_response_for_item: " + msg.key + " = " + msg.value +"; read_confirmed; MSG_id: " + msg.uuid + "; timeout_cancelled;");
-    }
-    if (!this.waitingReqs.isEmpty()){
-      IdMessage nextMsg=this.waitingReqs.remove();
-      doNext(nextMsg);
+    if(pendingReq.containsKey(msg.reqId)){
+      if(hedgedReads.contains(msg.reqId) && !getSender().equals(sentTo.get(msg.reqId)))
+        hedgeWins++;
+      recordLatency(msg.reqId, readLatencies);
+      endRequest(msg.reqId);
+      notifyResult(msg.reqId, msg.value);
+      LOGGER.debug("Client " + this.id + "; read_response_for_item: " + msg.key + " = " + (msg.value == IntIntMap.ABSENT ? "not_found" : msg.value) + "; read_confirmed; MSG_id: " + msg.reqId + "; timeout_cancelled;");
+    }else{
+      recordLateResponse(msg.reqId);
     }
+    storeNearItem(msg.key, msg.value, msg.reqId);
+    startWaiting();
   }
 
   /**
    * This method is used to handle the arrival of a {@link DoCritReadMsg} message.
    * The message is sent by the {@link EasyCache.ProjectRunner runner} to schedule a new {@link CritReadReqMsg}.
-   * If there is another ongoing request, this message is appended in a queue. Otherwise a {@link CritReadReqMsg} is immediately
-   * performed.
+   * If the window of outstanding requests is full, or there is an ongoing request on the same item, this message is appended
+   * in a queue. Otherwise a {@link CritReadReqMsg} is immediately performed.
    * @param msg the {@link DoCritReadMsg} message which contains the key of the item to read critically.
    */
   private void onDoCritReadMsg(DoCritReadMsg msg){
-    if (this.pendingReq.size()>0){
-      this.waitingReqs.add(msg);
-    }else{
-      doCritRead(msg);
-    }
+    submit(msg);
   }
 
   /**
    * This method will perform the actual {@link CritReadReqMsg critical read operation}.
-   * First the client will create a {@link CritReadReqMsg}, pushing itself in the responsePath stack. Then it sends the
-   * {@link CritReadReqMsg} to its parent.
+   * First the client will create a {@link CritReadReqMsg}. Then it sends the {@link CritReadReqMsg} to its parent.
    * It add this request to pendingReq list, setting a timer to check for timeouts of upper layers nodes.
    * By adding to the pendingReq list, it will not send new request until a corresponding {@link CritReadRespMsg} or {@link TimeoutReqMsg}
    * is received.
    * @param msg the {@link DoCritReadMsg} message which contains the key of the item to read critically.
    */
   private void doCritRead(DoCritReadMsg msg) {
-    CritReadReqMsg msgToSend = new CritReadReqMsg(msg.key, msg.uuid);
-    msgToSend.responsePath.push(getSelf());
+    CritReadReqMsg msgToSend = new CritReadReqMsg(msg.key, msg.reqId);
     sendMessage(msgToSend);
-    LOGGER.debug("Client " + this.id + "; starting_critical_read_request_for_item: " + msgToSend.key + "; MSG_ID: " + msgToSend.uuid + ";");
-    pendingReq.put(msgToSend.uuid,
-            getContext().system().scheduler().scheduleOnce(
-                    Duration.create(Config.TIMEOUT_CLIENT, TimeUnit.MILLISECONDS),        // when to send the message
-                    getSelf(),                                          // destination actor reference
-                    new TimeoutReqMsg(msg),                                  // the message to send
-                    getContext().system().dispatcher(),                 // system dispatcher
-                    getSelf()                                           // source of the message (myself)
-            ));
+    LOGGER.debug("Client " + this.id + "; starting_critical_read_request_for_item: " + msgToSend.key + "; MSG_ID: " + msgToSend.reqId + ";");
+    startTimes.put(msgToSend.reqId, System.nanoTime());
+    pendingReq.put(msgToSend.reqId,
+            timers.schedule(rttOf(parent).timeout(), new TimeoutReqMsg(msg)));
 
   }
 
@@ -249,132 +778,219 @@ public class Client extends AbstractActor {
    * This method is used to handle arrival of a {@link CritReadRespMsg} message.
    * The method prints the result (the value) of a {@link CritReadRespMsg critical read request}.
    * The timer of the associated {@link CritReadReqMsg request} is cancelled.
-   * The method will also schedule the next request, if there are any in the waitingReqs list.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
    * @param msg the {@link CritReadRespMsg} message which contains value of the requested item.
    */
   private void onCritReadRespMsg(CritReadRespMsg msg) {
-    if(pendingReq.containsKey(msg.uuid)) {
-      pendingReq.get(msg.uuid).cancel();
-      pendingReq.remove(msg.uuid);
-      LOGGER.debug("Client " + this.id + "; critical_read_response_for_item: " + msg.key + " = " + msg.value + "; read_confirmed; MSG_id: " + msg.uuid + "; timeout_cancelled;");
-    }
-    if (!this.waitingReqs.isEmpty()){
-      IdMessage nextMsg=this.waitingReqs.remove();
-      doNext(nextMsg);
+    if(pendingReq.containsKey(msg.reqId)) {
+      recordLatency(msg.reqId, readLatencies);
+      endRequest(msg.reqId);
+      notifyResult(msg.reqId, msg.value);
+      LOGGER.debug("Client " + this.id + "; critical_read_response_for_item: " + msg.key + " = " + (msg.value == IntIntMap.ABSENT ? "not_found" : msg.value) + "; read_confirmed; MSG_id: " + msg.reqId + "; timeout_cancelled;");
+    }else{
+      recordLateResponse(msg.reqId);
     }
+    storeNearItem(msg.key, msg.value, msg.reqId);
+    startWaiting();
   }
 
   /**
    * This method is used to handle the arrival of a {@link DoWriteMsg} message.
    * The message is sent by the {@link EasyCache.ProjectRunner runner} to schedule a new {@link WriteReqMsg}.
-   * If there is another ongoing request, this message is appended in a queue. Otherwise a {@link WriteReqMsg} is immediately
-   * performed.
+   * If the window of outstanding requests is full, or there is an ongoing request on the same item, this message is appended
+   * in a queue. Otherwise a {@link WriteReqMsg} is immediately performed.
    * @param msg the {@link DoWriteMsg} message which contains the key of the item to read and the new value to set.
    */
   private void onDoWriteMsg(DoWriteMsg msg){
-    if(this.pendingReq.size()>0){
-      this.waitingReqs.add(msg);
-    }else{
-      doWriteReq(msg);
-    }
+    submit(msg);
   }
 
   /**
    * This method will perform the actual {@link WriteReqMsg write operation}.
-   * First the client will create a {@link WriteReqMsg}, pushing itself in the responsePath stack. Then it sends the
-   * {@link WriteReqMsg} to its parent.
+   * First the client will create a {@link WriteReqMsg}. Then it sends the {@link WriteReqMsg} to its parent.
    * It add this request to pendingReq list, setting a timer to check for timeouts of upper layers nodes.
    * By adding to the pendingReq list, it will not send new request until a corresponding {@link WriteConfirmMsg} or {@link TimeoutReqMsg}
    * is received.
    * @param msg the {@link DoWriteMsg} message which contains the key of the item to write and the new value to set.
    */
   private void doWriteReq(DoWriteMsg msg){
-    WriteReqMsg msgToSend = new WriteReqMsg(msg.key, msg.uuid, msg.newValue, getSelf());
+    WriteReqMsg msgToSend = new WriteReqMsg(msg.key, msg.reqId, msg.newValue, getSelf());
     sendMessage(msgToSend);
-    LOGGER.debug("Client " + this.id + "; starting_write_request_for_item: " + msgToSend.key + " newValue: "+msgToSend.newValue + " msg_id: " + msg.uuid);
-    pendingReq.put(msgToSend.uuid,
-            getContext().system().scheduler().scheduleOnce(
-                    Duration.create(Config.TIMEOUT_CLIENT, TimeUnit.MILLISECONDS),        // when to send the message
-                    getSelf(),                                          // destination actor reference
-                    new TimeoutReqMsg(msg),                                  // the message to send
-                    getContext().system().dispatcher(),                 // system dispatcher
-                    getSelf()                                           // source of the message (myself)
-            ));
+    LOGGER.debug("Client " + this.id + "; starting_write_request_for_item: " + msgToSend.key + " newValue: "+msgToSend.newValue + " msg_id: " + msg.reqId);
+    startTimes.put(msgToSend.reqId, System.nanoTime());
+    pendingReq.put(msgToSend.reqId,
+            timers.schedule(rttOf(parent).timeout(), new TimeoutReqMsg(msg)));
   }
 
   /**
    * This method is used to handle arrival of a {@link WriteConfirmMsg} message.
    * The method prints the acknowledgment of a successful {@link WriteReqMsg write request}.
    * The timer of the associated {@link WriteReqMsg request} is cancelled.
-   * The method will also schedule the next request, if there are any in the waitingReqs list.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
    * @param msg the {@link WriteConfirmMsg} acknowledgment message of a successful {@link WriteReqMsg write request}.
    */
   private void onWriteConfirmMsg(WriteConfirmMsg msg){
-    if(pendingReq.containsKey(msg.uuid)) {
-      pendingReq.get(msg.uuid).cancel();
-      pendingReq.remove(msg.uuid);
-      LOGGER.debug("Client " + this.id + "; write_response_for_item: " + msg.key + "; write_confirmed; MSG_ID: " + msg.uuid + "; timeout_canceled;");
+    if(pendingReq.containsKey(msg.reqId)) {
+      recordLatency(msg.reqId, writeLatencies);
+      endRequest(msg.reqId);
+      notifyResult(msg.reqId, IntIntMap.ABSENT);
+      lastWriteTimes.put(msg.key, System.nanoTime());
+      LOGGER.debug("Client " + this.id + "; write_response_for_item: " + msg.key + "; write_confirmed; MSG_ID: " + msg.reqId + "; timeout_canceled;");
+    }else{
+      recordLateResponse(msg.reqId);
     }
-    if (!this.waitingReqs.isEmpty()){
-      IdMessage nextMsg=this.waitingReqs.remove();
-      doNext(nextMsg);
+    startWaiting();
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link DoMultiReadMsg} message.
+   * The message is sent by the {@link EasyCache.ProjectRunner runner} to schedule a new {@link MultiReadReqMsg}.
+   * If the window of outstanding requests is full, or there is an ongoing request on the same item, this message is appended
+   * in a queue. Otherwise a {@link MultiReadReqMsg} is immediately performed.
+   * @param msg the {@link DoMultiReadMsg} message which contains the keys of the items to read.
+   */
+  private void onDoMultiReadMsg(DoMultiReadMsg msg){
+    submit(msg);
+  }
+
+  /**
+   * This method will perform the actual {@link MultiReadReqMsg multi-read operation}, like {@link #doReadReq(DoReadMsg)}.
+   * @param msg the {@link DoMultiReadMsg} message which contains the keys of the items to read.
+   */
+  private void doMultiReadReq(DoMultiReadMsg msg) {
+    MultiReadReqMsg msgToSend = new MultiReadReqMsg(msg.keys, msg.reqId);
+    sendMessage(msgToSend);
+    LOGGER.debug("Client " + this.id + "; starting_multi_read_request_for_items: " + Arrays.toString(msgToSend.keys) + "; MSG_ID: " + msgToSend.reqId + ";");
+    startTimes.put(msgToSend.reqId, System.nanoTime());
+    pendingReq.put(msgToSend.reqId,
+            timers.schedule(rttOf(parent).timeout(), new TimeoutReqMsg(msg)));
+  }
+
+  /**
+   * This method is used to handle arrival of a {@link MultiReadRespMsg} message.
+   * The method prints the values of a {@link MultiReadReqMsg multi-read request}.
+   * The timer of the associated {@link MultiReadReqMsg request} is cancelled.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
+   * @param msg the {@link MultiReadRespMsg} message which contains the values of the requested items.
+   */
+  private void onMultiReadRespMsg(MultiReadRespMsg msg) {
+    if(pendingReq.containsKey(msg.reqId)){
+      recordLatency(msg.reqId, readLatencies);
+      endRequest(msg.reqId);
+      notifyResult(msg.reqId, IntIntMap.ABSENT);
+      LOGGER.debug("Client " + this.id + "; multi_read_response_for_items: " + Arrays.toString(msg.keys) + " = " + Arrays.toString(msg.values) + "; read_confirmed; MSG_id: " + msg.reqId + "; timeout_cancelled;");
+    }else{
+      recordLateResponse(msg.reqId);
+    }
+    for(int i = 0; i < msg.keys.length; i++)
+      storeNearItem(msg.keys[i], msg.values[i], msg.reqId);
+    startWaiting();
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link DoMultiWriteMsg} message.
+   * The message is sent by the {@link EasyCache.ProjectRunner runner} to schedule a new {@link MultiWriteReqMsg}.
+   * If the window of outstanding requests is full, or there is an ongoing request on the same item, this message is appended
+   * in a queue. Otherwise a {@link MultiWriteReqMsg} is immediately performed.
+   * @param msg the {@link DoMultiWriteMsg} message which contains the keys of the items to write and the new values to set.
+   */
+  private void onDoMultiWriteMsg(DoMultiWriteMsg msg){
+    submit(msg);
+  }
+
+  /**
+   * This method will perform the actual {@link MultiWriteReqMsg multi-write operation}, like {@link #doWriteReq(DoWriteMsg)}.
+   * @param msg the {@link DoMultiWriteMsg} message which contains the keys of the items to write and the new values to set.
+   */
+  private void doMultiWriteReq(DoMultiWriteMsg msg){
+    MultiWriteReqMsg msgToSend = new MultiWriteReqMsg(msg.keys, msg.reqId, msg.newValues, getSelf());
+    sendMessage(msgToSend);
+    LOGGER.debug("Client " + this.id + "; starting_multi_write_request_for_items: " + Arrays.toString(msgToSend.keys) + " newValues: " + Arrays.toString(msgToSend.newValues) + " msg_id: " + msg.reqId);
+    startTimes.put(msgToSend.reqId, System.nanoTime());
+    pendingReq.put(msgToSend.reqId,
+            timers.schedule(rttOf(parent).timeout(), new TimeoutReqMsg(msg)));
+  }
+
+  /**
+   * This method is used to handle arrival of a {@link MultiWriteConfirmMsg} message.
+   * The method prints the acknowledgment of a successful {@link MultiWriteReqMsg multi-write request}.
+   * The timer of the associated {@link MultiWriteReqMsg request} is cancelled.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
+   * @param msg the {@link MultiWriteConfirmMsg} acknowledgment message of a successful {@link MultiWriteReqMsg multi-write request}.
+   */
+  private void onMultiWriteConfirmMsg(MultiWriteConfirmMsg msg){
+    if(pendingReq.containsKey(msg.reqId)) {
+      recordLatency(msg.reqId, writeLatencies);
+      endRequest(msg.reqId);
+      notifyResult(msg.reqId, IntIntMap.ABSENT);
+      for(int key : msg.keys)
+        lastWriteTimes.put(key, System.nanoTime());
+      LOGGER.debug("Client " + this.id + "; multi_write_response_for_items: " + Arrays.toString(msg.keys) + "; write_confirmed; MSG_ID: " + msg.reqId + "; timeout_canceled;");
+    }else{
+      recordLateResponse(msg.reqId);
     }
+    startWaiting();
   }
 
   /**
    * This method is used to handle the arrival of a {@link DoCritWriteMsg} message.
    * The message is sent by the {@link EasyCache.ProjectRunner runner} to schedule a new {@link CritWriteReqMsg}.
-   * If there is another ongoing request, this message is appended in a queue. Otherwise a {@link CritWriteReqMsg} is immediately
-   * performed.
+   * If the window of outstanding requests is full, or there is an ongoing request on the same item, this message is appended
+   * in a queue. Otherwise a {@link CritWriteReqMsg} is immediately performed.
    * @param msg the {@link DoCritWriteMsg} message which contains the key of the item to read and the new value to set.
    */
   private void onDoCritWriteMsg(DoCritWriteMsg msg){
-    if(this.pendingReq.size()>0){
-      this.waitingReqs.add(msg);
-    }else{
-      doCritWriteReq(msg);
-    }
+    submit(msg);
   }
 
   /**
    * This method will perform the actual {@link CritWriteReqMsg write operation}.
-   * First the client will create a {@link CritWriteReqMsg}, pushing itself in the responsePath stack. Then it sends the
-   * {@link CritWriteReqMsg} to its parent.
+   * First the client will create a {@link CritWriteReqMsg}. Then it sends the {@link CritWriteReqMsg} to its parent.
    * It add this request to pendingReq list, setting a timer to check for timeouts of upper layers nodes.
    * By adding to the pendingReq list, it will not send new request until a corresponding {@link WriteConfirmMsg} or {@link TimeoutReqMsg}
    * or {@link CritWriteErrorMsg} is received.
    * @param msg the {@link DoCritWriteMsg} message which contains the key of the item to write and the new value to set.
    */
   private void doCritWriteReq(DoCritWriteMsg msg){
-    CritWriteReqMsg msgToSend = new CritWriteReqMsg(msg.key, msg.uuid, msg.newValue, getSelf());
+    CritWriteReqMsg msgToSend = new CritWriteReqMsg(msg.key, msg.reqId, msg.newValue, getSelf());
     sendMessage(msgToSend);
-    LOGGER.debug("Client " + this.id + "; starting_crit_write_request_for_item: " + msgToSend.key + "; newValue: "+msgToSend.newValue + " MSG_ID: " + msg.uuid + ";");
-    pendingReq.put(msgToSend.uuid,
-            getContext().system().scheduler().scheduleOnce(
-                    Duration.create(Config.TIMEOUT_CLIENT_CRIT_WRITE, TimeUnit.MILLISECONDS),        // when to send the message
-                    getSelf(),                                          // destination actor reference
-                    new TimeoutReqMsg(msg),                                  // the message to send
-                    getContext().system().dispatcher(),                 // system dispatcher
-                    getSelf()                                           // source of the message (myself)
-            ));
+    LOGGER.debug("Client " + this.id + "; starting_crit_write_request_for_item: " + msgToSend.key + "; newValue: "+msgToSend.newValue + " MSG_ID: " + msg.reqId + ";");
+    startTimes.put(msgToSend.reqId, System.nanoTime());
+    pendingReq.put(msgToSend.reqId,
+            timers.schedule(Config.TIMEOUT_CLIENT_CRIT_WRITE, new TimeoutReqMsg(msg)));
   }
 
   /**
    * This method is used to handle arrival of a {@link CritWriteConfirmMsg} message.
    * The method prints the acknowledgment of a successful {@link CritWriteReqMsg critical write request}.
    * The timer of the associated {@link CritWriteReqMsg request} is cancelled.
-   * The method will also schedule the next request, if there are any in the waitingReqs list.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
    * @param msg the {@link CritWriteConfirmMsg} acknowledgment message of a successful {@link CritWriteReqMsg critical write request}.
    */
   private void onCritWriteConfirmMsg(CritWriteConfirmMsg msg){
-    if(pendingReq.containsKey(msg.uuid)) {
-      pendingReq.get(msg.uuid).cancel();
-      pendingReq.remove(msg.uuid);
-      LOGGER.debug("Client " + this.id + "; crit_write_response_for_item: " + msg.key + "; critical_write_confirmed; timeout_canceled;" + " msg_id: " + msg.uuid);
+    if(pendingReq.containsKey(msg.reqId)) {
+      recordLatency(msg.reqId, writeLatencies);
+      endRequest(msg.reqId);
+      notifyResult(msg.reqId, IntIntMap.ABSENT);
+      lastWriteTimes.put(msg.key, System.nanoTime());
+      LOGGER.debug("Client " + this.id + "; crit_write_response_for_item: " + msg.key + "; critical_write_confirmed; timeout_canceled;" + " msg_id: " + msg.reqId);
     }
-    if (!this.waitingReqs.isEmpty()){
-      IdMessage nextMsg=this.waitingReqs.remove();
-      doNext(nextMsg);
+    startWaiting();
+  }
+
+  /**
+   * This method is used to handle arrival of a {@link CritWriteQueuedMsg} message.
+   * The {@link CritWriteReqMsg critical write request} has been queued by the {@link DB database} behind other critical
+   * writes on the same item, so the timer of the request is extended by one {@link Config#TIMEOUT_CLIENT_CRIT_WRITE}
+   * for each of them.
+   * @param msg the {@link CritWriteQueuedMsg} message which contains the queued request and its position in the queue.
+   */
+  private void onCritWriteQueuedMsg(CritWriteQueuedMsg msg){
+    if(pendingReq.containsKey(msg.reqId)) {
+      LOGGER.debug("Client " + this.id + "; crit_write_queued_for_item: " + msg.key + "; position: " + msg.position + "; timeout_extended;" + " msg_id: " + msg.reqId);
+      timers.cancel(pendingReq.get(msg.reqId));
+      pendingReq.put(msg.reqId,
+              timers.schedule((long) Config.TIMEOUT_CLIENT_CRIT_WRITE * (msg.position + 1), new TimeoutReqMsg(msg.request)));
     }
   }
 
@@ -382,19 +998,16 @@ public class Client extends AbstractActor {
    * This method is used to handle arrival of a {@link CritWriteErrorMsg} message.
    * The method prints the error associated to an unsuccessful {@link CritWriteReqMsg critical write request}.
    * The timer of the associated {@link CritWriteReqMsg request} is cancelled.
-   * The method will also schedule the next request, if there are any in the waitingReqs list.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
    * @param msg the {@link CritWriteErrorMsg} error message of an unsuccessful {@link CritWriteReqMsg critical write request}.
    */
   private void onCritWriteErrorMsg(CritWriteErrorMsg msg){
-    if(pendingReq.containsKey(msg.uuid)) {
+    if(pendingReq.containsKey(msg.reqId)) {
       LOGGER.error("Client " + this.id + "; crit_write_response_for_item: " + msg.key + "; crit_write_error; timeout_cancelled;");
-      pendingReq.get(msg.uuid).cancel();
-      pendingReq.remove(msg.uuid);
-    }
-    if (!this.waitingReqs.isEmpty()){
-      IdMessage nextMsg=this.waitingReqs.remove();
-      doNext(nextMsg);
+      endRequest(msg.reqId);
+      recordFailure(msg.reqId);
     }
+    startWaiting();
   }
 
 
@@ -415,6 +1028,10 @@ public class Client extends AbstractActor {
       doReadReq((DoReadMsg) msg);
     }else if (msg instanceof DoWriteMsg){
     doWriteReq((DoWriteMsg) msg);
+    }else if (msg instanceof DoMultiReadMsg){
+      doMultiReadReq((DoMultiReadMsg) msg);
+    }else if (msg instanceof DoMultiWriteMsg){
+      doMultiWriteReq((DoMultiWriteMsg) msg);
     }
   }
 
@@ -422,29 +1039,36 @@ public class Client extends AbstractActor {
    * This method is used to handle arrival of a {@link ReqErrorMsg} message.
    * This message is sent by the parent L2 cache when the request made from the client fail for the crash of an upper L1 {@link Cache}
    * or a request is performed for an item marked as invalid.
-   * The method prints the an appropriate error message.
+   * The method prints the an appropriate error message. The first error of a hedged {@link ReadReqMsg read} is ignored,
+   * because the other L2 {@link Cache} may still answer.
    * The timer of the associated request is cancelled.
-   * The method will also schedule the next request, if there are any in the waitingReqs list.
-   * @param msg the {@link ReqErrorMsg} message sent by the parent L2 cache. It contains the uuid of the failed request.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
+   * @param msg the {@link ReqErrorMsg} message sent by the parent L2 cache. It contains the request id of the failed request.
    */
   private void onReqErrorMsg(ReqErrorMsg msg) {
-    if(pendingReq.containsKey(msg.awaitedMsg.uuid)) {
-      pendingReq.get(msg.awaitedMsg.uuid).cancel();
-      pendingReq.remove(msg.awaitedMsg.uuid);
+    if(hedgedReads.remove(msg.awaitedMsg.reqId)){ // the other L2 cache may still answer
+      LOGGER.warn("Client " + this.id + "; error_in_hedged_read_req: " + msg.awaitedMsg.reqId + "; for key: " + msg.awaitedMsg.key + "; waiting_other_response;");
+      return;
+    }
+    if(pendingReq.containsKey(msg.awaitedMsg.reqId)) {
+      endRequest(msg.awaitedMsg.reqId);
+      recordFailure(msg.awaitedMsg.reqId);
     }
+    forgetNearItems(msg.awaitedMsg);
     if (msg.awaitedMsg instanceof CritReadReqMsg) {
-      LOGGER.error("Client " + this.id + "; error_in_crit_read_req: " + msg.awaitedMsg.uuid + "; for key: " + msg.awaitedMsg.key);
+      LOGGER.error("Client " + this.id + "; error_in_crit_read_req: " + msg.awaitedMsg.reqId + "; for key: " + msg.awaitedMsg.key);
     } else if (msg.awaitedMsg instanceof CritWriteReqMsg) {
-      LOGGER.error("Client " + this.id + "; error_in_crit_write_req: " + msg.awaitedMsg.uuid + "; for key: " + msg.awaitedMsg.key + "; value: " + ((CritWriteReqMsg) msg.awaitedMsg).newValue);
+      LOGGER.error("Client " + this.id + "; error_in_crit_write_req: " + msg.awaitedMsg.reqId + "; for key: " + msg.awaitedMsg.key + "; value: " + ((CritWriteReqMsg) msg.awaitedMsg).newValue);
     } else if (msg.awaitedMsg instanceof ReadReqMsg) {
-      LOGGER.error("Client " + this.id + "; error_in_read_req: " + msg.awaitedMsg.uuid + "; for key: " + msg.awaitedMsg.key);
+      LOGGER.error("Client " + this.id + "; error_in_read_req: " + msg.awaitedMsg.reqId + "; for key: " + msg.awaitedMsg.key);
     } else if (msg.awaitedMsg instanceof WriteReqMsg) {
-      LOGGER.error("Client " + this.id + "; error_in_write_req: " + msg.awaitedMsg.uuid + "; for key: " + msg.awaitedMsg.key + "; value: " + ((WriteReqMsg) msg.awaitedMsg).newValue);
-    }
-    if (!this.waitingReqs.isEmpty()){
-      IdMessage nextMsg=this.waitingReqs.remove();
-      doNext(nextMsg);
+      LOGGER.error("Client " + this.id + "; error_in_write_req: " + msg.awaitedMsg.reqId + "; for key: " + msg.awaitedMsg.key + "; value: " + ((WriteReqMsg) msg.awaitedMsg).newValue);
+    } else if (msg.awaitedMsg instanceof MultiReadReqMsg) {
+      LOGGER.error("Client " + this.id + "; error_in_multi_read_req: " + msg.awaitedMsg.reqId + "; for keys: " + Arrays.toString(((MultiReadReqMsg) msg.awaitedMsg).keys));
+    } else if (msg.awaitedMsg instanceof MultiWriteReqMsg) {
+      LOGGER.error("Client " + this.id + "; error_in_multi_write_req: " + msg.awaitedMsg.reqId + "; for keys: " + Arrays.toString(((MultiWriteReqMsg) msg.awaitedMsg).keys) + "; values: " + Arrays.toString(((MultiWriteReqMsg) msg.awaitedMsg).newValues));
     }
+    startWaiting();
   }
 
   /* -- END OF read and write message methods ----------------------------------------------------- */
@@ -456,34 +1080,47 @@ public class Client extends AbstractActor {
   /**
    * This method is used to handle the arrival of a {@link TimeoutReqMsg} message.
    * This is triggered when this client detects the crash of its parent while waiting for some response.
-   * The client detecting the crash will set another L2 {@link Cache} as its new parent and will notify L2 {@link Cache} of the change.
-   * The method will also schedule the next request, if there are any in the waitingReqs list.
+   * The client detecting the crash will set another L2 {@link Cache} as its new parent and will notify L2 {@link Cache} of the change,
+   * unless the request was sent to a previous parent (the parent has already been changed by the timeout of another request).
+   * The method will also start the next requests, if there are any in the waitingReqs list.
    * @param msg the {@link TimeoutReqMsg} message which contains a copy of the request that has failed.
    */
   private void onTimeoutReqMsg(TimeoutReqMsg msg) {
-    if (pendingReq.containsKey(msg.awaitedMsg.uuid)){
-      LOGGER.warn("Client " + this.id + "; timeout_while_await: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.uuid + "; ");
-      int newParentIdx= rnd.nextInt(availableL2.size());
-      while(availableL2.get(newParentIdx).equals(parent)){
-        newParentIdx= rnd.nextInt(availableL2.size());
-      }
-      LOGGER.debug("Client " + this.id + "; new_parent_selected: " + availableL2.get(newParentIdx).path().name());
-      this.parent=availableL2.get(newParentIdx);
-      AddChildMsg addMeMsg=new AddChildMsg(getSelf());
-      sendMessage(addMeMsg);
-      pendingReq.remove(msg.awaitedMsg.uuid);
-      if (!this.waitingReqs.isEmpty()){
-        IdMessage nextMsg=this.waitingReqs.remove();
-        doNext(nextMsg);
+    if (pendingReq.containsKey(msg.awaitedMsg.reqId)){
+      LOGGER.warn("Client " + this.id + "; timeout_while_await: " + msg.awaitedMsg.key + "; MSG_ID: " + msg.awaitedMsg.reqId + "; ");
+      Long start = startTimes.get(msg.awaitedMsg.reqId);
+      rttOf(sentTo.get(msg.awaitedMsg.reqId)).recordTimeout(msg.awaitedMsg.reqId, start == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      if(this.parent.equals(sentTo.get(msg.awaitedMsg.reqId))){
+        changeParent();
       }
+      endRequest(msg.awaitedMsg.reqId);
+      recordFailure(msg.awaitedMsg.reqId);
+      forgetNearItems(msg.awaitedMsg);
+      startWaiting();
     }else{
       LOGGER.warn("Client " + this.id + "; timeout_but_received_response for: " + msg.awaitedMsg.key);
     }
   }
 
+  /**
+   * Service method to set another L2 {@link Cache}, picked at random, as parent of this client, notifying it of the change.
+   */
+  private void changeParent(){
+    int newParentIdx= rnd.nextInt(availableL2.size());
+    while(availableL2.get(newParentIdx).equals(parent)){
+      newParentIdx= rnd.nextInt(availableL2.size());
+    }
+    LOGGER.debug("Client " + this.id + "; new_parent_selected: " + availableL2.get(newParentIdx).path().name());
+    this.parent=availableL2.get(newParentIdx);
+    clearNearCache();
+    AddChildMsg addMeMsg=new AddChildMsg(getSelf());
+    sendMessage(addMeMsg);
+  }
+
   /**
    * This method is used to handle the arrival of a {@link IsStillParentReqMsg} message.
-   * If the sender (a L2 {@link Cache cache}) is still its parent after recovery, this client will respond affirmatively.
+   * If the sender (a L2 {@link Cache cache}) is still its parent after recovery, this client will respond affirmatively
+   * and will drop its near cache, because the parent does not know anymore that this client holds the items.
    * @param msg the {@link IsStillParentReqMsg} message used to ask if this client is still the child of a L2 {@link Cache cache}.
    */
   private void onIsStillParentReqMsg(IsStillParentReqMsg msg) {
@@ -491,10 +1128,11 @@ public class Client extends AbstractActor {
     boolean response;
     if(sender.equals(this.parent)){
       response=true;
+      clearNearCache(); // the parent has lost the holders of its items while crashed
     }else{
       response=false;
     }
-    sendMessage(new IsStillParentRespMsg(response, msg.uuid), getSender());
+    sendMessage(new IsStillParentRespMsg(response, msg.reqId), getSender());
   }
 
   /**
@@ -502,31 +1140,129 @@ public class Client extends AbstractActor {
    * This message arrivies when an upper L1 {@link Cache} crashes and recovers before its child (L2 {@link Cache}) notices the crash.
    * Removing the timers from the pendingReq list at client is needed to avoid a timeout of client (with subsequent change of parent)
    * even if the parental L2 {@link Cache} has not crashed.
-   * @param msg the {@link CancelTimeoutMsg} message that contains the list of uuids of timers to cancel.
+   * The method will also start the next requests, if there are any in the waitingReqs list.
+   * @param msg the {@link CancelTimeoutMsg} message that contains the request ids of the timers to cancel.
    */
   private void onCancelTimeoutMsg(CancelTimeoutMsg msg) {
-    for(UUID uuid : msg.uuids){
-      if(pendingReq.containsKey(uuid)){
-        pendingReq.get(uuid).cancel();
-        pendingReq.remove(uuid);
-        LOGGER.error("Client " + this.id + "; error_in_req: " + uuid + "; timeout_cancelled");
+    for(long reqId : msg.reqIds){
+      if(pendingReq.containsKey(reqId)){
+        endRequest(reqId);
+        recordFailure(reqId);
+        LOGGER.error("Client " + this.id + "; error_in_req: " + reqId + "; timeout_cancelled");
       }
     }
+    startWaiting();
   }
 
   /* -- END OF crash handling message methods ----------------------------------------------------- */
 
 
 
+  /* -- START OF failure detection methods ----------------------------------------------------- */
+
+  /**
+   * Service method to schedule the next {@link HeartbeatTickMsg}, if the heartbeats are enabled.
+   */
+  private void scheduleHeartbeatTick(){
+    if(!Config.HEARTBEATS)
+      return;
+    getContext().system().scheduler().scheduleOnce(
+            Duration.create(Config.HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS),        // when to send the message
+            getSelf(),                                          // destination actor reference
+            new HeartbeatTickMsg(),                                  // the message to send
+            getContext().system().dispatcher(),                 // system dispatcher
+            getSelf()                                           // source of the message (myself)
+    );
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link HeartbeatTickMsg} message, every {@link Config#HEARTBEAT_INTERVAL}
+   * milliseconds, to check the suspicion level of the parent. When the parent changes, the failure detector starts again
+   * from the new one.
+   * @param msg the {@link HeartbeatTickMsg} message.
+   */
+  private void onHeartbeatTickMsg(HeartbeatTickMsg msg){
+    long now = System.currentTimeMillis();
+    if(this.parent != null){
+      if(!this.parent.equals(watchedParent)){
+        watchedParent = this.parent;
+        parentDetector = new PhiAccrualDetector(Config.HEARTBEAT_INTERVAL, Config.HEARTBEAT_ACCEPTABLE_PAUSE, now);
+      }else{
+        double phi = parentDetector.phi(now);
+        if(phi > Config.PHI_THRESHOLD)
+          onParentSuspected(phi, now);
+      }
+    }
+    scheduleHeartbeatTick();
+  }
+
+  /**
+   * This method is triggered when the failure detector suspects the parent of this client.
+   * Without waiting for their timeouts, all the outstanding requests sent to the parent fail at once, as if they had
+   * timed out: the first one changes the parent. If there are none, the parent is changed anyway, so that the next
+   * requests do not wait for a timeout.
+   * @param phi the suspicion level of the parent.
+   * @param now the current time, in milliseconds.
+   */
+  private void onParentSuspected(double phi, long now){
+    parentSuspicions++;
+    LOGGER.warn("Client " + this.id + "; parent_suspected: " + this.parent.path().name() + "; phi: " + String.format("%.1f", phi)
+            + "; silent_for_ms: " + (now - parentDetector.lastArrival()) + ";");
+    ActorRef suspected = this.parent;
+    List<Long> failed = new ArrayList<>();
+    sentTo.forEach((reqId, l2) -> {
+      if(suspected.equals(l2) && pendingReq.containsKey(reqId))
+        failed.add(reqId);
+    });
+    for(long reqId : failed)
+      onTimeoutReqMsg(new TimeoutReqMsg(outstandingReqs.get(reqId)));
+    if(this.parent.equals(suspected))
+      changeParent();
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link HeartbeatMsg} message from the parent, which has not sent
+   * any other message in the last interval. Its arrival has already fed the failure detector.
+   * @param msg the {@link HeartbeatMsg} message.
+   */
+  private void onHeartbeatMsg(HeartbeatMsg msg){
+    heartbeatsReceived++;
+  }
+
+  /* -- END OF failure detection methods ----------------------------------------------------- */
+
+
+
   /* -- START OF debug message methods ----------------------------------------------------- */
 
   /**
    * This method is triggered when a {@link InternalStateMsg} is received from the the {@link EasyCache.ProjectRunner runner}.
-   * This method is used for debugging. It will print the current state of the client: its id and its parent.
+   * This method is used for debugging. It will print the current state of the client: its id, its parent and the
+   * latencies and the throughput of its requests.
    * @param msg is the {@link InternalStateMsg} message, is an empty message used to print the internal state of the cache.
    */
   private void onInternalStateMsg(InternalStateMsg msg) {
-    LOGGER.debug("Client " + this.id + "; parent: " + this.parent.path().name());
+    long completed = readLatencies.count() + writeLatencies.count() + (nearItems == null ? 0 : nearItems.hits());
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(lastEndTime - firstStartTime);
+    LOGGER.debug("Client " + this.id + "; parent: " + this.parent.path().name() + "; read_latency: { " + readLatencies
+            + " } write_latency: { " + writeLatencies + " } failed_requests: " + failedRequests + "; window: " + Config.CLIENT_WINDOW
+            + "; max_outstanding: " + maxOutstanding + "; throughput_req_per_s: " + (elapsedMillis <= 0 ? 0 : completed * 1000 / elapsedMillis) + ";"
+            + " hedged_reads: " + hedgesSent + "; hedge_wins: " + hedgeWins + ";" + rttsToString()
+            + " heartbeats_received: " + heartbeatsReceived + "; parent_suspicions: " + parentSuspicions + ";"
+            + (nearItems == null ? "" : " near_cache: { hits: " + nearItems.hits() + "; misses: " + nearItems.misses() + "; hit_ratio: "
+            + String.format("%.2f", nearItems.hitRatio()) + "; updates: " + nearUpdates + "; invalidations: " + nearInvalidations
+            + "; expirations: " + nearExpirations + "; evictions: " + nearItems.evictions() + "; max_hit_age_ms: " + maxNearHitAge
+            + "; staleness_bound_ms: " + Config.NEAR_CACHE_TTL + "; items: " + nearItemsToString() + "; }"));
+  }
+
+  /**
+   * @return the estimators of the round-trip time towards the L2 {@link Cache caches}, to print them.
+   */
+  private String rttsToString(){
+    StringBuilder sb = new StringBuilder(" rtt: [");
+    for(Map.Entry<ActorRef, RttEstimator> e : rtts.entrySet())
+      sb.append(" " + e.getKey().path().name() + ": { " + e.getValue() + " }");
+    return sb.append(" ];").toString();
   }
 
   /* -- END OF debug message methods ----------------------------------------------------- */
@@ -547,12 +1283,24 @@ public class Client extends AbstractActor {
       .match(WriteConfirmMsg.class, this::onWriteConfirmMsg)
       .match(DoReadMsg.class, this::onDoReadMsg)
       .match(DoWriteMsg.class, this::onDoWriteMsg)
+      .match(DoMultiReadMsg.class, this::onDoMultiReadMsg)
+      .match(DoMultiWriteMsg.class, this::onDoMultiWriteMsg)
+      .match(MultiReadRespMsg.class, this::onMultiReadRespMsg)
+      .match(MultiWriteConfirmMsg.class, this::onMultiWriteConfirmMsg)
       .match(IsStillParentReqMsg.class, this::onIsStillParentReqMsg)
       .match(TimeoutReqMsg.class, this::onTimeoutReqMsg)
+      .match(TimerTickMsg.class, this::onTimerTickMsg)
+      .match(HedgeReadMsg.class, this::onHedgeReadMsg)
       .match(InternalStateMsg.class, this::onInternalStateMsg)
       .match(ReqErrorMsg.class, this::onReqErrorMsg)
       .match(CritWriteErrorMsg.class, this::onCritWriteErrorMsg)
+      .match(CritWriteQueuedMsg.class, this::onCritWriteQueuedMsg)
       .match(CancelTimeoutMsg.class, this::onCancelTimeoutMsg)
+      .match(RefillMsg.class, this::onRefillMsg)
+      .match(InvalidationItemMsg.class, this::onInvalidationItemMsg)
+      .match(BatchMsg.class, this::onBatchMsg)
+      .match(HeartbeatTickMsg.class, this::onHeartbeatTickMsg)
+      .match(HeartbeatMsg.class, this::onHeartbeatMsg)
       .build();
   }
 }
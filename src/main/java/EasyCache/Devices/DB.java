@@ -1,7 +1,18 @@
 package EasyCache.Devices;
 
 import EasyCache.Config;
+import EasyCache.ItemStoreType;
+import EasyCache.WritePolicyType;
 import EasyCache.Messages.*;
+import EasyCache.Storage.IntIntMap;
+import EasyCache.Storage.LongLongMap;
+import EasyCache.Storage.LongObjectMap;
+import EasyCache.Storage.ItemStore;
+import EasyCache.Storage.WriteAheadLog;
+import EasyCache.Util.SharerDirectory;
+import EasyCache.Network.RttEstimator;
+import EasyCache.Util.TimerWheel;
+import EasyCache.Network.Transport;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
@@ -12,56 +23,203 @@ import scala.concurrent.duration.Duration;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * This cache represent the behaviour of the database.
+ * This cache represent the behaviour of a shard of the database.
+ * Each shard owns the items whose key is assigned to it by {@link Config#dbShardOf(int)} and coordinates the
+ * {@link CritWriteReqMsg critical writes} on its items independently of the other shards.
  */
 public class DB extends AbstractActor {
-  /**
-   * Used to generate random value.
-   */
-  private Random rnd = new Random();
-
   /**
    * the list of children. At the beginning it is a list of L1 {@link Cache caches}. Then it could become a mixed list of
    * L2 and L1 {@link Cache caches}.
    */
   private List<ActorRef> children;
   /**
-   * numeric ID of the database.
+   * numeric ID of the database shard: -1 for the shard 0, -2 for the shard 1 and so on.
+   */
+  private final int id;
+  /**
+   * index of this shard, from 0 to {@link Config#N_DB_SHARDS} - 1.
+   */
+  private final int shard;
+
+  /**
+   * the items of this shard, as a map (key, value), kept in the {@link ItemStoreType backend} selected with
+   * {@link Config#DB_STORE}. A missing key is read as {@link IntIntMap#ABSENT}.
+   */
+  private ItemStore items;
+
+  /**
+   * lock protecting the items, read by the {@link DBReadWorker read workers} while this actor applies the writes.
+   * Writes are applied and their {@link RefillMsg refills} are scheduled while holding the write lock.
+   */
+  private final ReadWriteLock itemsLock;
+
+  /**
+   * the {@link DBReadWorker read workers} serving the {@link ReadReqMsg reads} and the {@link RefreshItemReqMsg refreshes}
+   * of this shard, empty if {@link Config#DB_READ_WORKERS} is 0.
+   */
+  private List<ActorRef> readWorkers;
+
+  /**
+   * index of the read worker that will receive the next read.
+   */
+  private int nextReadWorker;
+
+  /**
+   * number of requests served by the read workers.
+   */
+  private final AtomicLong servedReads;
+
+  /**
+   * the write-ahead log where writes are saved before being applied, {@code null} if {@link Config#WAL_ENABLED} is false.
+   */
+  private WriteAheadLog wal;
+
+  /**
+   * {@link RefillMsg refills} (also {@link CritRefillMsg critical}) of the writes appended to the write-ahead log and
+   * waiting for the next group commit to be applied and sent.
    */
-  private final int id = -1;
+  private List<RefillMsg> pendingCommit;
 
   /**
-   * the full set of items in the system, as a map (key, value).
+   * true if a {@link GroupCommitMsg} is scheduled.
    */
-  private HashMap<Integer, Integer> items;
+  private boolean groupCommitScheduled;
 
   /**
    * this map contains the set of children for which we have received a {@link InvalidationItemConfirmMsg} for a given
-   * {@link CritWriteReqMsg critical write request}, represent by its uuid.
+   * {@link CritWriteReqMsg critical write request}, represent by its request id.
    */
-  private Map<UUID, Set<ActorRef>> receivedInvalidAck;
+  private LongObjectMap<Set<ActorRef>> receivedInvalidAck;
 
   /**
    * map of all the critical write request for which we are waiting some {@link InvalidationItemConfirmMsg} with corresponding timer.
    */
-  private Map<UUID, Cancellable> invalidAckTimeouts;
+  private LongLongMap invalidAckTimeouts;
+  /**
+   * number of the critical writes still waiting for their {@link InvalidationItemConfirmMsg confirmations}, by timer of
+   * their invalidation round: the timer is cancelled when it drops to 0.
+   */
+  private LongLongMap pendingRoundWrites;
+  /**
+   * the timeouts of the invalidation rounds, expired by the periodic {@link TimerTickMsg}.
+   */
+  private final TimerWheel timers;
+  private Cancellable timerTicker;
+  /**
+   * start time of the invalidation round of each ongoing {@link CritWriteReqMsg critical write}, by id of the request.
+   */
+  private LongObjectMap<Long> roundStartTimes;
+  /**
+   * estimators of the time each child takes to confirm an {@link InvalidationItemMsg invalidation}, from which the timeout of
+   * the invalidation rounds is derived.
+   */
+  private final Map<ActorRef, RttEstimator> rtts;
 
   /**
-   * data structure containing the uuids of all ongoing {@link CritWriteReqMsg}, to easily send a {@link CritRefillMsg critical refill}
+   * data structure containing the request ids of all ongoing {@link CritWriteReqMsg}, to easily send a {@link CritRefillMsg critical refill}
    * after having received all the {@link InvalidationItemConfirmMsg invalid confirmations}.
    */
-  private Map<UUID, CritWriteReqMsg> critWrites;
+  private LongObjectMap<CritWriteReqMsg> critWrites;
+
+  /**
+   * the request id of the ongoing {@link CritWriteReqMsg critical write} for each item, to find it without scanning critWrites.
+   */
+  private Map<Integer, Long> activeCritWriteByKey;
+
+  /**
+   * for each item, the {@link CritWriteReqMsg critical writes} waiting for the ongoing one to end, in arrival order.
+   * A queued write starts as soon as the {@link CritRefillMsg} (or the {@link CritWriteErrorMsg}) of the previous one is sent.
+   */
+  private Map<Integer, ArrayDeque<CritWriteReqMsg>> queuedCritWrites;
 
   /**
-   * Time of last sending of message per children. It is used to guarantee fifoness in sending messages.
+   * number of {@link CritWriteReqMsg critical writes} currently queued, for all the items.
    */
-  private HashMap<ActorRef, Long> timeLastSendPerActor;
+  private int queuedCritWritesCount;
   /**
-   * Delay of last sent message. It is used to guarantee fifoness.
+   * number of {@link CritWriteReqMsg critical writes} that have been queued since the start.
    */
-  private HashMap<ActorRef, Integer> lastDelayPerActor;
+  private long totalQueuedCritWrites;
+  /**
+   * the longest queue of {@link CritWriteReqMsg critical writes} on a single item seen since the start.
+   */
+  private int maxCritWriteQueueDepth;
+
+  /**
+   * the {@link CritWriteReqMsg critical writes} waiting for the start of the next invalidation round.
+   */
+  private List<CritWriteReqMsg> openRound;
+  /**
+   * milliseconds an invalidation round waits for more critical writes, {@link Config#CRIT_WRITE_ROUND_WINDOW} by default.
+   */
+  private final int roundWindow;
+  /**
+   * true if a {@link InvalidationRoundMsg} is scheduled.
+   */
+  private boolean roundScheduled;
+  /**
+   * number of invalidation rounds started since the start.
+   */
+  private long invalidationRounds;
+  /**
+   * number of {@link CritWriteReqMsg critical writes} invalidated in the rounds started since the start.
+   */
+  private long roundCritWrites;
+
+  /**
+   * the messages to send to each child while handling an event, buffered to be sent together in a {@link BatchMsg}
+   * at its end. It is {@code null} when no event is being handled this way.
+   */
+  private Map<ActorRef, List<Message>> outbox;
+  /**
+   * number of messages sent inside a {@link BatchMsg}.
+   */
+  private long batchedMessages;
+
+  /**
+   * transport of the messages sent by this shard, shared with the read workers. It guarantees fifoness towards each child.
+   */
+  private final Transport transport;
+
+  /**
+   * the children holding a copy of each item, shared with the read workers. The {@link RefillMsg refills}, the
+   * {@link InvalidationItemMsg invalidations} and the {@link CritRefillMsg critical refills} of an item are sent only to
+   * them and to the child on the path of the write.
+   */
+  private final SharerDirectory sharers;
+
+  /**
+   * the child from which each write (also {@link CritWriteReqMsg critical}) has been received, by id of the request,
+   * until its {@link RefillMsg refill} is sent: the refill must reach it to confirm the write to the originator.
+   */
+  private LongObjectMap<ActorRef> writePaths;
+
+  /**
+   * the children to which the {@link InvalidationItemMsg invalidation} of each ongoing {@link CritWriteReqMsg critical write}
+   * has been sent, by id of the request. They all must confirm it and receive the {@link CritRefillMsg critical refill}.
+   */
+  private LongObjectMap<Set<ActorRef>> invalidTargets;
+
+  /**
+   * number of messages not sent to children that do not hold the item, with respect to sending them to all the children.
+   */
+  private long skippedSends;
+
+  /**
+   * number of read, write and refresh requests served by this shard.
+   */
+  private long servedRequests;
+
+  /**
+   * number of messages sent by this shard, the responses sent by the read workers are counted in servedReads.
+   */
+  private long sentMessages;
 
   private static final Logger LOGGER = LogManager.getLogger(DB.class);
 
@@ -69,19 +227,114 @@ public class DB extends AbstractActor {
 
   /**
    * Constructor of the DB actor.
-   * @param items the set of items in the system.
+   * @param shard the index of the shard.
+   * @param items the initial set of items in the system, the shard loads only the ones it owns. They are loaded only if
+   * the store is empty, a persistent store keeps the items it had before the restart.
+   */
+  public DB(int shard, HashMap<Integer, Integer> items) {
+    this(shard, items, openStore(shard), Config.WAL_ENABLED
+            ? new WriteAheadLog(Config.dbShardPath(Config.WAL_PATH, shard), Config.dbShardPath(Config.WAL_CHECKPOINT_PATH, shard), Config.WAL_GROUP_COMMIT_MAX)
+            : null, Config.CRIT_WRITE_ROUND_WINDOW);
+  }
+
+  /**
+   * Constructor of the DB actor on a given store and write-ahead log, instead of the ones of the {@link Config}.
+   * @param shard the index of the shard.
+   * @param items the initial set of items in the system, loaded only if the store is empty.
+   * @param store the store of the items of the shard.
+   * @param wal the write-ahead log of the shard, {@code null} to apply the writes without logging them.
+   * @param roundWindow the milliseconds an invalidation round waits for more critical writes, 0 to start a round for each one.
+   */
+  DB(int shard, HashMap<Integer, Integer> items, ItemStore store, WriteAheadLog wal, int roundWindow) {
+    this.shard=shard;
+    this.id=-1-shard;
+    this.items=store;
+    this.itemsLock=new ReentrantReadWriteLock();
+    this.readWorkers=new ArrayList<>();
+    this.servedReads=new AtomicLong();
+    this.pendingCommit=new ArrayList<>();
+    this.wal=wal;
+    if(this.wal!=null){
+      long start=System.nanoTime();
+      long replayed=this.wal.recover(this.items);
+      LOGGER.info("DB " + this.id + "; wal_recovered_records: " + replayed + "; recovery_time_ms: " + (System.nanoTime()-start)/1000000 + ";");
+    }
+    if(this.items.isEmpty()){
+      items.forEach((k, v) -> {
+        if(Config.dbShardOf(k)!=shard)
+          return;
+        if(this.items.canHold(k))
+          this.items.put(k, v);
+        else
+          LOGGER.warn("DB " + this.id + "; initial_item_out_of_store: " + k + ";");
+      });
+      if(this.wal!=null)
+        this.wal.checkpoint(this.items); //the initial items must survive a restart like any write
+    }else{
+      LOGGER.info("DB " + this.id + "; reusing_items_of_" + Config.DB_STORE + "_store;"); // counting the items of a LSM store would visit all of them
+    }
+    this.receivedInvalidAck=new LongObjectMap<>();
+    this.invalidAckTimeouts=new LongLongMap();
+    this.pendingRoundWrites=new LongLongMap();
+    this.timers=new TimerWheel(Config.TIMER_WHEEL_SLOTS, Config.TIMER_WHEEL_TICK);
+    this.roundStartTimes=new LongObjectMap<>();
+    this.rtts=new HashMap<>();
+    this.critWrites =new LongObjectMap<>();
+    this.activeCritWriteByKey=new HashMap<>();
+    this.queuedCritWrites=new HashMap<>();
+    this.openRound=new ArrayList<>();
+    this.roundWindow=roundWindow;
+    this.transport=Transport.create(Config.TRANSPORT, getContext().getSystem(), getSelf());
+    this.sharers=new SharerDirectory();
+    this.writePaths=new LongObjectMap<>();
+    this.invalidTargets=new LongObjectMap<>();
+  }
+  static public Props props(int shard, HashMap<Integer, Integer> items) {
+    return Props.create(DB.class, () -> new DB(shard, items));
+  }
+  static Props props(int shard, HashMap<Integer, Integer> items, ItemStore store, WriteAheadLog wal, int roundWindow) {
+    return Props.create(DB.class, () -> new DB(shard, items, store, wal, roundWindow));
+  }
+
+  private static ItemStore openStore(int shard){
+    String storePath=Config.DB_STORE==ItemStoreType.LSM ? Config.LSM_DIR : Config.DB_STORE_PATH;
+    return ItemStore.open(Config.DB_STORE, Config.dbShardPath(storePath, shard), Config.DB_STORE_SLOTS, Config.N_DB_SHARDS, shard);
+  }
+
+  /**
+   * Starts the read workers of the shard, as children of this actor, and the periodic {@link TimerTickMsg timer ticks}.
    */
-  public DB(HashMap<Integer, Integer> items) {
-    this.items=new HashMap<>();
-    this.items.putAll(items);
-    this.receivedInvalidAck=new HashMap<>();
-    this.invalidAckTimeouts=new HashMap<>();
-    this.critWrites =new HashMap<>();
-    this.timeLastSendPerActor =new HashMap<>();
-    this.lastDelayPerActor =new HashMap<>();
+  @Override
+  public void preStart() {
+    for(int i=0;i<Config.DB_READ_WORKERS;i++){
+      this.readWorkers.add(getContext().actorOf(DBReadWorker.props(this.id, this.items, this.itemsLock, this.transport, this.sharers, this.servedReads), "reader_" + i));
+    }
+    timerTicker = getContext().system().scheduler().scheduleWithFixedDelay(
+            Duration.create(Config.TIMER_WHEEL_TICK, TimeUnit.MILLISECONDS),        // first tick
+            Duration.create(Config.TIMER_WHEEL_TICK, TimeUnit.MILLISECONDS),        // period of the ticks
+            getSelf(),                                          // destination actor reference
+            new TimerTickMsg(),                                  // the message to send
+            getContext().system().dispatcher(),                 // system dispatcher
+            getSelf()                                           // source of the message (myself)
+    );
   }
-  static public Props props(HashMap<Integer, Integer> items) {
-    return Props.create(DB.class, () -> new DB(items));
+
+  /**
+   * Closes the store when the actor stops, making all the writes durable. The read workers are already stopped.
+   * The writes waiting for the group commit are synced and applied to the store, but their refills and the next queued
+   * critical writes are not sent, because a stopping actor must not send messages.
+   */
+  @Override
+  public void postStop() {
+    timerTicker.cancel();
+    if(this.wal!=null){
+      this.wal.sync();
+      for(RefillMsg refill : this.pendingCommit)
+        applyWrite(refill);
+      this.pendingCommit.clear();
+      this.wal.close();
+    }
+    this.items.close();
   }
 
   /* -- Actor behaviour ----------------------------------------------------- */
@@ -89,29 +342,17 @@ public class DB extends AbstractActor {
   /* -- START OF Sending message methods ----------------------------------------------------- */
 
   /**
-   * This method is used to send a {@link Message} to a given actor, simulating also a network delay.
+   * This method is used to send a {@link Message} to a given actor, through the {@link Transport transport} of this shard.
    * @param m the {@link Message} to send.
    * @param dest the reference of the destination actor.
    */
   private void sendMessage(Message m, ActorRef dest){
-    int delay = rnd.nextInt(Config.SEND_MAX_DELAY);
-    long thisTime=System.currentTimeMillis();
-    if(lastDelayPerActor.containsKey(dest)){
-      if(lastDelayPerActor.get(dest) > (thisTime- timeLastSendPerActor.get(dest))){
-        delay+= lastDelayPerActor.get(dest)-(thisTime- timeLastSendPerActor.get(dest));
-      }
+    if(this.outbox!=null && (m instanceof InvalidationItemMsg || m instanceof RefillMsg)){
+      this.outbox.computeIfAbsent(dest, k -> new ArrayList<>()).add(m);
+      return;
     }
-    this.lastDelayPerActor.put(dest, delay);
-    this.timeLastSendPerActor.put(dest, thisTime);
-    getContext().system().scheduler().scheduleOnce(
-            Duration.create(delay, TimeUnit.MILLISECONDS),        // when to send the message
-            dest,                                          // destination actor reference
-            m,                                  // the message to send
-            getContext().system().dispatcher(),                 // system dispatcher
-            getSelf()                                           // source of the message (myself)
-    );
-
-
+    this.sentMessages++;
+    transport.send(m, dest);
   }
 
   /**
@@ -120,15 +361,226 @@ public class DB extends AbstractActor {
    * @param m the {@link Message} to be sent to the children.
    */
   private void multicast(Message m) {
-    for (ActorRef p: children) {
+    multicast(m, children);
+  }
+
+  /**
+   * This method is used to send a {@link Message} to some of the children of the cache.
+   * @param m the {@link Message} to be sent.
+   * @param targets the children to which the message must be sent.
+   */
+  private void multicast(Message m, Collection<ActorRef> targets) {
+    for (ActorRef p: targets) {
       sendMessage(m, p);
     }
+    this.skippedSends += Math.max(0, children.size() - targets.size());
+  }
+
+  /**
+   * Service method to run the handling of an event buffering the {@link InvalidationItemMsg invalidations} and the
+   * {@link RefillMsg refills} it sends: at the end, the ones sent to the same child are sent together in a single
+   * {@link BatchMsg}, in the order in which they were sent. If an event is already being handled this way, its buffer is used.
+   * @param handling the handling of the event.
+   */
+  private void batched(Runnable handling){
+    if(this.outbox!=null){
+      handling.run();
+      return;
+    }
+    this.outbox=new LinkedHashMap<>();
+    try {
+      handling.run();
+    } finally {
+      Map<ActorRef, List<Message>> batches=this.outbox;
+      this.outbox=null;
+      batches.forEach((dest, msgs) -> {
+        if(msgs.size()==1){
+          sendMessage(msgs.get(0), dest);
+        }else{
+          this.batchedMessages+=msgs.size();
+          sendMessage(new BatchMsg(msgs), dest);
+        }
+      });
+    }
+  }
+
+  /**
+   * Service method to send the {@link RefillMsg refill} (or {@link CritRefillMsg critical refill}) of a write to the
+   * sharers of the item, to the child on the path of the write and, for a critical write, to the children that have
+   * invalidated the item. The sharers are updated according to the {@link Config#writePolicyOf(int) write policy} of
+   * the item: with {@link WritePolicyType#INVALIDATE} all the children drop their copies, with
+   * {@link WritePolicyType#WRITE_ALLOCATE} the child on the path stores the new value.
+   * It must be called holding the write lock.
+   * @param refill the refill to send.
+   */
+  private void sendRefill(RefillMsg refill){
+    if(refill instanceof MultiRefillMsg){
+      sendMultiRefill((MultiRefillMsg) refill);
+      return;
+    }
+    ActorRef pathChild = this.writePaths.remove(refill.reqId);
+    List<ActorRef> others = new ArrayList<>();
+    others.add(pathChild);
+    Set<ActorRef> invalidated = this.invalidTargets.remove(refill.reqId);
+    if(invalidated != null)
+      others.addAll(invalidated);
+    Set<ActorRef> targets = this.sharers.targets(refill.key, others);
+    updateSharers(refill.key, pathChild, refill.reqId);
+    multicast(refill, targets);
+  }
+
+  /**
+   * Service method to send the {@link MultiRefillMsg refill} of a multi-write: each child receives a single message with
+   * the items it holds, the child on the path of the write receives all of them.
+   * It must be called holding the write lock.
+   * @param refill the refill to send.
+   */
+  private void sendMultiRefill(MultiRefillMsg refill){
+    ActorRef pathChild = this.writePaths.remove(refill.reqId);
+    Map<ActorRef, List<Integer>> itemsOf = new LinkedHashMap<>();
+    for(int i=0;i<refill.keys.length;i++){
+      for(ActorRef child : this.sharers.targets(refill.keys[i], Collections.singletonList(pathChild)))
+        itemsOf.computeIfAbsent(child, k -> new ArrayList<>()).add(i);
+      updateSharers(refill.keys[i], pathChild, refill.reqId);
+    }
+    itemsOf.forEach((child, indexes) -> sendMessage(refill.only(indexes), child));
+    this.skippedSends += Math.max(0, children.size() - itemsOf.size());
+  }
+
+  /**
+   * Service method to update the sharers of an item written by a write, according to its {@link Config#writePolicyOf(int) write policy}.
+   * @param key the key of the item.
+   * @param pathChild the child on the path of the write, {@code null} if it is unknown.
+   * @param reqId the request id of the write.
+   */
+  private void updateSharers(int key, ActorRef pathChild, long reqId){
+    switch (Config.writePolicyOf(key)){
+      case INVALIDATE:
+        this.sharers.removeAll(key);
+        break;
+      case WRITE_ALLOCATE:
+        if(pathChild != null)
+          this.sharers.grant(key, pathChild, reqId);
+        break;
+      default:
+        break;
+    }
   }
 
   /* -- END of Sending message methods ----------------------------------------------------- */
 
 
 
+  /* -- START OF durability methods ----------------------------------------------------- */
+
+  /**
+   * This method is used to apply a write and send the associated {@link RefillMsg refill} to the children holding the item.
+   * If the write-ahead log is enabled, the write is appended to the log and it is applied only after the group commit
+   * has made it durable, so that a confirmed write is never lost by a restart.
+   * @param refill the {@link RefillMsg} (or {@link CritRefillMsg}) with the key and the new value of the item.
+   */
+  private void commitWrite(RefillMsg refill){
+    if(this.wal==null){
+      itemsLock.writeLock().lock();
+      try {
+        applyWrite(refill);
+        sendRefill(refill);
+      } finally {
+        itemsLock.writeLock().unlock();
+      }
+      if(refill instanceof CritRefillMsg)
+        startNextCritWrite(refill.key);
+      return;
+    }
+    if(refill instanceof MultiRefillMsg){
+      MultiRefillMsg multi=(MultiRefillMsg) refill;
+      for(int i=0;i<multi.keys.length;i++)
+        this.wal.append(multi.keys[i], multi.newValues[i]);
+    }else{
+      this.wal.append(refill.key, refill.newValue);
+    }
+    this.pendingCommit.add(refill);
+    if(this.pendingCommit.size()>=Config.WAL_GROUP_COMMIT_MAX){
+      groupCommit();
+    }else if(!this.groupCommitScheduled){
+      this.groupCommitScheduled=true;
+      getContext().system().scheduler().scheduleOnce(
+              Duration.create(Config.WAL_GROUP_COMMIT_WINDOW, TimeUnit.MILLISECONDS),        // when to send the message
+              getSelf(),                                          // destination actor reference
+              new GroupCommitMsg(),                                  // the message to send
+              getContext().system().dispatcher(),                 // system dispatcher
+              getSelf()                                           // source of the message (myself)
+      );
+    }
+  }
+
+  /**
+   * Service method to apply a write to the store, all the items of a {@link MultiRefillMsg multi-write} together.
+   * It must be called holding the write lock.
+   * @param refill the {@link RefillMsg} of the write.
+   */
+  private void applyWrite(RefillMsg refill){
+    if(refill instanceof MultiRefillMsg){
+      MultiRefillMsg multi=(MultiRefillMsg) refill;
+      for(int i=0;i<multi.keys.length;i++)
+        items.put(multi.keys[i], multi.newValues[i]);
+    }else{
+      items.put(refill.key, refill.newValue);
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link GroupCommitMsg} message, at the end of the group commit window.
+   * @param msg the {@link GroupCommitMsg} message.
+   */
+  private void onGroupCommitMsg(GroupCommitMsg msg){
+    this.groupCommitScheduled=false;
+    groupCommit();
+  }
+
+  /**
+   * This method makes durable all the writes appended to the write-ahead log with a single fsync, then applies them and
+   * sends their {@link RefillMsg refills}, together in a {@link BatchMsg} to each child. When the log is long enough,
+   * a checkpoint is taken.
+   */
+  private void groupCommit(){
+    if(this.pendingCommit.isEmpty())
+      return;
+    int synced=this.wal.sync();
+    batched(() -> {
+      itemsLock.writeLock().lock();
+      try {
+        for(RefillMsg refill : this.pendingCommit){
+          applyWrite(refill);
+          sendRefill(refill);
+        }
+      } finally {
+        itemsLock.writeLock().unlock();
+      }
+      for(RefillMsg refill : this.pendingCommit){
+        if(refill instanceof CritRefillMsg)
+          startNextCritWrite(refill.key);
+      }
+    });
+    this.pendingCommit.clear();
+    if(Config.VERBOSE_LOG)
+      LOGGER.debug("DB " + this.id + "; group_commit_of: " + synced + " writes;");
+    if(this.wal.recordsSinceCheckpoint()>=Config.WAL_CHECKPOINT_RECORDS){
+      long start=System.nanoTime();
+      itemsLock.writeLock().lock(); // a flush may modify the structures of the store
+      try {
+        this.wal.checkpoint(items);
+      } finally {
+        itemsLock.writeLock().unlock();
+      }
+      LOGGER.debug("DB " + this.id + "; wal_checkpoint_time_ms: " + (System.nanoTime()-start)/1000000 + ";");
+    }
+  }
+
+  /* -- END OF durability methods ----------------------------------------------------- */
+
+
+
   /* -- START OF Configuration message methods ----------------------------------------------------- */
 
   /**
@@ -152,158 +604,432 @@ public class DB extends AbstractActor {
 
   /**
    * This method is used to handle the arrival of a {@link ReadReqMsg} message.
-   * The DB will create a {@link ReadRespMsg response} with the value associated to the requested key.
-   * The message will be sent to the child (a {@link Cache cache}) popped from responsePath object.
+   * The DB will create a {@link ReadRespMsg response} with the value associated to the requested key, or with
+   * {@link IntIntMap#ABSENT} if the key does not exist.
+   * The message will be sent to the child (a {@link Cache cache}) from which the request has arrived.
+   * If the shard has {@link DBReadWorker read workers}, the request is forwarded to one of them.
    * @param msg the {@link ReadReqMsg} message which contains the key of the element to be read.
    */
   private void onReadReqMsg(ReadReqMsg msg) {
-    ActorRef nextHop = msg.responsePath.pop();
+    if(forwardToReadWorker(msg))
+      return;
+    ActorRef nextHop = getSender();
     Integer key = msg.key;
-    LOGGER.debug("DB " + this.id + "; read_request_received_from: " + nextHop.path().name() + "; key: " + key + "; MSG_ID: " + msg.uuid + "; read_response_sent; ");
-    ReadRespMsg resp = new ReadRespMsg(key, this.items.get(key), msg.responsePath, msg.uuid);
+    this.servedRequests++;
+    LOGGER.debug("DB " + this.id + "; read_request_received_from: " + nextHop.path().name() + "; key: " + key + "; MSG_ID: " + msg.reqId + "; read_response_sent; ");
+    ReadRespMsg resp = new ReadRespMsg(key, this.items.get(key), msg.reqId);
+    grantCopy(resp, nextHop);
     sendMessage(resp, nextHop);
   }
 
+  /**
+   * This method is used to handle the arrival of a {@link MultiReadReqMsg} message, with the keys of this shard missing
+   * in the sender. The DB will create a single {@link MultiReadRespMsg response} with the values of all of them.
+   * @param msg the {@link MultiReadReqMsg} message which contains the keys of the elements to be read.
+   */
+  private void onMultiReadReqMsg(MultiReadReqMsg msg) {
+    ActorRef nextHop = getSender();
+    int[] values = new int[msg.keys.length];
+    for(int i=0;i<msg.keys.length;i++){
+      values[i] = this.items.get(msg.keys[i]);
+      if(values[i] != IntIntMap.ABSENT)
+        this.sharers.grant(msg.keys[i], nextHop, msg.reqId);
+    }
+    this.servedRequests++;
+    LOGGER.debug("DB " + this.id + "; multi_read_request_received_from: " + nextHop.path().name() + "; keys: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; read_response_sent; ");
+    sendMessage(new MultiReadRespMsg(msg.keys, values, msg.reqId), nextHop);
+  }
+
+  /**
+   * Service method to forward a request to the next {@link DBReadWorker read worker}, in round robin.
+   * @param msg the {@link ReadReqMsg} (or {@link RefreshItemReqMsg}) to forward.
+   * @return {@code true} if the request has been forwarded, {@code false} if the shard has no read workers.
+   */
+  private boolean forwardToReadWorker(ReadReqMsg msg){
+    if(this.readWorkers.isEmpty())
+      return false;
+    ActorRef worker = this.readWorkers.get(this.nextReadWorker);
+    this.nextReadWorker = (this.nextReadWorker + 1) % this.readWorkers.size();
+    worker.forward(msg, getContext());
+    return true;
+  }
+
+  /**
+   * Service method to record in the directory that a child receives a copy of an item with a response.
+   * @param resp the response with the value of the item, nothing is recorded if the item does not exist.
+   * @param child the child receiving the response.
+   */
+  private void grantCopy(ReadRespMsg resp, ActorRef child){
+    if(resp.value != IntIntMap.ABSENT)
+      this.sharers.grant(resp.key, child, resp.reqId);
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link ItemReleasedMsg} message.
+   * The sender no longer holds a copy of the item, so it is removed from the sharers of the item unless a newer copy
+   * has been sent to it in the meantime.
+   * @param msg the {@link ItemReleasedMsg} message which contains the key of the item and the request id of the released copy.
+   */
+  private void onItemReleasedMsg(ItemReleasedMsg msg){
+    boolean released = this.sharers.release(msg.key, getSender(), msg.reqId);
+    if(Config.VERBOSE_LOG)
+      LOGGER.debug("DB " + this.id + "; item_released_by: " + getSender().path().name() + "; key: " + msg.key + "; MSG_ID: " + msg.reqId + "; removed_from_sharers: " + released + ";");
+  }
+
   /**
    * This method is used to handle the arrival of a {@link CritReadReqMsg} message.
    * The DB will create a {@link CritReadRespMsg response} with the value associated to the requested key.
-   * The message will be sent to the child (a {@link Cache cache}) popped from responsePath object.
+   * The message will be sent to the child (a {@link Cache cache}) from which the request has arrived.
    * @param msg the {@link CritReadReqMsg} message which contains the key of the element to be read.
    */
   private void onCritReadReqMsg(CritReadReqMsg msg){
-    ActorRef nextHop = msg.responsePath.pop();
+    ActorRef nextHop = getSender();
     Integer key = msg.key;
-    LOGGER.debug("DB " + this.id + "; critical_read_request_received_from: " + nextHop.path().name() + "; key: " + key + "; MSG_ID: " + msg.uuid + "; critical_read_response_sent;");
-    CritReadRespMsg resp = new CritReadRespMsg(key, this.items.get(key), msg.responsePath, msg.uuid);
+    this.servedRequests++;
+    LOGGER.debug("DB " + this.id + "; critical_read_request_received_from: " + nextHop.path().name() + "; key: " + key + "; MSG_ID: " + msg.reqId + "; critical_read_response_sent;");
+    CritReadRespMsg resp = new CritReadRespMsg(key, this.items.get(key), msg.reqId);
+    grantCopy(resp, nextHop);
     sendMessage(resp, nextHop);
   }
 
   /**
    * This method is used to handle the arrival of a {@link CritWriteReqMsg} message.
-   * The request is saved in the map of all the ongoing critical writes.
-   * The DB will first ask all the {@link Cache caches} to invalidate the item associated with the key of the {@link CritWriteReqMsg request}.
-   * Then it will wait the confirmation of invalidations from ALL its children. A timer is set for this purpose for detect a possible crash
-   * of one of its children and potentially going in timeout.
+   * If there is no ongoing critical write on the item, the write starts immediately.
+   * Otherwise the request is queued behind the ongoing one and a {@link CritWriteQueuedMsg} is sent, so that the
+   * originator waits for it. If the queue of the item already holds {@link Config#MAX_CRIT_WRITE_QUEUE} requests,
+   * a {@link CritWriteErrorMsg} is sent instead, as when the store cannot hold the item.
    * @param msg the {@link CritWriteReqMsg} message which contains the key of the element to be read and the new value to set.
    */
   private void onCritWriteReqMsg(CritWriteReqMsg msg){
     Integer key = msg.key;
+    this.servedRequests++;
+    if(!this.items.canHold(key)){
+      LOGGER.error("DB " + this.id + "; crit_write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.reqId + "; key_out_of_store");
+      multicast(new CritWriteErrorMsg(msg.key, msg.originator, msg.reqId));
+      return;
+    }
+    this.writePaths.put(msg.reqId, getSender());
     if(!isPerformingCritWriteOnItem(msg.key)){
-      LOGGER.debug("DB " + this.id + "; crit_write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.uuid + "; sending_invalidation");
-      this.critWrites.put(msg.uuid, msg);
-      InvalidationItemMsg invalidMsg=new InvalidationItemMsg(msg.key, msg.uuid);
-      invalidAckTimeouts.put(msg.uuid,
-              getContext().system().scheduler().scheduleOnce(
-                      Duration.create(Config.TIMEOUT_DB_INVALIDATION, TimeUnit.MILLISECONDS),        // when to send the message
-                      getSelf(),                                          // destination actor reference
-                      new TimeoutInvalidAckMsg(invalidMsg),                                  // the message to send
-                      getContext().system().dispatcher(),                 // system dispatcher
-                      getSelf()                                           // source of the message (myself)
-              )); //adding the uuid of the message to the list of the pending ones
-      multicast(invalidMsg);
+      LOGGER.debug("DB " + this.id + "; crit_write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.reqId + "; added_to_invalidation_round");
+      addToRound(msg);
+      return;
+    }
+    ArrayDeque<CritWriteReqMsg> queue = this.queuedCritWrites.computeIfAbsent(key, k -> new ArrayDeque<>());
+    if(queue.size() < Config.MAX_CRIT_WRITE_QUEUE){
+      queue.add(msg);
+      this.queuedCritWritesCount++;
+      this.totalQueuedCritWrites++;
+      this.maxCritWriteQueueDepth = Math.max(this.maxCritWriteQueueDepth, queue.size());
+      LOGGER.debug("DB " + this.id + "; crit_write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.reqId + "; queued_at_position: " + queue.size() + ";");
+      multicast(new CritWriteQueuedMsg(msg, queue.size()));
     }else{
-      LOGGER.error("DB " + this.id + "; crit_write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.uuid + "; already_in_progress");
-      CritWriteErrorMsg resp = new CritWriteErrorMsg(msg.key, msg.originator, msg.uuid);
+      LOGGER.error("DB " + this.id + "; crit_write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.reqId + "; queue_full");
+      CritWriteErrorMsg resp = new CritWriteErrorMsg(msg.key, msg.originator, msg.reqId);
+      this.writePaths.remove(msg.reqId);
       multicast(resp);
     }
   }
 
+  /**
+   * This method adds a critical write to the next invalidation round, which starts after {@link #roundWindow}
+   * milliseconds from its first write or as soon as it has {@link Config#CRIT_WRITE_ROUND_MAX} writes.
+   * From now on the critical write is ongoing, the next ones on the same item are queued.
+   * @param msg the {@link CritWriteReqMsg} to perform.
+   */
+  private void addToRound(CritWriteReqMsg msg){
+    this.activeCritWriteByKey.put(msg.key, msg.reqId);
+    this.openRound.add(msg);
+    if(this.roundWindow==0 || this.openRound.size()>=Config.CRIT_WRITE_ROUND_MAX){
+      startRound();
+    }else if(!this.roundScheduled){
+      this.roundScheduled=true;
+      getContext().system().scheduler().scheduleOnce(
+              Duration.create(this.roundWindow, TimeUnit.MILLISECONDS),        // when to send the message
+              getSelf(),                                          // destination actor reference
+              new InvalidationRoundMsg(),                                  // the message to send
+              getContext().system().dispatcher(),                 // system dispatcher
+              getSelf()                                           // source of the message (myself)
+      );
+    }
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link InvalidationRoundMsg} message, at the end of the window of
+   * the invalidation round.
+   * @param msg the {@link InvalidationRoundMsg} message.
+   */
+  private void onInvalidationRoundMsg(InvalidationRoundMsg msg){
+    this.roundScheduled=false;
+    startRound();
+  }
+
+  /**
+   * This method starts the invalidation round of the critical writes collected so far. The {@link InvalidationItemMsg invalidations}
+   * of all of them are sent together, in a single {@link BatchMsg} to each child, and a single timer is set to detect a possible
+   * crash of one of the children while waiting for their confirmations. Its timeout is the longest of the timeouts derived from
+   * the confirmation times measured for the children involved.
+   */
+  private void startRound(){
+    if(this.openRound.isEmpty())
+      return;
+    List<CritWriteReqMsg> round=new ArrayList<>(this.openRound);
+    this.openRound.clear();
+    List<InvalidationItemMsg> invalidations=new ArrayList<>();
+    batched(() -> {
+      for(CritWriteReqMsg msg : round)
+        invalidations.add(startCritWrite(msg));
+    });
+    long roundTimeout=Config.TIMEOUT_DB_INVALIDATION_MIN;
+    long now=System.nanoTime();
+    for(InvalidationItemMsg invalidMsg : invalidations){
+      this.roundStartTimes.put(invalidMsg.reqId, now);
+      for(ActorRef child : this.invalidTargets.get(invalidMsg.reqId))
+        roundTimeout=Math.max(roundTimeout, rttOf(child).timeout());
+    }
+    long timeout=timers.schedule(roundTimeout, new TimeoutInvalidAckMsg(invalidations));
+    for(InvalidationItemMsg invalidMsg : invalidations)
+      this.invalidAckTimeouts.put(invalidMsg.reqId, timeout); //adding the request id of the message to the list of the pending ones
+    this.pendingRoundWrites.put(timeout, invalidations.size());
+    this.invalidationRounds++;
+    this.roundCritWrites+=round.size();
+    if(round.size()>1)
+      LOGGER.debug("DB " + this.id + "; invalidation_round_of: " + round.size() + " crit_writes;");
+  }
+
+  /**
+   * This method starts a critical write of an invalidation round: the request is saved in the map of all the ongoing critical writes.
+   * The DB will first ask the {@link Cache caches} holding the item, and the one on the path of the {@link CritWriteReqMsg request},
+   * to invalidate the item associated with the key of the request.
+   * Then it will wait the confirmation of invalidations from ALL of them, within the timer of the round.
+   * @param msg the {@link CritWriteReqMsg} to perform.
+   * @return the {@link InvalidationItemMsg invalidation} sent for the critical write.
+   */
+  private InvalidationItemMsg startCritWrite(CritWriteReqMsg msg){
+    this.critWrites.put(msg.reqId, msg);
+    InvalidationItemMsg invalidMsg=new InvalidationItemMsg(msg.key, msg.reqId);
+    Set<ActorRef> targets=this.sharers.targets(msg.key, Collections.singletonList(this.writePaths.get(msg.reqId)));
+    this.invalidTargets.put(msg.reqId, targets);
+    LOGGER.debug("DB " + this.id + "; crit_write_for_key: " + msg.key + "; value: " + msg.newValue + "; MSG_ID: " + msg.reqId + "; sending_invalidation");
+    multicast(invalidMsg, targets);
+    return invalidMsg;
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link TimerTickMsg} message: the expired timeouts of the timer wheel
+   * are sent to this actor, like the scheduler would do.
+   * @param msg the {@link TimerTickMsg} message.
+   */
+  private void onTimerTickMsg(TimerTickMsg msg){
+    timers.advance(timeout -> getSelf().tell(timeout, getSelf()));
+  }
+
+  /**
+   * Service method to stop waiting for the {@link InvalidationItemConfirmMsg confirmations} of a critical write. The timer
+   * of its invalidation round is cancelled when no other critical write of the round is waiting.
+   * @param reqId the request id of the critical write.
+   */
+  private void stopInvalidAckTimeout(long reqId){
+    this.roundStartTimes.remove(reqId);
+    long timeout=this.invalidAckTimeouts.remove(reqId);
+    if(timeout==LongLongMap.ABSENT)
+      return;
+    long pending=this.pendingRoundWrites.get(timeout) - 1;
+    if(pending>0){
+      this.pendingRoundWrites.put(timeout, pending);
+    }else{
+      this.pendingRoundWrites.remove(timeout);
+      timers.cancel(timeout);
+    }
+  }
+
+  /**
+   * @param child a child of the DB.
+   * @return the estimator of the time the given child takes to confirm an {@link InvalidationItemMsg invalidation}.
+   */
+  private RttEstimator rttOf(ActorRef child){
+    return this.rtts.computeIfAbsent(child, k -> new RttEstimator(Config.TIMEOUT_DB_INVALIDATION, Config.TIMEOUT_DB_INVALIDATION_MIN, Config.TIMEOUT_DB_INVALIDATION));
+  }
+
+  /**
+   * This method is called when the {@link CritRefillMsg} or the {@link CritWriteErrorMsg} of the ongoing critical write
+   * on an item has been sent. The next critical write queued for the item, if any, is started.
+   * @param key the key of the item.
+   */
+  private void startNextCritWrite(int key){
+    this.activeCritWriteByKey.remove(key);
+    ArrayDeque<CritWriteReqMsg> queue = this.queuedCritWrites.get(key);
+    if(queue == null)
+      return;
+    CritWriteReqMsg next = queue.poll();
+    if(queue.isEmpty())
+      this.queuedCritWrites.remove(key);
+    if(next != null){
+      this.queuedCritWritesCount--;
+      LOGGER.debug("DB " + this.id + "; starting_queued_crit_write_for_key: " + key + "; value: " + next.newValue + "; MSG_ID: " + next.reqId + "; added_to_invalidation_round");
+      addToRound(next);
+    }
+  }
+
   /**
    * Service method to check if there is an ongoing {@link CritWriteReqMsg critical write} on a item with a given key.
+   * A critical write is ongoing from when it is added to an invalidation round; with the write-ahead log, it is ongoing
+   * until its {@link CritRefillMsg} has been sent by the group commit.
    * @param key the key of the item we check for ongoing {@link CritWriteReqMsg critical writes}.
    * @return {@code true} if there is an ongoing {@link CritWriteReqMsg critical write} on the item, {@code false} otherwise.
    */
   private boolean isPerformingCritWriteOnItem(int key){
-    boolean result = false;
-    for(CritWriteReqMsg m : this.critWrites.values()){
-      if(m.key==key){
-        result=true;
-        break;
-      }
-    }
-    return result;
+    return this.activeCritWriteByKey.containsKey(key);
   }
 
   /**
    * This method is used to handle the arrival of a {@link InvalidationItemConfirmMsg} message.
    * The message means that a child of the DB has correctly invalidated the item.
    * When ALL confirmations for a given {@link InvalidationItemMsg} are arrived, the DB will update the item and will send
-   * a {@link CritRefillMsg} to all its children.
+   * a {@link CritRefillMsg} to the children that have invalidated it and to the ones holding it.
    * @param msg is the {@link InvalidationItemConfirmMsg} message which confirms that the sender has marked the item as invalid.
    */
   private void onInvalidationItemConfirmMsg(InvalidationItemConfirmMsg msg){
-    LOGGER.debug("DB " + this.id + "; invalidation_confirm_for_item: " + msg.key + "; from " + getSender().path().name() + "; MSG_ID: " + msg.uuid + ";");
-    if(this.receivedInvalidAck.containsKey(msg.uuid)){
-      this.receivedInvalidAck.get(msg.uuid).add(getSender());
-    }else{
-      this.receivedInvalidAck.put(msg.uuid, new HashSet<>());
-      this.receivedInvalidAck.get(msg.uuid).add(getSender());
+    LOGGER.debug("DB " + this.id + "; invalidation_confirm_for_item: " + msg.key + "; from " + getSender().path().name() + "; MSG_ID: " + msg.reqId + ";");
+    if(!this.critWrites.containsKey(msg.reqId)){ // late confirmation of a critical write already performed or failed
+      rttOf(getSender()).recordLateResponse(msg.reqId);
+      return;
     }
+    if(!this.receivedInvalidAck.containsKey(msg.reqId))
+      this.receivedInvalidAck.put(msg.reqId, new HashSet<>());
+    Long roundStart=this.roundStartTimes.get(msg.reqId);
+    if(this.receivedInvalidAck.get(msg.reqId).add(getSender()) && roundStart!=null)
+      rttOf(getSender()).sample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - roundStart));
 
-    if(this.receivedInvalidAck.get(msg.uuid).size()==this.children.size()){
-      this.invalidAckTimeouts.get(msg.uuid).cancel();
-      CritWriteReqMsg associatedReq=this.critWrites.get(msg.uuid);
-      items.put(associatedReq.key, associatedReq.newValue);
-      LOGGER.debug("DB " + this.id + "; crit_write_performed_for_key: " + associatedReq.key + "; value: " + associatedReq.newValue + "; MSG_ID: " + msg.uuid + "; sending_refill");
-      CritRefillMsg resp = new CritRefillMsg(associatedReq.key, associatedReq.newValue, associatedReq.originator, associatedReq.uuid);
-      multicast(resp);
-      this.critWrites.remove(msg.uuid);
-      this.receivedInvalidAck.get(msg.uuid).clear();
-      this.receivedInvalidAck.remove(msg.uuid);
-      this.invalidAckTimeouts.remove(msg.uuid);
+    if(this.receivedInvalidAck.get(msg.reqId).containsAll(this.invalidTargets.get(msg.reqId))){
+      stopInvalidAckTimeout(msg.reqId);
+      CritWriteReqMsg associatedReq=this.critWrites.get(msg.reqId);
+      LOGGER.debug("DB " + this.id + "; crit_write_performed_for_key: " + associatedReq.key + "; value: " + associatedReq.newValue + "; MSG_ID: " + msg.reqId + "; sending_refill");
+      CritRefillMsg resp = new CritRefillMsg(associatedReq.key, associatedReq.newValue, associatedReq.originator, associatedReq.reqId);
+      commitWrite(resp);
+      this.critWrites.remove(msg.reqId);
+      this.receivedInvalidAck.get(msg.reqId).clear();
+      this.receivedInvalidAck.remove(msg.reqId);
     }
   }
 
+  /**
+   * This method is used to handle the arrival of a {@link BatchMsg} message, that carries the {@link InvalidationItemConfirmMsg
+   * confirmations} sent together by a child. They are handled in order and the {@link CritRefillMsg critical refills} of
+   * the critical writes they complete are sent together too.
+   * @param msg the {@link BatchMsg} message.
+   */
+  private void onBatchMsg(BatchMsg msg){
+    batched(() -> {
+      for(Message m : msg.msgs){
+        if(m instanceof InvalidationItemConfirmMsg)
+          onInvalidationItemConfirmMsg((InvalidationItemConfirmMsg) m);
+      }
+    });
+  }
+
   /**
    * This method is used to handle the arrival of a {@link TimeoutInvalidAckMsg} message.
    * This is triggered when the database detects the crash of one of its children while waiting for a {@link InvalidationItemConfirmMsg}.
    * This means that the DB cannot ensure that all the cache will stop sending the old value to clients.
    * Thus a critical write cannot be successful. The DB will send a {@link CritWriteErrorMsg} to the originator of the
    * corresponding {@link CritWriteReqMsg critical write request}.
+   * The timeout is shared by all the critical writes of an invalidation round: the ones already performed are skipped,
+   * the messages of the other ones are sent together.
    * @param msg is the {@link TimeoutInvalidAckMsg} message
    */
   private void onTimeoutInvalidAckMsg(TimeoutInvalidAckMsg msg){
-    UUID req = msg.awaitedMsg.uuid;
+    batched(() -> {
+      for(InvalidationItemMsg awaited : msg.awaitedMsgs){
+        if(this.critWrites.containsKey(awaited.reqId))
+          expireCritWrite(awaited);
+      }
+    });
+  }
+
+  /**
+   * Service method to end a critical write whose {@link InvalidationItemConfirmMsg confirmations} have not all arrived
+   * before the timeout of its invalidation round.
+   * @param awaitedMsg the {@link InvalidationItemMsg invalidation} of the critical write.
+   */
+  private void expireCritWrite(InvalidationItemMsg awaitedMsg){
+    long req = awaitedMsg.reqId;
+    Set<ActorRef> received = this.receivedInvalidAck.getOrDefault(req, Collections.emptySet());
+    Long roundStart = this.roundStartTimes.get(req);
+    long waited = roundStart == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - roundStart);
     StringBuilder sb = new StringBuilder();
-    for(ActorRef child : this.children){
-      if(!receivedInvalidAck.get(req).contains(child)){
+    for(ActorRef child : this.invalidTargets.get(req)){
+      if(!received.contains(child)){
         sb.append(child.path().name() + "; ");
+        rttOf(child).recordTimeout(req, waited);
       }
     }
-    LOGGER.warn("DB " + this.id + "; invalidation_confirm_timeout_for_item: " + msg.awaitedMsg.key + "; waiting_for: " + sb + "; ");
+    LOGGER.warn("DB " + this.id + "; invalidation_confirm_timeout_for_item: " + awaitedMsg.key + "; waiting_for: " + sb + "; ");
     CritWriteReqMsg associatedReq=this.critWrites.get(req);
     //check for akka bugs
-    if(this.receivedInvalidAck.get(req).size()==this.children.size()){
-      this.invalidAckTimeouts.get(req).cancel();
-      items.put(associatedReq.key, associatedReq.newValue);
-      CritRefillMsg resp = new CritRefillMsg(associatedReq.key, associatedReq.newValue, associatedReq.originator, associatedReq.uuid);
-      LOGGER.debug("DB " + this.id + "; crit_write_performed_for_key: " + associatedReq.key + "; value: " + associatedReq.newValue + "; MSG_ID: " + associatedReq.uuid + ";");
-      multicast(resp);
+    if(received.containsAll(this.invalidTargets.get(req))){
+      stopInvalidAckTimeout(req);
+      CritRefillMsg resp = new CritRefillMsg(associatedReq.key, associatedReq.newValue, associatedReq.originator, associatedReq.reqId);
+      LOGGER.debug("DB " + this.id + "; crit_write_performed_for_key: " + associatedReq.key + "; value: " + associatedReq.newValue + "; MSG_ID: " + associatedReq.reqId + ";");
+      commitWrite(resp);
       this.critWrites.remove(req);
-      this.receivedInvalidAck.get(req).clear();
       this.receivedInvalidAck.remove(req);
-      this.invalidAckTimeouts.remove(req);
     }else{
-      LOGGER.debug("DB " + this.id + "; crit_write_error_for_key: " + msg.awaitedMsg.key + "; MSG_ID: " + associatedReq.uuid + "; sending_error;");
-      CritWriteErrorMsg resp = new CritWriteErrorMsg(associatedReq.key, associatedReq.originator, associatedReq.uuid);
+      LOGGER.debug("DB " + this.id + "; crit_write_error_for_key: " + awaitedMsg.key + "; MSG_ID: " + associatedReq.reqId + "; sending_error;");
+      CritWriteErrorMsg resp = new CritWriteErrorMsg(associatedReq.key, associatedReq.originator, associatedReq.reqId);
       multicast(resp);
       this.critWrites.remove(req);
       this.receivedInvalidAck.remove(req);
-      this.invalidAckTimeouts.remove(req);
+      stopInvalidAckTimeout(req);
+      this.invalidTargets.remove(req);
+      this.writePaths.remove(req);
+      startNextCritWrite(associatedReq.key);
     }
   }
 
   /**
    * This method is used to handle the arrival of a {@link WriteReqMsg} message.
-   * The DB will update the item with the new value and then will send a {@link RefillMsg} to all its children.
+   * The DB will update the item with the new value and then will send a {@link RefillMsg} to the children holding the
+   * item and to the sender.
+   * With the write-ahead log enabled, both happen at the next group commit.
+   * If the store cannot hold the item, a {@link ReqErrorMsg error} is sent to the sender instead.
    * @param msg the {@link WriteReqMsg} message which contains the key of the element to be updated and the new value.
    */
   private void onWriteReqMsg(WriteReqMsg msg){
     Integer key = msg.key;
-    items.put(key, msg.newValue);
-    RefillMsg resp = new RefillMsg(key, msg.newValue, msg.originator, msg.uuid);
-    LOGGER.debug("DB " + this.id + "; write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.uuid + "; write_performed");
-    multicast(resp);
+    if(!this.items.canHold(key)){
+      LOGGER.error("DB " + this.id + "; write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.reqId + "; key_out_of_store");
+      sendMessage(new ReqErrorMsg(msg), getSender());
+      return;
+    }
+    RefillMsg resp = new RefillMsg(key, msg.newValue, msg.originator, msg.reqId);
+    this.writePaths.put(msg.reqId, getSender());
+    this.servedRequests++;
+    LOGGER.debug("DB " + this.id + "; write_request_received_from: " + getSender().path().name() + "; for_key: " + key + "; value: " + msg.newValue + "; MSG_ID: " + msg.reqId + "; write_performed");
+    commitWrite(resp);
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link MultiWriteReqMsg} message, with the keys of this shard.
+   * The DB will update all the items together and then will send to each child holding some of them, and to the sender,
+   * a single {@link MultiRefillMsg}.
+   * With the write-ahead log enabled, both happen at the next group commit.
+   * If the store cannot hold one of the items, none of them is written and a {@link ReqErrorMsg error} is sent to the
+   * sender instead. The parts of the request for the other shards are not undone.
+   * @param msg the {@link MultiWriteReqMsg} message which contains the keys of the elements to be updated and the new values.
+   */
+  private void onMultiWriteReqMsg(MultiWriteReqMsg msg){
+    for(int key : msg.keys){
+      if(!this.items.canHold(key)){
+        LOGGER.error("DB " + this.id + "; multi_write_request_received_from: " + getSender().path().name() + "; keys: " + Arrays.toString(msg.keys) + "; MSG_ID: " + msg.reqId + "; key_out_of_store: " + key);
+        sendMessage(new ReqErrorMsg(msg), getSender());
+        return;
+      }
+    }
+    MultiRefillMsg resp = new MultiRefillMsg(msg.keys, msg.newValues, msg.originator, msg.reqId);
+    this.writePaths.put(msg.reqId, getSender());
+    this.servedRequests++;
+    LOGGER.debug("DB " + this.id + "; multi_write_request_received_from: " + getSender().path().name() + "; keys: " + Arrays.toString(msg.keys) + "; values: " + Arrays.toString(msg.newValues) + "; MSG_ID: " + msg.reqId + "; write_performed");
+    commitWrite(resp);
   }
 
   /* -- START OF read and write message methods ----------------------------------------------------- */
@@ -325,7 +1051,7 @@ public class DB extends AbstractActor {
     for (ActorRef c : children) {
       sb.append(c.path().name() + ";");
     }
-    LOGGER.debug("DB; adding_new_child: " + msg.child.path().name() + "; new_children_list: [" + sb + "];");
+    LOGGER.debug("DB " + this.id + "; adding_new_child: " + msg.child.path().name() + "; new_children_list: [" + sb + "];");
   }
 
   /**
@@ -333,14 +1059,19 @@ public class DB extends AbstractActor {
    * This is triggered by a L2 {@link Cache} when its L1 parent recovers from a crash or when a L2 {@link Cache} set the
    * database as new parent.
    * The DB will create a {@link RefreshItemRespMsg response} with the value associated to the requested key.
-   * The message will be sent to the child (a {@link Cache cache}) popped from responsePath object.
+   * The message will be sent to the child (a {@link Cache cache}) from which the request has arrived.
+   * If the shard has {@link DBReadWorker read workers}, the request is forwarded to one of them.
    * @param msg the {@link RefreshItemReqMsg} message contains the key of the element to be read from the database.
    */
   private void onRefreshItemReqMsg(RefreshItemReqMsg msg){
-    ActorRef nextHop = msg.responsePath.pop();
+    if(forwardToReadWorker(msg))
+      return;
+    ActorRef nextHop = getSender();
     Integer key = msg.key;
-    RefreshItemRespMsg resp = new RefreshItemRespMsg(key, this.items.get(key), msg.responsePath, msg.uuid);
+    RefreshItemRespMsg resp = new RefreshItemRespMsg(key, this.items.get(key), msg.reqId);
+    this.servedRequests++;
     LOGGER.debug("DB " + this.id + "; refresh_request_received_from: " + nextHop.path().name() + "; key: " + key + "; refresh_response_sent;");
+    grantCopy(resp, nextHop);
     sendMessage(resp, nextHop);
   }
   /* -- END OF crash handling message methods ----------------------------------------------------- */
@@ -352,19 +1083,35 @@ public class DB extends AbstractActor {
   /**
    * This method is triggered when a {@link InternalStateMsg} is received from the {@link EasyCache.ProjectRunner runner}.
    * This method is used for debugging. It will print the current state of the database: the items and the list of children.
+   * The items of a persistent store are not listed, because they could be many more than the ones that fit in memory.
    * @param msg is the {@link InternalStateMsg} message, is an empty message used to print the internal state of the cache.
    */
   private void onInternalStateMsg(InternalStateMsg msg) {
     StringBuilder sb = new StringBuilder();
-    sb.append("INTERNAL_STATE: DB " + this.id + "; items: [");
-    for(Integer k : items.keySet()){
-      sb.append(k + ":" + items.get(k) + ";");
+    sb.append("INTERNAL_STATE: DB " + this.id + "; items: ");
+    if(items.isPersistent()){
+      sb.append("not_listed_for_" + Config.DB_STORE + "_store");
+    }else{
+      sb.append("[");
+      items.forEach((k, v) -> sb.append(k + ":" + v + ";"));
+      sb.append("]");
     }
-    sb.append("]; children: [");
+    sb.append("; children: [");
     for(ActorRef ch : children){
       sb.append(ch.path().name() + ";");
     }
-    sb.append("];");
+    sb.append("]; shard: " + this.shard + "; served_requests: " + this.servedRequests + "; served_by_read_workers: " + this.servedReads.get() + ";");
+    sb.append(" sharer_entries: " + this.sharers.size() + "; sends_skipped_by_directory: " + this.skippedSends + "; sent_messages: " + (this.sentMessages + this.servedReads.get()) + ";");
+    sb.append(" invalidation_rounds: " + this.invalidationRounds + "; round_crit_writes: " + this.roundCritWrites + "; batched_messages: " + this.batchedMessages + ";");
+    sb.append(" invalidation_rtt: [");
+    for(Map.Entry<ActorRef, RttEstimator> e : this.rtts.entrySet())
+      sb.append(" " + e.getKey().path().name() + ": { " + e.getValue() + " }");
+    sb.append(" ];");
+    sb.append(" queued_crit_writes: " + this.queuedCritWritesCount + "; total_queued_crit_writes: " + this.totalQueuedCritWrites + "; max_crit_write_queue_depth: " + this.maxCritWriteQueueDepth + ";");
+    if(Config.DB_STORE==ItemStoreType.LSM)
+      sb.append(" lsm: " + this.items + ";");
+    if(this.wal!=null)
+      sb.append(" wal_syncs: " + this.wal.syncs() + "; wal_durable_writes: " + this.wal.syncedRecords() + "; wal_records_since_checkpoint: " + this.wal.recordsSinceCheckpoint() + ";");
     LOGGER.debug(sb);
   }
 
@@ -384,8 +1131,15 @@ public class DB extends AbstractActor {
       .match(CritWriteReqMsg.class,   this::onCritWriteReqMsg)
       .match(ReadReqMsg.class,    this::onReadReqMsg)
       .match(WriteReqMsg.class,    this::onWriteReqMsg)
+      .match(MultiReadReqMsg.class,    this::onMultiReadReqMsg)
+      .match(MultiWriteReqMsg.class,    this::onMultiWriteReqMsg)
       .match(InvalidationItemConfirmMsg.class,   this::onInvalidationItemConfirmMsg)
       .match(TimeoutInvalidAckMsg.class,   this::onTimeoutInvalidAckMsg)
+      .match(TimerTickMsg.class,   this::onTimerTickMsg)
+      .match(GroupCommitMsg.class,   this::onGroupCommitMsg)
+      .match(InvalidationRoundMsg.class,   this::onInvalidationRoundMsg)
+      .match(BatchMsg.class,   this::onBatchMsg)
+      .match(ItemReleasedMsg.class,   this::onItemReleasedMsg)
       .build();
   }
 }
@@ -0,0 +1,123 @@
+package EasyCache.Devices;
+
+import EasyCache.Messages.*;
+import EasyCache.Storage.IntIntMap;
+import EasyCache.Storage.ItemStore;
+import EasyCache.Util.SharerDirectory;
+import EasyCache.Network.Transport;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.IntFunction;
+
+/**
+ * This actor serves the {@link ReadReqMsg reads} and the {@link RefreshItemReqMsg refreshes} of a {@link DB database}
+ * shard, so that they run in parallel on several threads instead of waiting in the mailbox of the shard behind writes
+ * and {@link CritWriteReqMsg critical writes}.
+ * The items are read from the store of the shard under the read lock; the shard applies the writes under the write
+ * lock. The response is sent while holding the read lock, on the {@link Transport transport} of the shard: a
+ * response read before a write is never delivered after the {@link RefillMsg refill} of that write. For the same reason
+ * the receiver of the value is recorded in the {@link SharerDirectory sharers} of the shard under the read lock.
+ */
+public class DBReadWorker extends AbstractActor {
+
+  /**
+   * numeric ID of the database shard this worker belongs to.
+   */
+  private final int dbId;
+  private final ItemStore items;
+  private final ReadWriteLock itemsLock;
+  private final Transport transport;
+  private final SharerDirectory sharers;
+  /**
+   * number of requests served by all the workers of the shard.
+   */
+  private final AtomicLong servedReads;
+
+  private static final Logger LOGGER = LogManager.getLogger(DBReadWorker.class);
+
+  /* -- Actor constructor --------------------------------------------------- */
+
+  /**
+   * Constructor of the DBReadWorker actor.
+   * @param dbId the ID of the database shard.
+   * @param items the store of the shard.
+   * @param itemsLock the lock protecting the store.
+   * @param transport the transport of the shard, used to send the responses.
+   * @param sharers the directory of the children holding each item of the shard.
+   * @param servedReads the counter of the requests served by the workers of the shard.
+   */
+  public DBReadWorker(int dbId, ItemStore items, ReadWriteLock itemsLock, Transport transport, SharerDirectory sharers, AtomicLong servedReads) {
+    this.dbId = dbId;
+    this.items = items;
+    this.itemsLock = itemsLock;
+    this.transport = transport;
+    this.sharers = sharers;
+    this.servedReads = servedReads;
+  }
+
+  static public Props props(int dbId, ItemStore items, ReadWriteLock itemsLock, Transport transport, SharerDirectory sharers, AtomicLong servedReads) {
+    return Props.create(DBReadWorker.class, () -> new DBReadWorker(dbId, items, itemsLock, transport, sharers, servedReads));
+  }
+
+  /* -- Actor behaviour ----------------------------------------------------- */
+
+  /**
+   * This method is used to read an item and send the response, created by the given function with the read value.
+   * The response is sent on behalf of the shard, which is the parent of this worker.
+   * @param key the key of the item to read.
+   * @param reqId the id of the request, that identifies the copy of the item given to the child.
+   * @param nextHop the child of the shard to which the response must be sent.
+   * @param response the function creating the response from the value of the item.
+   */
+  private void readAndRespond(int key, long reqId, ActorRef nextHop, IntFunction<Message> response){
+    itemsLock.readLock().lock();
+    try {
+      int value = items.get(key);
+      if (value != IntIntMap.ABSENT)
+        sharers.grant(key, nextHop, reqId);
+      Message resp = response.apply(value);
+      transport.send(resp, nextHop); // on behalf of the shard
+    } finally {
+      itemsLock.readLock().unlock();
+    }
+    servedReads.incrementAndGet();
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link ReadReqMsg} message, forwarded by the shard. The forward keeps
+   * the child that has sent the request as sender, so the response goes to it.
+   * @param msg the {@link ReadReqMsg} message which contains the key of the element to be read.
+   */
+  private void onReadReqMsg(ReadReqMsg msg) {
+    ActorRef nextHop = getSender();
+    LOGGER.debug("DB " + this.dbId + "; worker: " + getSelf().path().name() + "; read_request_received_from: " + nextHop.path().name() + "; key: " + msg.key + "; MSG_ID: " + msg.reqId + "; read_response_sent; ");
+    readAndRespond(msg.key, msg.reqId, nextHop, value -> new ReadRespMsg(msg.key, value, msg.reqId));
+  }
+
+  /**
+   * This method is used to handle the arrival of a {@link RefreshItemReqMsg} message, forwarded by the shard.
+   * @param msg the {@link RefreshItemReqMsg} message contains the key of the element to be read from the database.
+   */
+  private void onRefreshItemReqMsg(RefreshItemReqMsg msg){
+    ActorRef nextHop = getSender();
+    LOGGER.debug("DB " + this.dbId + "; worker: " + getSelf().path().name() + "; refresh_request_received_from: " + nextHop.path().name() + "; key: " + msg.key + "; refresh_response_sent;");
+    readAndRespond(msg.key, msg.reqId, nextHop, value -> new RefreshItemRespMsg(msg.key, value, msg.reqId));
+  }
+
+  /**
+   * The mapping between the received message types and our actor methods in the normal behaviour.
+   */
+  @Override
+  public Receive createReceive() {
+    return receiveBuilder()
+      .match(RefreshItemReqMsg.class,   this::onRefreshItemReqMsg)
+      .match(ReadReqMsg.class,    this::onReadReqMsg)
+      .build();
+  }
+}
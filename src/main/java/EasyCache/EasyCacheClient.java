@@ -0,0 +1,149 @@
+package EasyCache;
+
+import EasyCache.Devices.Client;
+import EasyCache.Messages.*;
+import EasyCache.Storage.IntIntMap;
+import akka.actor.ActorRef;
+import akka.pattern.Patterns;
+
+import java.time.Duration;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Java API to perform requests on the cache hierarchy through a {@link Client client} actor, which keeps choosing its L2
+ * {@link EasyCache.Devices.Cache cache} and handling the timeouts as usual.
+ * Each request is sent to the client as a doMessage and returns a {@link CompletableFuture} completed with its result
+ * when the client ends it. A request that ends with an error or a timeout completes exceptionally with a
+ * {@link RequestFailedException}.
+ * The {@link Blocking blocking} variant waits for the futures: waiting never holds a monitor, so it can be called from
+ * virtual threads without pinning their carrier thread.
+ */
+public class EasyCacheClient {
+
+  /**
+   * the {@link Client client} actor performing the requests.
+   */
+  private final ActorRef client;
+
+  /**
+   * maximum time to wait for the result of a request.
+   */
+  private final Duration timeout;
+
+  public EasyCacheClient(ActorRef client) {
+    this(client, Duration.ofMillis(Config.TIMEOUT_CLIENT_API));
+  }
+
+  public EasyCacheClient(ActorRef client, Duration timeout) {
+    this.client = client;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Reads an item.
+   * @param key the key of the item.
+   * @return the value of the item, empty if the item does not exist.
+   */
+  public CompletableFuture<OptionalInt> read(int key) {
+    return ask(new DoReadMsg(key)).thenApply(EasyCacheClient::valueOf);
+  }
+
+  /**
+   * Writes an item.
+   * @param key the key of the item.
+   * @param value the new value.
+   * @return a future completed when the write is confirmed.
+   * @throws IllegalArgumentException if the value is {@link IntIntMap#ABSENT}, that marks a missing item.
+   */
+  public CompletableFuture<Void> write(int key, int value) {
+    return ask(new DoWriteMsg(key, value)).thenApply(result -> null);
+  }
+
+  /**
+   * Reads an item with a critical read, which always reads the value from the {@link EasyCache.Devices.DB database}.
+   * @param key the key of the item.
+   * @return the value of the item, empty if the item does not exist.
+   */
+  public CompletableFuture<OptionalInt> critRead(int key) {
+    return ask(new DoCritReadMsg(key)).thenApply(EasyCacheClient::valueOf);
+  }
+
+  /**
+   * Writes an item with a critical write, which invalidates all the copies of the item before updating them.
+   * @param key the key of the item.
+   * @param value the new value.
+   * @return a future completed when the critical write is confirmed.
+   * @throws IllegalArgumentException if the value is {@link IntIntMap#ABSENT}, that marks a missing item.
+   */
+  public CompletableFuture<Void> critWrite(int key, int value) {
+    return ask(new DoCritWriteMsg(key, value)).thenApply(result -> null);
+  }
+
+  /**
+   * @return the blocking variant of this API.
+   */
+  public Blocking blocking() {
+    return new Blocking();
+  }
+
+  private CompletableFuture<RequestResultMsg> ask(IdMessage doMsg) {
+    return Patterns.ask(client, doMsg, timeout).toCompletableFuture().thenApply(result -> {
+      RequestResultMsg resultMsg = (RequestResultMsg) result;
+      if (!resultMsg.success)
+        throw new RequestFailedException("request " + doMsg.reqId + " for item " + doMsg.key + " has failed");
+      return resultMsg;
+    });
+  }
+
+  private static OptionalInt valueOf(RequestResultMsg result) {
+    return result.value == IntIntMap.ABSENT ? OptionalInt.empty() : OptionalInt.of(result.value);
+  }
+
+  /**
+   * Blocking variant of the API: each method waits for the result of the request and throws a
+   * {@link RequestFailedException} if it fails (or the exception of the ask, e.g. an {@link akka.pattern.AskTimeoutException}).
+   */
+  public class Blocking {
+
+    public OptionalInt read(int key) {
+      return await(EasyCacheClient.this.read(key));
+    }
+
+    public void write(int key, int value) {
+      await(EasyCacheClient.this.write(key, value));
+    }
+
+    public OptionalInt critRead(int key) {
+      return await(EasyCacheClient.this.critRead(key));
+    }
+
+    public void critWrite(int key, int value) {
+      await(EasyCacheClient.this.critWrite(key, value));
+    }
+
+    /**
+     * Waits for a future. {@link CompletableFuture#join()} parks the waiting thread without holding any monitor, so a
+     * waiting virtual thread is unmounted from its carrier.
+     */
+    private <T> T await(CompletableFuture<T> future) {
+      try {
+        return future.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Thrown when a request ends with an error or a timeout of the {@link Client client}.
+   */
+  public static class RequestFailedException extends RuntimeException {
+    public RequestFailedException(String message) {
+      super(message);
+    }
+  }
+}
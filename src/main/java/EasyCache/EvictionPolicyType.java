@@ -0,0 +1,15 @@
+package EasyCache;
+
+/**
+ * Enum used to identify the eviction policy used by a bounded {@link EasyCache.Devices.Cache cache}.
+ */
+public enum EvictionPolicyType {
+    /**
+     * evict the least recently used item
+     */
+    LRU,
+    /**
+     * window LRU in front of a main LRU region, with admission to the main region decided by a frequency sketch (W-TinyLFU)
+     */
+    TINY_LFU
+}
@@ -0,0 +1,19 @@
+package EasyCache;
+
+/**
+ * Enum used to identify the storage backend of the {@link EasyCache.Devices.DB database}.
+ */
+public enum ItemStoreType {
+    /**
+     * items kept on heap, lost at restart
+     */
+    HEAP,
+    /**
+     * items kept in a memory-mapped file with a fixed-size slot for each key, survives restarts
+     */
+    MAPPED,
+    /**
+     * items kept in a log-structured merge tree: a memtable flushed to sorted segment files compacted in background, survives restarts
+     */
+    LSM
+}
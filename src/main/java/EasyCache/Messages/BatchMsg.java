@@ -0,0 +1,25 @@
+package EasyCache.Messages;
+
+import java.util.List;
+
+/**
+ * This message carries the messages sent by a node to the same destination while handling a single event, so that they
+ * travel together: the {@link InvalidationItemMsg invalidations} of an invalidation round of the
+ * {@link EasyCache.Devices.DB database}, their {@link InvalidationItemConfirmMsg confirmations}, and the
+ * {@link RefillMsg refills} and {@link CritRefillMsg critical refills} of the writes performed together.
+ * The receiver handles the messages in order, as if they had arrived one after the other from the sender.
+ */
+public class BatchMsg extends Message {
+    public final List<Message> msgs;
+    public BatchMsg(List<Message> msgs) {
+        this.msgs = msgs;
+    }
+
+    @Override
+    public int sizeBytes() {
+        int size = super.sizeBytes();
+        for (Message m : msgs)
+            size += m.sizeBytes();
+        return size;
+    }
+}
@@ -0,0 +1,19 @@
+package EasyCache.Messages;
+
+/**
+ * This message is used by the {@link EasyCache.Devices.DB database} when it receives a {@link CritWriteReqMsg critical write request}
+ * for an item there is already an ongoing {@link CritWriteReqMsg critical write}: the request is queued and will be performed
+ * after the ones ahead of it. Like a {@link CritWriteErrorMsg}, it is propagated to the originator of the request, so
+ * that the L2 {@link EasyCache.Devices.Cache cache} and the {@link EasyCache.Devices.Client client} extend their timers
+ * instead of going in timeout while the request waits.
+ */
+public class CritWriteQueuedMsg extends IdMessage {
+    public CritWriteReqMsg request;
+    public int position; // number of critical writes on the same item that will be performed before this one
+
+    public CritWriteQueuedMsg(CritWriteReqMsg request, int position) {
+        super(request.key, request.reqId);
+        this.request=request;
+        this.position=position;
+    }
+}
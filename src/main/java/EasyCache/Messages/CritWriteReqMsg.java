@@ -2,8 +2,6 @@ package EasyCache.Messages;
 
 import akka.actor.ActorRef;
 
-import java.util.UUID;
-
 /**
  * This message represents the request of critically writing a new value in the element identify by the key.
  * The message is used like in {@link WriteReqMsg}.
@@ -14,7 +12,7 @@ public class CritWriteReqMsg extends WriteReqMsg {
         super(key, newValue, originator);
     }
 
-    public CritWriteReqMsg(int key, UUID uuid, int newValue, ActorRef originator) {
-        super(key, uuid, newValue, originator);
+    public CritWriteReqMsg(int key, long reqId, int newValue, ActorRef originator) {
+        super(key, reqId, newValue, originator);
     }
 }
@@ -0,0 +1,15 @@
+package EasyCache.Messages;
+
+/**
+ * This message is sent by the {@link EasyCache.ProjectRunner runner} to a {@link EasyCache.Devices.Client client} to trigger a
+ * {@link MultiReadReqMsg multi-read request}. We need to specify the keys of the items that the client needs to read, the
+ * key of the message is the first of them.
+ */
+public class DoMultiReadMsg extends IdMessage {
+    public final int[] keys; // distinct keys to read
+
+    public DoMultiReadMsg(int[] keys) {
+        super(keys[0]);
+        this.keys=keys;
+    }
+}
@@ -0,0 +1,20 @@
+package EasyCache.Messages;
+
+/**
+ * This message is sent by the {@link EasyCache.ProjectRunner runner} to a {@link EasyCache.Devices.Client client} to trigger a
+ * {@link MultiWriteReqMsg multi-write request}. We need to specify the keys of the items that the client needs to write
+ * and their new values, the key of the message is the first of them. As in {@link DoWriteMsg} no new value can be
+ * {@link EasyCache.Storage.IntIntMap#ABSENT}.
+ */
+public class DoMultiWriteMsg extends IdMessage {
+    public final int[] keys; // distinct keys to write
+    public final int[] newValues; // new value of each key
+
+    public DoMultiWriteMsg(int[] keys, int[] newValues) {
+        super(keys[0]);
+        for (int newValue : newValues)
+            DoWriteMsg.checkValue(newValue);
+        this.keys=keys;
+        this.newValues=newValues;
+    }
+}
@@ -1,14 +1,27 @@
 package EasyCache.Messages;
 
+import EasyCache.Storage.IntIntMap;
+
 /**
  * This message is sent by the {@link EasyCache.ProjectRunner runner} to a {@link EasyCache.Devices.Client client} to trigger a
  * {@link WriteReqMsg write request}. We need to specifiy the key of the item that the client need to write and the new value.
+ * The new value cannot be {@link IntIntMap#ABSENT}, that the caches and the database use to mark a missing item.
  */
 public class DoWriteMsg extends IdMessage {
     public final int newValue; // newValue to set
 
     public DoWriteMsg(int key, int newValue) {
         super(key);
+        checkValue(newValue);
         this.newValue=newValue;
     }
+
+    /**
+     * @param newValue a value to write.
+     * @throws IllegalArgumentException if the value is {@link IntIntMap#ABSENT}.
+     */
+    static void checkValue(int newValue) {
+        if (newValue == IntIntMap.ABSENT)
+            throw new IllegalArgumentException("cannot write " + newValue + ": the value is reserved to mark a missing item");
+    }
 }
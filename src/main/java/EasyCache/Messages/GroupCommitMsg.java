@@ -0,0 +1,10 @@
+package EasyCache.Messages;
+
+/**
+ * This message is scheduled by the {@link EasyCache.Devices.DB database} to itself when the first write of a group commit
+ * is appended to the write-ahead log. When it arrives, all the writes of the group are made durable and their
+ * {@link RefillMsg refills} are sent.
+ */
+public class GroupCommitMsg extends Message {
+    public GroupCommitMsg() {}
+}
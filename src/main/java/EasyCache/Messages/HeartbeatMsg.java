@@ -0,0 +1,10 @@
+package EasyCache.Messages;
+
+/**
+ * This message is sent periodically by a {@link EasyCache.Devices.Cache cache} to each of its children to which it has not
+ * sent any other message in the last {@link EasyCache.Config#HEARTBEAT_INTERVAL} milliseconds: every message from the
+ * parent feeds the failure detector of the child, the heartbeat is needed only when there is no other traffic.
+ */
+public class HeartbeatMsg extends Message {
+    public HeartbeatMsg() {}
+}
@@ -0,0 +1,10 @@
+package EasyCache.Messages;
+
+/**
+ * This message is scheduled by a {@link EasyCache.Devices.Cache cache} or a {@link EasyCache.Devices.Client client} to
+ * itself every {@link EasyCache.Config#HEARTBEAT_INTERVAL} milliseconds, to send the {@link HeartbeatMsg heartbeats} to
+ * its children and to check the suspicion level of its parent.
+ */
+public class HeartbeatTickMsg extends Message {
+    public HeartbeatTickMsg() {}
+}
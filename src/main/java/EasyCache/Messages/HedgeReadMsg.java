@@ -0,0 +1,14 @@
+package EasyCache.Messages;
+
+/**
+ * This message is used in {@link EasyCache.Devices.Client clients} to hedge a slow {@link ReadReqMsg read request}: when
+ * the timer expires before the response arrives, this message is sent to self and the same request is sent to a second
+ * L2 {@link EasyCache.Devices.Cache cache}.
+ * The message include the read request to hedge.
+ */
+public class HedgeReadMsg extends Message{
+    public DoReadMsg awaitedMsg;
+    public HedgeReadMsg(DoReadMsg awaited){
+        this.awaitedMsg=awaited;
+    }
+}
@@ -1,23 +1,50 @@
 package EasyCache.Messages;
 
-import java.util.UUID;
+import EasyCache.Config;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Abstract class that identifies all messages with an {@link UUID uuid} and a key. Every message that needs an uuid subclass
+ * Abstract class that identifies all messages with a request id and a key. Every message that needs a request id subclass
  * from this class.
- * Thanks to the {@link UUID uuid}, we can chain and associate requests and connected responses.
+ * Thanks to the request id, we can chain and associate requests and connected responses.
+ * The ids are 64 bits long: the {@link Config#NODE_ID node id} in the 16 high bits and a counter of the process in the
+ * others, so they are unique without the cost of a random UUID, and never 0. The ids of different processes are unique
+ * only if each process is started with its own node id.
  */
 abstract public class IdMessage extends Message {
+    private static final int COUNTER_BITS = 48;
+    private static final long NODE_PREFIX = nodePrefix(Config.NODE_ID);
+    private static final AtomicLong COUNTER = new AtomicLong();
+
     public int key;
-    public UUID uuid;
+    public long reqId;
 
     public IdMessage(int key){
         this.key=key;
-        this.uuid=UUID.randomUUID();
+        this.reqId=nextId();
     }
 
-    public IdMessage(int key, UUID uuid){
+    public IdMessage(int key, long reqId){
         this.key=key;
-        this.uuid=uuid;
+        this.reqId=reqId;
+    }
+
+    private static long nodePrefix(int nodeId){
+        if(nodeId < 0 || nodeId >= 1 << (Long.SIZE - COUNTER_BITS))
+            throw new IllegalArgumentException("node id out of range [0, " + ((1 << (Long.SIZE - COUNTER_BITS)) - 1) + "]: " + nodeId);
+        return (long) nodeId << COUNTER_BITS;
+    }
+
+    /**
+     * @return a new request id, unique among all the processes with different node ids.
+     */
+    public static long nextId(){
+        return NODE_PREFIX | (COUNTER.incrementAndGet() & ((1L << COUNTER_BITS) - 1));
+    }
+
+    @Override
+    public int sizeBytes() {
+        return super.sizeBytes() + 4 + 8; // key and reqId
     }
 }
@@ -1,7 +1,5 @@
 package EasyCache.Messages;
 
-import java.util.UUID;
-
 /**
  * This message is used during the process of a {@link CritWriteReqMsg critical write}. It is sent by the {@link EasyCache.Devices.DB database}
  * to all {@link EasyCache.Devices.Cache caches} to inform them to mark the item identified by the key as invalid before applying
@@ -9,7 +7,7 @@ import java.util.UUID;
  */
 public class InvalidationItemMsg extends IdMessage {
 
-    public InvalidationItemMsg(int key, UUID uuid){
-        super(key, uuid);
+    public InvalidationItemMsg(int key, long reqId){
+        super(key, reqId);
     }
 }
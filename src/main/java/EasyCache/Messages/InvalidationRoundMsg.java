@@ -0,0 +1,10 @@
+package EasyCache.Messages;
+
+/**
+ * This message is scheduled by the {@link EasyCache.Devices.DB database} to itself when the first critical write of an
+ * invalidation round arrives. When it arrives, the {@link InvalidationItemMsg invalidations} of all the critical writes
+ * of the round are sent, with one message for each child.
+ */
+public class InvalidationRoundMsg extends Message {
+    public InvalidationRoundMsg() {}
+}
@@ -0,0 +1,13 @@
+package EasyCache.Messages;
+
+/**
+ * This message is sent by a {@link EasyCache.Devices.Cache cache} to its parent when it no longer holds a copy of an item,
+ * neither in its memory nor in its children, for example after an eviction.
+ * The request id is the one of the response that gave the copy to the cache: the parent removes the cache from the sharers of
+ * the item only if it has not sent it a newer copy in the meantime.
+ */
+public class ItemReleasedMsg extends IdMessage {
+    public ItemReleasedMsg(int key, long grant){
+        super(key, grant);
+    }
+}
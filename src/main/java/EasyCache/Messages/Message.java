@@ -6,4 +6,12 @@ import java.io.Serializable;
  * Abstract class that is a wrapper to implements {@link Serializable}. Every message subclass from this class.
  */
 abstract public class Message implements Serializable {
+
+    /**
+     * @return an estimate of the size of the message on the network, in bytes, used by the simulated
+     * {@link EasyCache.Network.NetworkModel network model} to compute its transmission time.
+     */
+    public int sizeBytes() {
+        return 16; // header: type and framing
+    }
 }
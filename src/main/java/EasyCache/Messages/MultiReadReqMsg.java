@@ -0,0 +1,23 @@
+package EasyCache.Messages;
+
+/**
+ * This message represents the request of reading the values of several items, identified by their keys. The key of the
+ * message is the first of them.
+ * Each {@link EasyCache.Devices.Cache cache} answers the keys it has and forwards to its parent only the missing ones, in
+ * a new request with the same request id (one for each shard of the {@link EasyCache.Devices.DB database} if the parent is the
+ * database), then it merges the partial {@link MultiReadRespMsg responses}.
+ * The message is routed like in {@link ReadReqMsg}.
+ */
+public class MultiReadReqMsg extends IdMessage {
+    public final int[] keys; // distinct keys to read
+
+    public MultiReadReqMsg(int[] keys, long reqId) {
+        super(keys[0], reqId);
+        this.keys=keys;
+    }
+
+    @Override
+    public int sizeBytes() {
+        return super.sizeBytes() + 4 * keys.length;
+    }
+}
@@ -0,0 +1,22 @@
+package EasyCache.Messages;
+
+/**
+ * Represent the response to a {@link MultiReadReqMsg multi-read request}, or to the part of it forwarded by a
+ * {@link EasyCache.Devices.Cache cache}. It contains the requested keys and, in the same order, their values.
+ * The message is sent like in {@link ReadRespMsg}.
+ */
+public class MultiReadRespMsg extends IdMessage {
+    public final int[] keys; // requested keys
+    public final int[] values; // value of each requested key
+
+    public MultiReadRespMsg(int[] keys, int[] values, long reqId) {
+        super(keys[0], reqId);
+        this.keys=keys;
+        this.values=values;
+    }
+
+    @Override
+    public int sizeBytes() {
+        return super.sizeBytes() + 8 * keys.length;
+    }
+}
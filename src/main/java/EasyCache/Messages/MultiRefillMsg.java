@@ -0,0 +1,41 @@
+package EasyCache.Messages;
+
+import akka.actor.ActorRef;
+
+import java.util.List;
+
+/**
+ * This message is used to refill {@link EasyCache.Devices.Cache caches} with the new values of several items written
+ * together by a {@link MultiWriteReqMsg multi-write}. Each child receives a single message with the items it holds
+ * (all of them for the child on the path of the write).
+ * This message works like in {@link RefillMsg}, whose key and new value are the ones of the first item.
+ */
+public class MultiRefillMsg extends RefillMsg {
+    public final int[] keys; // written keys
+    public final int[] newValues; // new value of each written key
+
+    public MultiRefillMsg(int[] keys, int[] newValues, ActorRef originator, long reqId) {
+        super(keys[0], newValues[0], originator, reqId);
+        this.keys=keys;
+        this.newValues=newValues;
+    }
+
+    /**
+     * @param indexes the positions of the items to keep, in increasing order.
+     * @return a refill of the same write with only the given items.
+     */
+    public MultiRefillMsg only(List<Integer> indexes) {
+        int[] subKeys = new int[indexes.size()];
+        int[] subValues = new int[indexes.size()];
+        for (int i = 0; i < indexes.size(); i++) {
+            subKeys[i] = keys[indexes.get(i)];
+            subValues[i] = newValues[indexes.get(i)];
+        }
+        return new MultiRefillMsg(subKeys, subValues, originator, reqId);
+    }
+
+    @Override
+    public int sizeBytes() {
+        return super.sizeBytes() + 8 * keys.length;
+    }
+}
@@ -0,0 +1,20 @@
+package EasyCache.Messages;
+
+/**
+ * This message represents the confirmation of a successful {@link MultiWriteReqMsg multi-write request}, sent when the
+ * {@link MultiRefillMsg refills} of all its items have arrived. The key of the message is the first of the written keys.
+ * The message is used like in {@link WriteConfirmMsg}.
+ */
+public class MultiWriteConfirmMsg extends IdMessage {
+    public final int[] keys; // written keys
+
+    public MultiWriteConfirmMsg(int[] keys, long reqId) {
+        super(keys[0], reqId);
+        this.keys=keys;
+    }
+
+    @Override
+    public int sizeBytes() {
+        return super.sizeBytes() + 4 * keys.length;
+    }
+}
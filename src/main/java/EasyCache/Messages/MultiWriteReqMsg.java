@@ -0,0 +1,28 @@
+package EasyCache.Messages;
+
+import akka.actor.ActorRef;
+
+/**
+ * This message represents the request of writing new values in several items, identified by their keys. The key of the
+ * message is the first of them.
+ * It is forwarded like a {@link WriteReqMsg write request}, and it is split by the last {@link EasyCache.Devices.Cache cache}
+ * on the path in one request (with the same request id) for each shard of the {@link EasyCache.Devices.DB database}.
+ * Originator is the {@link ActorRef reference} of the {@link EasyCache.Devices.Client client} that performed the request.
+ */
+public class MultiWriteReqMsg extends IdMessage {
+    public final int[] keys; // distinct keys to write
+    public final int[] newValues; // new value of each key
+    public ActorRef originator; //originator of request
+
+    public MultiWriteReqMsg(int[] keys, long reqId, int[] newValues, ActorRef originator) {
+        super(keys[0], reqId);
+        this.keys=keys;
+        this.newValues=newValues;
+        this.originator=originator;
+    }
+
+    @Override
+    public int sizeBytes() {
+        return super.sizeBytes() + 8 * keys.length;
+    }
+}
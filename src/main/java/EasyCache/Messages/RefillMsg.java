@@ -2,8 +2,6 @@ package EasyCache.Messages;
 
 import akka.actor.ActorRef;
 
-import java.util.UUID;
-
 /**
  * This message is used to refill {@link EasyCache.Devices.Cache caches} with the new value of an element they already have saved during a {@link WriteReqMsg write}.
  * It is initially sent by the {@link EasyCache.Devices.DB database} to its children after it applied the {@link WriteReqMsg write}.
@@ -13,8 +11,8 @@ public class RefillMsg extends IdMessage{
     public final int newValue; //new value of item
     public ActorRef originator;
 
-    public RefillMsg(int key, int newValue, ActorRef originator, UUID uuid) {
-        super(key,uuid);
+    public RefillMsg(int key, int newValue, ActorRef originator, long reqId) {
+        super(key,reqId);
         this.newValue=newValue;
         this.originator=originator;
     }
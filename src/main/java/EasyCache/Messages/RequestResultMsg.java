@@ -0,0 +1,24 @@
+package EasyCache.Messages;
+
+import EasyCache.Storage.IntIntMap;
+
+/**
+ * This message is sent by a {@link EasyCache.Devices.Client client} to the actor that asked it to perform a request (with
+ * a doMessage), when the request ends. It is used by the {@link EasyCache.EasyCacheClient} to complete its futures.
+ * The request id is the one of the doMessage.
+ */
+public class RequestResultMsg extends Message {
+    public final long reqId;
+    public final boolean success; // false if the request has ended with an error or a timeout
+    public final int value; // value read, IntIntMap.ABSENT for writes, failed requests and items not found
+
+    public RequestResultMsg(long reqId, boolean success, int value) {
+        this.reqId=reqId;
+        this.success=success;
+        this.value=value;
+    }
+
+    public static RequestResultMsg failure(long reqId) {
+        return new RequestResultMsg(reqId, false, IntIntMap.ABSENT);
+    }
+}
@@ -0,0 +1,13 @@
+package EasyCache.Messages;
+
+/**
+ * This message is used in {@link EasyCache.Devices.Cache caches} to stop waiting for the {@link CritRefillMsg} of an
+ * invalid item when a {@link ReadReqMsg read} (or {@link CritReadReqMsg critical read}) has been parked on it for too long.
+ * When the timer expires, this message is sent to self and the request is answered with a {@link ReqErrorMsg}.
+ */
+public class TimeoutParkedReadMsg extends Message{
+    public ReadReqMsg parkedMsg;
+    public TimeoutParkedReadMsg(ReadReqMsg parked){
+        this.parkedMsg=parked;
+    }
+}
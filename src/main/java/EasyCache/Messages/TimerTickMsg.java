@@ -0,0 +1,10 @@
+package EasyCache.Messages;
+
+/**
+ * This message is sent periodically by the scheduler to a {@link EasyCache.Devices.Cache cache}, a
+ * {@link EasyCache.Devices.Client client} or a shard of the {@link EasyCache.Devices.DB database}, every
+ * {@link EasyCache.Config#TIMER_WHEEL_TICK} milliseconds, to expire the timeouts of its timer wheel.
+ */
+public class TimerTickMsg extends Message {
+    public TimerTickMsg() {}
+}
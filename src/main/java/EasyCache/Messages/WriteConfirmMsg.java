@@ -1,7 +1,5 @@
 package EasyCache.Messages;
 
-import java.util.UUID;
-
 /**
  * This message represents the confirmation of a successful {@link WriteReqMsg write request}.
  * This will be originated by a L2 {@link EasyCache.Devices.Cache cache} if the originator of the {@link WriteReqMsg request} is
@@ -10,7 +8,7 @@ import java.util.UUID;
  */
 public class WriteConfirmMsg extends IdMessage{
 
-    public WriteConfirmMsg(int key, UUID uuid) {
-        super(key, uuid);
+    public WriteConfirmMsg(int key, long reqId) {
+        super(key, reqId);
     }
 }
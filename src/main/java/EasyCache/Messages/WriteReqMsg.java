@@ -2,8 +2,6 @@ package EasyCache.Messages;
 
 import akka.actor.ActorRef;
 
-import java.util.UUID;
-
 /**
  * This message represents the request of writing a new value in the element identify by the key.
  * Originator is the {@link ActorRef reference} of the {@link EasyCache.Devices.Client client} that performed the request.
@@ -19,8 +17,8 @@ public class WriteReqMsg extends IdMessage {
         this.originator=originator;
     }
 
-    public WriteReqMsg(int key, UUID uuid, int newValue, ActorRef originator) {
-        super(key, uuid);
+    public WriteReqMsg(int key, long reqId, int newValue, ActorRef originator) {
+        super(key, reqId);
         this.newValue=newValue;
         this.originator=originator;
     }
@@ -0,0 +1,42 @@
+package EasyCache.Network;
+
+import EasyCache.Messages.Message;
+import akka.actor.ActorRef;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Transport} delivering the messages at once with a tell: the mailbox of the destination keeps them in order.
+ */
+public class DirectTransport extends Transport {
+
+  /**
+   * time of the last message sent to each destination, in milliseconds.
+   */
+  private final ConcurrentHashMap<ActorRef, Long> lastSends = new ConcurrentHashMap<>();
+
+  public DirectTransport(ActorRef sender){
+    super(sender);
+  }
+
+  @Override
+  public void send(Message m, ActorRef dest){
+    lastSends.put(dest, System.currentTimeMillis());
+    dest.tell(m, sender);
+  }
+
+  @Override
+  public long lastSendTime(ActorRef dest){
+    return lastSends.getOrDefault(dest, -1L);
+  }
+
+  @Override
+  public long inFlight(){
+    return 0;
+  }
+
+  @Override
+  public long lost(){
+    return 0;
+  }
+}
@@ -0,0 +1,199 @@
+package EasyCache.Network;
+
+import EasyCache.Config;
+import akka.actor.ActorRef;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Model of the network used by the {@link SimulatedTransport simulated transport}: the latency distribution, the
+ * bandwidth and the loss probability of the links between the tiers of the tree ({@code client}, {@code l2}, {@code l1}
+ * and {@code db}, recognized from the names of the actors).
+ * The model is loaded from the properties file {@link Config#NETWORK_MODEL_PATH}, where each link is configured by the
+ * tiers of its ends, for example:
+ * <pre>
+ * default.latency = uniform 0 50
+ * client-l2.latency = lognormal 2 0.5
+ * l1-db.latency = lognormal 40 0.8
+ * l1-db.bandwidth = 1250
+ * l1-db.loss = 0.001
+ * </pre>
+ * A link {@code a-b} is used from {@code a} to {@code b} and, unless {@code b-a} is configured, in the other direction.
+ * The links that are not configured use the {@code default} one. Without the file, every link has the uniform latency
+ * in [0, {@link Config#SEND_MAX_DELAY}) milliseconds, with no bandwidth limit and no loss.
+ * The latencies are in milliseconds: {@code fixed <ms>}, {@code uniform <min> <max>}, {@code normal <mean> <stddev>} or
+ * {@code lognormal <median> <sigma>} (long-tailed). The bandwidth is in bytes per millisecond (0 for no limit): a
+ * message waits for the transmission of the previous ones on the link, then for its own size divided by the bandwidth.
+ */
+public class NetworkModel {
+
+  private static final Logger LOGGER = LogManager.getLogger(NetworkModel.class);
+
+  private static final String DEFAULT = "default";
+
+  private final Map<String, Link> links;
+
+  private NetworkModel(Map<String, Link> links){
+    this.links = links;
+  }
+
+  /**
+   * The model of the links of a kind, between two tiers.
+   */
+  public static final class Link {
+    private final String name;
+    private final String distribution;
+    private final double a;
+    private final double b;
+    private final double bytesPerMs;
+    private final double loss;
+
+    private Link(String name, String latency, double bytesPerMs, double loss){
+      String[] parts = latency.trim().split("\\s+");
+      this.name = name;
+      this.distribution = parts[0];
+      this.a = parts.length > 1 ? Double.parseDouble(parts[1]) : 0;
+      this.b = parts.length > 2 ? Double.parseDouble(parts[2]) : 0;
+      this.bytesPerMs = bytesPerMs;
+      this.loss = loss;
+      switch (distribution) {
+        case "fixed":
+        case "uniform":
+        case "normal":
+        case "lognormal":
+          break;
+        default:
+          throw new IllegalArgumentException("unknown latency distribution of link " + name + ": " + latency);
+      }
+      if(a < 0 || b < 0 || bytesPerMs < 0 || loss < 0 || loss >= 1)
+        throw new IllegalArgumentException("invalid parameters of link " + name);
+    }
+
+    /**
+     * @param rnd the random generator.
+     * @return a latency of the link, in milliseconds.
+     */
+    public double latency(Random rnd){
+      switch (distribution) {
+        case "fixed":
+          return a;
+        case "uniform":
+          return a + rnd.nextDouble() * (b - a);
+        case "normal":
+          return Math.max(0, a + rnd.nextGaussian() * b);
+        case "lognormal":
+        default:
+          return a * Math.exp(rnd.nextGaussian() * b);
+      }
+    }
+
+    /**
+     * @param bytes the size of a message.
+     * @return the time (in milliseconds) needed to put the message on the link.
+     */
+    public double transmission(int bytes){
+      return bytesPerMs == 0 ? 0 : bytes / bytesPerMs;
+    }
+
+    /**
+     * @param rnd the random generator.
+     * @return {@code true} if a message sent on the link is lost.
+     */
+    public boolean drops(Random rnd){
+      return loss > 0 && rnd.nextDouble() < loss;
+    }
+
+    @Override
+    public String toString(){
+      return name + ": { latency: " + distribution + " " + a + " " + b + "; bandwidth_bytes_per_ms: " + bytesPerMs + "; loss: " + loss + "; }";
+    }
+  }
+
+  /**
+   * @param from the sender of the messages.
+   * @param to the destination of the messages.
+   * @return the model of the link from the sender to the destination.
+   */
+  public Link linkBetween(ActorRef from, ActorRef to){
+    String a = tierOf(from);
+    String b = tierOf(to);
+    Link link = links.get(a + "-" + b);
+    if(link == null)
+      link = links.get(b + "-" + a);
+    return link != null ? link : links.get(DEFAULT);
+  }
+
+  /**
+   * @param ref an actor.
+   * @return the tier of the actor, from its name given by the {@link EasyCache.ProjectRunner runner}.
+   */
+  private static String tierOf(ActorRef ref){
+    String name = ref.path().name();
+    if(name.startsWith("Client_"))
+      return "client";
+    if(name.startsWith("L2_"))
+      return "l2";
+    if(name.startsWith("L1_"))
+      return "l1";
+    if(name.startsWith("db_"))
+      return "db";
+    return "other";
+  }
+
+  /**
+   * Loads a model from a properties file.
+   * @param path the file of the model, if it does not exist every link uses the default model.
+   * @return the loaded model.
+   */
+  public static NetworkModel load(String path){
+    Properties props = new Properties();
+    if(Files.exists(Paths.get(path))){
+      try (Reader reader = new FileReader(path)) {
+        props.load(reader);
+      } catch (IOException e) {
+        throw new UncheckedIOException("cannot read network model " + path, e);
+      }
+    }
+    Set<String> names = new TreeSet<>();
+    names.add(DEFAULT);
+    for(String key : props.stringPropertyNames()){
+      int dot = key.lastIndexOf('.');
+      if(dot <= 0)
+        throw new IllegalArgumentException("invalid property of network model " + path + ": " + key);
+      names.add(key.substring(0, dot));
+    }
+    Map<String, Link> links = new HashMap<>();
+    for(String name : names){
+      String defaultLatency = "uniform 0 " + Config.SEND_MAX_DELAY;
+      links.put(name, new Link(name,
+              props.getProperty(name + ".latency", props.getProperty(DEFAULT + ".latency", defaultLatency)),
+              Double.parseDouble(props.getProperty(name + ".bandwidth", props.getProperty(DEFAULT + ".bandwidth", "0"))),
+              Double.parseDouble(props.getProperty(name + ".loss", props.getProperty(DEFAULT + ".loss", "0")))));
+    }
+    NetworkModel model = new NetworkModel(links);
+    LOGGER.info("network_model: " + (props.isEmpty() ? "default" : path) + "; links: " + new TreeMap<>(links).values());
+    return model;
+  }
+
+  /**
+   * The model of {@link Config#NETWORK_MODEL_PATH}, loaded at its first use.
+   */
+  private static final class Shared {
+    private static final NetworkModel MODEL = load(Config.NETWORK_MODEL_PATH);
+  }
+
+  /**
+   * @return the model of {@link Config#NETWORK_MODEL_PATH}, shared by all the transports.
+   */
+  public static NetworkModel shared(){
+    return Shared.MODEL;
+  }
+}
@@ -0,0 +1,79 @@
+package EasyCache.Network;
+
+import java.util.ArrayDeque;
+
+/**
+ * Phi-accrual failure detector of a parent, fed by the arrival of its messages (the {@link EasyCache.Messages.HeartbeatMsg
+ * heartbeats} and any other message, which counts as a heartbeat too).
+ * It keeps the intervals between the last arrivals and computes, for the time elapsed since the last one, the suspicion
+ * level phi = -log10(P(the next arrival is later than now)), assuming normally distributed intervals. A phi of 8 means
+ * that the parent is wrongly suspected with a probability of 10^-8.
+ */
+public class PhiAccrualDetector {
+
+  /**
+   * number of intervals kept to estimate their distribution.
+   */
+  private static final int WINDOW = 32;
+
+  private final ArrayDeque<Long> intervals = new ArrayDeque<>();
+  private final double minStdDev;
+  private final long acceptablePause;
+  private long sum;
+  private long squaresSum;
+  private long lastArrival;
+
+  /**
+   * Creates a detector that has just received a message from the parent.
+   * @param expectedInterval the expected interval (in milliseconds) between two messages, used as first estimate.
+   * @param acceptablePause the delay (in milliseconds) added to the mean interval, to tolerate the jitter of the network.
+   * @param now the current time, in milliseconds.
+   */
+  public PhiAccrualDetector(long expectedInterval, long acceptablePause, long now){
+    this.minStdDev = expectedInterval / 4.0;
+    this.acceptablePause = acceptablePause;
+    this.lastArrival = now;
+    add(expectedInterval);
+  }
+
+  /**
+   * Records the arrival of a message from the parent.
+   * @param now the current time, in milliseconds.
+   */
+  public void heartbeat(long now){
+    add(Math.max(0, now - lastArrival));
+    lastArrival = now;
+  }
+
+  private void add(long interval){
+    if(intervals.size() == WINDOW){
+      long oldest = intervals.poll();
+      sum -= oldest;
+      squaresSum -= oldest * oldest;
+    }
+    intervals.add(interval);
+    sum += interval;
+    squaresSum += interval * interval;
+  }
+
+  /**
+   * @param now the current time, in milliseconds.
+   * @return the suspicion level of the parent: 0 right after a message, growing while no message arrives.
+   */
+  public double phi(long now){
+    double mean = (double) sum / intervals.size();
+    double stdDev = Math.max(minStdDev, Math.sqrt(Math.max(0, (double) squaresSum / intervals.size() - mean * mean)));
+    double y = (now - lastArrival - mean - acceptablePause) / stdDev;
+    double e = Math.exp(-y * (1.5976 + 0.070566 * y * y)); // logistic approximation of the normal distribution
+    if(now - lastArrival > mean + acceptablePause)
+      return -Math.log10(e / (1.0 + e));
+    return -Math.log10(1.0 - 1.0 / (1.0 + e));
+  }
+
+  /**
+   * @return the time (in milliseconds) of the last message from the parent.
+   */
+  public long lastArrival(){
+    return lastArrival;
+  }
+}
@@ -0,0 +1,108 @@
+package EasyCache.Network;
+
+import java.util.*;
+
+/**
+ * Estimator of the round-trip time of the requests sent on a link (to a parent or a child), used to derive the timeout
+ * of the next requests instead of a fixed one.
+ * It keeps the smoothed round-trip time and its mean deviation, updated as in TCP (RFC 6298): the timeout is
+ * {@code srtt + 4 * rttvar}, between a floor and a ceiling. Before the first sample the initial timeout is used. After a
+ * timeout the timeout of the link is doubled, up to the ceiling, until the next sample.
+ * The samples must not be taken from requests sent more than once, since the response cannot be matched to a send.
+ */
+public class RttEstimator {
+
+  /**
+   * number of request ids of timed out requests remembered to recognize their late responses.
+   */
+  private static final int TIMED_OUT_HISTORY = 64;
+
+  private final long initialTimeout;
+  private final long minTimeout;
+  private final long maxTimeout;
+
+  private double srtt;
+  private double rttvar;
+  private int backoff = 1;
+
+  private long samples;
+  private long timeouts;
+  private long falseTimeouts;
+  private long waitedMillis;
+
+  /**
+   * request ids of the last timed out requests, to count the responses arriving after the timeout.
+   */
+  private final Set<Long> timedOut = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest){
+      return size() > TIMED_OUT_HISTORY;
+    }
+  });
+
+  /**
+   * @param initialTimeout the timeout (in milliseconds) used before the first sample.
+   * @param minTimeout the floor of the timeout, in milliseconds.
+   * @param maxTimeout the ceiling of the timeout, in milliseconds.
+   */
+  public RttEstimator(long initialTimeout, long minTimeout, long maxTimeout){
+    this.initialTimeout = initialTimeout;
+    this.minTimeout = minTimeout;
+    this.maxTimeout = maxTimeout;
+  }
+
+  /**
+   * Records the round-trip time of a request answered on this link.
+   * @param millis the time between the send of the request and the arrival of its response, in milliseconds.
+   */
+  public void sample(long millis){
+    if(millis < 0)
+      millis = 0;
+    if(samples == 0){
+      srtt = millis;
+      rttvar = millis / 2.0;
+    }else{
+      rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - millis);
+      srtt = 0.875 * srtt + 0.125 * millis;
+    }
+    samples++;
+    backoff = 1;
+  }
+
+  /**
+   * @return the timeout (in milliseconds) of the next request sent on this link.
+   */
+  public long timeout(){
+    long base = samples == 0 ? initialTimeout : Math.round(srtt + 4 * rttvar);
+    return Math.min(maxTimeout, Math.max(minTimeout, base) * backoff);
+  }
+
+  /**
+   * Records that a request sent on this link has timed out, and backs off the timeout of the next requests.
+   * @param reqId the id of the request.
+   * @param waited the time (in milliseconds) waited before the timeout, the time needed to detect the failure.
+   */
+  public void recordTimeout(long reqId, long waited){
+    timeouts++;
+    waitedMillis += waited;
+    timedOut.add(reqId);
+    if(backoff < 64)
+      backoff *= 2;
+  }
+
+  /**
+   * Records the arrival of a response for a request no longer pending: if the request had timed out, the timeout was false.
+   * @param reqId the id of the request.
+   */
+  public void recordLateResponse(long reqId){
+    if(timedOut.remove(reqId))
+      falseTimeouts++;
+  }
+
+  @Override
+  public String toString(){
+    return "srtt_ms: " + Math.round(srtt) + "; rttvar_ms: " + Math.round(rttvar) + "; timeout_ms: " + timeout()
+            + "; samples: " + samples + "; timeouts: " + timeouts + "; false_timeouts: " + falseTimeouts
+            + "; mean_detection_ms: " + (timeouts == 0 ? 0 : waitedMillis / timeouts) + ";";
+  }
+}
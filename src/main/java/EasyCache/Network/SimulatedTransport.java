@@ -0,0 +1,165 @@
+package EasyCache.Network;
+
+import EasyCache.Messages.Message;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import scala.concurrent.duration.Duration;
+
+/**
+ * {@link Transport} simulating a network, according to a {@link NetworkModel}: each message waits for the transmission
+ * of the previous ones on its link, is transmitted in a time proportional to its size and then travels with a random
+ * latency, unless it is lost. The messages towards a destination wait in the outbound queue of its link, numbered by a
+ * sequence number, and leave it only from the head: a message is never delivered before the previous ones, whatever its
+ * latency. A single scheduler task per link delivers the messages that are due and is rescheduled for the next one, if any.
+ */
+public class SimulatedTransport extends Transport {
+
+  private final ActorSystem system;
+  private final NetworkModel model;
+  private final ConcurrentHashMap<ActorRef, Link> links = new ConcurrentHashMap<>();
+
+  public SimulatedTransport(ActorSystem system, ActorRef sender, NetworkModel model){
+    super(sender);
+    this.system = system;
+    this.model = model;
+  }
+
+  @Override
+  public void send(Message m, ActorRef dest){
+    Link link = links.computeIfAbsent(dest, d -> new Link(d, model.linkBetween(sender, d)));
+    synchronized (link) {
+      long now = System.currentTimeMillis();
+      link.lastSend = now;
+      ThreadLocalRandom rnd = ThreadLocalRandom.current();
+      double sent = Math.max(now, link.transmittedAt) + link.model.transmission(m.sizeBytes());
+      link.transmittedAt = sent;
+      if(link.model.drops(rnd)){
+        link.lost++;
+        return;
+      }
+      long deliverAt = Math.max(link.lastDeliverAt, (long) Math.ceil(sent + link.model.latency(rnd)));
+      link.queue.add(new Envelope(link.nextSeq++, m, deliverAt));
+      link.lastDeliverAt = deliverAt;
+      if(!link.scheduled){
+        link.scheduled = true;
+        if(deliverAt <= now)
+          deliver(link); // no need to wait for the scheduler
+        else
+          schedule(link, deliverAt - now);
+      }
+    }
+  }
+
+  /**
+   * Delivers the messages of a link that are due, from the head of its queue.
+   * @param link the link.
+   */
+  private void deliver(Link link){
+    synchronized (link) {
+      long now = System.currentTimeMillis();
+      Envelope head;
+      while((head = link.queue.peek()) != null && head.deliverAt <= now){
+        link.queue.poll();
+        if(head.seq != link.delivered)
+          throw new IllegalStateException("message " + head.seq + " delivered after " + link.delivered + " to " + link.dest);
+        link.delivered++;
+        link.dest.tell(head.msg, sender);
+      }
+      if(head == null)
+        link.scheduled = false;
+      else
+        schedule(link, head.deliverAt - now);
+    }
+  }
+
+  private void schedule(Link link, long delay){
+    system.scheduler().scheduleOnce(
+            Duration.create(Math.max(0, delay), TimeUnit.MILLISECONDS),        // when to deliver the head of the queue
+            () -> deliver(link),
+            system.dispatcher()
+    );
+  }
+
+  @Override
+  public long lastSendTime(ActorRef dest){
+    Link link = links.get(dest);
+    if(link == null)
+      return -1;
+    synchronized (link) {
+      return link.lastSend;
+    }
+  }
+
+  @Override
+  public long inFlight(){
+    long inFlight = 0;
+    for(Link link : links.values()){
+      synchronized (link) {
+        inFlight += link.nextSeq - link.delivered;
+      }
+    }
+    return inFlight;
+  }
+
+  @Override
+  public long lost(){
+    long lost = 0;
+    for(Link link : links.values()){
+      synchronized (link) {
+        lost += link.lost;
+      }
+    }
+    return lost;
+  }
+
+  /**
+   * A message waiting in the queue of a link.
+   */
+  private static final class Envelope {
+    private final long seq;
+    private final Message msg;
+    private final long deliverAt;
+
+    private Envelope(long seq, Message msg, long deliverAt){
+      this.seq = seq;
+      this.msg = msg;
+      this.deliverAt = deliverAt;
+    }
+  }
+
+  /**
+   * The outbound queue towards a destination.
+   */
+  private static final class Link {
+    private final ActorRef dest;
+    private final NetworkModel.Link model;
+    private final ArrayDeque<Envelope> queue = new ArrayDeque<>();
+    /**
+     * sequence number of the next message sent and of the next message delivered.
+     */
+    private long nextSeq;
+    private long delivered;
+    private long lastDeliverAt;
+    private long lastSend = -1;
+    /**
+     * time (in milliseconds) at which the last message has been put on the link, the next one is transmitted after it.
+     */
+    private double transmittedAt;
+    private long lost;
+    /**
+     * true while a scheduler task is going to deliver the head of the queue.
+     */
+    private boolean scheduled;
+
+    private Link(ActorRef dest, NetworkModel.Link model){
+      this.dest = dest;
+      this.model = model;
+    }
+  }
+}
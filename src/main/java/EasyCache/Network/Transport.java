@@ -0,0 +1,66 @@
+package EasyCache.Network;
+
+import EasyCache.TransportType;
+import EasyCache.Messages.Message;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+
+/**
+ * Transport of the {@link Message messages} sent by a node ({@link EasyCache.Devices.Cache}, {@link EasyCache.Devices.Client} or {@link EasyCache.Devices.DB database} shard)
+ * to the other nodes. The messages sent to the same destination are always delivered in the order in which they are sent.
+ * The transport can be shared by several actors of the same node (the {@link EasyCache.Devices.DB database} shard and its
+ * {@link EasyCache.Devices.DBReadWorker read workers}): the messages are sent on behalf of the node and are delivered to a destination in
+ * the order of the calls to {@link #send(Message, ActorRef)}.
+ */
+public abstract class Transport {
+
+  /**
+   * the node sending the messages.
+   */
+  protected final ActorRef sender;
+
+  protected Transport(ActorRef sender){
+    this.sender = sender;
+  }
+
+  /**
+   * Sends a message on behalf of the node.
+   * @param m the {@link Message} to send.
+   * @param dest the reference of the destination actor.
+   */
+  public abstract void send(Message m, ActorRef dest);
+
+  /**
+   * @param dest the reference of a destination actor.
+   * @return the time (in milliseconds) of the last message sent to the destination, -1 if no message has been sent to it.
+   */
+  public abstract long lastSendTime(ActorRef dest);
+
+  /**
+   * @return the number of messages sent and not yet delivered.
+   */
+  public abstract long inFlight();
+
+  /**
+   * @return the number of messages lost by the network.
+   */
+  public abstract long lost();
+
+  /**
+   * Factory method to create the transport associated with a {@link TransportType}.
+   * @param type the type of the transport.
+   * @param system the actor system, whose scheduler delays the messages of a {@link TransportType#SIMULATED} transport,
+   * according to the {@link NetworkModel#shared() network model}.
+   * @param sender the node sending the messages.
+   * @return the created transport.
+   */
+  public static Transport create(TransportType type, ActorSystem system, ActorRef sender){
+    switch (type) {
+      case DIRECT:
+        return new DirectTransport(sender);
+      case SIMULATED:
+      default:
+        return new SimulatedTransport(system, sender, NetworkModel.shared());
+    }
+  }
+}
@@ -35,21 +35,24 @@ public class ProjectRunner {
       items.put(i, i);
     }
 
-    // creating the database
-    final ActorRef db = system.actorOf(DB.props(items), "db");
+    // creating the shards of the database, each one loads the items it owns
+    ArrayList<ActorRef> dbShards = new ArrayList<ActorRef>();
+    for (int i = 0; i < Config.N_DB_SHARDS; i++) {
+      dbShards.add(system.actorOf(DB.props(i, items), "db_" + i));
+    }
 
     // create the L1 caches
     ArrayList<ActorRef> l1List = new ArrayList<ActorRef>();
     for (int i = 0; i < Config.N_L1; i++) {
       int id = i + 100;
-      l1List.add(system.actorOf(Cache.props(id, CacheType.L1, db), "L1_" + id));
+      l1List.add(system.actorOf(Cache.props(id, CacheType.L1, dbShards), "L1_" + id));
     }
 
     // create the L2 caches
     ArrayList<ActorRef> l2List = new ArrayList<ActorRef>();
     for (int i = 0; i < Config.N_L2; i++) {
       int id = i + 200;
-      l2List.add(system.actorOf(Cache.props(id, CacheType.L2, db), "L2_" + id));
+      l2List.add(system.actorOf(Cache.props(id, CacheType.L2, dbShards), "L2_" + id));
     }
 
     // create the clients
@@ -62,9 +65,9 @@ public class ProjectRunner {
       clientList.get(i).tell(availableL2Msg, ActorRef.noSender());
     }
 
-    // associate the L1 caches to the database
+    // associate the L1 caches to every shard of the database
     SetChildrenMsg joinDB = new SetChildrenMsg(l1List);
-    db.tell(joinDB, ActorRef.noSender());
+    dbShards.forEach(shard -> shard.tell(joinDB, ActorRef.noSender()));
 
     //partition the list of all L2 and all Clients in sets of (Config.N_CLIENT/Config.N_L2) and (Config.N_L2/Config.N_L1) elements
     int partitionClientSize = (int) Math.floor( (double)Config.N_CLIENT / (double) Config.N_L2);
@@ -109,7 +112,7 @@ public class ProjectRunner {
         SetParentMsg parentL2=new SetParentMsg(l1List.get(indexL1));
         partitionsL2.get(indexL1).get(indexL2).tell(parentL2, ActorRef.noSender());
       }
-      SetParentMsg parentL1=new SetParentMsg(db);
+      SetParentMsg parentL1=new SetParentMsg(dbShards.get(0)); // the L1 cache routes each request to the shard owning its key
       l1List.get(indexL1).tell(childL1, ActorRef.noSender());
       l1List.get(indexL1).tell(parentL1, ActorRef.noSender());
     }
@@ -137,7 +140,7 @@ public class ProjectRunner {
       boolean couldCrash = true;
       for(int j = 0; j < rnd.nextInt(clients.length); j++) {
         int client = clients[j];
-        int op = rnd.nextInt(3);
+        int op = rnd.nextInt(6);
         int item = rnd.nextInt(Config.N_ITEMS) + 1;
         switch (op) {
           case 0: //READ
@@ -168,6 +171,22 @@ public class ProjectRunner {
             DoCritWriteMsg critWrite = new DoCritWriteMsg(item, rnd.nextInt(11));
             sendMessage(critWrite, clientList.get(client), rnd);
             break;
+          case 4: //MULTI READ
+            int[] readKeys = randomKeys(2 + rnd.nextInt(3), rnd);
+            LOGGER.info("Performing MULTI READ operation on client " + client + " for items " + Arrays.toString(readKeys));
+            if(couldCrash)
+              couldCrash = randomCrash(4, 1, rnd, l1List, l2List);
+            DoMultiReadMsg multiRead = new DoMultiReadMsg(readKeys);
+            sendMessage(multiRead, clientList.get(client), rnd);
+            break;
+          case 5: //MULTI WRITE
+            int[] writeKeys = randomKeys(2 + rnd.nextInt(3), rnd);
+            LOGGER.info("Performing MULTI WRITE operation on client " + client + " for items " + Arrays.toString(writeKeys));
+            if(couldCrash)
+              couldCrash = randomCrash(5, 5, rnd, l1List, l2List);
+            DoMultiWriteMsg multiWrite = new DoMultiWriteMsg(writeKeys, rnd.ints(writeKeys.length, 0, 11).toArray());
+            sendMessage(multiWrite, clientList.get(client), rnd);
+            break;
         }
       }
       shuffleArray(clients, rnd);
@@ -181,9 +200,22 @@ public class ProjectRunner {
     LOGGER.info("PRINT INTERNAL STATE");
     l1List.forEach(l1 -> l1.tell(internalState, ActorRef.noSender()));
     l2List.forEach(l2 -> l2.tell(internalState, ActorRef.noSender()));
+    dbShards.forEach(shard -> shard.tell(internalState, ActorRef.noSender()));
+    clientList.forEach(client -> client.tell(internalState, ActorRef.noSender()));
+    inputContinue(100);
     system.terminate();
   }
 
+  /**
+   * Picks some distinct random keys of items.
+   * @param n the number of keys, at most {@link Config#N_ITEMS}.
+   * @param rnd the random generator.
+   * @return the keys.
+   */
+  public static int[] randomKeys(int n, Random rnd){
+    return rnd.ints(1, Config.N_ITEMS + 1).distinct().limit(Math.min(n, Config.N_ITEMS)).toArray();
+  }
+
   public static void sendMessage(Message m, ActorRef dest, Random rnd){
     dest.tell(m, ActorRef.noSender());
   }
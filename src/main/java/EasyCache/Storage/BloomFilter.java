@@ -0,0 +1,92 @@
+package EasyCache.Storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over int keys, used by {@link SegmentFile segments} of the {@link LsmItemStore} to skip the segments that
+ * surely do not contain a key. A key is mapped to k bits with double hashing.
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final int nBits;
+    private final int nHashes;
+
+    /**
+     * Builds an empty filter.
+     * @param expectedKeys the number of keys that will be added.
+     * @param bitsPerKey the number of bits for each key, 10 bits give about 1% of false positives.
+     */
+    public BloomFilter(int expectedKeys, int bitsPerKey) {
+        int words = Math.max(1, (int) (((long) Math.max(1, expectedKeys) * bitsPerKey + 63) / 64));
+        this.bits = new long[words];
+        this.nBits = words * 64;
+        this.nHashes = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * 0.69)));
+    }
+
+    private BloomFilter(long[] bits, int nHashes) {
+        this.bits = bits;
+        this.nBits = bits.length * 64;
+        this.nHashes = nHashes;
+    }
+
+    private static int hash1(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash2(int key) {
+        int h = key * 0x85EBCA6B;
+        h ^= h >>> 13;
+        return (h * 0xC2B2AE35) | 1;
+    }
+
+    public void add(int key) {
+        int h1 = hash1(key);
+        int h2 = hash2(key);
+        for (int i = 0; i < nHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, nBits);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param key the key to check.
+     * @return {@code false} if the key has surely not been added, {@code true} if it may have been added.
+     */
+    public boolean mightContain(int key) {
+        int h1 = hash1(key);
+        int h2 = hash2(key);
+        for (int i = 0; i < nHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, nBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes written by {@link #writeTo(ByteBuffer)}.
+     */
+    public int serializedSize() {
+        return 8 + bits.length * 8;
+    }
+
+    public void writeTo(ByteBuffer out) {
+        out.putInt(bits.length);
+        out.putInt(nHashes);
+        for (long word : bits) {
+            out.putLong(word);
+        }
+    }
+
+    public static BloomFilter readFrom(ByteBuffer in) {
+        long[] bits = new long[in.getInt()];
+        int nHashes = in.getInt();
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.getLong();
+        }
+        return new BloomFilter(bits, nHashes);
+    }
+}
@@ -0,0 +1,145 @@
+package EasyCache.Storage;
+
+import EasyCache.EvictionPolicyType;
+
+import java.util.function.IntConsumer;
+
+/**
+ * The items saved in a {@link EasyCache.Devices.Cache cache}, as a map (key, value) limited to a maximum number of items.
+ * When a new item does not fit, the {@link EvictionPolicy} chooses which item leaves the store.
+ * Updating an item already present never causes an eviction.
+ * The store also counts hits, misses and evictions, to help sizing L1 and L2 caches.
+ */
+public class BoundedItemStore implements EvictionPolicy.Evictor {
+
+    /**
+     * maximum number of items in the store.
+     */
+    private final int capacity;
+
+    private final IntIntMap items;
+
+    private final EvictionPolicy policy;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * called with the key of each evicted item, {@code null} if nobody needs to know.
+     */
+    private IntConsumer evictionListener;
+
+    public BoundedItemStore(int capacity, EvictionPolicyType policyType) {
+        this.capacity = capacity;
+        this.items = new IntIntMap(capacity);
+        this.policy = EvictionPolicy.create(policyType, capacity);
+    }
+
+    /**
+     * Sets the function called with the key of each item evicted by the {@link EvictionPolicy}, after its removal.
+     * Items removed with {@link #remove(int)} or {@link #clear()} are not notified.
+     * @param evictionListener the function to call, {@code null} to remove it.
+     */
+    public void setEvictionListener(IntConsumer evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Looks up an item to serve a read request, updating the statistics and the eviction policy.
+     * @param key the key of the requested item.
+     * @return the value of the item or {@link IntIntMap#ABSENT} if it is not in the store.
+     */
+    public int read(int key) {
+        policy.recordAccess(key);
+        int value = items.get(key);
+        if (value == IntIntMap.ABSENT) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Looks up an item without touching the statistics or the eviction policy.
+     * @param key the key of the item.
+     * @return the value of the item or {@link IntIntMap#ABSENT} if it is not in the store.
+     */
+    public int get(int key) {
+        return items.get(key);
+    }
+
+    public boolean containsKey(int key) {
+        return items.containsKey(key);
+    }
+
+    /**
+     * Inserts or updates an item. Inserting a new item in a full store evicts an item, possibly the new one.
+     * @param key the key of the item.
+     * @param value the value of the item.
+     */
+    public void put(int key, int value) {
+        if (items.put(key, value) == IntIntMap.ABSENT) {
+            policy.onInsert(key, this);
+        }
+    }
+
+    public void remove(int key) {
+        if (items.remove(key) != IntIntMap.ABSENT) {
+            policy.onRemove(key);
+        }
+    }
+
+    /**
+     * Removes all the items. Statistics are kept.
+     */
+    public void clear() {
+        items.clear();
+        policy.clear();
+    }
+
+    @Override
+    public void evict(int key) {
+        items.remove(key);
+        evictions++;
+        if (evictionListener != null) {
+            evictionListener.accept(key);
+        }
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * @return a snapshot of the keys in the store.
+     */
+    public int[] keys() {
+        return items.keys();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the fraction of reads served from the store, 0 if no read has been performed.
+     */
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,58 @@
+package EasyCache.Storage;
+
+import EasyCache.EvictionPolicyType;
+
+/**
+ * Interface of the policies used by a {@link BoundedItemStore} to decide which item has to leave the store when it is full.
+ * The policy only tracks keys, the values are kept by the store.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Callback used by a policy to tell the store which key has to be removed.
+     */
+    interface Evictor {
+        void evict(int key);
+    }
+
+    /**
+     * Records an access (hit or miss) on the given key.
+     * @param key the key of the accessed item.
+     */
+    void recordAccess(int key);
+
+    /**
+     * Tracks a new key inserted in the store. If the store is over capacity, the policy selects a victim and passes it to
+     * the evictor. The victim may be the inserted key itself, if the policy decides not to admit it.
+     * @param key the key of the inserted item.
+     * @param evictor the callback used to remove the victim from the store.
+     */
+    void onInsert(int key, Evictor evictor);
+
+    /**
+     * Stops tracking a key removed from the store for reasons different from eviction.
+     * @param key the key of the removed item.
+     */
+    void onRemove(int key);
+
+    /**
+     * Stops tracking all the keys.
+     */
+    void clear();
+
+    /**
+     * Factory method to build the policy associated with an {@link EvictionPolicyType}.
+     * @param type the type of the policy.
+     * @param capacity the maximum number of items of the store.
+     * @return the new policy.
+     */
+    static EvictionPolicy create(EvictionPolicyType type, int capacity) {
+        switch (type) {
+            case TINY_LFU:
+                return new TinyLfuPolicy(capacity);
+            case LRU:
+            default:
+                return new LruPolicy(capacity);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package EasyCache.Storage;
+
+/**
+ * Count-min sketch with 4 bit counters used by {@link TinyLfuPolicy} to estimate how often a key has been accessed.
+ * Counters are halved every time the number of recorded accesses reaches the sample size, so that old popularity fades away.
+ */
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    /**
+     * the counters, one row for each hash function.
+     */
+    private final byte[][] table;
+    /**
+     * mask used to map an hash to a column, the width of the table is a power of two.
+     */
+    private final int mask;
+    /**
+     * number of accesses after which the counters are halved.
+     */
+    private final int sampleSize;
+    /**
+     * number of accesses recorded since the last reset.
+     */
+    private int size;
+
+    public FrequencySketch(int capacity) {
+        int width = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1);
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    private int index(int key, int row) {
+        int h = key * SEEDS[row];
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    /**
+     * Records an access on the given key.
+     * @param key the accessed key.
+     */
+    public void increment(int key) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int idx = index(key, i);
+            if (table[i][idx] < MAX_COUNT) {
+                table[i][idx]++;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * @param key the key to check.
+     * @return the estimated number of accesses on the key.
+     */
+    public int frequency(int key) {
+        int freq = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            freq = Math.min(freq, table[i][index(key, i)]);
+        }
+        return freq;
+    }
+
+    /**
+     * Halves all the counters.
+     */
+    private void reset() {
+        for (byte[] row : table) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = (byte) (row[j] >>> 1);
+            }
+        }
+        size = size / 2;
+    }
+}
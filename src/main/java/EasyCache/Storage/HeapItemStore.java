@@ -0,0 +1,33 @@
+package EasyCache.Storage;
+
+/**
+ * {@link ItemStore} keeping the items on heap in an {@link IntIntMap}.
+ */
+public class HeapItemStore implements ItemStore {
+
+    private final IntIntMap items;
+
+    public HeapItemStore() {
+        this.items = new IntIntMap();
+    }
+
+    @Override
+    public int get(int key) {
+        return items.get(key);
+    }
+
+    @Override
+    public void put(int key, int value) {
+        items.put(key, value);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public void forEach(IntIntMap.Visitor visitor) {
+        items.forEach(visitor);
+    }
+}
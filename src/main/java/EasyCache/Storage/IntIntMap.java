@@ -0,0 +1,235 @@
+package EasyCache.Storage;
+
+/**
+ * Hash map from int keys to int values that does not box and does not allocate on get, put and remove.
+ * It uses open addressing with linear probing and backward shift deletion, so no tombstones are left in the table.
+ * A missing key is reported with the {@link #ABSENT} sentinel, that for this reason cannot be stored as a value.
+ */
+public class IntIntMap {
+
+    /**
+     * value returned by {@link #get(int)} when the key is not in the map.
+     */
+    public static final int ABSENT = Integer.MIN_VALUE;
+
+    /**
+     * key used to mark a free slot. The real key with this value is stored outside the table.
+     */
+    private static final int FREE_KEY = 0;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * Callback used to visit all the entries of the map.
+     */
+    public interface Visitor {
+        void accept(int key, int value);
+    }
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    /**
+     * number of entries in the table, the entry with key {@link #FREE_KEY} excluded.
+     */
+    private int size;
+    private int resizeAt;
+
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @param key the key of the item.
+     * @return the value associated to the key or {@link #ABSENT} if the key is not in the map.
+     */
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : ABSENT;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == FREE_KEY) {
+                return ABSENT;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != ABSENT;
+    }
+
+    /**
+     * Associates a value to a key.
+     * @param key the key of the item.
+     * @param value the value of the item, cannot be {@link #ABSENT}.
+     * @return the previous value or {@link #ABSENT} if the key was not in the map.
+     */
+    public int put(int key, int value) {
+        if (value == ABSENT) {
+            throw new IllegalArgumentException("cannot store the ABSENT sentinel as a value");
+        }
+        if (key == FREE_KEY) {
+            int old = hasFreeKey ? freeKeyValue : ABSENT;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return old;
+        }
+        int i = slot(key);
+        for (; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+            if (k == FREE_KEY) {
+                break;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Removes a key from the map.
+     * @param key the key of the item.
+     * @return the removed value or {@link #ABSENT} if the key was not in the map.
+     */
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            int old = hasFreeKey ? freeKeyValue : ABSENT;
+            hasFreeKey = false;
+            return old;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                int old = values[i];
+                shiftKeys(i);
+                size--;
+                return old;
+            }
+            if (k == FREE_KEY) {
+                return ABSENT;
+            }
+        }
+    }
+
+    /**
+     * Closes the hole left in slot {@code pos} by moving back the following entries of the same probe sequence.
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            int k;
+            while (true) {
+                k = keys[pos];
+                if (k == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                int home = slot(k);
+                // the entry can move to last only if its home slot is not in the cyclic interval (last, pos]
+                if (last <= pos ? (last >= home || home > pos) : (last >= home && home > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int j = slot(k);
+                while (keys[j] != FREE_KEY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size + (hasFreeKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    /**
+     * @return a snapshot of the keys in the map.
+     */
+    public int[] keys() {
+        int[] result = new int[size()];
+        int n = 0;
+        if (hasFreeKey) {
+            result[n++] = FREE_KEY;
+        }
+        for (int k : keys) {
+            if (k != FREE_KEY) {
+                result[n++] = k;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits all the entries of the map. The map must not be modified during the visit.
+     * @param visitor the callback called for each entry.
+     */
+    public void forEach(Visitor visitor) {
+        if (hasFreeKey) {
+            visitor.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                visitor.accept(keys[i], values[i]);
+            }
+        }
+    }
+}
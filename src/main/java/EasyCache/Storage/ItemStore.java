@@ -0,0 +1,99 @@
+package EasyCache.Storage;
+
+import EasyCache.Config;
+import EasyCache.ItemStoreType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Interface of the storage backends of the {@link EasyCache.Devices.DB database}.
+ * A missing key is reported with {@link IntIntMap#ABSENT}, like in {@link IntIntMap}.
+ */
+public interface ItemStore {
+
+    /**
+     * @param key the key of the item.
+     * @return the value of the item or {@link IntIntMap#ABSENT} if the key is not in the store.
+     */
+    int get(int key);
+
+    /**
+     * Inserts or updates an item.
+     * @param key the key of the item.
+     * @param value the value of the item, cannot be {@link IntIntMap#ABSENT}.
+     */
+    void put(int key, int value);
+
+    /**
+     * @param key the key of an item.
+     * @return {@code true} if the store can hold the item, the backends with a fixed layout hold only a range of keys.
+     */
+    default boolean canHold(int key) {
+        return true;
+    }
+
+    default boolean containsKey(int key) {
+        return get(key) != IntIntMap.ABSENT;
+    }
+
+    /**
+     * @return the number of items in the store.
+     */
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Visits all the items of the store.
+     * @param visitor the callback called for each item.
+     */
+    void forEach(IntIntMap.Visitor visitor);
+
+    /**
+     * @return {@code true} if the items survive the restart of the process once {@link #flush() flushed}.
+     */
+    default boolean isPersistent() {
+        return false;
+    }
+
+    /**
+     * Makes all the writes durable, if the backend is persistent.
+     */
+    default void flush() {
+    }
+
+    /**
+     * Releases the resources of the store, making all the writes durable.
+     */
+    default void close() {
+    }
+
+    /**
+     * Factory method to open the store associated with an {@link ItemStoreType}.
+     * @param type the type of the backend.
+     * @param path the file used by persistent backends, the directory of the segments for {@link ItemStoreType#LSM} stores.
+     * @param keys the keys a {@link ItemStoreType#MAPPED} store can hold go from 0 to keys - 1.
+     * @param shards the number of shards of the database.
+     * @param shard the index of the shard owning the store, a {@link ItemStoreType#MAPPED} store has slots only for its keys.
+     * @return the opened store.
+     */
+    static ItemStore open(ItemStoreType type, String path, int keys, int shards, int shard) {
+        try {
+            switch (type) {
+                case MAPPED:
+                    return new MappedItemStore(path, keys, shards, shard);
+                case LSM:
+                    return new LsmItemStore(path, Config.LSM_MEMTABLE_MAX_ITEMS, Config.LSM_COMPACTION_TRIGGER,
+                            Config.LSM_BLOOM_BITS_PER_KEY, Config.LSM_SEGMENT_MAX_ENTRIES);
+                case HEAP:
+                default:
+                    return new HeapItemStore();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open item store " + path, e);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package EasyCache.Storage;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from long keys to long values that does not box and does not allocate on get, put and remove.
+ * It is used for the tables of the timeouts of the pending requests, keyed by request id, whose values are the tokens of
+ * the timeouts of a {@link EasyCache.Util.TimerWheel timer wheel}.
+ * Like {@link IntIntMap} it uses open addressing with linear probing and backward shift deletion, and a missing key is
+ * reported with the {@link #ABSENT} sentinel, that for this reason cannot be stored as a value.
+ */
+public class LongLongMap {
+
+    /**
+     * value returned by {@link #get(long)} when the key is not in the map.
+     */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    /**
+     * key used to mark a free slot. The real key with this value is stored outside the table.
+     */
+    private static final long FREE_KEY = 0;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * Callback used to visit all the entries of the map.
+     */
+    public interface Visitor {
+        void accept(long key, long value);
+    }
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    /**
+     * number of entries in the table, the entry with key {@link #FREE_KEY} excluded.
+     */
+    private int size;
+    private int resizeAt;
+
+    private boolean hasFreeKey;
+    private long freeKeyValue;
+
+    public LongLongMap() {
+        this(16);
+    }
+
+    public LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+        this.resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @param key the key of the entry.
+     * @return the value associated to the key or {@link #ABSENT} if the key is not in the map.
+     */
+    public long get(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : ABSENT;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == FREE_KEY) {
+                return ABSENT;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != ABSENT;
+    }
+
+    public boolean containsValue(long value) {
+        if (hasFreeKey && freeKeyValue == value) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY && values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Associates a value to a key.
+     * @param key the key of the entry.
+     * @param value the value of the entry, cannot be {@link #ABSENT}.
+     * @return the previous value or {@link #ABSENT} if the key was not in the map.
+     */
+    public long put(long key, long value) {
+        if (value == ABSENT) {
+            throw new IllegalArgumentException("cannot store the ABSENT sentinel as a value");
+        }
+        if (key == FREE_KEY) {
+            long old = hasFreeKey ? freeKeyValue : ABSENT;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return old;
+        }
+        int i = slot(key);
+        for (; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                long old = values[i];
+                values[i] = value;
+                return old;
+            }
+            if (k == FREE_KEY) {
+                break;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Removes a key from the map.
+     * @param key the key of the entry.
+     * @return the removed value or {@link #ABSENT} if the key was not in the map.
+     */
+    public long remove(long key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return ABSENT;
+            }
+            hasFreeKey = false;
+            return freeKeyValue;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                long old = values[i];
+                shiftKeys(i);
+                size--;
+                return old;
+            }
+            if (k == FREE_KEY) {
+                return ABSENT;
+            }
+        }
+    }
+
+    /**
+     * Closes the hole left in slot {@code pos} by moving back the following entries of the same probe sequence.
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            long k;
+            while (true) {
+                k = keys[pos];
+                if (k == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                int home = slot(k);
+                // the entry can move to last only if its home slot is not in the cyclic interval (last, pos]
+                if (last <= pos ? (last >= home || home > pos) : (last >= home && home > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int j = slot(k);
+                while (keys[j] != FREE_KEY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size + (hasFreeKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    /**
+     * @return a snapshot of the keys in the map.
+     */
+    public long[] keys() {
+        long[] result = new long[size()];
+        int n = 0;
+        if (hasFreeKey) {
+            result[n++] = FREE_KEY;
+        }
+        for (long k : keys) {
+            if (k != FREE_KEY) {
+                result[n++] = k;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits all the entries of the map. The map must not be modified during the visit.
+     * @param visitor the callback called for each entry.
+     */
+    public void forEach(Visitor visitor) {
+        if (hasFreeKey) {
+            visitor.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                visitor.accept(keys[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package EasyCache.Storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Hash map from long keys to objects that does not box the keys and does not allocate on get and remove.
+ * It is used for the tables of the pending requests, keyed by the long ids of the {@link EasyCache.Messages.IdMessage messages}.
+ * Like {@link IntIntMap} it uses open addressing with linear probing and backward shift deletion. A missing key is
+ * reported with {@code null}, that for this reason cannot be stored as a value.
+ * @param <V> the type of the values.
+ */
+public class LongObjectMap<V> {
+
+    /**
+     * key used to mark a free slot. The real key with this value is stored outside the table.
+     */
+    private static final long FREE_KEY = 0;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * Callback used to visit all the entries of the map.
+     */
+    public interface Visitor<V> {
+        void accept(long key, V value);
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    /**
+     * number of entries in the table, the entry with key {@link #FREE_KEY} excluded.
+     */
+    private int size;
+    private int resizeAt;
+
+    private V freeKeyValue;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @param key the key of the entry.
+     * @return the value associated to the key or {@code null} if the key is not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == FREE_KEY) {
+            return freeKeyValue;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return (V) values[i];
+            }
+            if (k == FREE_KEY) {
+                return null;
+            }
+        }
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public boolean containsValue(Object value) {
+        if (value.equals(freeKeyValue)) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY && value.equals(values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Associates a value to a key.
+     * @param key the key of the entry.
+     * @param value the value of the entry, cannot be {@code null}.
+     * @return the previous value or {@code null} if the key was not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("cannot store null as a value");
+        }
+        if (key == FREE_KEY) {
+            V old = freeKeyValue;
+            freeKeyValue = value;
+            return old;
+        }
+        int i = slot(key);
+        for (; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            if (k == FREE_KEY) {
+                break;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @param key the key of the entry.
+     * @param mappingFunction the function computing the value, if the key is not in the map.
+     * @return the value associated to the key, the computed one if the key was not in the map.
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes a key from the map.
+     * @param key the key of the entry.
+     * @return the removed value or {@code null} if the key was not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == FREE_KEY) {
+            V old = freeKeyValue;
+            freeKeyValue = null;
+            return old;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                V old = (V) values[i];
+                shiftKeys(i);
+                size--;
+                return old;
+            }
+            if (k == FREE_KEY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Closes the hole left in slot {@code pos} by moving back the following entries of the same probe sequence.
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            long k;
+            while (true) {
+                k = keys[pos];
+                if (k == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    values[last] = null;
+                    return;
+                }
+                int home = slot(k);
+                // the entry can move to last only if its home slot is not in the cyclic interval (last, pos]
+                if (last <= pos ? (last >= home || home > pos) : (last >= home && home > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int j = slot(k);
+                while (keys[j] != FREE_KEY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size + (freeKeyValue != null ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        Arrays.fill(values, null);
+        size = 0;
+        freeKeyValue = null;
+    }
+
+    /**
+     * @return a snapshot of the keys in the map.
+     */
+    public long[] keys() {
+        long[] result = new long[size()];
+        int n = 0;
+        if (freeKeyValue != null) {
+            result[n++] = FREE_KEY;
+        }
+        for (long k : keys) {
+            if (k != FREE_KEY) {
+                result[n++] = k;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a snapshot of the values in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size());
+        if (freeKeyValue != null) {
+            result.add(freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                result.add((V) values[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits all the entries of the map. The map must not be modified during the visit.
+     * @param visitor the callback called for each entry.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        if (freeKeyValue != null) {
+            visitor.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                visitor.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package EasyCache.Storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * {@link EvictionPolicy} that evicts the least recently used key.
+ */
+public class LruPolicy implements EvictionPolicy {
+
+    /**
+     * maximum number of tracked keys.
+     */
+    private final int capacity;
+
+    /**
+     * keys ordered from the least recently used to the most recently used.
+     */
+    private final LinkedHashMap<Integer, Boolean> order;
+
+    public LruPolicy(int capacity) {
+        this.capacity = capacity;
+        this.order = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public void recordAccess(int key) {
+        order.get(key); // access ordered map, moves the key to the tail
+    }
+
+    @Override
+    public void onInsert(int key, Evictor evictor) {
+        order.put(key, Boolean.TRUE);
+        if (order.size() > capacity) {
+            Iterator<Integer> it = order.keySet().iterator();
+            int victim = it.next();
+            it.remove();
+            evictor.evict(victim);
+        }
+    }
+
+    @Override
+    public void onRemove(int key) {
+        order.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,511 @@
+package EasyCache.Storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ItemStore} organized as a log-structured merge tree, for write-heavy workloads and key spaces bigger than memory.
+ * Writes go to an in-memory memtable. When the memtable is full it becomes immutable and is written in background to a
+ * sorted {@link SegmentFile}, while a new memtable takes the writes. Segments are merged by a size-tiered compaction:
+ * when enough consecutive sorted runs of similar size accumulate (each at most twice as big as the smallest), they are
+ * merged in a single one by a background compaction, that never blocks the actor using the store. The runs grow by
+ * tiers, so each item is rewritten a logarithmic number of times instead of at every compaction.
+ * A read looks up the memtable, then the immutable memtables and then the segments, from the newest to the oldest; the
+ * {@link BloomFilter} of each segment avoids the lookups in segments that do not contain the key.
+ * Items are never deleted from the {@link EasyCache.Devices.DB database}, so no tombstones are needed.
+ */
+public class LsmItemStore implements ItemStore {
+
+    private static final String COMPACTION_MARKER_PREFIX = "compaction-";
+    /**
+     * maximum ratio between the sizes of the biggest and of the smallest run of a tier.
+     */
+    private static final int TIER_RATIO = 2;
+
+    /**
+     * Memtable that is full and waits to be written to a segment.
+     */
+    private static final class Immutable {
+        final long seq;
+        final IntIntMap items;
+
+        Immutable(long seq, IntIntMap items) {
+            this.seq = seq;
+            this.items = items;
+        }
+    }
+
+    /**
+     * Immutable memtables and segments visible to the readers, both ordered from the newest to the oldest.
+     * It is replaced as a whole (copy on write), so the background threads never modify a state in use.
+     */
+    private static final class State {
+        final List<Immutable> immutables;
+        final List<SegmentFile> segments;
+
+        State(List<Immutable> immutables, List<SegmentFile> segments) {
+            this.immutables = Collections.unmodifiableList(immutables);
+            this.segments = Collections.unmodifiableList(segments);
+        }
+    }
+
+    /**
+     * newest segments first; parts of the same compaction have the same range and disjoint keys.
+     */
+    private static final Comparator<SegmentFile> NEWEST_FIRST = Comparator.comparingLong(SegmentFile::maxSeq).reversed();
+
+    private final Path dir;
+    private final int memtableMaxItems;
+    private final int compactionTrigger;
+    private final int bloomBitsPerKey;
+    private final int segmentMaxEntries;
+
+    /**
+     * memtable receiving the writes, used only by the owner of the store.
+     */
+    private IntIntMap memtable;
+    private long nextSeq;
+
+    private volatile State state;
+    /**
+     * serializes the replacements of {@link #state}.
+     */
+    private final Object stateLock = new Object();
+
+    private final ExecutorService flushExecutor;
+    private final ExecutorService compactionExecutor;
+    private final AtomicBoolean compactionRunning = new AtomicBoolean(false);
+    private volatile IOException backgroundFailure;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong compactedEntries = new AtomicLong();
+
+    /**
+     * Opens the store saved in the given directory, creating it if it does not exist.
+     * The outputs of a compaction interrupted by a crash are dropped, the inputs of a completed one are deleted.
+     * @param dir the directory of the segments.
+     * @param memtableMaxItems the number of items of the memtable after which it is written to a segment.
+     * @param compactionTrigger the number of consecutive sorted runs of similar size after which they are compacted.
+     * @param bloomBitsPerKey the number of bits of the bloom filters for each key.
+     * @param segmentMaxEntries the maximum number of items in a segment written by a compaction.
+     * @throws IOException if the directory or the segments cannot be read.
+     */
+    public LsmItemStore(String dir, int memtableMaxItems, int compactionTrigger, int bloomBitsPerKey, int segmentMaxEntries) throws IOException {
+        this.dir = Paths.get(dir);
+        this.memtableMaxItems = Math.max(1, memtableMaxItems);
+        this.compactionTrigger = Math.max(2, compactionTrigger);
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        this.segmentMaxEntries = Math.max(1, segmentMaxEntries);
+        this.memtable = new IntIntMap();
+        Files.createDirectories(this.dir);
+        List<SegmentFile> segments = recoverSegments();
+        segments.sort(NEWEST_FIRST);
+        this.nextSeq = segments.isEmpty() ? 0 : segments.get(0).maxSeq() + 1;
+        this.state = new State(new ArrayList<>(), segments);
+        this.flushExecutor = Executors.newSingleThreadExecutor(r -> daemon(r, "lsm-flush"));
+        this.compactionExecutor = Executors.newSingleThreadExecutor(r -> daemon(r, "lsm-compaction"));
+        maybeCompact();
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static String markerName(long minSeq, long maxSeq) {
+        return COMPACTION_MARKER_PREFIX + minSeq + "-" + maxSeq + ".done";
+    }
+
+    /**
+     * Opens the segments of the directory, completing or rolling back the compaction in progress at the crash.
+     * A compaction writes its outputs, creates a marker, deletes its inputs and finally deletes the marker: outputs
+     * without the marker and with inputs still present are incomplete, inputs with the marker are already merged.
+     */
+    private List<SegmentFile> recoverSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>();
+        List<Path> markers = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(p);
+                } else if (name.startsWith(COMPACTION_MARKER_PREFIX)) {
+                    markers.add(p);
+                } else if (SegmentFile.parseRange(p) != null) {
+                    files.add(p);
+                    ranges.add(SegmentFile.parseRange(p));
+                }
+            }
+        }
+        boolean[] dropped = new boolean[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            long[] outer = ranges.get(i);
+            boolean committed = Files.exists(dir.resolve(markerName(outer[0], outer[1])));
+            for (int j = 0; j < files.size(); j++) {
+                long[] inner = ranges.get(j);
+                boolean contained = outer[0] <= inner[0] && inner[1] <= outer[1] && (outer[0] != inner[0] || outer[1] != inner[1]);
+                if (contained) {
+                    // j is an input of the compaction that produced i
+                    dropped[committed ? j : i] = true;
+                }
+            }
+        }
+        List<SegmentFile> segments = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (dropped[i]) {
+                Files.delete(files.get(i));
+            } else {
+                segments.add(SegmentFile.open(files.get(i)));
+            }
+        }
+        for (Path marker : markers) {
+            Files.delete(marker);
+        }
+        return segments;
+    }
+
+    private void checkBackgroundFailure() {
+        IOException e = backgroundFailure;
+        if (e != null) {
+            throw new UncheckedIOException("background write of item store " + dir + " failed", e);
+        }
+    }
+
+    @Override
+    public int get(int key) {
+        int value = memtable.get(key);
+        if (value != IntIntMap.ABSENT) {
+            return value;
+        }
+        State s = state;
+        for (Immutable imm : s.immutables) {
+            value = imm.items.get(key);
+            if (value != IntIntMap.ABSENT) {
+                return value;
+            }
+        }
+        for (SegmentFile segment : s.segments) {
+            value = segment.get(key);
+            if (value != IntIntMap.ABSENT) {
+                return value;
+            }
+        }
+        return IntIntMap.ABSENT;
+    }
+
+    @Override
+    public void put(int key, int value) {
+        checkBackgroundFailure();
+        memtable.put(key, value);
+        if (memtable.size() >= memtableMaxItems) {
+            rotate();
+        }
+    }
+
+    /**
+     * Makes the current memtable immutable and schedules its write to a segment.
+     */
+    private void rotate() {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        Immutable imm = new Immutable(nextSeq++, memtable);
+        memtable = new IntIntMap();
+        synchronized (stateLock) {
+            List<Immutable> immutables = new ArrayList<>(state.immutables);
+            immutables.add(0, imm);
+            state = new State(immutables, new ArrayList<>(state.segments));
+        }
+        flushExecutor.execute(() -> flushImmutable(imm));
+    }
+
+    /**
+     * Runs on the flush thread: writes the immutable memtable to a segment and publishes it.
+     */
+    private void flushImmutable(Immutable imm) {
+        try {
+            int[] keys = imm.items.keys();
+            Arrays.sort(keys);
+            SegmentFile.Writer writer = new SegmentFile.Writer(dir.resolve(SegmentFile.fileName(imm.seq, imm.seq, 0)), keys.length, bloomBitsPerKey);
+            for (int key : keys) {
+                writer.add(key, imm.items.get(key));
+            }
+            SegmentFile segment = SegmentFile.open(writer.finish());
+            synchronized (stateLock) {
+                List<Immutable> immutables = new ArrayList<>(state.immutables);
+                immutables.remove(imm);
+                List<SegmentFile> segments = new ArrayList<>(state.segments);
+                segments.add(segment);
+                segments.sort(NEWEST_FIRST);
+                state = new State(immutables, segments);
+            }
+            flushes.incrementAndGet();
+            maybeCompact();
+        } catch (IOException e) {
+            // the memtable stays readable in memory, the next write reports the failure
+            backgroundFailure = e;
+        }
+    }
+
+    /**
+     * Chooses the segments of the next compaction: the newest window of at least {@link #compactionTrigger} consecutive
+     * runs whose sizes are within {@link #TIER_RATIO} of each other. A run is a distinct range of sequence numbers: the
+     * parts of a compaction output are a single run. The runs merged are consecutive, so the range of sequence numbers
+     * of the output contains no run left out of the compaction.
+     * @param segments the segments, from the newest to the oldest.
+     * @return the segments to merge, from the newest to the oldest, or null if no tier is full.
+     */
+    private List<SegmentFile> tierToCompact(List<SegmentFile> segments) {
+        List<Integer> runStarts = new ArrayList<>();
+        List<Long> runSizes = new ArrayList<>();
+        long lastMaxSeq = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            SegmentFile s = segments.get(i);
+            if (s.maxSeq() != lastMaxSeq) {
+                runStarts.add(i);
+                runSizes.add(0L);
+                lastMaxSeq = s.maxSeq();
+            }
+            int last = runSizes.size() - 1;
+            runSizes.set(last, runSizes.get(last) + s.count());
+        }
+        runStarts.add(segments.size());
+        for (int first = 0; first + compactionTrigger <= runSizes.size(); first++) {
+            long min = Math.max(1, runSizes.get(first));
+            long max = min;
+            int end = first + 1;
+            while (end < runSizes.size()) {
+                long size = Math.max(1, runSizes.get(end));
+                if (Math.max(max, size) > TIER_RATIO * Math.min(min, size)) {
+                    break;
+                }
+                min = Math.min(min, size);
+                max = Math.max(max, size);
+                end++;
+            }
+            if (end - first >= compactionTrigger) {
+                return new ArrayList<>(segments.subList(runStarts.get(first), runStarts.get(end)));
+            }
+        }
+        return null;
+    }
+
+    private void maybeCompact() {
+        if (tierToCompact(state.segments) != null && !compactionExecutor.isShutdown() && compactionRunning.compareAndSet(false, true)) {
+            compactionExecutor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Position in a sorted sequence of items, used to merge segments.
+     */
+    private static final class Cursor {
+        final SegmentFile segment;
+        int index;
+
+        Cursor(SegmentFile segment) {
+            this.segment = segment;
+        }
+
+        int key() {
+            return segment.keyAt(index);
+        }
+    }
+
+    /**
+     * Runs on the compaction thread: merges the segments of a full tier in new ones, keeping the newest value of each key.
+     * Segments flushed during the compaction are not touched and stay newer than its output.
+     */
+    private void compact() {
+        try {
+            List<SegmentFile> inputs = tierToCompact(state.segments);
+            if (inputs == null) {
+                return;
+            }
+            long minSeq = Long.MAX_VALUE;
+            long maxSeq = Long.MIN_VALUE;
+            long total = 0;
+            for (SegmentFile s : inputs) {
+                minSeq = Math.min(minSeq, s.minSeq());
+                maxSeq = Math.max(maxSeq, s.maxSeq());
+                total += s.count();
+            }
+            // ties on the key are won by the newest segment
+            PriorityQueue<Cursor> heap = new PriorityQueue<>((a, b) -> a.key() != b.key()
+                    ? Integer.compare(a.key(), b.key())
+                    : Long.compare(b.segment.maxSeq(), a.segment.maxSeq()));
+            for (SegmentFile s : inputs) {
+                if (s.count() > 0) {
+                    heap.add(new Cursor(s));
+                }
+            }
+            List<Path> outputs = new ArrayList<>();
+            SegmentFile.Writer writer = null;
+            int part = 0;
+            int expected = (int) Math.min(total, segmentMaxEntries);
+            while (!heap.isEmpty()) {
+                Cursor top = heap.poll();
+                int key = top.key();
+                int value = top.segment.valueAt(top.index);
+                advance(heap, top);
+                while (!heap.isEmpty() && heap.peek().key() == key) {
+                    advance(heap, heap.poll());
+                }
+                if (writer == null) {
+                    writer = new SegmentFile.Writer(dir.resolve(SegmentFile.fileName(minSeq, maxSeq, part++)), expected, bloomBitsPerKey);
+                }
+                writer.add(key, value);
+                if (writer.count() >= segmentMaxEntries) {
+                    outputs.add(writer.finish());
+                    writer = null;
+                }
+            }
+            if (writer != null) {
+                outputs.add(writer.finish());
+            }
+            List<SegmentFile> merged = new ArrayList<>();
+            for (Path p : outputs) {
+                merged.add(SegmentFile.open(p));
+            }
+            Path marker = dir.resolve(markerName(minSeq, maxSeq));
+            Files.createFile(marker);
+            synchronized (stateLock) {
+                List<SegmentFile> segments = new ArrayList<>(state.segments);
+                segments.removeAll(inputs);
+                segments.addAll(merged);
+                segments.sort(NEWEST_FIRST);
+                state = new State(new ArrayList<>(state.immutables), segments);
+            }
+            // readers still holding the old state keep reading the mappings, that stay valid after the delete
+            for (SegmentFile s : inputs) {
+                Files.deleteIfExists(s.path());
+            }
+            Files.delete(marker);
+            compactions.incrementAndGet();
+            compactedEntries.addAndGet(total);
+        } catch (IOException e) {
+            backgroundFailure = e;
+        } finally {
+            compactionRunning.set(false);
+        }
+        if (backgroundFailure == null) {
+            maybeCompact();
+        }
+    }
+
+    private static void advance(PriorityQueue<Cursor> heap, Cursor cursor) {
+        if (++cursor.index < cursor.segment.count()) {
+            heap.add(cursor);
+        }
+    }
+
+    /**
+     * @return the number of distinct keys, computed by visiting the store, so it is not meant for hot paths.
+     */
+    @Override
+    public int size() {
+        int[] count = new int[1];
+        forEach((k, v) -> count[0]++);
+        return count[0];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        State s = state;
+        if (!memtable.isEmpty() || !s.immutables.isEmpty()) {
+            return false;
+        }
+        for (SegmentFile segment : s.segments) {
+            if (segment.count() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits the newest value of each key: the levels are visited from the newest and a key is skipped if it was
+     * already visited in a newer level.
+     */
+    @Override
+    public void forEach(IntIntMap.Visitor visitor) {
+        State s = state;
+        IntIntMap seen = new IntIntMap();
+        IntIntMap.Visitor visitNew = (k, v) -> {
+            if (seen.put(k, 0) == IntIntMap.ABSENT) {
+                visitor.accept(k, v);
+            }
+        };
+        memtable.forEach(visitNew);
+        for (Immutable imm : s.immutables) {
+            imm.items.forEach(visitNew);
+        }
+        for (SegmentFile segment : s.segments) {
+            for (int i = 0; i < segment.count(); i++) {
+                visitNew.accept(segment.keyAt(i), segment.valueAt(i));
+            }
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    /**
+     * Writes the memtable to a segment and waits for all the pending flushes. Compactions are not waited.
+     */
+    @Override
+    public void flush() {
+        rotate();
+        try {
+            flushExecutor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        checkBackgroundFailure();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        flushExecutor.shutdown();
+        compactionExecutor.shutdown();
+        try {
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a summary of the levels and of the background work of the store.
+     */
+    @Override
+    public String toString() {
+        State s = state;
+        return "memtable: " + memtable.size() + "; immutables: " + s.immutables.size() + "; segments: " + s.segments.size()
+                + "; flushes: " + flushes.get() + "; compactions: " + compactions.get() + "; compacted_entries: " + compactedEntries.get();
+    }
+}
@@ -0,0 +1,179 @@
+package EasyCache.Storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link ItemStore} keeping the items in a memory-mapped file, outside of the heap.
+ * The store holds the keys from 0 to keys - 1 of a shard of the database, the ones congruent to the index of the shard
+ * modulo the number of shards. The file has a header followed by a fixed-size slot for each of these keys, so the
+ * position of an item is computed from its key and a read is a single lookup in the mapping, without copies.
+ * The pages of the file are shared with the OS page cache and the items survive the restart of the {@link EasyCache.Devices.DB database}.
+ * Files bigger than 2GB are mapped in several segments.
+ */
+public class MappedItemStore implements ItemStore {
+
+    private static final int MAGIC = 0x45434442; // "ECDB"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+
+    /**
+     * each slot contains a presence flag and the value.
+     */
+    private static final int SLOT_SIZE = 8;
+    private static final int PRESENT = 1;
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private final String path;
+    private final int keys;
+    private final int shards;
+    private final int shard;
+    private final int slots;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * number of items in the store, also saved in the header.
+     */
+    private int count;
+
+    /**
+     * Opens the store saved in the given file, creating it if it does not exist.
+     * @param path the file of the store.
+     * @param keys the keys of the items go from 0 to keys - 1.
+     * @param shards the number of shards of the database.
+     * @param shard the index of the shard owning the store.
+     * @throws IOException if the file cannot be mapped or was created with a different number of slots.
+     */
+    public MappedItemStore(String path, int keys, int shards, int shard) throws IOException {
+        this.path = path;
+        this.keys = keys;
+        this.shards = shards;
+        this.shard = shard;
+        this.slots = Math.max(0, (keys - shard + shards - 1) / shards);
+        boolean existing = new File(path).length() > 0;
+        long length = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        this.file = new RandomAccessFile(path, "rw");
+        if (existing && file.length() != length) {
+            file.close();
+            throw new IOException("item store " + path + " has size " + new File(path).length() + ", expected " + length);
+        }
+        file.setLength(length);
+        FileChannel channel = file.getChannel();
+        int nSegments = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        this.segments = new MappedByteBuffer[nSegments];
+        for (int i = 0; i < nSegments; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, length - start));
+        }
+        MappedByteBuffer header = segments[0];
+        if (existing) {
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION || header.getInt(SLOTS_OFFSET) != slots) {
+                file.close();
+                throw new IOException("item store " + path + " has an incompatible header");
+            }
+            this.count = header.getInt(COUNT_OFFSET);
+        } else {
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putInt(SLOTS_OFFSET, slots);
+            header.putInt(COUNT_OFFSET, 0);
+            this.count = 0;
+        }
+    }
+
+    private long offset(int key) {
+        return HEADER_SIZE + (long) (key / shards) * SLOT_SIZE;
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+    }
+
+    private static int position(long offset) {
+        return (int) (offset & (SEGMENT_SIZE - 1));
+    }
+
+    @Override
+    public boolean canHold(int key) {
+        return key >= 0 && key < keys && key % shards == shard;
+    }
+
+    @Override
+    public int get(int key) {
+        if (!canHold(key)) {
+            return IntIntMap.ABSENT;
+        }
+        long off = offset(key);
+        MappedByteBuffer seg = segment(off);
+        int pos = position(off);
+        return seg.getInt(pos) == PRESENT ? seg.getInt(pos + 4) : IntIntMap.ABSENT;
+    }
+
+    @Override
+    public void put(int key, int value) {
+        if (!canHold(key)) {
+            throw new IllegalArgumentException("key " + key + " out of the slots of item store " + path);
+        }
+        if (value == IntIntMap.ABSENT) {
+            throw new IllegalArgumentException("cannot store the ABSENT sentinel as a value");
+        }
+        long off = offset(key);
+        MappedByteBuffer seg = segment(off);
+        int pos = position(off);
+        seg.putInt(pos + 4, value);
+        if (seg.getInt(pos) != PRESENT) {
+            seg.putInt(pos, PRESENT);
+            count++;
+            segments[0].putInt(COUNT_OFFSET, count);
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void forEach(IntIntMap.Visitor visitor) {
+        for (int slot = 0; slot < slots; slot++) {
+            int key = slot * shards + shard;
+            int value = get(key);
+            if (value != IntIntMap.ABSENT) {
+                visitor.accept(key, value);
+            }
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        for (MappedByteBuffer seg : segments) {
+            seg.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            file.close();
+        } catch (IOException e) {
+            // the mapping stays valid until it is garbage collected, nothing else to release
+        }
+    }
+}
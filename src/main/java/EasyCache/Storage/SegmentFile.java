@@ -0,0 +1,214 @@
+package EasyCache.Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable file of an {@link LsmItemStore}, containing items sorted by key.
+ * The file starts with the entries (key, value), followed by the {@link BloomFilter} of the keys and by a fixed-size footer.
+ * It is memory-mapped read-only and searched with a binary search, so it can be read by several threads at the same time.
+ * The name of the file contains the range of sequence numbers of the memtables whose items it contains: a memtable flush
+ * covers a single sequence number, a compaction covers the whole range of its inputs. A compaction output bigger than
+ * the maximum segment size is split in parts with disjoint keys.
+ */
+public class SegmentFile {
+
+    private static final int MAGIC = 0x4C534D31; // "LSM1"
+    private static final int ENTRY_SIZE = 8;
+    private static final int FOOTER_SIZE = 24;
+
+    private final Path path;
+    private final long minSeq;
+    private final long maxSeq;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int minKey;
+    private final int maxKey;
+    private final BloomFilter bloom;
+
+    private SegmentFile(Path path, long minSeq, long maxSeq) throws IOException {
+        this.path = path;
+        this.minSeq = minSeq;
+        this.maxSeq = maxSeq;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int footer = buffer.capacity() - FOOTER_SIZE;
+        if (footer < 0 || buffer.getInt(footer + 20) != MAGIC) {
+            throw new IOException("segment " + path + " is corrupted");
+        }
+        this.count = buffer.getInt(footer);
+        this.minKey = buffer.getInt(footer + 4);
+        this.maxKey = buffer.getInt(footer + 8);
+        ByteBuffer bloomBuffer = buffer.duplicate();
+        bloomBuffer.position((int) buffer.getLong(footer + 12));
+        this.bloom = BloomFilter.readFrom(bloomBuffer);
+    }
+
+    /**
+     * Opens an existing segment.
+     * @param path the file of the segment, named as returned by {@link #fileName(long, long, int)}.
+     * @return the opened segment.
+     * @throws IOException if the file cannot be read or its name is not valid.
+     */
+    public static SegmentFile open(Path path) throws IOException {
+        long[] range = parseRange(path);
+        if (range == null) {
+            throw new IOException("not a segment file: " + path);
+        }
+        return new SegmentFile(path, range[0], range[1]);
+    }
+
+    public static String fileName(long minSeq, long maxSeq, int part) {
+        return "seg-" + minSeq + "-" + maxSeq + "-" + part + ".sst";
+    }
+
+    /**
+     * @param path the file of a segment.
+     * @return the range of sequence numbers {min, max} in the name of the file, {@code null} if it is not a segment.
+     */
+    public static long[] parseRange(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith("seg-") || !name.endsWith(".sst")) {
+            return null;
+        }
+        String[] parts = name.substring(4, name.length() - 4).split("-");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param key the key of the item.
+     * @return the value of the item or {@link IntIntMap#ABSENT} if the segment does not contain it.
+     */
+    public int get(int key) {
+        if (count == 0 || key < minKey || key > maxKey || !bloom.mightContain(key)) {
+            return IntIntMap.ABSENT;
+        }
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = keyAt(mid);
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return valueAt(mid);
+            }
+        }
+        return IntIntMap.ABSENT;
+    }
+
+    public int keyAt(int index) {
+        return buffer.getInt(index * ENTRY_SIZE);
+    }
+
+    public int valueAt(int index) {
+        return buffer.getInt(index * ENTRY_SIZE + 4);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long minSeq() {
+        return minSeq;
+    }
+
+    public long maxSeq() {
+        return maxSeq;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Writes a new segment entry by entry. Entries must be added in increasing order of key. The file is written with a
+     * temporary name and renamed when {@link #finish()} is called, so a partially written segment is never opened.
+     */
+    public static class Writer {
+        private final Path path;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final ByteBuffer chunk;
+        private final BloomFilter bloom;
+        private int count;
+        private int minKey;
+        private int maxKey;
+
+        /**
+         * @param path the final file of the segment.
+         * @param expectedKeys the maximum number of entries, used to size the bloom filter.
+         * @param bloomBitsPerKey the number of bits of the bloom filter for each key.
+         * @throws IOException if the file cannot be created.
+         */
+        public Writer(Path path, int expectedKeys, int bloomBitsPerKey) throws IOException {
+            this.path = path;
+            this.tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.chunk = ByteBuffer.allocateDirect(64 * 1024);
+            this.bloom = new BloomFilter(expectedKeys, bloomBitsPerKey);
+        }
+
+        public void add(int key, int value) throws IOException {
+            if (chunk.remaining() < ENTRY_SIZE) {
+                drain();
+            }
+            chunk.putInt(key).putInt(value);
+            bloom.add(key);
+            if (count == 0) {
+                minKey = key;
+            }
+            maxKey = key;
+            count++;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        private void drain() throws IOException {
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+            chunk.clear();
+        }
+
+        /**
+         * Writes bloom filter and footer, makes the file durable and gives it its final name.
+         * @return the path of the written segment.
+         * @throws IOException if the file cannot be written.
+         */
+        public Path finish() throws IOException {
+            drain();
+            long bloomOffset = (long) count * ENTRY_SIZE;
+            ByteBuffer tail = ByteBuffer.allocate(bloom.serializedSize() + FOOTER_SIZE);
+            bloom.writeTo(tail);
+            tail.putInt(count).putInt(minKey).putInt(maxKey).putLong(bloomOffset).putInt(MAGIC);
+            tail.flip();
+            while (tail.hasRemaining()) {
+                channel.write(tail);
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return path;
+        }
+    }
+}
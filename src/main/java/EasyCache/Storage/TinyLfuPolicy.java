@@ -0,0 +1,88 @@
+package EasyCache.Storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * {@link EvictionPolicy} implementing W-TinyLFU.
+ * New keys enter a small LRU window (1% of the capacity). Keys leaving the window compete with the least recently used
+ * key of the main region: the one with the higher estimated frequency in the {@link FrequencySketch} stays, the other is evicted.
+ * In this way a burst of one-time reads cannot flush the popular items out of the cache.
+ */
+public class TinyLfuPolicy implements EvictionPolicy {
+
+    private final int windowCapacity;
+    private final int mainCapacity;
+
+    /**
+     * admission window, ordered from the least recently used key.
+     */
+    private final LinkedHashMap<Integer, Boolean> window;
+    /**
+     * main region, ordered from the least recently used key.
+     */
+    private final LinkedHashMap<Integer, Boolean> main;
+
+    private final FrequencySketch sketch;
+
+    public TinyLfuPolicy(int capacity) {
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = Math.max(0, capacity - windowCapacity);
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.main = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    public void recordAccess(int key) {
+        sketch.increment(key);
+        if (window.get(key) == null) {
+            main.get(key);
+        }
+    }
+
+    @Override
+    public void onInsert(int key, Evictor evictor) {
+        window.put(key, Boolean.TRUE);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+        int candidate = removeEldest(window);
+        if (main.size() < mainCapacity) {
+            main.put(candidate, Boolean.TRUE);
+            return;
+        }
+        if (mainCapacity == 0) {
+            evictor.evict(candidate);
+            return;
+        }
+        int victim = main.keySet().iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            main.remove(victim);
+            main.put(candidate, Boolean.TRUE);
+            evictor.evict(victim);
+        } else {
+            evictor.evict(candidate);
+        }
+    }
+
+    private static int removeEldest(LinkedHashMap<Integer, Boolean> region) {
+        Iterator<Integer> it = region.keySet().iterator();
+        int eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    @Override
+    public void onRemove(int key) {
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        main.clear();
+    }
+}
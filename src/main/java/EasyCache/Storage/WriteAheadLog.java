@@ -0,0 +1,218 @@
+package EasyCache.Storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of the writes applied by the {@link EasyCache.Devices.DB database}.
+ * Writes are first {@link #append(int, int) appended} to an in-memory buffer and then made durable all together by
+ * {@link #sync()} (group commit): a single fsync covers every write appended since the previous one.
+ * A {@link #checkpoint(ItemStore) checkpoint} saves the whole store and empties the log, so that the recovery only has
+ * to replay the writes done after the last checkpoint.
+ * Each record contains key, value and a checksum, so a record torn by a crash is detected and dropped at recovery.
+ */
+public class WriteAheadLog {
+
+    private static final int RECORD_SIZE = 12;
+    private static final int CHECKPOINT_ENTRY_SIZE = 8;
+
+    private final Path logPath;
+    private final Path checkpointPath;
+    private final FileChannel channel;
+
+    /**
+     * records appended but not yet written to the log file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * number of records appended since the last sync.
+     */
+    private int unsynced;
+    /**
+     * number of records in the log file, that is written since the last checkpoint.
+     */
+    private long recordsSinceCheckpoint;
+
+    private long syncs;
+    private long syncedRecords;
+
+    /**
+     * Opens the log, creating its file if it does not exist.
+     * @param logPath the file of the log.
+     * @param checkpointPath the file of the checkpoint, used only for stores that are not persistent.
+     * @param bufferRecords the number of records buffered before they are written to the file.
+     */
+    public WriteAheadLog(String logPath, String checkpointPath, int bufferRecords) {
+        this.logPath = Paths.get(logPath);
+        this.checkpointPath = Paths.get(checkpointPath);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(1, bufferRecords) * RECORD_SIZE);
+        try {
+            this.channel = FileChannel.open(this.logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open write-ahead log " + logPath, e);
+        }
+    }
+
+    private static int checksum(int key, int value) {
+        int h = key * 0x9E3779B9 ^ value * 0x85EBCA6B ^ 0x5A17C0DE;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * Rebuilds the content of the store: the checkpoint is loaded (if the store is not persistent) and then all the
+     * records in the log are replayed. A torn record at the end of the log and everything after it is dropped.
+     * @param store the store to rebuild.
+     * @return the number of replayed records.
+     */
+    public long recover(ItemStore store) {
+        try {
+            if (!store.isPersistent() && Files.exists(checkpointPath)) {
+                ByteBuffer ckpt = ByteBuffer.wrap(Files.readAllBytes(checkpointPath));
+                int n = ckpt.getInt();
+                for (int i = 0; i < n; i++) {
+                    store.put(ckpt.getInt(), ckpt.getInt());
+                }
+            }
+            long replayed = 0;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            channel.position(0);
+            while (true) {
+                record.clear();
+                while (record.hasRemaining() && channel.read(record) > 0) {
+                }
+                if (record.hasRemaining()) {
+                    break;
+                }
+                record.flip();
+                int key = record.getInt();
+                int value = record.getInt();
+                if (record.getInt() != checksum(key, value)) {
+                    break;
+                }
+                store.put(key, value);
+                replayed++;
+            }
+            long validEnd = replayed * RECORD_SIZE;
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+            this.recordsSinceCheckpoint = replayed;
+            return replayed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot recover from write-ahead log " + logPath, e);
+        }
+    }
+
+    /**
+     * Appends a write to the log. The write is not durable until the next {@link #sync()}.
+     * @param key the key of the written item.
+     * @param value the new value of the item.
+     */
+    public void append(int key, int value) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            writeBuffer();
+        }
+        buffer.putInt(key).putInt(value).putInt(checksum(key, value));
+        unsynced++;
+    }
+
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write to write-ahead log " + logPath, e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes durable all the writes appended since the last sync, with a single fsync.
+     * @return the number of writes made durable.
+     */
+    public int sync() {
+        if (unsynced == 0) {
+            return 0;
+        }
+        writeBuffer();
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot sync write-ahead log " + logPath, e);
+        }
+        int synced = unsynced;
+        recordsSinceCheckpoint += synced;
+        syncs++;
+        syncedRecords += synced;
+        unsynced = 0;
+        return synced;
+    }
+
+    /**
+     * Saves the whole content of the store and empties the log. A persistent store is flushed, otherwise its items are
+     * written to the checkpoint file, replaced atomically. Must be called after {@link #sync()}.
+     * @param store the store to save.
+     */
+    public void checkpoint(ItemStore store) {
+        try {
+            if (store.isPersistent()) {
+                store.flush();
+            } else {
+                ByteBuffer ckpt = ByteBuffer.allocate(4 + store.size() * CHECKPOINT_ENTRY_SIZE);
+                ckpt.putInt(store.size());
+                store.forEach((k, v) -> ckpt.putInt(k).putInt(v));
+                Path tmp = Paths.get(checkpointPath + ".tmp");
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ckpt.flip();
+                    while (ckpt.hasRemaining()) {
+                        out.write(ckpt);
+                    }
+                    out.force(true);
+                }
+                Files.move(tmp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            recordsSinceCheckpoint = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot checkpoint write-ahead log " + logPath, e);
+        }
+    }
+
+    public long recordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+
+    /**
+     * @return the number of fsyncs performed.
+     */
+    public long syncs() {
+        return syncs;
+    }
+
+    /**
+     * @return the number of writes made durable.
+     */
+    public long syncedRecords() {
+        return syncedRecords;
+    }
+
+    public void close() {
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot close write-ahead log " + logPath, e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package EasyCache;
+
+/**
+ * Enum used to identify the {@link EasyCache.Network.Transport transport} of the messages between the nodes.
+ */
+public enum TransportType {
+    /**
+     * messages are delivered at once with a tell, for production and benchmarks
+     */
+    DIRECT,
+    /**
+     * messages are delivered after a random delay of at most {@link Config#SEND_MAX_DELAY} milliseconds, on FIFO links
+     */
+    SIMULATED
+}
@@ -0,0 +1,63 @@
+package EasyCache.Util;
+
+/**
+ * Histogram of the latencies of the requests of a {@link EasyCache.Devices.Client}, with buckets of power of two milliseconds.
+ * It keeps the count, the mean and the maximum of the recorded latencies and gives an estimate of the percentiles
+ * (the upper bound of the bucket containing the percentile).
+ */
+public class LatencyHistogram {
+
+  /**
+   * number of buckets: bucket i contains the latencies in [2^(i-1), 2^i) ms, the last one all the longer latencies.
+   */
+  private static final int BUCKETS = 24;
+
+  private final long[] buckets = new long[BUCKETS];
+  private long count;
+  private long sumMillis;
+  private long maxMillis;
+
+  /**
+   * Records the latency of a request.
+   * @param millis the latency in milliseconds.
+   */
+  public void record(long millis){
+    if(millis < 0)
+      millis = 0;
+    int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+    buckets[bucket]++;
+    count++;
+    sumMillis += millis;
+    maxMillis = Math.max(maxMillis, millis);
+  }
+
+  /**
+   * @return the number of recorded latencies.
+   */
+  public long count(){
+    return count;
+  }
+
+  /**
+   * @param p the percentile, between 0 and 100.
+   * @return an upper bound of the given percentile of the recorded latencies, in milliseconds.
+   */
+  public long percentile(double p){
+    if(count == 0)
+      return 0;
+    long rank = (long) Math.ceil(count * p / 100.0);
+    long seen = 0;
+    for(int i = 0; i < BUCKETS; i++){
+      seen += buckets[i];
+      if(seen >= Math.max(rank, 1))
+        return Math.min(maxMillis, i == 0 ? 0 : (1L << i) - 1);
+    }
+    return maxMillis;
+  }
+
+  @Override
+  public String toString(){
+    return "count: " + count + "; mean_ms: " + (count == 0 ? 0 : sumMillis / count) + "; p50_ms: " + percentile(50)
+            + "; p99_ms: " + percentile(99) + "; p999_ms: " + percentile(99.9) + "; max_ms: " + maxMillis + ";";
+  }
+}
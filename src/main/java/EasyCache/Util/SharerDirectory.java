@@ -0,0 +1,113 @@
+package EasyCache.Util;
+
+import akka.actor.ActorRef;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directory of the children of a node that hold a copy of each item, used to send the {@link EasyCache.Messages.RefillMsg refills},
+ * the {@link EasyCache.Messages.InvalidationItemMsg invalidations} and the {@link EasyCache.Messages.CritRefillMsg critical refills}
+ * of an item only to them.
+ * A child becomes a sharer of an item when the node sends it a response with the value of the item, the grant, identified by
+ * the request id of the response. A child that drops its copy sends back the request id of the grant it received: the child is removed only
+ * if no newer grant has been sent to it in the meantime, so the directory may contain children that no longer hold the item,
+ * but never misses a child that holds it.
+ * The directory can be shared by several actors of the same node (the {@link EasyCache.Devices.DB database} shard and its
+ * {@link EasyCache.Devices.DBReadWorker read workers}).
+ */
+public class SharerDirectory {
+
+  /**
+   * for each item, the children holding a copy with the request id of the last grant sent to them.
+   */
+  private final ConcurrentHashMap<Integer, Map<ActorRef, Long>> sharers = new ConcurrentHashMap<>();
+
+  /**
+   * Records that a child has been sent the value of an item.
+   * @param key the key of the item.
+   * @param child the child receiving the value.
+   * @param grant the request id of the response carrying the value.
+   */
+  public void grant(int key, ActorRef child, long grant){
+    sharers.compute(key, (k, children) -> {
+      if(children == null)
+        children = new ConcurrentHashMap<>();
+      children.put(child, grant);
+      return children;
+    });
+  }
+
+  /**
+   * Removes a child from the sharers of an item, if the copy it dropped comes from the last grant sent to it.
+   * @param key the key of the item.
+   * @param child the child that dropped its copy.
+   * @param grant the request id of the grant of the dropped copy.
+   * @return {@code true} if the child has been removed.
+   */
+  public boolean release(int key, ActorRef child, long grant){
+    boolean[] released = new boolean[1];
+    sharers.computeIfPresent(key, (k, children) -> {
+      released[0] = children.remove(child, grant);
+      return children.isEmpty() ? null : children;
+    });
+    return released[0];
+  }
+
+  /**
+   * Removes all the sharers of an item, when they are asked to drop their copies.
+   * @param key the key of the item.
+   */
+  public void removeAll(int key){
+    sharers.remove(key);
+  }
+
+  /**
+   * @param key the key of the item.
+   * @return {@code true} if at least one child holds a copy of the item.
+   */
+  public boolean isShared(int key){
+    return sharers.containsKey(key);
+  }
+
+  /**
+   * @return the keys of the items held by at least one child.
+   */
+  public Set<Integer> keys(){
+    return new HashSet<>(sharers.keySet());
+  }
+
+  /**
+   * Computes the children to which a message about an item must be sent: its sharers plus the given children, without
+   * duplicates and in a stable order.
+   * @param key the key of the item.
+   * @param others the other children that must receive the message, {@code null} elements are ignored.
+   * @return the destinations of the message.
+   */
+  public Set<ActorRef> targets(int key, Collection<ActorRef> others){
+    Set<ActorRef> targets = new LinkedHashSet<>();
+    sharers.computeIfPresent(key, (k, children) -> {
+      targets.addAll(children.keySet());
+      return children;
+    });
+    for(ActorRef other : others){
+      if(other != null)
+        targets.add(other);
+    }
+    return targets;
+  }
+
+  /**
+   * @return the number of (item, child) entries of the directory.
+   */
+  public int size(){
+    int size = 0;
+    for(Map<ActorRef, Long> children : sharers.values())
+      size += children.size();
+    return size;
+  }
+
+  public void clear(){
+    sharers.clear();
+  }
+}
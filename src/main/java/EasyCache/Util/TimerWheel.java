@@ -0,0 +1,169 @@
+package EasyCache.Util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel holding the timeouts of the requests of an actor, used instead of a task of the Akka scheduler per
+ * request. The wheel is advanced by a single periodic {@link EasyCache.Messages.TimerTickMsg tick} of the actor.
+ * Each timeout is put in the slot of the tick in which it expires (modulo the number of slots): scheduling and
+ * cancelling a timeout are O(1), and each tick only examines the timeouts of its slot. The timeouts longer than a round
+ * of the wheel stay in their slot for several rounds. A timeout expires at most one tick after its delay.
+ * The timeouts are entries of a pool of parallel arrays, linked by index and reused once expired or cancelled, so
+ * scheduling a timeout does not allocate: the pool only grows when more timeouts than ever before are pending.
+ * A timeout is identified by a long token holding the index of its entry and the generation of the entry, incremented
+ * at each reuse, so the token of an expired timeout never cancels the timeout that took its entry.
+ * The wheel is not thread safe: it must be used only by its actor.
+ */
+public class TimerWheel {
+
+  private static final int NIL = -1;
+  private static final int INITIAL_ENTRIES = 64;
+
+  /**
+   * the first entry of the list of each slot, {@link #NIL} if the slot is empty.
+   */
+  private final int[] heads;
+  private final int mask;
+  private final long tickNanos;
+  private final long startNanos;
+
+  private long[] deadlines;
+  /**
+   * the message of each entry, {@code null} if the entry is free.
+   */
+  private Object[] msgs;
+  /**
+   * the next entry in the list of the slot or, for a free entry, in the free list.
+   */
+  private int[] next;
+  private int[] prev;
+  private int[] generations;
+  private int free = NIL;
+
+  /**
+   * the last tick whose timeouts have expired.
+   */
+  private long currentTick;
+  private int size;
+
+  /**
+   * @param slots the number of slots of the wheel, rounded up to a power of two.
+   * @param tickMillis the duration of a tick, in milliseconds.
+   */
+  public TimerWheel(int slots, long tickMillis){
+    int n = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+    this.heads = new int[n];
+    Arrays.fill(heads, NIL);
+    this.mask = n - 1;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.startNanos = System.nanoTime();
+    this.deadlines = new long[0];
+    this.msgs = new Object[0];
+    this.next = new int[0];
+    this.prev = new int[0];
+    this.generations = new int[0];
+    grow(INITIAL_ENTRIES);
+  }
+
+  /**
+   * Schedules a message to be delivered to the actor after a delay.
+   * @param delayMillis the delay, in milliseconds.
+   * @param msg the message to deliver when the timeout expires.
+   * @return the token of the timeout, to cancel it. It is never 0 nor {@link Long#MIN_VALUE}.
+   */
+  public long schedule(long delayMillis, Object msg){
+    long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+    long deadline = Math.max(currentTick + 1, (elapsed + tickNanos - 1) / tickNanos);
+    if(free == NIL)
+      grow(msgs.length * 2);
+    int e = free;
+    free = next[e];
+    deadlines[e] = deadline;
+    msgs[e] = msg;
+    int slot = (int) (deadline & mask);
+    prev[e] = NIL;
+    next[e] = heads[slot];
+    if(next[e] != NIL)
+      prev[next[e]] = e;
+    heads[slot] = e;
+    size++;
+    return ((long) generations[e] << 32) | e;
+  }
+
+  /**
+   * Cancels a timeout, if it has not expired yet.
+   * @param token the token returned by {@link #schedule(long, Object)}.
+   * @return true if the timeout was pending and has been cancelled.
+   */
+  public boolean cancel(long token){
+    int e = (int) token;
+    if(e < 0 || e >= msgs.length || msgs[e] == null || generations[e] != (int) (token >>> 32))
+      return false;
+    release(e);
+    return true;
+  }
+
+  /**
+   * Expires the timeouts of all the ticks elapsed since the last call.
+   * @param expire the action delivering the message of an expired timeout.
+   */
+  public void advance(Consumer<Object> expire){
+    long target = (System.nanoTime() - startNanos) / tickNanos;
+    while(currentTick < target && size > 0){
+      currentTick++;
+      int e = heads[(int) (currentTick & mask)];
+      while(e != NIL){
+        int following = next[e];
+        if(deadlines[e] <= currentTick){
+          Object msg = msgs[e];
+          release(e);
+          expire.accept(msg);
+        }
+        e = following;
+      }
+    }
+    currentTick = Math.max(currentTick, target);
+  }
+
+  /**
+   * @return the number of timeouts scheduled and not yet expired or cancelled.
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * Unlinks an entry from the list of its slot and puts it back in the free list, with a new generation.
+   */
+  private void release(int e){
+    if(prev[e] != NIL)
+      next[prev[e]] = next[e];
+    else
+      heads[(int) (deadlines[e] & mask)] = next[e];
+    if(next[e] != NIL)
+      prev[next[e]] = prev[e];
+    msgs[e] = null;
+    // generations stay positive, so that no token is Long.MIN_VALUE
+    generations[e] = generations[e] == Integer.MAX_VALUE ? 1 : generations[e] + 1;
+    prev[e] = NIL;
+    next[e] = free;
+    free = e;
+    size--;
+  }
+
+  private void grow(int entries){
+    int old = msgs.length;
+    deadlines = Arrays.copyOf(deadlines, entries);
+    msgs = Arrays.copyOf(msgs, entries);
+    next = Arrays.copyOf(next, entries);
+    prev = Arrays.copyOf(prev, entries);
+    generations = Arrays.copyOf(generations, entries);
+    for(int e = entries - 1; e >= old; e--){
+      generations[e] = 1;
+      next[e] = free;
+      free = e;
+    }
+  }
+}
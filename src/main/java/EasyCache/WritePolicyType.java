@@ -0,0 +1,20 @@
+package EasyCache;
+
+/**
+ * Enum used to identify how the new value of an item is propagated to the {@link EasyCache.Devices.Cache caches} after a
+ * write. The policy is chosen per key with {@link Config#writePolicyOf(int)}.
+ */
+public enum WritePolicyType {
+    /**
+     * the caches holding the item update it with the new value carried by the refill
+     */
+    UPDATE,
+    /**
+     * the caches holding the item drop it, and read it again from the database at the next request
+     */
+    INVALIDATE,
+    /**
+     * like UPDATE, and the caches on the path of the write also store the new value if they did not hold the item
+     */
+    WRITE_ALLOCATE
+}
@@ -0,0 +1,365 @@
+package EasyCache.Devices;
+
+import EasyCache.CacheType;
+import EasyCache.Config;
+import EasyCache.CrashType;
+import EasyCache.Messages.*;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CacheTest {
+
+  private static final int KEY = 3;
+
+  private static ActorSystem system;
+
+  @BeforeClass
+  public static void setup(){
+    system = ActorSystem.create("CacheTest");
+  }
+
+  @AfterClass
+  public static void teardown(){
+    TestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  /**
+   * @return a probe playing a parent, a child or the database, which does not care about the heartbeats.
+   */
+  private static TestKit probe(){
+    TestKit probe = new TestKit(system);
+    probe.ignoreMsg(msg -> msg instanceof HeartbeatMsg);
+    return probe;
+  }
+
+  /**
+   * Starts a cache whose database shards are all played by the same probe.
+   */
+  private static ActorRef cache(CacheType type, TestKit parent, TestKit db, TestKit... children){
+    ActorRef cache = system.actorOf(Cache.props(0, type, Collections.nCopies(Config.N_DB_SHARDS, db.getRef())));
+    List<ActorRef> refs = new ArrayList<>();
+    for(TestKit child : children)
+      refs.add(child.getRef());
+    cache.tell(new SetParentMsg(parent.getRef()), ActorRef.noSender());
+    cache.tell(new SetChildrenMsg(refs), ActorRef.noSender());
+    return cache;
+  }
+
+  private static ReadReqMsg read(ActorRef cache, int key, TestKit child){
+    ReadReqMsg read = new ReadReqMsg(key);
+    cache.tell(read, child.getRef());
+    return read;
+  }
+
+  /**
+   * Answers the next read forwarded by the cache to the parent.
+   */
+  private static ReadReqMsg answerRead(ActorRef cache, TestKit parent, int value){
+    ReadReqMsg forwarded = parent.expectMsgClass(ReadReqMsg.class);
+    cache.tell(new ReadRespMsg(forwarded.key, value, forwarded.reqId), parent.getRef());
+    return forwarded;
+  }
+
+  @Test
+  public void refillGoesOnlyToTheChildrenHoldingTheItem(){
+    TestKit db = probe();
+    TestKit holder = probe();
+    TestKit other = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, holder, other);
+    read(l1, KEY, holder);
+    answerRead(l1, db, 7);
+    ReadRespMsg resp = holder.expectMsgClass(ReadRespMsg.class);
+    assertEquals(7, resp.value);
+
+    l1.tell(new RefillMsg(KEY, 8, db.getRef(), IdMessage.nextId()), db.getRef());
+    assertEquals(8, holder.expectMsgClass(RefillMsg.class).newValue);
+    other.expectNoMessage(Duration.ofMillis(200));
+
+    l1.tell(new ItemReleasedMsg(KEY, resp.reqId), holder.getRef());
+    l1.tell(new RefillMsg(KEY, 9, db.getRef(), IdMessage.nextId()), db.getRef());
+    holder.expectNoMessage(Duration.ofMillis(200));
+    other.expectNoMessage(Duration.ZERO);
+  }
+
+  @Test
+  public void timeoutTowardsTheParentBacksOffAfterATimeout(){
+    TestKit db = probe();
+    TestKit child = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, child);
+    read(l1, KEY, child);
+    db.expectMsgClass(ReadReqMsg.class); // never answered
+    child.expectMsgClass(Duration.ofMillis(Config.TIMEOUT_CACHE + 200), ReqErrorMsg.class);
+
+    read(l1, KEY + 1, child);
+    child.expectNoMessage(Duration.ofMillis(Config.TIMEOUT_CACHE + 50)); // the timeout of the link is now doubled
+    child.expectMsgClass(Duration.ofMillis(Config.TIMEOUT_CACHE_MAX), ReqErrorMsg.class);
+  }
+
+  @Test
+  public void answeredReadDoesNotTimeOut(){
+    TestKit db = probe();
+    TestKit child = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, child);
+    read(l1, KEY, child);
+    answerRead(l1, db, 5);
+    assertEquals(5, child.expectMsgClass(ReadRespMsg.class).value);
+    child.expectNoMessage(Duration.ofMillis(Config.TIMEOUT_CACHE_MAX + 100));
+    db.expectNoMessage(Duration.ZERO); // no new parent announced
+  }
+
+  @Test
+  public void unansweredReadTimesOutAndTheDatabaseBecomesTheParent(){
+    TestKit l1 = probe();
+    TestKit db = probe();
+    TestKit client = probe();
+    ActorRef l2 = cache(CacheType.L2, l1, db, client);
+    ReadReqMsg read = read(l2, KEY, client);
+    l1.expectMsgClass(ReadReqMsg.class);
+    ReqErrorMsg error = client.expectMsgClass(Duration.ofMillis(Config.TIMEOUT_CACHE_MAX + 200), ReqErrorMsg.class);
+    assertEquals(read.reqId, error.awaitedMsg.reqId);
+    db.expectMsgClass(AddChildMsg.class);
+  }
+
+  @Test
+  public void idleChildReceivesHeartbeats(){
+    TestKit l1 = probe();
+    TestKit db = probe();
+    TestKit client = new TestKit(system);
+    ActorRef l2 = cache(CacheType.L2, l1, db, client);
+    l2.tell(new HeartbeatTickMsg(), ActorRef.noSender());
+    client.expectMsgClass(HeartbeatMsg.class);
+  }
+
+  @Test
+  public void silentParentIsSuspectedAndTheReadsGoToTheDatabase() throws InterruptedException {
+    TestKit l1 = probe();
+    TestKit db = probe();
+    TestKit client = probe();
+    ActorRef l2 = cache(CacheType.L2, l1, db, client);
+    l2.tell(new HeartbeatTickMsg(), ActorRef.noSender()); // starts watching the parent
+    Thread.sleep(Config.HEARTBEAT_INTERVAL * 10);
+    l2.tell(new HeartbeatTickMsg(), ActorRef.noSender());
+    db.expectMsgClass(AddChildMsg.class);
+
+    read(l2, KEY, client);
+    db.fishForMessage(Duration.ofSeconds(3), "read", msg -> msg instanceof ReadReqMsg);
+    l1.expectNoMessage(Duration.ofMillis(100));
+  }
+
+  @Test
+  public void parentSendingHeartbeatsIsNotSuspected() throws InterruptedException {
+    TestKit l1 = probe();
+    TestKit db = probe();
+    TestKit client = probe();
+    ActorRef l2 = cache(CacheType.L2, l1, db, client);
+    l2.tell(new HeartbeatTickMsg(), ActorRef.noSender());
+    for(int i = 0; i < 10; i++){
+      Thread.sleep(Config.HEARTBEAT_INTERVAL);
+      l2.tell(new HeartbeatMsg(), l1.getRef());
+      l2.tell(new HeartbeatTickMsg(), ActorRef.noSender());
+    }
+    read(l2, KEY, client);
+    l1.expectMsgClass(ReadReqMsg.class);
+    db.expectNoMessage(Duration.ofMillis(100));
+  }
+
+  /**
+   * Makes the child read the item through a L1 cache, and then invalidates it as the database does for a critical write.
+   * @return the request id of the critical write.
+   */
+  private static long invalidate(ActorRef l1, TestKit db, TestKit child, int value){
+    read(l1, KEY, child);
+    answerRead(l1, db, value);
+    assertEquals(value, child.expectMsgClass(ReadRespMsg.class).value);
+    long critWrite = IdMessage.nextId();
+    l1.tell(new InvalidationItemMsg(KEY, critWrite), db.getRef());
+    child.expectMsgClass(InvalidationItemMsg.class);
+    return critWrite;
+  }
+
+  /**
+   * @return the response to the given read among the next messages received by the child.
+   */
+  private static ReadRespMsg responseTo(ReadReqMsg read, TestKit child, int messages){
+    ReadRespMsg resp = null;
+    for(Object msg : child.receiveN(messages)){
+      if(msg instanceof ReadRespMsg && ((ReadRespMsg) msg).reqId == read.reqId)
+        resp = (ReadRespMsg) msg;
+    }
+    assertNotNull(resp);
+    return resp;
+  }
+
+  @Test
+  public void readParkedOnAnInvalidItemIsAnsweredByTheCriticalRefill(){
+    TestKit db = probe();
+    TestKit child = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, child);
+    long critWrite = invalidate(l1, db, child, 5);
+    ReadReqMsg parked = read(l1, KEY, child);
+    child.expectNoMessage(Duration.ofMillis(Config.TIMEOUT_PARKED_READ_L1 / 2)); // the old value is not served
+
+    l1.tell(new CritRefillMsg(KEY, 9, db.getRef(), critWrite), db.getRef());
+    assertEquals(9, responseTo(parked, child, 2).value); // together with the critical refill itself
+    child.expectNoMessage(Duration.ofMillis(Config.TIMEOUT_PARKED_READ_L1 + 100)); // and its timer is cancelled
+  }
+
+  @Test
+  public void readParkedOnAnInvalidItemIsRetriedAfterACriticalWriteError(){
+    TestKit db = probe();
+    TestKit child = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, child);
+    long critWrite = invalidate(l1, db, child, 5);
+    ReadReqMsg parked = read(l1, KEY, child);
+
+    l1.tell(new CritWriteErrorMsg(KEY, db.getRef(), critWrite), db.getRef());
+    assertEquals(5, responseTo(parked, child, 2).value); // the write failed, the cached value is still valid
+  }
+
+  @Test
+  public void readParkedTooLongIsAnsweredWithAnError(){
+    TestKit db = probe();
+    TestKit child = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, child);
+    invalidate(l1, db, child, 5);
+    ReadReqMsg parked = read(l1, KEY, child);
+    ReqErrorMsg error = child.expectMsgClass(Duration.ofMillis(Config.TIMEOUT_PARKED_READ_L1 + 200), ReqErrorMsg.class);
+    assertEquals(parked.reqId, error.awaitedMsg.reqId);
+  }
+
+  @Test
+  public void readOverTheLimitOfParkedReadsIsAnsweredWithAnErrorAtOnce(){
+    TestKit db = probe();
+    TestKit child = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, child);
+    invalidate(l1, db, child, 5);
+    for(int i = 0; i < Config.MAX_PARKED_READS_PER_ITEM; i++)
+      read(l1, KEY, child);
+    ReadReqMsg rejected = read(l1, KEY, child);
+    ReqErrorMsg error = child.expectMsgClass(Duration.ofMillis(Config.TIMEOUT_PARKED_READ_L1), ReqErrorMsg.class);
+    assertEquals(rejected.reqId, error.awaitedMsg.reqId);
+  }
+
+  @Test
+  public void concurrentMissesOnAnItemSendASingleReadToTheParent(){
+    TestKit db = probe();
+    TestKit[] children = {probe(), probe(), probe()};
+    ActorRef l1 = cache(CacheType.L1, db, db, children);
+    ReadReqMsg[] reads = new ReadReqMsg[children.length];
+    for(int i = 0; i < children.length; i++)
+      reads[i] = read(l1, KEY, children[i]);
+    answerRead(l1, db, 5);
+    db.expectNoMessage(Duration.ofMillis(200)); // the other reads wait for the first one
+    for(int i = 0; i < children.length; i++){
+      ReadRespMsg resp = children[i].expectMsgClass(ReadRespMsg.class);
+      assertEquals(5, resp.value);
+      assertEquals(reads[i].reqId, resp.reqId);
+    }
+  }
+
+  @Test
+  public void readsCoalescedWithAReadInTimeoutReceiveTheError(){
+    TestKit db = probe();
+    TestKit[] children = {probe(), probe(), probe()};
+    ActorRef l1 = cache(CacheType.L1, db, db, children);
+    ReadReqMsg[] reads = new ReadReqMsg[children.length];
+    for(int i = 0; i < children.length; i++)
+      reads[i] = read(l1, KEY, children[i]);
+    db.expectMsgClass(ReadReqMsg.class); // never answered
+    for(int i = 0; i < children.length; i++){
+      ReqErrorMsg error = children[i].expectMsgClass(Duration.ofMillis(Config.TIMEOUT_CACHE_MAX + 200), ReqErrorMsg.class);
+      assertEquals(reads[i].reqId, error.awaitedMsg.reqId);
+    }
+  }
+
+  /**
+   * Makes the children read an item through a L1 cache, so that they are its sharers.
+   */
+  private static void share(ActorRef l1, TestKit db, int key, int value, TestKit... holders){
+    for(TestKit holder : holders)
+      read(l1, key, holder);
+    answerRead(l1, db, value);
+    for(TestKit holder : holders)
+      assertEquals(value, holder.expectMsgClass(ReadRespMsg.class).value);
+  }
+
+  private static void assertBatchOf(Class<?> type, BatchMsg batch, int... keys){
+    assertEquals(keys.length, batch.msgs.size());
+    for(int i = 0; i < keys.length; i++){
+      assertEquals(type, batch.msgs.get(i).getClass());
+      assertEquals(keys[i], ((IdMessage) batch.msgs.get(i)).key);
+    }
+  }
+
+  @Test
+  public void invalidationRoundCostsOneMessageForEachChildAndOneConfirmation(){
+    TestKit db = probe();
+    TestKit a = probe();
+    TestKit b = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, a, b);
+    share(l1, db, KEY, 1, a, b);
+    share(l1, db, KEY + 1, 2, a, b);
+    long w1 = IdMessage.nextId();
+    long w2 = IdMessage.nextId();
+    l1.tell(new BatchMsg(Arrays.<Message>asList(new InvalidationItemMsg(KEY, w1), new InvalidationItemMsg(KEY + 1, w2))), db.getRef());
+    assertBatchOf(InvalidationItemMsg.class, a.expectMsgClass(BatchMsg.class), KEY, KEY + 1);
+    assertBatchOf(InvalidationItemMsg.class, b.expectMsgClass(BatchMsg.class), KEY, KEY + 1);
+    db.expectNoMessage(Duration.ofMillis(200)); // a child may crash, the confirmation of the other one is enough
+
+    BatchMsg confirmations = new BatchMsg(Arrays.<Message>asList(new InvalidationItemConfirmMsg(KEY, w1), new InvalidationItemConfirmMsg(KEY + 1, w2)));
+    l1.tell(confirmations, a.getRef());
+    assertBatchOf(InvalidationItemConfirmMsg.class, db.expectMsgClass(BatchMsg.class), KEY, KEY + 1);
+    l1.tell(confirmations, b.getRef());
+    db.expectNoMessage(Duration.ofMillis(200));
+  }
+
+  @Test
+  public void l2ConfirmsAnInvalidationRoundWithASingleMessage(){
+    TestKit l1 = probe();
+    TestKit db = probe();
+    TestKit client = probe();
+    ActorRef l2 = cache(CacheType.L2, l1, db, client);
+    l2.tell(new BatchMsg(Arrays.<Message>asList(new InvalidationItemMsg(KEY, IdMessage.nextId()), new InvalidationItemMsg(KEY + 1, IdMessage.nextId()))), l1.getRef());
+    assertBatchOf(InvalidationItemConfirmMsg.class, l1.expectMsgClass(BatchMsg.class), KEY, KEY + 1);
+    client.expectNoMessage(Duration.ofMillis(100)); // it holds none of the items
+  }
+
+  @Test
+  public void messagesSentBeforeACrashInTheMiddleOfABatchAreSent(){
+    TestKit db = probe();
+    TestKit a = probe();
+    TestKit b = probe();
+    ActorRef l1 = cache(CacheType.L1, db, db, a, b);
+    share(l1, db, KEY, 1, a);
+    share(l1, db, KEY + 1, 2, a, b);
+    share(l1, db, KEY + 2, 3, a);
+    // the first invalidation is sent and confirmed at once, the second one is sent to one child before the crash
+    l1.tell(new CrashDuringMulticastMsg(CrashType.DURING_INVALID_ITEM_MULTICAST, 1, 60_000), ActorRef.noSender());
+    l1.tell(new BatchMsg(Arrays.<Message>asList(new InvalidationItemMsg(KEY, IdMessage.nextId()),
+            new InvalidationItemMsg(KEY + 1, IdMessage.nextId()), new InvalidationItemMsg(KEY + 2, IdMessage.nextId()))), db.getRef());
+    assertEquals(KEY, db.expectMsgClass(InvalidationItemConfirmMsg.class).key);
+    Message toA = a.expectMsgAnyClassOf(InvalidationItemMsg.class, BatchMsg.class);
+    if(toA instanceof BatchMsg){
+      assertBatchOf(InvalidationItemMsg.class, (BatchMsg) toA, KEY, KEY + 1);
+      b.expectNoMessage(Duration.ofMillis(200));
+    }else{
+      assertEquals(KEY, ((InvalidationItemMsg) toA).key);
+      assertEquals(KEY + 1, b.expectMsgClass(InvalidationItemMsg.class).key);
+    }
+    a.expectNoMessage(Duration.ofMillis(200)); // the invalidation after the crash is never sent
+    db.expectNoMessage(Duration.ZERO);
+  }
+}
@@ -0,0 +1,70 @@
+package EasyCache.Devices;
+
+import EasyCache.Config;
+import EasyCache.Messages.*;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class ClientTest {
+
+  private static final int KEY = 3;
+  private static final int OTHER_KEY = 4;
+
+  private static ActorSystem system;
+
+  @BeforeClass
+  public static void setup(){
+    system = ActorSystem.create("ClientTest");
+  }
+
+  @AfterClass
+  public static void teardown(){
+    TestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  /**
+   * Starts a client whose parent L2 cache is played by a probe, which does not care about the heartbeats and about the
+   * items released by the client (without a near cache each item read is released at once).
+   */
+  private static ActorRef client(TestKit parent){
+    parent.ignoreMsg(msg -> msg instanceof HeartbeatMsg || msg instanceof ItemReleasedMsg);
+    ActorRef client = system.actorOf(Client.props(0));
+    client.tell(new SetParentMsg(parent.getRef()), ActorRef.noSender());
+    return client;
+  }
+
+  @Test
+  public void readWaitsForTheWriteOnTheSameItemWhileAReadOnAnotherItemOvertakes(){
+    assertTrue(Config.CLIENT_WINDOW >= 2);
+    TestKit parent = new TestKit(system);
+    ActorRef client = client(parent);
+
+    client.tell(new DoWriteMsg(KEY, 7), ActorRef.noSender());
+    client.tell(new DoReadMsg(KEY), ActorRef.noSender());
+    client.tell(new DoReadMsg(OTHER_KEY), ActorRef.noSender());
+
+    WriteReqMsg write = parent.expectMsgClass(WriteReqMsg.class);
+    assertEquals(KEY, write.key);
+    ReadReqMsg overtaking = parent.expectMsgClass(ReadReqMsg.class);
+    assertEquals(OTHER_KEY, overtaking.key);
+    parent.expectNoMessage(Duration.ofMillis(200));
+
+    client.tell(new ReadRespMsg(OTHER_KEY, 1, overtaking.reqId), parent.getRef());
+    parent.expectNoMessage(Duration.ofMillis(200));
+
+    client.tell(new WriteConfirmMsg(KEY, write.reqId), parent.getRef());
+    ReadReqMsg read = parent.expectMsgClass(ReadReqMsg.class);
+    assertEquals(KEY, read.key);
+    client.tell(new ReadRespMsg(KEY, 7, read.reqId), parent.getRef());
+    parent.expectNoMessage(Duration.ofMillis(200));
+  }
+}
@@ -0,0 +1,172 @@
+package EasyCache.Devices;
+
+import EasyCache.Config;
+import EasyCache.Messages.*;
+import EasyCache.Storage.HeapItemStore;
+import EasyCache.Storage.ItemStore;
+import EasyCache.Storage.WriteAheadLog;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DBTest {
+
+  /**
+   * a key owned by shard 0.
+   */
+  private static final int KEY = 2 * Config.N_DB_SHARDS;
+  /**
+   * another key owned by shard 0.
+   */
+  private static final int OTHER_KEY = 3 * Config.N_DB_SHARDS;
+
+  private static ActorSystem system;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setup(){
+    system = ActorSystem.create("DBTest");
+  }
+
+  @AfterClass
+  public static void teardown(){
+    TestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  /**
+   * @return a probe playing a child of the database, which does not care about the heartbeats.
+   */
+  private static TestKit probe(){
+    TestKit probe = new TestKit(system);
+    probe.ignoreMsg(msg -> msg instanceof HeartbeatMsg);
+    return probe;
+  }
+
+  /**
+   * Starts a shard whose children are the given probes.
+   */
+  private static ActorRef db(Props props, TestKit... children){
+    ActorRef db = system.actorOf(props);
+    List<ActorRef> refs = new ArrayList<>();
+    for(TestKit child : children)
+      refs.add(child.getRef());
+    db.tell(new SetChildrenMsg(refs), ActorRef.noSender());
+    return db;
+  }
+
+  private WriteAheadLog wal(){
+    return new WriteAheadLog(folder.getRoot().toPath().resolve("wal").toString(), folder.getRoot().toPath().resolve("ckpt").toString(), 16);
+  }
+
+  @Test
+  public void loggedWriteIsAppliedAndConfirmedAtTheGroupCommit(){
+    ItemStore store = new HeapItemStore();
+    TestKit cache = probe();
+    ActorRef db = db(DB.props(0, new HashMap<>(), store, wal(), Config.CRIT_WRITE_ROUND_WINDOW), cache);
+    db.tell(new WriteReqMsg(KEY, 7, cache.getRef()), cache.getRef());
+    RefillMsg refill = cache.expectMsgClass(RefillMsg.class);
+    assertEquals(KEY, refill.key);
+    assertEquals(7, refill.newValue);
+    assertEquals(7, store.get(KEY));
+    cache.watch(db);
+    db.tell(PoisonPill.getInstance(), ActorRef.noSender());
+    cache.expectTerminated(db);
+
+    ItemStore recovered = new HeapItemStore();
+    assertEquals(1, wal().recover(recovered));
+    assertEquals(7, recovered.get(KEY));
+  }
+
+  @Test
+  public void writesWaitingForTheGroupCommitAreSyncedAndAppliedWhenTheDatabaseStops(){
+    ItemStore store = new HeapItemStore();
+    TestKit cache = probe();
+    ActorRef db = db(DB.props(0, new HashMap<>(), store, wal(), Config.CRIT_WRITE_ROUND_WINDOW), cache);
+    cache.watch(db);
+    db.tell(new WriteReqMsg(KEY, 7, cache.getRef()), cache.getRef());
+    db.tell(PoisonPill.getInstance(), ActorRef.noSender()); // handled before the end of the group commit window
+    cache.expectTerminated(db); // and no refill is sent by the stopping actor
+    assertEquals(7, store.get(KEY));
+
+    ItemStore recovered = new HeapItemStore();
+    assertEquals(1, wal().recover(recovered));
+    assertEquals(7, recovered.get(KEY));
+  }
+
+  /**
+   * Starts a shard holding the items KEY and OTHER_KEY, read by the given children.
+   */
+  private static ActorRef sharedItems(int roundWindow, TestKit... children){
+    HashMap<Integer, Integer> items = new HashMap<>();
+    items.put(KEY, 1);
+    items.put(OTHER_KEY, 2);
+    ActorRef db = db(DB.props(0, items, new HeapItemStore(), null, roundWindow), children);
+    for(TestKit child : children){
+      db.tell(new ReadReqMsg(KEY), child.getRef());
+      db.tell(new ReadReqMsg(OTHER_KEY), child.getRef());
+      child.expectMsgClass(ReadRespMsg.class);
+      child.expectMsgClass(ReadRespMsg.class);
+    }
+    return db;
+  }
+
+  private static BatchMsg expectBatchOf(Class<?> type, TestKit child){
+    BatchMsg batch = child.expectMsgClass(BatchMsg.class);
+    assertEquals(2, batch.msgs.size());
+    assertEquals(KEY, ((IdMessage) batch.msgs.get(0)).key);
+    assertEquals(OTHER_KEY, ((IdMessage) batch.msgs.get(1)).key);
+    for(Message m : batch.msgs)
+      assertEquals(type, m.getClass());
+    return batch;
+  }
+
+  @Test
+  public void criticalWritesOfARoundAreInvalidatedWithOneMessageForEachChild(){
+    TestKit a = probe();
+    TestKit b = probe();
+    ActorRef db = sharedItems(200, a, b);
+    CritWriteReqMsg first = new CritWriteReqMsg(KEY, 10, a.getRef());
+    CritWriteReqMsg second = new CritWriteReqMsg(OTHER_KEY, 20, a.getRef());
+    db.tell(first, a.getRef());
+    db.tell(second, a.getRef());
+    expectBatchOf(InvalidationItemMsg.class, a);
+    expectBatchOf(InvalidationItemMsg.class, b);
+
+    BatchMsg confirmations = new BatchMsg(Arrays.<Message>asList(new InvalidationItemConfirmMsg(KEY, first.reqId), new InvalidationItemConfirmMsg(OTHER_KEY, second.reqId)));
+    db.tell(confirmations, a.getRef());
+    a.expectNoMessage(Duration.ofMillis(100)); // waiting for b
+    db.tell(confirmations, b.getRef());
+    BatchMsg refills = expectBatchOf(CritRefillMsg.class, a);
+    assertEquals(10, ((CritRefillMsg) refills.msgs.get(0)).newValue);
+    assertEquals(20, ((CritRefillMsg) refills.msgs.get(1)).newValue);
+    expectBatchOf(CritRefillMsg.class, b);
+  }
+
+  @Test
+  public void withoutARoundWindowEachCriticalWriteHasItsOwnRound(){
+    TestKit a = probe();
+    ActorRef db = sharedItems(0, a);
+    db.tell(new CritWriteReqMsg(KEY, 10, a.getRef()), a.getRef());
+    db.tell(new CritWriteReqMsg(OTHER_KEY, 20, a.getRef()), a.getRef());
+    assertEquals(KEY, a.expectMsgClass(InvalidationItemMsg.class).key);
+    assertEquals(OTHER_KEY, a.expectMsgClass(InvalidationItemMsg.class).key);
+  }
+}
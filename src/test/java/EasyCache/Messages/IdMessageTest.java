@@ -0,0 +1,52 @@
+package EasyCache.Messages;
+
+import EasyCache.Config;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IdMessageTest {
+
+    @Test
+    public void idsAreUniqueAcrossThreads() throws InterruptedException {
+        int threads = 4;
+        long[][] ids = new long[threads][100_000];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long[] own = ids[t];
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < own.length; i++) {
+                    own[i] = new ReadReqMsg(i).reqId;
+                }
+            });
+            workers[t].start();
+        }
+        Set<Long> seen = new HashSet<>();
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            for (long id : ids[t]) {
+                assertTrue("duplicated id " + id, seen.add(id));
+            }
+        }
+    }
+
+    @Test
+    public void idsCarryTheNodeIdInTheHighBits() {
+        long id = IdMessage.nextId();
+        assertEquals(Config.NODE_ID, id >>> 48);
+        assertNotEquals(0, id & ((1L << 48) - 1));
+    }
+
+    @Test
+    public void responsesKeepTheIdOfTheRequest() {
+        ReadReqMsg first = new ReadReqMsg(1);
+        ReadReqMsg second = new ReadReqMsg(1);
+        assertNotEquals(first.reqId, second.reqId);
+        ReadRespMsg resp = new ReadRespMsg(1, 5, first.reqId);
+        assertEquals(first.reqId, resp.reqId);
+        assertEquals(first.reqId, new ReqErrorMsg(first).awaitedMsg.reqId);
+    }
+}
@@ -0,0 +1,110 @@
+package EasyCache.Messages;
+
+import EasyCache.Storage.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Microbenchmark of the bookkeeping of a request id, before and after the switch from random {@link UUID} keys in a
+ * {@link HashMap} to the long ids of {@link IdMessage#nextId()} in a {@link LongObjectMap}.
+ * Each request generates an id, puts it in a table of pending requests and, a fixed number of requests later, looks it
+ * up and removes it, as the actors do with the timers of their outstanding requests.
+ * It is a plain program, not a test: run it with the test classpath, e.g.
+ * {@code java -cp build/classes/java/main:build/classes/java/test EasyCache.Messages.RequestIdBenchmark}.
+ */
+public class RequestIdBenchmark {
+
+    private static final int REQUESTS = 2_000_000;
+    /**
+     * number of requests pending at the same time.
+     */
+    private static final int PENDING = 64;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    /**
+     * keeps the tables alive, so that the JIT does not remove the work.
+     */
+    private static volatile Object sink;
+
+    private static long uuidRun() {
+        HashMap<UUID, Object> pending = new HashMap<>();
+        UUID[] ring = new UUID[PENDING];
+        Object value = new Object();
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            UUID id = UUID.randomUUID();
+            int slot = i % PENDING;
+            if (ring[slot] != null) {
+                pending.get(ring[slot]);
+                pending.remove(ring[slot]);
+            }
+            pending.put(id, value);
+            ring[slot] = id;
+        }
+        sink = pending;
+        return System.nanoTime() - start;
+    }
+
+    private static long longRun() {
+        LongObjectMap<Object> pending = new LongObjectMap<>();
+        long[] ring = new long[PENDING];
+        Object value = new Object();
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            long id = IdMessage.nextId();
+            int slot = i % PENDING;
+            if (ring[slot] != 0) {
+                pending.get(ring[slot]);
+                pending.remove(ring[slot]);
+            }
+            pending.put(id, value);
+            ring[slot] = id;
+        }
+        sink = pending;
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the wall clock nanoseconds per request when each thread runs its own requests.
+     */
+    private static double parallelRun(int threads, boolean uuid) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> runs = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                runs.add(executor.submit(() -> uuid ? uuidRun() : longRun()));
+            }
+            for (Future<Long> run : runs) {
+                run.get();
+            }
+            return (double) (System.nanoTime() - start) / REQUESTS;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            uuidRun();
+            longRun();
+        }
+        for (int threads : new int[]{1, 4}) {
+            double uuid = 0;
+            double id = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                uuid += parallelRun(threads, true);
+                id += parallelRun(threads, false);
+            }
+            System.out.printf("threads %d: UUID+HashMap %.1f ns/request, long+LongObjectMap %.1f ns/request%n",
+                    threads, uuid / ROUNDS, id / ROUNDS);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package EasyCache.Network;
+
+import EasyCache.Config;
+import EasyCache.Messages.ReadReqMsg;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NetworkModelTest {
+
+  private static ActorSystem system;
+  private static ActorRef client;
+  private static ActorRef l2;
+  private static ActorRef l1;
+  private static ActorRef db;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setup(){
+    system = ActorSystem.create("NetworkModelTest");
+    client = system.actorOf(Props.empty(), "Client_0");
+    l2 = system.actorOf(Props.empty(), "L2_0");
+    l1 = system.actorOf(Props.empty(), "L1_0");
+    db = system.actorOf(Props.empty(), "db_0");
+  }
+
+  @AfterClass
+  public static void teardown(){
+    TestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  private NetworkModel load(String... lines) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), String.join("\n", lines).getBytes(StandardCharsets.ISO_8859_1));
+    return NetworkModel.load(file.getPath());
+  }
+
+  @Test
+  public void missingFileGivesTheUniformDefault(){
+    NetworkModel model = NetworkModel.load(new File(folder.getRoot(), "missing.properties").getPath());
+    NetworkModel.Link link = model.linkBetween(client, l2);
+    Random rnd = new Random(1);
+    for(int i = 0; i < 1000; i++){
+      double latency = link.latency(rnd);
+      assertTrue(latency >= 0 && latency < Config.SEND_MAX_DELAY);
+      assertFalse(link.drops(rnd));
+    }
+    assertEquals(0, link.transmission(1000), 0);
+  }
+
+  @Test
+  public void linkIsUsedInBothDirectionsUnlessTheReverseIsConfigured() throws IOException {
+    NetworkModel model = load(
+            "client-l2.latency = fixed 7",
+            "l1-db.latency = fixed 40",
+            "db-l1.latency = fixed 3");
+    Random rnd = new Random(1);
+    assertEquals(7, model.linkBetween(client, l2).latency(rnd), 0);
+    assertEquals(7, model.linkBetween(l2, client).latency(rnd), 0);
+    assertEquals(40, model.linkBetween(l1, db).latency(rnd), 0);
+    assertEquals(3, model.linkBetween(db, l1).latency(rnd), 0);
+  }
+
+  @Test
+  public void unconfiguredLinksAndPropertiesUseTheDefault() throws IOException {
+    NetworkModel model = load(
+            "default.latency = fixed 5",
+            "default.loss = 0.5",
+            "l1-db.latency = fixed 40",
+            "l1-db.bandwidth = 1250");
+    Random rnd = new Random(1);
+    NetworkModel.Link l2l1 = model.linkBetween(l2, l1);
+    assertEquals(5, l2l1.latency(rnd), 0);
+    assertEquals(0, l2l1.transmission(1250), 0);
+    NetworkModel.Link l1db = model.linkBetween(l1, db);
+    assertEquals(40, l1db.latency(rnd), 0);
+    assertEquals(1, l1db.transmission(1250), 1e-9);
+    assertTrue(l1db.toString(), l1db.toString().contains("loss: 0.5;"));
+  }
+
+  @Test
+  public void latencyDistributionsStayNonNegative() throws IOException {
+    NetworkModel model = load(
+            "client-l2.latency = normal 1 10",
+            "l2-l1.latency = lognormal 20 0.8",
+            "l1-db.latency = uniform 10 20");
+    Random rnd = new Random(1);
+    for(int i = 0; i < 1000; i++){
+      assertTrue(model.linkBetween(client, l2).latency(rnd) >= 0);
+      assertTrue(model.linkBetween(l2, l1).latency(rnd) > 0);
+      double uniform = model.linkBetween(l1, db).latency(rnd);
+      assertTrue(uniform >= 10 && uniform < 20);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownDistributionIsRejected() throws IOException {
+    load("client-l2.latency = pareto 1 2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void propertyWithoutLinkIsRejected() throws IOException {
+    load("latency = fixed 1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void certainLossIsRejected() throws IOException {
+    load("l1-db.loss = 1");
+  }
+
+  @Test
+  public void transportDelaysTheMessagesByTheLatencyOfTheLink() throws IOException {
+    TestKit from = new TestKit(system);
+    TestKit to = new TestKit(system);
+    Transport transport = new SimulatedTransport(system, from.getRef(), load("default.latency = fixed 300"));
+    for(int key = 0; key < 3; key++)
+      transport.send(new ReadReqMsg(key), to.getRef());
+    assertEquals(3, transport.inFlight());
+    to.expectNoMessage(Duration.ofMillis(200));
+    for(int key = 0; key < 3; key++)
+      assertEquals(key, to.expectMsgClass(ReadReqMsg.class).key);
+    assertEquals(from.getRef(), to.getLastSender());
+    assertEquals(0, transport.inFlight());
+  }
+
+  @Test
+  public void transportLosesTheMessagesOfALossyLink() throws IOException {
+    TestKit from = new TestKit(system);
+    TestKit to = new TestKit(system);
+    Transport transport = new SimulatedTransport(system, from.getRef(), load("default.latency = fixed 0", "default.loss = 0.9"));
+    for(int key = 0; key < 100; key++)
+      transport.send(new ReadReqMsg(key), to.getRef());
+    long lost = transport.lost();
+    assertTrue("lost: " + lost, lost > 50 && lost < 100);
+    to.receiveN((int) (100 - lost));
+    to.expectNoMessage(Duration.ofMillis(100));
+  }
+}
@@ -0,0 +1,66 @@
+package EasyCache.Network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PhiAccrualDetectorTest {
+
+  private static PhiAccrualDetector regular(long interval, int heartbeats){
+    PhiAccrualDetector detector = new PhiAccrualDetector(interval, 0, 0);
+    for(int i = 1; i <= heartbeats; i++)
+      detector.heartbeat(i * interval);
+    return detector;
+  }
+
+  @Test
+  public void noSuspicionRightAfterAMessage(){
+    PhiAccrualDetector detector = regular(100, 10);
+    assertEquals(1000, detector.lastArrival());
+    assertEquals(0, detector.phi(1000), 0.01);
+  }
+
+  @Test
+  public void suspicionGrowsWhileNoMessageArrives(){
+    PhiAccrualDetector detector = regular(100, 10);
+    double previous = detector.phi(1000);
+    for(long now = 1010; now <= 1400; now += 10){
+      double phi = detector.phi(now);
+      assertTrue("phi at " + now, phi >= previous);
+      previous = phi;
+    }
+  }
+
+  @Test
+  public void regularHeartbeatsAreSuspectedOnlyAfterSeveralMissedOnes(){
+    PhiAccrualDetector detector = regular(100, 32);
+    long last = detector.lastArrival();
+    assertTrue(detector.phi(last + 100) < 1);
+    assertTrue(detector.phi(last + 300) > 8);
+  }
+
+  @Test
+  public void acceptablePauseDelaysTheSuspicion(){
+    PhiAccrualDetector strict = new PhiAccrualDetector(100, 0, 0);
+    PhiAccrualDetector tolerant = new PhiAccrualDetector(100, 500, 0);
+    for(int i = 1; i <= 32; i++){
+      strict.heartbeat(i * 100);
+      tolerant.heartbeat(i * 100);
+    }
+    assertTrue(strict.phi(3500) > 8);
+    assertTrue(tolerant.phi(3500) < 1);
+  }
+
+  @Test
+  public void jitteryHeartbeatsAreSuspectedLater(){
+    PhiAccrualDetector regular = regular(100, 32);
+    PhiAccrualDetector jittery = new PhiAccrualDetector(100, 0, 0);
+    long now = 0;
+    for(int i = 1; i <= 32; i++){
+      now += i % 2 == 0 ? 20 : 180; // same mean interval, larger deviation
+      jittery.heartbeat(now);
+    }
+    assertEquals(regular.lastArrival(), jittery.lastArrival());
+    assertTrue(jittery.phi(now + 250) < regular.phi(now + 250));
+  }
+}
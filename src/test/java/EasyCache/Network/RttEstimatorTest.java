@@ -0,0 +1,62 @@
+package EasyCache.Network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RttEstimatorTest {
+
+  @Test
+  public void initialTimeoutBeforeTheFirstSample(){
+    assertEquals(500, new RttEstimator(500, 10, 1000).timeout());
+  }
+
+  @Test
+  public void firstSampleGivesThreeTimesTheRoundTrip(){
+    RttEstimator rtt = new RttEstimator(500, 10, 1000);
+    rtt.sample(100); // srtt 100, rttvar 50
+    assertEquals(300, rtt.timeout());
+  }
+
+  @Test
+  public void steadySamplesConvergeToTheRoundTrip(){
+    RttEstimator rtt = new RttEstimator(500, 10, 1000);
+    for(int i = 0; i < 200; i++)
+      rtt.sample(40);
+    assertEquals(40, rtt.timeout());
+  }
+
+  @Test
+  public void timeoutIsClampedBetweenFloorAndCeiling(){
+    RttEstimator fast = new RttEstimator(500, 50, 1000);
+    fast.sample(1);
+    assertEquals(50, fast.timeout());
+    RttEstimator slow = new RttEstimator(500, 50, 1000);
+    slow.sample(900);
+    assertEquals(1000, slow.timeout());
+  }
+
+  @Test
+  public void timeoutsDoubleTheTimeoutUntilTheNextSample(){
+    RttEstimator rtt = new RttEstimator(100, 10, 1000);
+    rtt.recordTimeout(1, 100);
+    assertEquals(200, rtt.timeout());
+    rtt.recordTimeout(2, 200);
+    assertEquals(400, rtt.timeout());
+    rtt.recordTimeout(3, 400);
+    rtt.recordTimeout(4, 1000);
+    assertEquals(1000, rtt.timeout());
+    rtt.sample(100);
+    assertEquals(300, rtt.timeout());
+  }
+
+  @Test
+  public void lateResponsesOfTimedOutRequestsAreFalseTimeouts(){
+    RttEstimator rtt = new RttEstimator(100, 10, 1000);
+    rtt.recordTimeout(1, 100);
+    rtt.recordLateResponse(1);
+    rtt.recordLateResponse(1);
+    rtt.recordLateResponse(2);
+    assertTrue(rtt.toString(), rtt.toString().contains("timeouts: 1; false_timeouts: 1;"));
+  }
+}
@@ -0,0 +1,60 @@
+package EasyCache.Storage;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BloomFilterTest {
+
+    private static final int KEYS = 10_000;
+
+    private static BloomFilter filterOfEvenKeys() {
+        BloomFilter filter = new BloomFilter(KEYS, 10);
+        for (int i = 0; i < KEYS; i++) {
+            filter.add(i * 2);
+        }
+        return filter;
+    }
+
+    @Test
+    public void hasNoFalseNegatives() {
+        BloomFilter filter = filterOfEvenKeys();
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue("key " + i * 2, filter.mightContain(i * 2));
+        }
+    }
+
+    @Test
+    public void falsePositivesAreAboutOnePercent() {
+        BloomFilter filter = filterOfEvenKeys();
+        int falsePositives = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (filter.mightContain(i * 2 + 1)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < KEYS * 3 / 100);
+    }
+
+    @Test
+    public void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(0, 10);
+        assertFalse(filter.mightContain(0));
+        assertFalse(filter.mightContain(-1));
+    }
+
+    @Test
+    public void survivesSerialization() {
+        BloomFilter filter = filterOfEvenKeys();
+        ByteBuffer buffer = ByteBuffer.allocate(filter.serializedSize());
+        filter.writeTo(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        BloomFilter read = BloomFilter.readFrom(buffer);
+        for (int key = -100; key < KEYS * 2; key++) {
+            assertEquals("key " + key, filter.mightContain(key), read.mightContain(key));
+        }
+    }
+}
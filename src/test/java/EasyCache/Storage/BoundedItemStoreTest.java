@@ -0,0 +1,112 @@
+package EasyCache.Storage;
+
+import EasyCache.EvictionPolicyType;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BoundedItemStoreTest {
+
+    private static final int HOT_KEYS = 50;
+
+    /**
+     * Reads the hot keys many times and then scans many keys read only once, filling the store on each miss as a cache does.
+     * @return the number of hot keys still in the store after the scan.
+     */
+    private static int hotKeysAfterAScan(EvictionPolicyType policy) {
+        BoundedItemStore store = new BoundedItemStore(100, policy);
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < HOT_KEYS; key++) {
+                readThrough(store, key);
+            }
+        }
+        for (int key = 1000; key < 1300; key++) {
+            readThrough(store, key);
+        }
+        assertEquals(100, store.size());
+        int kept = 0;
+        for (int key = 0; key < HOT_KEYS; key++) {
+            if (store.containsKey(key)) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private static void readThrough(BoundedItemStore store, int key) {
+        if (store.read(key) == IntIntMap.ABSENT) {
+            store.put(key, key);
+        }
+    }
+
+    @Test
+    public void lruEvictsTheLeastRecentlyReadItem() {
+        BoundedItemStore store = new BoundedItemStore(2, EvictionPolicyType.LRU);
+        store.put(1, 10);
+        store.put(2, 20);
+        assertEquals(10, store.read(1));
+        store.put(3, 30);
+        assertFalse(store.containsKey(2));
+        assertEquals(10, store.get(1));
+        assertEquals(30, store.get(3));
+        assertEquals(1, store.evictions());
+    }
+
+    @Test
+    public void updatingAnItemNeverEvicts() {
+        for (EvictionPolicyType policy : EvictionPolicyType.values()) {
+            BoundedItemStore store = new BoundedItemStore(2, policy);
+            store.put(1, 10);
+            store.put(2, 20);
+            store.put(1, 11);
+            store.put(2, 21);
+            assertEquals(policy.toString(), 2, store.size());
+            assertEquals(policy.toString(), 0, store.evictions());
+            assertEquals(policy.toString(), 11, store.get(1));
+        }
+    }
+
+    @Test
+    public void tinyLfuKeepsThePopularItemsDuringAScan() {
+        assertEquals(0, hotKeysAfterAScan(EvictionPolicyType.LRU));
+        assertTrue(hotKeysAfterAScan(EvictionPolicyType.TINY_LFU) >= HOT_KEYS * 9 / 10);
+    }
+
+    @Test
+    public void keysAndValuesStayConsistentWhileEvicting() {
+        BoundedItemStore store = new BoundedItemStore(64, EvictionPolicyType.LRU);
+        Random rnd = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            int key = rnd.nextInt(1000) - 500; // negative keys and 0 are valid keys
+            store.put(key, key * 3);
+            if (rnd.nextInt(4) == 0) {
+                store.remove(rnd.nextInt(1000) - 500);
+            }
+            assertTrue(store.size() <= 64);
+        }
+        int[] keys = store.keys();
+        assertEquals(store.size(), keys.length);
+        for (int key : keys) {
+            assertEquals(key * 3, store.get(key));
+        }
+        assertEquals(IntIntMap.ABSENT, store.get(1000));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        BoundedItemStore store = new BoundedItemStore(10, EvictionPolicyType.TINY_LFU);
+        assertEquals(0, store.hitRatio(), 0);
+        readThrough(store, 1);
+        readThrough(store, 1);
+        readThrough(store, 1);
+        readThrough(store, 2);
+        assertEquals(2, store.hits());
+        assertEquals(2, store.misses());
+        assertEquals(0.5, store.hitRatio(), 1e-9);
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(2, store.hits());
+    }
+}
@@ -0,0 +1,52 @@
+package EasyCache.Storage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void neverUnderestimatesTheAccesses() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int key = 0; key < 32; key++) {
+            for (int i = 0; i < key % 10; i++) {
+                sketch.increment(key);
+            }
+        }
+        for (int key = 0; key < 32; key++) {
+            assertTrue("key " + key, sketch.frequency(key) >= key % 10);
+        }
+    }
+
+    @Test
+    public void unknownKeyHasNoAccesses() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        sketch.increment(1);
+        assertEquals(0, new FrequencySketch(64).frequency(1));
+        assertEquals(1, sketch.frequency(1));
+    }
+
+    @Test
+    public void countersSaturateAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(7);
+        }
+        assertEquals(15, sketch.frequency(7));
+    }
+
+    @Test
+    public void countersAreHalvedAfterTheSampleSize() {
+        FrequencySketch sketch = new FrequencySketch(16); // 16 columns, halved after 160 accesses
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(1);
+        }
+        assertEquals(15, sketch.frequency(1));
+        for (int key = 1000; key < 1160; key++) {
+            sketch.increment(key);
+        }
+        assertTrue(sketch.frequency(1) < 15);
+        assertTrue(sketch.frequency(1) >= 7);
+    }
+}
@@ -0,0 +1,93 @@
+package EasyCache.Storage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntIntMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntIntMap map = new IntIntMap();
+        assertEquals(IntIntMap.ABSENT, map.put(1, 10));
+        assertEquals(10, map.put(1, 11));
+        assertEquals(11, map.get(1));
+        assertTrue(map.containsKey(1));
+        assertEquals(IntIntMap.ABSENT, map.get(2));
+        assertEquals(11, map.remove(1));
+        assertEquals(IntIntMap.ABSENT, map.remove(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void zeroIsAValidKey() {
+        IntIntMap map = new IntIntMap();
+        assertFalse(map.containsKey(0));
+        map.put(0, 5);
+        map.put(3, 6);
+        assertEquals(5, map.get(0));
+        assertEquals(2, map.size());
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new int[]{0, 3}, keys);
+        assertEquals(5, map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void absentSentinelCannotBeStored() {
+        new IntIntMap().put(1, IntIntMap.ABSENT);
+    }
+
+    @Test
+    public void removalKeepsTheFollowingEntriesOfAProbeSequence() {
+        // a table filled up to the resize threshold: removing any key must not hide the others
+        for (int removed = 1; removed <= 9; removed++) {
+            IntIntMap map = new IntIntMap(4);
+            for (int key = 1; key <= 9; key++) {
+                map.put(key * 16, key);
+            }
+            map.remove(removed * 16);
+            for (int key = 1; key <= 9; key++) {
+                assertEquals("removed " + removed + ", key " + key, key == removed ? IntIntMap.ABSENT : key, map.get(key * 16));
+            }
+            assertEquals(8, map.size());
+        }
+    }
+
+    @Test
+    public void behavesLikeAHashMap() {
+        Random rnd = new Random(42);
+        IntIntMap map = new IntIntMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int key = rnd.nextInt(64) - 32; // few keys, so that the probe sequences are long and often wrap around
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    int value = rnd.nextInt();
+                    if (value == IntIntMap.ABSENT) {
+                        value = 0;
+                    }
+                    assertEquals(expected.getOrDefault(key, IntIntMap.ABSENT).intValue(), map.put(key, value));
+                    expected.put(key, value);
+                    break;
+                case 1:
+                    assertEquals(expected.getOrDefault(key, IntIntMap.ABSENT).intValue(), map.remove(key));
+                    expected.remove(key);
+                    break;
+                default:
+                    assertEquals(expected.getOrDefault(key, IntIntMap.ABSENT).intValue(), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        Map<Integer, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+}
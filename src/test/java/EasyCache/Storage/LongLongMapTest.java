@@ -0,0 +1,72 @@
+package EasyCache.Storage;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongLongMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongLongMap map = new LongLongMap();
+        assertEquals(LongLongMap.ABSENT, map.put(1L << 40, 10));
+        assertEquals(10, map.put(1L << 40, 11));
+        assertEquals(11, map.get(1L << 40));
+        assertTrue(map.containsKey(1L << 40));
+        assertTrue(map.containsValue(11));
+        assertFalse(map.containsValue(10));
+        assertEquals(11, map.remove(1L << 40));
+        assertEquals(LongLongMap.ABSENT, map.remove(1L << 40));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void zeroIsAValidKey() {
+        LongLongMap map = new LongLongMap();
+        map.put(0, 5);
+        assertEquals(5, map.get(0));
+        assertTrue(map.containsValue(5));
+        assertArrayEquals(new long[]{0}, map.keys());
+        assertEquals(5, map.remove(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void absentSentinelCannotBeStored() {
+        new LongLongMap().put(1, LongLongMap.ABSENT);
+    }
+
+    @Test
+    public void behavesLikeAHashMap() {
+        Random rnd = new Random(42);
+        LongLongMap map = new LongLongMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = rnd.nextInt(64) - 32; // few keys, so that the probe sequences are long and often wrap around
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    long value = rnd.nextLong();
+                    if (value == LongLongMap.ABSENT) {
+                        value = 0;
+                    }
+                    assertEquals(expected.getOrDefault(key, LongLongMap.ABSENT).longValue(), map.put(key, value));
+                    expected.put(key, value);
+                    break;
+                case 1:
+                    assertEquals(expected.getOrDefault(key, LongLongMap.ABSENT).longValue(), map.remove(key));
+                    expected.remove(key);
+                    break;
+                default:
+                    assertEquals(expected.getOrDefault(key, LongLongMap.ABSENT).longValue(), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        Map<Long, Long> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+}
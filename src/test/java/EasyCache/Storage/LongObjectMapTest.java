@@ -0,0 +1,99 @@
+package EasyCache.Storage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertNull(map.put(1L << 40, "a"));
+        assertEquals("a", map.put(1L << 40, "b"));
+        assertEquals("b", map.get(1L << 40));
+        assertTrue(map.containsKey(1L << 40));
+        assertTrue(map.containsValue("b"));
+        assertEquals("x", map.getOrDefault(2, "x"));
+        assertEquals("b", map.remove(1L << 40));
+        assertNull(map.remove(1L << 40));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void zeroIsAValidKey() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(0, "zero");
+        map.put(5, "five");
+        assertEquals("zero", map.get(0));
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[]{0, 5}, keys);
+        List<String> values = map.values();
+        values.sort(null);
+        assertEquals(Arrays.asList("five", "zero"), values);
+        assertEquals("zero", map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullCannotBeStored() {
+        new LongObjectMap<String>().put(1, null);
+    }
+
+    @Test
+    public void computeIfAbsentComputesOnlyOnce() {
+        LongObjectMap<StringBuilder> map = new LongObjectMap<>();
+        map.computeIfAbsent(3, k -> new StringBuilder()).append("a");
+        map.computeIfAbsent(3, k -> new StringBuilder()).append("b");
+        assertEquals("ab", map.get(3).toString());
+    }
+
+    @Test
+    public void removalKeepsTheFollowingEntriesOfAProbeSequence() {
+        // a table filled up to the resize threshold: removing any key must not hide the others
+        for (long removed = 1; removed <= 9; removed++) {
+            LongObjectMap<Long> map = new LongObjectMap<>(4);
+            for (long key = 1; key <= 9; key++) {
+                map.put(key << 48, key);
+            }
+            map.remove(removed << 48);
+            for (long key = 1; key <= 9; key++) {
+                assertEquals("removed " + removed + ", key " + key, key == removed ? null : key, map.get(key << 48));
+            }
+            assertEquals(8, map.size());
+        }
+    }
+
+    @Test
+    public void behavesLikeAHashMap() {
+        Random rnd = new Random(42);
+        LongObjectMap<Integer> map = new LongObjectMap<>(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = rnd.nextInt(64) - 32; // few keys, so that the probe sequences are long and often wrap around
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    int value = rnd.nextInt();
+                    assertEquals(expected.put(key, value), map.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        Map<Long, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+}
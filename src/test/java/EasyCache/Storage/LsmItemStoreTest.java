@@ -0,0 +1,159 @@
+package EasyCache.Storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LsmItemStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LsmItemStore open(int memtableMaxItems, int compactionTrigger) throws IOException {
+        return new LsmItemStore(folder.getRoot().getPath(), memtableMaxItems, compactionTrigger, 10, 1 << 20);
+    }
+
+    private static void assertContains(Map<Integer, Integer> expected, ItemStore store) {
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals("key " + e.getKey(), e.getValue().intValue(), store.get(e.getKey()));
+        }
+        Map<Integer, Integer> visited = new HashMap<>();
+        store.forEach(visited::put);
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), store.size());
+    }
+
+    @Test
+    public void readsTheNewestValueAcrossMemtableImmutablesAndSegments() throws IOException {
+        LsmItemStore store = open(100, 1000); // no compaction
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int round = 0; round < 5; round++) {
+            // each round overwrites half of the keys of the previous one, and is flushed in background while the next is written
+            for (int key = round * 50; key < round * 50 + 100; key++) {
+                store.put(key, round * 1000 + key);
+                expected.put(key, round * 1000 + key);
+            }
+            assertContains(expected, store);
+        }
+        store.put(-1, 7); // stays in the memtable
+        expected.put(-1, 7);
+        assertContains(expected, store);
+        assertEquals(IntIntMap.ABSENT, store.get(1_000_000));
+        store.flush();
+        assertTrue(store.toString(), store.toString().startsWith("memtable: 0; immutables: 0; segments: 6;"));
+        assertContains(expected, store);
+        store.close();
+    }
+
+    @Test
+    public void survivesRestarts() throws IOException {
+        LsmItemStore store = open(16, 1000);
+        assertTrue(store.isPersistent());
+        assertTrue(store.isEmpty());
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int key = 0; key < 100; key++) {
+            store.put(key % 40, key);
+            expected.put(key % 40, key);
+        }
+        store.close();
+        LsmItemStore reopened = open(16, 1000);
+        assertFalse(reopened.isEmpty());
+        assertContains(expected, reopened);
+        reopened.put(0, -5); // newer than the segments read at the start
+        reopened.close();
+        expected.put(0, -5);
+        assertContains(expected, open(16, 1000));
+    }
+
+    @Test
+    public void compactionKeepsTheNewestValue() throws IOException {
+        LsmItemStore store = open(10, 4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int round = 0; round < 16; round++) {
+            // 10 writes fill a memtable, half of the keys are overwritten by the next round
+            for (int key = round * 5; key < round * 5 + 10; key++) {
+                store.put(key, round * 1000 + key);
+                expected.put(key, round * 1000 + key);
+            }
+        }
+        store.close(); // waits for the compactions
+        assertFalse(store.toString(), store.toString().contains("compactions: 0;"));
+        assertContains(expected, store);
+        assertContains(expected, open(10, 4));
+    }
+
+    @Test
+    public void compactionMergesOnlyRunsOfSimilarSize() throws IOException {
+        LsmItemStore store = open(10, 4);
+        for (int key = 0; key < 40; key++) {
+            store.put(key, key);
+        }
+        store.close();
+        assertTrue(store.toString(), store.toString().endsWith("segments: 1; flushes: 4; compactions: 1; compacted_entries: 40"));
+
+        store = open(10, 4);
+        for (int key = 100; key < 140; key++) {
+            store.put(key, key);
+        }
+        store.close();
+        // the 4 new runs of 10 items are merged, the run of 40 items is left alone
+        assertTrue(store.toString(), store.toString().endsWith("segments: 2; flushes: 4; compactions: 1; compacted_entries: 40"));
+        assertEquals(80, open(10, 4).size());
+    }
+
+    private Path writeSegment(long minSeq, long maxSeq, int value, int... keys) throws IOException {
+        SegmentFile.Writer writer = new SegmentFile.Writer(folder.getRoot().toPath().resolve(SegmentFile.fileName(minSeq, maxSeq, 0)), keys.length, 10);
+        for (int key : keys) {
+            writer.add(key, value);
+        }
+        return writer.finish();
+    }
+
+    @Test
+    public void compactionInterruptedBeforeTheMarkerIsRolledBack() throws IOException {
+        Path older = writeSegment(0, 0, 1, 1, 2);
+        Path newer = writeSegment(1, 1, 2, 2, 3);
+        Path output = writeSegment(0, 1, 9, 1); // incomplete output of the merge of the two
+        Files.createFile(folder.getRoot().toPath().resolve("seg-0-1-1.sst.tmp"));
+        LsmItemStore store = open(10, 1000);
+        assertFalse(Files.exists(output));
+        assertTrue(Files.exists(older));
+        assertTrue(Files.exists(newer));
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("seg-0-1-1.sst.tmp")));
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(1, 1);
+        expected.put(2, 2);
+        expected.put(3, 2);
+        assertContains(expected, store);
+    }
+
+    @Test
+    public void compactionInterruptedAfterTheMarkerIsCompleted() throws IOException {
+        Path older = writeSegment(0, 0, 1, 1, 2);
+        Path newer = writeSegment(1, 1, 2, 2, 3);
+        Path output = writeSegment(0, 1, 9, 1, 2, 3);
+        Path marker = Files.createFile(folder.getRoot().toPath().resolve("compaction-0-1.done"));
+        LsmItemStore store = open(10, 1000);
+        assertTrue(Files.exists(output));
+        assertFalse(Files.exists(older));
+        assertFalse(Files.exists(newer));
+        assertFalse(Files.exists(marker));
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(1, 9);
+        expected.put(2, 9);
+        expected.put(3, 9);
+        assertContains(expected, store);
+        store.put(1, 5); // the sequence numbers continue after the recovered range
+        store.close();
+        expected.put(1, 5);
+        assertContains(expected, open(10, 1000));
+    }
+}
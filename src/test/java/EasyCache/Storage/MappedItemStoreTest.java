@@ -0,0 +1,98 @@
+package EasyCache.Storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MappedItemStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String path() {
+        return folder.getRoot().toPath().resolve("items").toString();
+    }
+
+    /**
+     * Opens the store of shard 1 of 3, holding the keys 1, 4, 7, ... below 100.
+     */
+    private MappedItemStore open() throws IOException {
+        return new MappedItemStore(path(), 100, 3, 1);
+    }
+
+    @Test
+    public void itemsAreReadBackAfterAReopen() throws IOException {
+        MappedItemStore store = open();
+        assertTrue(store.isEmpty());
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int key = 1; key < 100; key += 3) {
+            store.put(key, -key);
+            expected.put(key, -key);
+        }
+        store.put(4, 44);
+        expected.put(4, 44);
+        store.close();
+
+        MappedItemStore reopened = open();
+        assertEquals(expected.size(), reopened.size());
+        Map<Integer, Integer> visited = new HashMap<>();
+        reopened.forEach(visited::put);
+        assertEquals(expected, visited);
+        assertEquals(44, reopened.get(4));
+        assertEquals(IntIntMap.ABSENT, reopened.get(2)); // owned by another shard
+        reopened.close();
+    }
+
+    @Test
+    public void putOutsideTheSlotsIsRejected() throws IOException {
+        MappedItemStore store = open();
+        for (int key : new int[]{-2, 0, 2, 100, 1000}) {
+            assertFalse(store.canHold(key));
+            try {
+                store.put(key, 1);
+                fail("key " + key + " accepted");
+            } catch (IllegalArgumentException expected) {
+                // the database answers these writes with an error
+            }
+            assertEquals(IntIntMap.ABSENT, store.get(key));
+        }
+        assertTrue(store.canHold(97));
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    private void corruptHeader(int offset) throws IOException {
+        open().close();
+        try (RandomAccessFile file = new RandomAccessFile(path(), "rw")) {
+            file.seek(offset);
+            int field = file.readInt();
+            file.seek(offset);
+            file.writeInt(field + 1);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void badMagicIsRejected() throws IOException {
+        corruptHeader(0);
+        open();
+    }
+
+    @Test(expected = IOException.class)
+    public void otherVersionIsRejected() throws IOException {
+        corruptHeader(4);
+        open();
+    }
+
+    @Test(expected = IOException.class)
+    public void otherNumberOfKeysIsRejected() throws IOException {
+        open().close();
+        new MappedItemStore(path(), 1000, 3, 1);
+    }
+}
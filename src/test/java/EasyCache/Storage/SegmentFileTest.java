@@ -0,0 +1,81 @@
+package EasyCache.Storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SegmentFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(long minSeq, long maxSeq, int... keys) throws IOException {
+        Path path = folder.getRoot().toPath().resolve(SegmentFile.fileName(minSeq, maxSeq, 0));
+        SegmentFile.Writer writer = new SegmentFile.Writer(path, keys.length, 10);
+        for (int key : keys) {
+            writer.add(key, key * 10);
+        }
+        assertEquals(keys.length, writer.count());
+        return writer.finish();
+    }
+
+    @Test
+    public void findsTheWrittenItems() throws IOException {
+        int[] keys = new int[20_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i * 2 - 10_000; // even keys, also negative
+        }
+        SegmentFile segment = SegmentFile.open(write(3, 7, keys));
+        assertEquals(keys.length, segment.count());
+        assertEquals(3, segment.minSeq());
+        assertEquals(7, segment.maxSeq());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i], segment.keyAt(i));
+            assertEquals(keys[i] * 10, segment.get(keys[i]));
+            assertEquals(IntIntMap.ABSENT, segment.get(keys[i] + 1));
+        }
+        assertEquals(IntIntMap.ABSENT, segment.get(Integer.MIN_VALUE));
+        assertEquals(IntIntMap.ABSENT, segment.get(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void emptySegmentContainsNothing() throws IOException {
+        SegmentFile segment = SegmentFile.open(write(0, 0));
+        assertEquals(0, segment.count());
+        assertEquals(IntIntMap.ABSENT, segment.get(0));
+    }
+
+    @Test
+    public void unfinishedSegmentIsNotVisible() throws IOException {
+        Path path = folder.getRoot().toPath().resolve(SegmentFile.fileName(1, 1, 0));
+        SegmentFile.Writer writer = new SegmentFile.Writer(path, 1, 10);
+        writer.add(1, 10);
+        assertFalse(Files.exists(path));
+        writer.finish();
+        assertEquals(10, SegmentFile.open(path).get(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSegmentIsRejected() throws IOException {
+        Path path = write(0, 0, 1, 2, 3);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+        SegmentFile.open(path);
+    }
+
+    @Test
+    public void rangeIsParsedFromTheName() {
+        assertArrayEquals(new long[]{4, 9}, SegmentFile.parseRange(Paths.get(SegmentFile.fileName(4, 9, 2))));
+        assertNull(SegmentFile.parseRange(Paths.get("seg-4-9-2.sst.tmp")));
+        assertNull(SegmentFile.parseRange(Paths.get("compaction-4-9.done")));
+        assertNull(SegmentFile.parseRange(Paths.get("seg-a-9-2.sst")));
+    }
+}
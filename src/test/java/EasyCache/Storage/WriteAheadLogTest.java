@@ -0,0 +1,148 @@
+package EasyCache.Storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+
+    private static final int RECORD_SIZE = 12;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path logPath() {
+        return folder.getRoot().toPath().resolve("wal");
+    }
+
+    private Path checkpointPath() {
+        return folder.getRoot().toPath().resolve("ckpt");
+    }
+
+    private WriteAheadLog open() {
+        return new WriteAheadLog(logPath().toString(), checkpointPath().toString(), 4);
+    }
+
+    /**
+     * Writes some records to the log, as the database does, and closes it.
+     */
+    private void writeRecords(int... keys) {
+        WriteAheadLog wal = open();
+        wal.recover(new HeapItemStore());
+        for (int key : keys) {
+            wal.append(key, key * 10);
+        }
+        assertEquals(keys.length, wal.sync());
+        wal.close();
+    }
+
+    @Test
+    public void syncedWritesAreReplayed() {
+        writeRecords(1, 2, 3, 4, 5, 1);
+        ItemStore store = new HeapItemStore();
+        WriteAheadLog wal = open();
+        assertEquals(6, wal.recover(store));
+        assertEquals(6, wal.recordsSinceCheckpoint());
+        for (int key = 1; key <= 5; key++) {
+            assertEquals(key * 10, store.get(key));
+        }
+        wal.close();
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        writeRecords(1, 2);
+        Files.write(logPath(), new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND); // a record cut by a crash
+        ItemStore store = new HeapItemStore();
+        WriteAheadLog wal = open();
+        assertEquals(2, wal.recover(store));
+        assertEquals(2 * RECORD_SIZE, Files.size(logPath()));
+        wal.append(3, 30); // written after the valid records, not after the torn one
+        wal.close();
+        store = new HeapItemStore();
+        assertEquals(3, open().recover(store));
+        assertEquals(30, store.get(3));
+    }
+
+    @Test
+    public void recordWithABadChecksumAndTheFollowingOnesAreDropped() throws IOException {
+        writeRecords(1, 2, 3);
+        try (RandomAccessFile file = new RandomAccessFile(logPath().toFile(), "rw")) {
+            file.seek(RECORD_SIZE + 4); // value of the second record
+            file.writeInt(999);
+        }
+        ItemStore store = new HeapItemStore();
+        assertEquals(1, open().recover(store));
+        assertEquals(10, store.get(1));
+        assertEquals(IntIntMap.ABSENT, store.get(2));
+        assertEquals(IntIntMap.ABSENT, store.get(3));
+        assertEquals(RECORD_SIZE, Files.size(logPath()));
+    }
+
+    @Test
+    public void writesAfterACheckpointAreReplayedOverIt() {
+        ItemStore store = new HeapItemStore();
+        WriteAheadLog wal = open();
+        wal.recover(store);
+        for (int key = 1; key <= 3; key++) {
+            wal.append(key, key);
+            store.put(key, key);
+        }
+        wal.sync();
+        wal.checkpoint(store);
+        assertEquals(0, wal.recordsSinceCheckpoint());
+        wal.append(2, 20);
+        wal.append(4, 40);
+        wal.close();
+
+        ItemStore recovered = new HeapItemStore();
+        assertEquals(2, open().recover(recovered));
+        assertEquals(1, recovered.get(1));
+        assertEquals(20, recovered.get(2));
+        assertEquals(3, recovered.get(3));
+        assertEquals(40, recovered.get(4));
+    }
+
+    @Test
+    public void checkpointEmptiesTheLog() throws IOException {
+        ItemStore store = new HeapItemStore();
+        WriteAheadLog wal = open();
+        wal.recover(store);
+        wal.append(1, 10);
+        store.put(1, 10);
+        wal.sync();
+        assertEquals(RECORD_SIZE, Files.size(logPath()));
+        wal.checkpoint(store);
+        assertEquals(0, Files.size(logPath()));
+        assertTrue(Files.exists(checkpointPath()));
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("ckpt.tmp")));
+        wal.close();
+        ItemStore recovered = new HeapItemStore();
+        assertEquals(0, open().recover(recovered));
+        assertEquals(10, recovered.get(1));
+    }
+
+    @Test
+    public void checkpointOfAPersistentStoreFlushesIt() throws IOException {
+        LsmItemStore store = new LsmItemStore(folder.newFolder("lsm").getPath(), 100, 4, 10, 1 << 20);
+        WriteAheadLog wal = open();
+        wal.recover(store);
+        wal.append(1, 10);
+        store.put(1, 10);
+        wal.sync();
+        wal.checkpoint(store);
+        assertEquals(0, Files.size(logPath()));
+        assertFalse(Files.exists(checkpointPath())); // the store itself survives the restart
+        assertTrue(store.toString(), store.toString().startsWith("memtable: 0; immutables: 0; segments: 1;"));
+        wal.close();
+        store.close();
+    }
+}
@@ -0,0 +1,91 @@
+package EasyCache.Util;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class SharerDirectoryTest {
+
+  private static ActorSystem system;
+  private static ActorRef a;
+  private static ActorRef b;
+  private static ActorRef c;
+
+  @BeforeClass
+  public static void setup(){
+    system = ActorSystem.create("SharerDirectoryTest");
+    a = new TestKit(system).getRef();
+    b = new TestKit(system).getRef();
+    c = new TestKit(system).getRef();
+  }
+
+  @AfterClass
+  public static void teardown(){
+    TestKit.shutdownActorSystem(system);
+    system = null;
+  }
+
+  @Test
+  public void grantedChildrenAreTargets(){
+    SharerDirectory sharers = new SharerDirectory();
+    assertFalse(sharers.isShared(1));
+    sharers.grant(1, a, 10);
+    sharers.grant(1, b, 11);
+    sharers.grant(2, a, 12);
+    assertTrue(sharers.isShared(1));
+    assertEquals(new HashSet<>(Arrays.asList(a, b)), sharers.targets(1, Collections.emptyList()));
+    assertEquals(new HashSet<>(Arrays.asList(1, 2)), sharers.keys());
+    assertEquals(3, sharers.size());
+  }
+
+  @Test
+  public void targetsAddTheOtherChildrenOnce(){
+    SharerDirectory sharers = new SharerDirectory();
+    sharers.grant(1, a, 10);
+    assertEquals(new HashSet<>(Arrays.asList(a, c)), sharers.targets(1, Arrays.asList(a, null, c)));
+    assertEquals(Collections.singleton(c), sharers.targets(2, Collections.singletonList(c)));
+  }
+
+  @Test
+  public void releaseOfTheLastGrantRemovesTheChild(){
+    SharerDirectory sharers = new SharerDirectory();
+    sharers.grant(1, a, 10);
+    assertTrue(sharers.release(1, a, 10));
+    assertFalse(sharers.isShared(1));
+    assertEquals(0, sharers.size());
+    assertFalse(sharers.release(1, a, 10));
+  }
+
+  @Test
+  public void releaseOfAnOlderGrantKeepsTheChild(){
+    SharerDirectory sharers = new SharerDirectory();
+    sharers.grant(1, a, 10);
+    sharers.grant(1, a, 20); // the child is sent a newer copy while the release of the old one is in flight
+    assertFalse(sharers.release(1, a, 10));
+    assertTrue(sharers.isShared(1));
+    assertTrue(sharers.release(1, a, 20));
+    assertFalse(sharers.isShared(1));
+  }
+
+  @Test
+  public void removeAllDropsTheSharersOfAnItem(){
+    SharerDirectory sharers = new SharerDirectory();
+    sharers.grant(1, a, 10);
+    sharers.grant(1, b, 11);
+    sharers.grant(2, c, 12);
+    sharers.removeAll(1);
+    assertFalse(sharers.isShared(1));
+    assertEquals(Collections.singleton(2), sharers.keys());
+    sharers.clear();
+    assertEquals(0, sharers.size());
+  }
+}
@@ -0,0 +1,95 @@
+package EasyCache.Util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+  private static List<Object> advanceAfter(TimerWheel timers, long millis) throws InterruptedException {
+    Thread.sleep(millis);
+    List<Object> expired = new ArrayList<>();
+    timers.advance(expired::add);
+    return expired;
+  }
+
+  @Test
+  public void timeoutExpiresAfterItsDelay() throws InterruptedException {
+    TimerWheel timers = new TimerWheel(8, 1);
+    timers.schedule(5, "short");
+    timers.schedule(60_000, "long");
+    assertEquals(2, timers.size());
+    assertEquals(Collections.singletonList("short"), advanceAfter(timers, 30));
+    assertEquals(1, timers.size());
+    assertEquals(Collections.emptyList(), advanceAfter(timers, 5));
+  }
+
+  @Test
+  public void timeoutLongerThanARoundExpiresOnlyAtItsDeadline() throws InterruptedException {
+    TimerWheel timers = new TimerWheel(4, 1); // a round of the wheel is 4 ms
+    timers.schedule(200, "later");
+    assertEquals(Collections.emptyList(), advanceAfter(timers, 10));
+    assertEquals(Collections.singletonList("later"), advanceAfter(timers, 300));
+  }
+
+  @Test
+  public void cancelledTimeoutDoesNotExpire() throws InterruptedException {
+    TimerWheel timers = new TimerWheel(8, 1);
+    long token = timers.schedule(5, "cancelled");
+    timers.schedule(5, "kept");
+    assertTrue(timers.cancel(token));
+    assertFalse(timers.cancel(token));
+    assertEquals(1, timers.size());
+    assertEquals(Collections.singletonList("kept"), advanceAfter(timers, 30));
+    assertEquals(0, timers.size());
+  }
+
+  @Test
+  public void staleTokenDoesNotCancelTheTimeoutReusingItsEntry() throws InterruptedException {
+    TimerWheel timers = new TimerWheel(8, 1);
+    long expired = timers.schedule(1, "first");
+    assertEquals(Collections.singletonList("first"), advanceAfter(timers, 20));
+    long cancelled = timers.schedule(60_000, "second");
+    assertTrue(timers.cancel(cancelled));
+    long reused = timers.schedule(60_000, "third");
+    assertEquals((int) expired, (int) reused); // same entry of the pool
+    assertFalse(timers.cancel(expired));
+    assertFalse(timers.cancel(cancelled));
+    assertEquals(1, timers.size());
+    assertTrue(timers.cancel(reused));
+  }
+
+  @Test
+  public void poolGrowsBeyondItsInitialEntries() throws InterruptedException {
+    TimerWheel timers = new TimerWheel(8, 1);
+    Set<Long> tokens = new HashSet<>();
+    for(int i = 0; i < 1000; i++){
+      long token = timers.schedule(i % 2 == 0 ? 5 : 60_000, i);
+      assertNotEquals(0, token);
+      assertNotEquals(Long.MIN_VALUE, token);
+      tokens.add(token);
+    }
+    assertEquals(1000, tokens.size());
+    assertEquals(1000, timers.size());
+    List<Object> expired = advanceAfter(timers, 30);
+    assertEquals(500, expired.size());
+    for(Object msg : expired)
+      assertEquals(0, (Integer) msg % 2);
+    assertEquals(500, timers.size());
+  }
+
+  @Test
+  public void unknownTokensAreIgnored(){
+    TimerWheel timers = new TimerWheel(8, 1);
+    assertFalse(timers.cancel(0));
+    assertFalse(timers.cancel(-1));
+    assertFalse(timers.cancel(Long.MIN_VALUE));
+    assertFalse(timers.cancel((1L << 32) | 1_000_000));
+  }
+}